@@ -0,0 +1,320 @@
+package com.example.querysence.ai;
+
+import com.example.querysence.exception.AIServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// The one way to reach the chat model. Each feature gets its own cap on concurrent calls,
+// so a burst of chat can't starve explain; a circuit breaker shared by all features stops
+// calling a failing provider and lets a few probes through once it has cooled down; and
+// transient failures are retried with exponential backoff and full jitter, so retries
+// from many callers don't arrive in lockstep. Rejected calls fail at once with a 503.
+@Component
+@Slf4j
+public class AIProviderClient {
+
+    public enum CircuitState { CLOSED, OPEN, HALF_OPEN }
+
+    private final ChatClient chatClient;
+    private final MeterRegistry meterRegistry;
+    private final int maxConcurrentPerFeature;
+    private final long bulkheadWaitMs;
+    private final int maxAttempts;
+    private final long backoffInitialMs;
+    private final long backoffMaxMs;
+    private final CircuitBreaker circuitBreaker;
+    private final Map<String, Semaphore> bulkheads = new ConcurrentHashMap<>();
+
+    public AIProviderClient(ChatClient.Builder chatClientBuilder,
+                            MeterRegistry meterRegistry,
+                            @Value("${ai.resilience.bulkhead.max-concurrent:8}") int maxConcurrentPerFeature,
+                            @Value("${ai.resilience.bulkhead.max-wait-ms:500}") long bulkheadWaitMs,
+                            @Value("${ai.resilience.retry.max-attempts:3}") int maxAttempts,
+                            @Value("${ai.resilience.retry.initial-backoff-ms:500}") long backoffInitialMs,
+                            @Value("${ai.resilience.retry.max-backoff-ms:8000}") long backoffMaxMs,
+                            @Value("${ai.resilience.circuit.window-size:20}") int windowSize,
+                            @Value("${ai.resilience.circuit.minimum-calls:10}") int minimumCalls,
+                            @Value("${ai.resilience.circuit.failure-rate-threshold:0.5}") double failureRateThreshold,
+                            @Value("${ai.resilience.circuit.open-seconds:30}") long openSeconds,
+                            @Value("${ai.resilience.circuit.half-open-probes:2}") int halfOpenProbes) {
+        // The client is thread-safe, building one per call only repeated the setup
+        this.chatClient = chatClientBuilder.build();
+        this.meterRegistry = meterRegistry;
+        this.maxConcurrentPerFeature = maxConcurrentPerFeature;
+        this.bulkheadWaitMs = bulkheadWaitMs;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffInitialMs = backoffInitialMs;
+        this.backoffMaxMs = backoffMaxMs;
+        this.circuitBreaker = new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold,
+                Duration.ofSeconds(openSeconds).toNanos(), halfOpenProbes);
+        for (CircuitState state : CircuitState.values()) {
+            Gauge.builder("ai.provider.circuit.state", circuitBreaker, b -> b.state() == state ? 1 : 0)
+                    .tag("state", state.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry);
+        }
+    }
+
+    public String call(String feature, String prompt) {
+        for (int attempt = 1; ; attempt++) {
+            Admission admission = admit(feature, bulkheadWaitMs);
+            long startTime = System.nanoTime();
+            try {
+                String content = chatClient.prompt()
+                        .user(prompt)
+                        .call()
+                        .content();
+                circuitBreaker.onSuccess(admission.permit());
+                record(feature, "success", startTime);
+                return content;
+            } catch (RuntimeException e) {
+                boolean transientFailure = onFailure(feature, e, startTime, admission.permit());
+                if (!transientFailure || attempt >= maxAttempts) {
+                    throw new AIServiceException("AI service temporarily unavailable. Please try again later.", e);
+                }
+                log.warn("AI call failed ({}), attempt {} of {}: {}", feature, attempt, maxAttempts, e.getMessage());
+            } finally {
+                admission.bulkhead().release();
+            }
+            counter("ai.provider.retries", feature).increment();
+            backoff(attempt);
+        }
+    }
+
+    // Streams aren't retried, tokens may already have reached the client; and they don't
+    // wait for a bulkhead permit, the subscriber may be an event loop
+    public Flux<String> stream(String feature, String prompt) {
+        return Flux.defer(() -> {
+            Admission admission = admit(feature, 0);
+            long startTime = System.nanoTime();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            return chatClient.prompt()
+                    .user(prompt)
+                    .stream()
+                    .content()
+                    .doOnError(failure::set)
+                    .doFinally(signal -> {
+                        admission.bulkhead().release();
+                        if (signal == SignalType.ON_COMPLETE) {
+                            circuitBreaker.onSuccess(admission.permit());
+                            record(feature, "success", startTime);
+                        } else if (signal == SignalType.ON_ERROR) {
+                            onFailure(feature, failure.get(), startTime, admission.permit());
+                        } else {
+                            circuitBreaker.onAbandoned(admission.permit());
+                        }
+                    });
+        });
+    }
+
+    public CircuitState circuitState() {
+        return circuitBreaker.state();
+    }
+
+    // Through the breaker first so an open circuit fails without waiting on the bulkhead
+    private Admission admit(String feature, long waitMs) {
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            counter("ai.provider.rejected", feature, "circuit_open").increment();
+            throw new AIServiceException("AI service temporarily unavailable. Please try again later.");
+        }
+        Semaphore bulkhead = bulkhead(feature);
+        boolean permitted;
+        try {
+            permitted = bulkhead.tryAcquire(waitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            permitted = false;
+        }
+        if (!permitted) {
+            circuitBreaker.onAbandoned(permit);
+            counter("ai.provider.rejected", feature, "bulkhead_full").increment();
+            throw new AIServiceException("AI service is busy. Please try again shortly.");
+        }
+        return new Admission(bulkhead, permit);
+    }
+
+    // A 4xx is about the request, not the provider's health: it is neither retried nor
+    // held against the circuit
+    private boolean onFailure(String feature, Throwable e, long startTime, CircuitBreaker.Permit permit) {
+        record(feature, "failure", startTime);
+        if (e instanceof NonTransientAiException) {
+            circuitBreaker.onSuccess(permit);
+            return false;
+        }
+        circuitBreaker.onFailure(permit);
+        return true;
+    }
+
+    // Full jitter: anywhere between zero and the exponential cap
+    private void backoff(int attempt) {
+        long cap = Math.min(backoffMaxMs, backoffInitialMs << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AIServiceException("Interrupted while retrying the AI service", e);
+        }
+    }
+
+    private Semaphore bulkhead(String feature) {
+        return bulkheads.computeIfAbsent(feature, f -> {
+            Semaphore semaphore = new Semaphore(maxConcurrentPerFeature);
+            Gauge.builder("ai.provider.bulkhead.available", semaphore, Semaphore::availablePermits)
+                    .tag("feature", f)
+                    .register(meterRegistry);
+            return semaphore;
+        });
+    }
+
+    private void record(String feature, String outcome, long startTime) {
+        Timer.builder("ai.provider.calls")
+                .tag("feature", feature)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+    }
+
+    private Counter counter(String name, String feature) {
+        return Counter.builder(name).tag("feature", feature).register(meterRegistry);
+    }
+
+    private Counter counter(String name, String feature, String reason) {
+        return Counter.builder(name).tag("feature", feature).tag("reason", reason).register(meterRegistry);
+    }
+
+    private record Admission(Semaphore bulkhead, CircuitBreaker.Permit permit) {
+    }
+
+    // Count-based: opens when at least minimumCalls of the last windowSize calls were made
+    // and the failure share reaches the threshold. After openNanos it lets halfOpenProbes
+    // calls through; all of them succeeding closes it, any failure opens it again.
+    // Outcomes are reported with the permit the call was admitted on: one from an earlier
+    // state is ignored, so a slow call admitted while closed can't count as a probe.
+    static final class CircuitBreaker {
+
+        record Permit(boolean probe, long generation) {
+        }
+
+        private final boolean[] window;
+        private final int minimumCalls;
+        private final double failureRateThreshold;
+        private final long openNanos;
+        private final int halfOpenProbes;
+        private CircuitState state = CircuitState.CLOSED;
+        private int recorded;
+        private int next;
+        private int failures;
+        private long openedAt;
+        private int probesInFlight;
+        private int probesSucceeded;
+        private long generation;
+
+        CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, long openNanos, int halfOpenProbes) {
+            this.window = new boolean[Math.max(1, windowSize)];
+            this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+            this.failureRateThreshold = failureRateThreshold;
+            this.openNanos = openNanos;
+            this.halfOpenProbes = Math.max(1, halfOpenProbes);
+        }
+
+        synchronized CircuitState state() {
+            return state;
+        }
+
+        // Null when the call is rejected
+        synchronized Permit tryAcquire() {
+            if (state == CircuitState.OPEN) {
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return null;
+                }
+                transition(CircuitState.HALF_OPEN);
+            }
+            if (state == CircuitState.HALF_OPEN) {
+                if (probesInFlight + probesSucceeded >= halfOpenProbes) {
+                    return null;
+                }
+                probesInFlight++;
+                return new Permit(true, generation);
+            }
+            return new Permit(false, generation);
+        }
+
+        synchronized void onSuccess(Permit permit) {
+            if (permit.generation() != generation) {
+                return;
+            }
+            if (permit.probe()) {
+                probesInFlight--;
+                if (++probesSucceeded >= halfOpenProbes) {
+                    transition(CircuitState.CLOSED);
+                }
+            } else {
+                add(false);
+            }
+        }
+
+        synchronized void onFailure(Permit permit) {
+            if (permit.generation() != generation) {
+                return;
+            }
+            if (permit.probe()) {
+                transition(CircuitState.OPEN);
+            } else {
+                add(true);
+                if (recorded >= minimumCalls && failures >= failureRateThreshold * recorded) {
+                    transition(CircuitState.OPEN);
+                }
+            }
+        }
+
+        // Admitted but never reached the provider, or cancelled before it answered
+        synchronized void onAbandoned(Permit permit) {
+            if (permit.probe() && permit.generation() == generation) {
+                probesInFlight--;
+            }
+        }
+
+        private void add(boolean failure) {
+            if (recorded == window.length) {
+                if (window[next]) failures--;
+            } else {
+                recorded++;
+            }
+            window[next] = failure;
+            if (failure) failures++;
+            next = (next + 1) % window.length;
+        }
+
+        private void transition(CircuitState to) {
+            log.warn("AI provider circuit {} -> {}", state, to);
+            state = to;
+            generation++;
+            recorded = 0;
+            next = 0;
+            failures = 0;
+            probesInFlight = 0;
+            probesSucceeded = 0;
+            if (to == CircuitState.OPEN) {
+                openedAt = System.nanoTime();
+            }
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.example.querysence.ai;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 
 public final class PromptTemplates {
 
@@ -145,4 +149,15 @@ public final class PromptTemplates {
             Provide a helpful, concise response. If generating SQL, explain what it does.
             If the question is unclear, ask for clarification.
             """;
+
+    // Short digest of a template's text; cached AI results are keyed by it, so editing a
+    // prompt retires the results of the old one
+    public static String version(String template) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(template.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not available", e);
+        }
+    }
 }
@@ -0,0 +1,17 @@
+package com.example.querysence.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class AIExecutorConfig {
+
+    // AI calls spend their time waiting on the provider, so each gets its own virtual thread
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService aiJobExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ai-job-", 0).factory());
+    }
+}
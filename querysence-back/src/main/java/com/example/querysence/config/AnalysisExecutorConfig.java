@@ -0,0 +1,19 @@
+package com.example.querysence.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class AnalysisExecutorConfig {
+
+    // Parsing and scoring are CPU bound, so the pool is capped at the core count by default
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService scriptAnalysisExecutor(@Value("${analysis.script.parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("script-analysis-", 0).daemon().factory());
+    }
+}
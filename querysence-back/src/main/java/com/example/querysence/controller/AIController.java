@@ -5,14 +5,23 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.Authentication;
 
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
+import com.example.querysence.model.dto.AIJobResponse;
+import com.example.querysence.model.dto.AIStreamEvent;
+import com.example.querysence.service.AIJobService;
 import com.example.querysence.service.AIService;
+import reactor.core.publisher.Flux;
 
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/ai")
@@ -20,43 +29,156 @@ import java.util.Map;
 public class AIController {
 
     private final AIService aiService;
+    private final AIJobService aiJobService;
+
+    // The blocking endpoints wait for the AI job executor asynchronously, so the request
+    // thread is released while the model is generating
 
     @PostMapping("/nl-to-sql")
-    public ResponseEntity<com.example.querysence.model.dto.NLToSQLResponse> naturalLanguageToSQL(
+    public CompletableFuture<ResponseEntity<com.example.querysence.model.dto.NLToSQLResponse>> naturalLanguageToSQL(
              @RequestBody com.example.querysence.model.dto.NLToSQLRequest request,
             Authentication authentication) {
-        return ResponseEntity.ok(aiService.convertNaturalLanguageToSQL(request, authentication.getName()));
+        String username = authentication.getName();
+        return aiJobService.run("NL_TO_SQL", () -> aiService.convertNaturalLanguageToSQL(request, username))
+                .thenApply(ResponseEntity::ok);
     }
 
     @PostMapping("/explain")
-    public ResponseEntity<com.example.querysence.model.dto.ExplainResponse> explainQuery(
+    public CompletableFuture<ResponseEntity<com.example.querysence.model.dto.ExplainResponse>> explainQuery(
+            @RequestParam String sql,
+            Authentication authentication) {
+        String username = authentication.getName();
+        return aiJobService.run("EXPLAIN", () -> aiService.explainQuery(sql, username))
+                .thenApply(ResponseEntity::ok);
+    }
+
+    @PostMapping(value = "/explain/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamExplainQuery(
             @RequestParam String sql,
             Authentication authentication) {
-        return ResponseEntity.ok(aiService.explainQuery(sql, authentication.getName()));
+        return toEvents(aiService.streamExplainQuery(sql, authentication.getName()));
     }
 
     @PostMapping("/optimize")
-    public ResponseEntity<com.example.querysence.model.dto.OptimizationResponse> optimizeQuery(
+    public CompletableFuture<ResponseEntity<com.example.querysence.model.dto.OptimizationResponse>> optimizeQuery(
+            @RequestParam String sql,
+            @RequestParam(required = false) Long schemaId,
+            Authentication authentication) {
+        String username = authentication.getName();
+        return aiJobService.run("OPTIMIZE", () -> aiService.optimizeQuery(sql, schemaId, username))
+                .thenApply(ResponseEntity::ok);
+    }
+
+    @PostMapping(value = "/optimize/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamOptimizeQuery(
             @RequestParam String sql,
             @RequestParam(required = false) Long schemaId,
             Authentication authentication) {
-        return ResponseEntity.ok(aiService.optimizeQuery(sql, schemaId, authentication.getName()));
+        return toEvents(aiService.streamOptimizeQuery(sql, schemaId, authentication.getName()));
     }
 
     @PostMapping("/security-scan")
-    public ResponseEntity<com.example.querysence.model.dto.SecurityScanResponse> securityScan(
+    public CompletableFuture<ResponseEntity<com.example.querysence.model.dto.SecurityScanResponse>> securityScan(
            @RequestBody com.example.querysence.model.dto.SecurityScanRequest request,
             Authentication authentication) {
-        return ResponseEntity.ok(aiService.scanForSecurity(request, authentication.getName()));
+        String username = authentication.getName();
+        return aiJobService.run("SECURITY_SCAN", () -> aiService.scanForSecurity(request, username))
+                .thenApply(ResponseEntity::ok);
     }
 
     @PostMapping("/chat")
-    public ResponseEntity<Map<String, String>> chat(
+    public CompletableFuture<ResponseEntity<Map<String, String>>> chat(
+            @RequestParam String message,
+            @RequestParam(required = false) Long schemaId,
+            @RequestParam(required = false, defaultValue = "") String conversationHistory,
+            Authentication authentication) {
+        String username = authentication.getName();
+        return aiJobService.run("CHAT", () -> aiService.chat(message, schemaId, conversationHistory, username))
+                .thenApply(response -> ResponseEntity.ok(Map.of("response", response)));
+    }
+
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamChat(
+            @RequestParam String message,
+            @RequestParam(required = false) Long schemaId,
+            @RequestParam(required = false, defaultValue = "") String conversationHistory,
+            Authentication authentication) {
+        return toEvents(aiService.streamChat(message, schemaId, conversationHistory, authentication.getName()));
+    }
+
+    // Submit a job and get its id back straight away, then poll or subscribe to it
+
+    @PostMapping("/jobs/nl-to-sql")
+    public ResponseEntity<AIJobResponse> submitNaturalLanguageToSQL(
+            @RequestBody com.example.querysence.model.dto.NLToSQLRequest request,
+            Authentication authentication) {
+        String username = authentication.getName();
+        return submit("NL_TO_SQL", username,
+                () -> aiService.convertNaturalLanguageToSQL(request, username));
+    }
+
+    @PostMapping("/jobs/explain")
+    public ResponseEntity<AIJobResponse> submitExplainQuery(
+            @RequestParam String sql,
+            Authentication authentication) {
+        String username = authentication.getName();
+        return submit("EXPLAIN", username,
+                () -> aiService.explainQuery(sql, username));
+    }
+
+    @PostMapping("/jobs/optimize")
+    public ResponseEntity<AIJobResponse> submitOptimizeQuery(
+            @RequestParam String sql,
+            @RequestParam(required = false) Long schemaId,
+            Authentication authentication) {
+        String username = authentication.getName();
+        return submit("OPTIMIZE", username,
+                () -> aiService.optimizeQuery(sql, schemaId, username));
+    }
+
+    @PostMapping("/jobs/security-scan")
+    public ResponseEntity<AIJobResponse> submitSecurityScan(
+            @RequestBody com.example.querysence.model.dto.SecurityScanRequest request,
+            Authentication authentication) {
+        String username = authentication.getName();
+        return submit("SECURITY_SCAN", username,
+                () -> aiService.scanForSecurity(request, username));
+    }
+
+    @PostMapping("/jobs/chat")
+    public ResponseEntity<AIJobResponse> submitChat(
             @RequestParam String message,
             @RequestParam(required = false) Long schemaId,
             @RequestParam(required = false, defaultValue = "") String conversationHistory,
             Authentication authentication) {
-        String response = aiService.chat(message, schemaId, conversationHistory, authentication.getName());
-        return ResponseEntity.ok(Map.of("response", response));
+        String username = authentication.getName();
+        return submit("CHAT", username,
+                () -> Map.of("response", aiService.chat(message, schemaId, conversationHistory, username)));
+    }
+
+    // A job is only accepted while the user is within the daily limit
+    private ResponseEntity<AIJobResponse> submit(String feature, String username, Supplier<?> work) {
+        aiService.checkRateLimit(username);
+        return ResponseEntity.accepted().body(aiJobService.submit(feature, username, work));
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<AIJobResponse> getJob(@PathVariable String id, Authentication authentication) {
+        return ResponseEntity.ok(aiJobService.get(id, authentication.getName()));
+    }
+
+    @GetMapping(value = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<AIJobResponse>> subscribeToJob(@PathVariable String id, Authentication authentication) {
+        return aiJobService.subscribe(id, authentication.getName())
+                .map(job -> ServerSentEvent.builder(job)
+                        .id(job.getId())
+                        .event(job.getStatus().toLowerCase(Locale.ROOT))
+                        .build());
+    }
+
+    private Flux<ServerSentEvent<Object>> toEvents(Flux<AIStreamEvent> events) {
+        return events.map(event -> ServerSentEvent.builder(event.getData())
+                .event(event.getType())
+                .build());
     }
 }
@@ -1,5 +1,6 @@
 package com.example.querysence.controller;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -20,7 +21,9 @@ import com.example.querysence.model.dto.ProjectRequest;
 import com.example.querysence.model.dto.ProjectResponse;
 import com.example.querysence.model.dto.SchemaDefinitionDto;
 import com.example.querysence.model.dto.SchemaDefinitionRequest;
+import com.example.querysence.model.dto.WorkloadIndexAdviceResponse;
 import com.example.querysence.service.SchemaManagementService;
+import com.example.querysence.service.WorkloadIndexAdvisor;
 
 import io.swagger.v3.oas.annotations.Operation;
 
@@ -39,6 +42,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 public class ProjectController {
     @Autowired
     SchemaManagementService smService;
+    @Autowired
+    WorkloadIndexAdvisor workloadAdvisor;
 
         @PostMapping
     @Operation(summary = "Create a new project")
@@ -73,6 +78,17 @@ public class ProjectController {
         return ResponseEntity.ok(Map.of("message", "Project deleted successfully"));
     }
 
+    @GetMapping("/{id}/index-advice")
+    @Operation(summary = "Recommend an index set for the project's query workload")
+    public ResponseEntity<WorkloadIndexAdviceResponse> getIndexAdvice(
+            @PathVariable Long id,
+            @RequestParam(required = false) Integer maxIndexes,
+            @RequestParam(required = false) Long maxStorageMb,
+            @RequestParam(required = false) LocalDateTime since,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        return ResponseEntity.ok(workloadAdvisor.advise(id, userDetails.getUsername(), maxIndexes, maxStorageMb, since));
+    }
+
     
    
     
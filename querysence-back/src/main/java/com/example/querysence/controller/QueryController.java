@@ -4,8 +4,13 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.querysence.model.QueryParseResponse;
+import com.example.querysence.model.dto.EditorSessionRequest;
+import com.example.querysence.model.dto.EditorSessionResponse;
 import com.example.querysence.model.dto.QueryAnalysisRequest;
 import com.example.querysence.model.dto.QueryAnalysisResponse;
+import com.example.querysence.model.dto.ScriptAnalysisRequest;
+import com.example.querysence.model.dto.ScriptAnalysisResponse;
+import com.example.querysence.service.EditorSessionService;
 import com.example.querysence.service.QueryAnalysisService;
 import com.example.querysence.service.QueryParserService;
 
@@ -13,12 +18,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import java.util.Map;
+
 
 @RestController
 @RequestMapping("/queries")
@@ -27,6 +36,8 @@ public class QueryController {
     QueryParserService queryParserService;
     @Autowired
     QueryAnalysisService queryAnalysisService;
+    @Autowired
+    EditorSessionService editorSessionService;
     @GetMapping("/parse")
     public ResponseEntity<QueryParseResponse> parseQuery(@RequestParam String sql,@RequestParam String dialect) {
         return ResponseEntity.ok(queryParserService.parseAndFormat(sql, dialect));
@@ -38,6 +49,36 @@ public class QueryController {
         return ResponseEntity.ok(queryAnalysisService.analyze(request, authentication.getName()));
     }
 
+    @PostMapping("/analyze-script")
+    public ResponseEntity<ScriptAnalysisResponse> analyzeScript(
+            @RequestBody ScriptAnalysisRequest request,
+            Authentication authentication) {
+        return ResponseEntity.ok(queryAnalysisService.analyzeScript(request, authentication.getName()));
+    }
+
+    @PostMapping("/sessions")
+    public ResponseEntity<EditorSessionResponse> openSession(
+            @RequestBody EditorSessionRequest request,
+            Authentication authentication) {
+        return ResponseEntity.ok(editorSessionService.open(request, authentication.getName()));
+    }
+
+    @PutMapping("/sessions/{sessionId}")
+    public ResponseEntity<EditorSessionResponse> updateSession(
+            @PathVariable String sessionId,
+            @RequestBody EditorSessionRequest request,
+            Authentication authentication) {
+        return ResponseEntity.ok(editorSessionService.update(sessionId, request, authentication.getName()));
+    }
+
+    @DeleteMapping("/sessions/{sessionId}")
+    public ResponseEntity<Map<String, String>> closeSession(
+            @PathVariable String sessionId,
+            Authentication authentication) {
+        editorSessionService.close(sessionId, authentication.getName());
+        return ResponseEntity.ok(Map.of("message", "Editor session closed"));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<QueryAnalysisResponse> getAnalysisById(
             @PathVariable Long id,
@@ -19,6 +19,11 @@ import com.example.querysence.model.dto.SchemaResponse;
 import com.example.querysence.model.dto.TableCreateRequest;
 import com.example.querysence.model.dto.TableDefinitionDto;
 import com.example.querysence.model.dto.TableDefinitionRequest;
+import com.example.querysence.model.dto.RedundantIndexResponse;
+import com.example.querysence.model.dto.StatisticsImportResponse;
+import com.example.querysence.model.dto.StatisticsSampleRequest;
+import com.example.querysence.service.ColumnStatisticsService;
+import com.example.querysence.service.IndexAdvisorService;
 import com.example.querysence.service.SchemaManagementService;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -29,6 +34,9 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
 
 
 
@@ -37,6 +45,12 @@ public class SchemaController {
     @Autowired
     SchemaManagementService schemaService;
 
+    @Autowired
+    ColumnStatisticsService statisticsService;
+
+    @Autowired
+    IndexAdvisorService indexAdvisorService;
+
    @PostMapping("/projects/{projectId}/schemas")
     @Operation(summary = "Create schema in project")
     public ResponseEntity<SchemaResponse> createSchema(
@@ -77,5 +91,29 @@ public class SchemaController {
         schemaService.deleteSchema(id, userDetails.getUsername());
         return ResponseEntity.ok(Map.of("message", "Schema deleted successfully"));
     }
+
+    @GetMapping("/schemas/{schemaId}/redundant-indexes")
+    @Operation(summary = "List duplicate and prefix-redundant indexes")
+    public ResponseEntity<List<RedundantIndexResponse>> getRedundantIndexes(@PathVariable Long schemaId) {
+        return ResponseEntity.ok(indexAdvisorService.findRedundantIndexes(schemaId));
+    }
+
+    @PostMapping("/schemas/{schemaId}/statistics/import")
+    @Operation(summary = "Import column statistics from a pg_stats CSV export")
+    public ResponseEntity<StatisticsImportResponse> importStatistics(
+            @PathVariable Long schemaId,
+            @RequestParam("file") MultipartFile file,
+            @AuthenticationPrincipal UserDetails userDetails) throws IOException {
+        return ResponseEntity.ok(statisticsService.importPgStats(schemaId, file.getInputStream(), userDetails.getUsername()));
+    }
+
+    @PostMapping("/schemas/{schemaId}/statistics/sample")
+    @Operation(summary = "Collect column statistics by sampling the configured database")
+    public ResponseEntity<StatisticsImportResponse> sampleStatistics(
+            @PathVariable Long schemaId,
+            @RequestBody StatisticsSampleRequest request,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        return ResponseEntity.ok(statisticsService.sample(schemaId, request, userDetails.getUsername()));
+    }
     
 }
@@ -45,6 +45,12 @@ public class GlobalExceptionHandler {
         return buildResponse(HttpStatus.UNAUTHORIZED, "Invalid email or password");
     }
 
+    @ExceptionHandler(ParserLimitExceededException.class)
+    public ResponseEntity<ErrorResponse> handleParserLimit(ParserLimitExceededException ex) {
+        log.warn("Parser limit {} exceeded: {} > {}", ex.getLimit(), ex.getActual(), ex.getThreshold());
+        return buildResponse(HttpStatus.BAD_REQUEST, ex.getMessage());
+    }
+
     @ExceptionHandler(InvalidSQLException.class)
     public ResponseEntity<ErrorResponse> handleInvalidSQL(InvalidSQLException ex) {
         log.warn("Invalid SQL: {}", ex.getMessage());
@@ -52,6 +58,12 @@ public class GlobalExceptionHandler {
     }
 
 
+    @ExceptionHandler(AIServiceException.class)
+    public ResponseEntity<ErrorResponse> handleAIService(AIServiceException ex) {
+        log.warn("AI service unavailable: {}", ex.getMessage());
+        return buildResponse(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ErrorResponse> handleValidation(MethodArgumentNotValidException ex) {
         Map<String, String> errors = new HashMap<>();
@@ -0,0 +1,27 @@
+package com.example.querysence.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@Getter
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class ParserLimitExceededException extends InvalidSQLException {
+
+    public enum Limit {
+        STATEMENT_LENGTH,
+        NESTING_DEPTH,
+        PARSE_TIMEOUT
+    }
+
+    private final Limit limit;
+    private final long threshold;
+    private final long actual;
+
+    public ParserLimitExceededException(Limit limit, long threshold, long actual) {
+        super(String.format("SQL exceeds parser limit %s: %d > %d", limit, actual, threshold));
+        this.limit = limit;
+        this.threshold = threshold;
+        this.actual = actual;
+    }
+}
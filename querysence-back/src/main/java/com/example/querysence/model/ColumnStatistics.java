@@ -0,0 +1,59 @@
+package com.example.querysence.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Planner statistics of one column, in the shape of PostgreSQL's pg_stats
+@Entity
+@Table(name = "column_statistics")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ColumnStatistics {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "column_id", nullable = false, unique = true)
+    private ColumnDefinition column;
+
+    @Column(name = "null_fraction")
+    private Double nullFraction;
+
+    // Like pg_stats.n_distinct: a negative value is minus the fraction of rows,
+    // so the distinct count scales with the table
+    @Column(name = "distinct_count")
+    private Double distinctCount;
+
+    @Column(name = "most_common_values", columnDefinition = "TEXT[]")
+    private List<String> mostCommonValues;
+
+    @Column(name = "most_common_freqs", columnDefinition = "DOUBLE PRECISION[]")
+    private List<Double> mostCommonFrequencies;
+
+    // Equi-depth bucket bounds over the values not in the MCV list
+    @Column(name = "histogram_bounds", columnDefinition = "TEXT[]")
+    private List<String> histogramBounds;
+
+    private Double correlation;
+
+    @Column(length = 20)
+    private String source;      // PG_STATS, SAMPLE
+
+    @Column(name = "sample_size")
+    private Long sampleSize;
+
+    @UpdateTimestamp
+    @Column(name = "collected_at")
+    private LocalDateTime collectedAt;
+}
@@ -26,6 +26,10 @@ public class QueryParseResponse {
     private boolean hasDistinct;
     private boolean hasHaving;
     private List<String> aggregateFunctions;
+    private List<String> setOperations;
+    private List<String> cteNames;
+    private List<String> windowFunctions;
+    private int caseExpressionCount;
 
     @Data
     @Builder
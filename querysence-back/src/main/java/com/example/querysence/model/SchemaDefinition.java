@@ -47,6 +47,10 @@ public class SchemaDefinition {
     @Builder.Default
     private Set<TableDefinition> tables = new HashSet<>();
     
+    @Column(name = "schema_version")
+    @Builder.Default
+    private Long schemaVersion = 0L;
+    
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
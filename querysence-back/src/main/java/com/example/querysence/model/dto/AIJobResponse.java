@@ -0,0 +1,26 @@
+package com.example.querysence.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AIJobResponse {
+
+    private String id;
+    private String feature;
+    // PENDING, RUNNING, SUCCEEDED or FAILED
+    private String status;
+    private Object result;
+    private String error;
+    // HTTP status the failure would have had on the blocking endpoint
+    private Integer errorStatus;
+    private LocalDateTime submittedAt;
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,30 @@
+package com.example.querysence.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One event of a streamed AI response: "token" carries the next piece of generated text,
+// "result" the parsed response once generation ends, "error" a message when it fails
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AIStreamEvent {
+
+    private String type;
+    private Object data;
+
+    public static AIStreamEvent token(String text) {
+        return new AIStreamEvent("token", text);
+    }
+
+    public static AIStreamEvent result(Object result) {
+        return new AIStreamEvent("result", result);
+    }
+
+    public static AIStreamEvent error(String message) {
+        return new AIStreamEvent("error", message);
+    }
+}
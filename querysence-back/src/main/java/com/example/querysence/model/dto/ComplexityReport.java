@@ -20,6 +20,11 @@ public class ComplexityReport {
     private int joinCount;
     private int subqueryDepth;
     private int aggregateCount;
+    private int setOperationCount;
+    private int caseExpressionCount;
+    private int windowFunctionCount;
+    // Plan-based estimate from row counts and indexes, reported alongside the point score
+    private CostEstimate costEstimate;
 
     @Data
     @Builder
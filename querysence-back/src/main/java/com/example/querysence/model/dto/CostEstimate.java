@@ -0,0 +1,40 @@
+package com.example.querysence.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CostEstimate {
+
+    private double totalCost;
+    private double estimatedRows;
+    private String level;
+    // False when no schema was given, row counts and indexes are then defaults
+    private boolean usedSchemaStatistics;
+    private PlanNode plan;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PlanNode {
+        private String operation;   // Seq Scan, Index Scan, Hash Join, Nested Loop, Sort, ...
+        private String table;
+        private String index;
+        private double rows;
+        // Cost of this node including its children, in sequential page fetch units
+        private double cost;
+        private String detail;
+
+        @Builder.Default
+        private List<PlanNode> children = new ArrayList<>();
+    }
+}
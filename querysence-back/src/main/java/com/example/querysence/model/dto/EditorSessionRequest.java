@@ -0,0 +1,16 @@
+package com.example.querysence.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EditorSessionRequest {
+
+    private String content;
+    private String dialect;
+}
@@ -0,0 +1,45 @@
+package com.example.querysence.model.dto;
+
+import com.example.querysence.model.QueryParseResponse;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EditorSessionResponse {
+
+    private String sessionId;
+    private long version;
+    private int statementCount;
+    private int reparsedCount;
+    private List<Boundary> boundaries;      // every statement, in editor order
+    private List<StatementDelta> changes;   // only statements that differ from the previous version
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Boundary {
+        private int start;
+        private int end;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StatementDelta {
+        private int index;                  // position in this version, in the previous one for REMOVED
+        private Integer previousIndex;      // where a MOVED or CHANGED statement was
+        private String change;              // ADDED, CHANGED, MOVED, REMOVED
+        private Boolean valid;              // analysis fields are left out of MOVED and REMOVED
+        private String error;
+        private QueryParseResponse parseResult;
+        private ComplexityReport complexity;
+    }
+}
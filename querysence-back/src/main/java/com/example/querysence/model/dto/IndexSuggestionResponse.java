@@ -16,8 +16,19 @@ public class IndexSuggestionResponse {
     private String tableName;
     private List<String> columns;
     private String indexName;
-    private String suggestionType;  // SINGLE, COMPOSITE
+    private String suggestionType;  // SINGLE, COMPOSITE, REDUNDANT
     private String impactScore;     // HIGH, MEDIUM, LOW
     private String reasoning;
-    private String createStatement;
+    private String createStatement; // DROP INDEX for REDUNDANT
+    @Builder.Default
+    private String indexType = "BTREE";  // BTREE, HASH, BRIN, GIN, FULLTEXT
+    private List<String> includeColumns;  // non-key columns for an index-only scan
+    // Heap rows per execution the index no longer reads, from the table's estimatedRows
+    private Long heapFetchReduction;
+    private Long estimatedSizeBytes;      // freed by the drop for REDUNDANT
+    private Double estimatedBuildSeconds;
+    // Share of the table's statements in history that are writes which would maintain the index
+    private Double writeShare;
+    // Extra index work each of those writes does, relative to the heap and existing indexes
+    private Double writeAmplification;
 }
@@ -0,0 +1,23 @@
+package com.example.querysence.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RedundantIndexResponse {
+
+    private String tableName;
+    private String indexName;
+    private List<String> columns;
+    private String kind;            // DUPLICATE, PREFIX
+    private String coveredBy;
+    private String reasoning;
+    private String dropStatement;
+}
@@ -0,0 +1,18 @@
+package com.example.querysence.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScriptAnalysisRequest {
+
+    private String script;
+
+    private Long schemaId;
+    private Long projectId;
+}
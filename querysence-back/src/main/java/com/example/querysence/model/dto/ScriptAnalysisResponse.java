@@ -0,0 +1,41 @@
+package com.example.querysence.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScriptAnalysisResponse {
+
+    private int statementCount;
+    private int analyzedCount;
+    private int failedCount;
+    private int totalComplexityScore;
+    private int maxComplexityScore;
+    private double averageComplexityScore;
+    private Map<String, Long> complexityLevels;
+    private Map<String, Long> queryTypes;
+    private List<IndexSuggestionResponse> indexSuggestions;
+    private List<StatementResult> statements;
+    private LocalDateTime analyzedAt;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StatementResult {
+        private int index;
+        private String sql;
+        private boolean valid;
+        private String error;
+        private QueryAnalysisResponse analysis;
+    }
+}
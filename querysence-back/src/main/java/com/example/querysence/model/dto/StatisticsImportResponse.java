@@ -0,0 +1,22 @@
+package com.example.querysence.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatisticsImportResponse {
+
+    private Long schemaId;
+    private String source;
+    private int tablesUpdated;
+    private int columnsUpdated;
+    // table.column entries that do not exist in the schema definition
+    private List<String> skipped;
+}
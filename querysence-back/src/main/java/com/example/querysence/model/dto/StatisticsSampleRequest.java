@@ -0,0 +1,17 @@
+package com.example.querysence.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatisticsSampleRequest {
+
+    // All tables of the schema when empty
+    private String tableName;
+    private Integer sampleSize;
+}
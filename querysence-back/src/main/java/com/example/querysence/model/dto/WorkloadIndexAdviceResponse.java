@@ -0,0 +1,75 @@
+package com.example.querysence.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WorkloadIndexAdviceResponse {
+
+    private Long projectId;
+    private LocalDateTime since;        // null for the whole history
+    private String source;              // INCREMENTAL, HISTORY
+    private int fingerprintCount;
+    private long queryCount;
+    // Sum over fingerprints of executions x average execution time, in ms
+    private double workloadWeight;
+    private int maxIndexes;
+    private long maxStorageBytes;
+    private long usedStorageBytes;
+    // Share of the workload weight the recommended set is expected to save
+    private double estimatedSavingsShare;
+
+    @Builder.Default
+    private List<Recommendation> recommendations = new ArrayList<>();
+
+    // Column usage per table, maintained as analyses arrive
+    private Map<String, Map<String, ColumnUsage>> columnUsage;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Recommendation {
+        private String tableName;
+        private List<String> columns;
+        private String indexName;
+        private String partialPredicate;    // null for a full index
+        private String createStatement;
+        private long estimatedSizeBytes;
+        private double estimatedBuildSeconds;
+        // Share of the table's statements that are writes which would maintain the index
+        private double writeShare;
+        // Weighted time those writes would add, already deducted from benefit
+        private double writePenalty;
+        private double benefit;
+        private double benefitShare;
+        private int queriesServed;
+        // Heap rows the served executions no longer read, from the tables' estimatedRows
+        private long heapFetchReduction;
+        private String reasoning;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ColumnUsage {
+        // Executions that used the column this way
+        private long equality;
+        private long range;
+        private long join;
+        private long sort;
+        private long group;
+        private int fingerprints;
+    }
+}
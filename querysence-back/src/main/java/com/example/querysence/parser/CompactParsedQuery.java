@@ -0,0 +1,324 @@
+package com.example.querysence.parser;
+
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Immutable, interned form of ParsedQuery for caching. Names are symbol ids, join and
+// WHERE details live in parallel primitive arrays, and join conditions are kept as
+// space-separated tokens that are only rendered back to strings on expand(): identifiers
+// are symbols, literals and operators stay in the query's own pool.
+// Only the canonical hash is kept, the canonical text is not needed once hashed.
+public final class CompactParsedQuery {
+
+    private static final String[] QUERY_TYPES = {"SELECT", "INSERT", "UPDATE", "DELETE"};
+    private static final String[] JOIN_TYPES = {"INNER", "LEFT", "RIGHT", "FULL", "CROSS"};
+    private static final String[] FOLDED_TYPES = {"IN", "VALUES"};
+    private static final String[] NO_STRINGS = {};
+    private static final int[] NO_INTS = {};
+    private static final CompactParsedQuery[] NO_SUBQUERIES = {};
+
+    // Plain or quoted name, optionally qualified
+    private static final Pattern IDENTIFIER = Pattern.compile(
+            "(?:[A-Za-z_][\\w$]*|\"[^\"]+\"|`[^`]+`|\\[[^\\]]+])(?:\\.(?:[A-Za-z_][\\w$]*|\"[^\"]+\"|`[^`]+`|\\[[^\\]]+]))*");
+
+    // Marks a null name, any other negative id indexes the query-local overflow pool
+    private static final int NULL_SYMBOL = Integer.MIN_VALUE;
+
+    private static final byte VALID = 1;
+    private static final byte DISTINCT = 2;
+    private static final byte HAVING = 4;
+    private static final byte HASHED = 8;
+    private static final byte CORRELATED = 16;
+    private static final byte PARAMETERIZED = 1;
+
+    private final SymbolTable symbols;
+    private final String[] overflow;
+
+    private final byte flags;
+    private final byte queryType;
+    private final int subqueryDepth;
+    private final int caseExpressionCount;
+    private final String errorMessage;
+    private final long canonicalHash;
+
+    private final int[] tables;
+    private final int[] columns;
+    private final int[] orderByColumns;
+    private final int[] orderByDirections;
+    private final int[] groupByColumns;
+    private final int[] aggregateFunctions;
+    private final int[] setOperations;
+    private final int[] cteNames;
+    private final int[] windowFunctions;
+
+    private final byte[] joinTypes;
+    private final int[] joinTables;
+    private final int[] joinAliases;
+    private final int[][] joinConditions;
+    private final int[][] joinColumns;
+
+    private final int[] whereColumns;
+    private final int[] whereTables;
+    private final int[] whereOperators;
+    private final String[] whereValues;
+    private final String[][] whereValueLists;
+    private final byte[] whereFlags;
+
+    private final byte[] foldedTypes;
+    private final int[] foldedColumns;
+    private final int[] foldedCardinalities;
+
+    private final CompactParsedQuery[] subqueries;
+
+    private CompactParsedQuery(ParsedQuery query, Encoder encoder) {
+        this.symbols = encoder.symbols;
+        this.flags = (byte) ((query.isValid() ? VALID : 0)
+                | (query.isHasDistinct() ? DISTINCT : 0)
+                | (query.isHasHaving() ? HAVING : 0)
+                | (query.getCanonicalHash() != null ? HASHED : 0)
+                | (query.isCorrelated() ? CORRELATED : 0));
+        this.queryType = (byte) indexOf(QUERY_TYPES, query.getQueryType());
+        this.subqueryDepth = query.getSubqueryDepth();
+        this.caseExpressionCount = query.getCaseExpressionCount();
+        this.errorMessage = query.getErrorMessage();
+        this.canonicalHash = query.getCanonicalHash() != null ? HexFormat.fromHexDigitsToLong(query.getCanonicalHash()) : 0L;
+
+        this.tables = encoder.encode(query.getTables());
+        this.columns = encoder.encode(query.getColumns());
+        this.orderByColumns = encoder.encode(query.getOrderByColumns());
+        this.orderByDirections = encoder.encode(query.getOrderByDirections());
+        this.groupByColumns = encoder.encode(query.getGroupByColumns());
+        this.aggregateFunctions = encoder.encode(query.getAggregateFunctions());
+        this.setOperations = encoder.encode(query.getSetOperations());
+        this.cteNames = encoder.encode(query.getCteNames());
+        this.windowFunctions = encoder.encode(query.getWindowFunctions());
+
+        List<ParsedQuery.JoinInfo> joins = query.getJoins();
+        this.joinTypes = new byte[joins.size()];
+        this.joinTables = new int[joins.size()];
+        this.joinAliases = new int[joins.size()];
+        this.joinConditions = new int[joins.size()][];
+        this.joinColumns = new int[joins.size()][];
+        for (int i = 0; i < joins.size(); i++) {
+            ParsedQuery.JoinInfo join = joins.get(i);
+            joinTypes[i] = (byte) indexOf(JOIN_TYPES, join.getType());
+            joinTables[i] = encoder.encode(join.getTable());
+            joinAliases[i] = encoder.encode(join.getAlias());
+            joinConditions[i] = encoder.encodeTokens(join.getCondition());
+            joinColumns[i] = encoder.encode(join.getJoinColumns());
+        }
+
+        List<ParsedQuery.WhereCondition> conditions = query.getWhereConditions();
+        this.whereColumns = new int[conditions.size()];
+        this.whereTables = new int[conditions.size()];
+        this.whereOperators = new int[conditions.size()];
+        this.whereValues = new String[conditions.size()];
+        this.whereValueLists = new String[conditions.size()][];
+        this.whereFlags = new byte[conditions.size()];
+        for (int i = 0; i < conditions.size(); i++) {
+            ParsedQuery.WhereCondition condition = conditions.get(i);
+            whereColumns[i] = encoder.encode(condition.getColumn());
+            whereTables[i] = encoder.encode(condition.getTable());
+            whereOperators[i] = encoder.encode(condition.getOperator());
+            // Literal values are high-cardinality, so they are kept as-is rather than interned
+            whereValues[i] = condition.getValue();
+            whereValueLists[i] = condition.getValues() != null ? condition.getValues().toArray(NO_STRINGS) : null;
+            whereFlags[i] = condition.isParameterized() ? PARAMETERIZED : 0;
+        }
+
+        List<ParsedQuery.FoldedList> folded = query.getFoldedLists();
+        this.foldedTypes = new byte[folded.size()];
+        this.foldedColumns = new int[folded.size()];
+        this.foldedCardinalities = new int[folded.size()];
+        for (int i = 0; i < folded.size(); i++) {
+            foldedTypes[i] = (byte) indexOf(FOLDED_TYPES, folded.get(i).getType());
+            foldedColumns[i] = encoder.encode(folded.get(i).getColumn());
+            foldedCardinalities[i] = folded.get(i).getCardinality();
+        }
+
+        if (query.getSubqueries().isEmpty()) {
+            this.subqueries = NO_SUBQUERIES;
+        } else {
+            this.subqueries = new CompactParsedQuery[query.getSubqueries().size()];
+            for (int i = 0; i < subqueries.length; i++) {
+                subqueries[i] = new CompactParsedQuery(query.getSubqueries().get(i), encoder);
+            }
+        }
+
+        // Nested queries share the outer encoder, so all of them see the final pool
+        this.overflow = encoder.overflow();
+    }
+
+    public static CompactParsedQuery of(ParsedQuery query, SymbolTable symbols) {
+        return new CompactParsedQuery(query, new Encoder(symbols));
+    }
+
+    public boolean isValid() {
+        return (flags & VALID) != 0;
+    }
+
+    public String getQueryType() {
+        return queryType >= 0 ? QUERY_TYPES[queryType] : null;
+    }
+
+    public String getCanonicalHash() {
+        return (flags & HASHED) != 0 ? HexFormat.of().toHexDigits(canonicalHash) : null;
+    }
+
+    public ParsedQuery expand() {
+        List<ParsedQuery.JoinInfo> joins = new ArrayList<>(joinTypes.length);
+        for (int i = 0; i < joinTypes.length; i++) {
+            joins.add(ParsedQuery.JoinInfo.builder()
+                    .type(joinTypes[i] >= 0 ? JOIN_TYPES[joinTypes[i]] : null)
+                    .table(decode(joinTables[i]))
+                    .alias(decode(joinAliases[i]))
+                    .condition(decodeTokens(joinConditions[i]))
+                    .joinColumns(decode(joinColumns[i]))
+                    .build());
+        }
+
+        List<ParsedQuery.WhereCondition> conditions = new ArrayList<>(whereColumns.length);
+        for (int i = 0; i < whereColumns.length; i++) {
+            conditions.add(ParsedQuery.WhereCondition.builder()
+                    .column(decode(whereColumns[i]))
+                    .table(decode(whereTables[i]))
+                    .operator(decode(whereOperators[i]))
+                    .value(whereValues[i])
+                    .values(whereValueLists[i] != null ? List.of(whereValueLists[i]) : null)
+                    .isParameterized((whereFlags[i] & PARAMETERIZED) != 0)
+                    .build());
+        }
+
+        List<ParsedQuery.FoldedList> folded = new ArrayList<>(foldedTypes.length);
+        for (int i = 0; i < foldedTypes.length; i++) {
+            folded.add(new ParsedQuery.FoldedList(
+                    foldedTypes[i] >= 0 ? FOLDED_TYPES[foldedTypes[i]] : null,
+                    decode(foldedColumns[i]),
+                    foldedCardinalities[i]));
+        }
+
+        List<ParsedQuery> nested = new ArrayList<>(subqueries.length);
+        for (CompactParsedQuery subquery : subqueries) {
+            nested.add(subquery.expand());
+        }
+
+        return ParsedQuery.builder()
+                .valid(isValid())
+                .queryType(getQueryType())
+                .errorMessage(errorMessage)
+                .tables(decode(tables))
+                .columns(decode(columns))
+                .joins(joins)
+                .whereConditions(conditions)
+                .orderByColumns(decode(orderByColumns))
+                .orderByDirections(decode(orderByDirections))
+                .groupByColumns(decode(groupByColumns))
+                .subqueries(nested)
+                .aggregateFunctions(decode(aggregateFunctions))
+                .setOperations(decode(setOperations))
+                .cteNames(decode(cteNames))
+                .windowFunctions(decode(windowFunctions))
+                .caseExpressionCount(caseExpressionCount)
+                .hasDistinct((flags & DISTINCT) != 0)
+                .hasHaving((flags & HAVING) != 0)
+                .subqueryDepth(subqueryDepth)
+                .correlated((flags & CORRELATED) != 0)
+                .canonicalHash(getCanonicalHash())
+                .foldedLists(folded)
+                .build();
+    }
+
+    private String decode(int id) {
+        if (id == NULL_SYMBOL) return null;
+        return id >= 0 ? symbols.name(id) : overflow[-id - 1];
+    }
+
+    private List<String> decode(int[] ids) {
+        if (ids == null) return null;
+        List<String> names = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            names.add(decode(id));
+        }
+        return names;
+    }
+
+    private String decodeTokens(int[] tokens) {
+        if (tokens == null) return null;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < tokens.length; i++) {
+            if (i > 0) text.append(' ');
+            text.append(decode(tokens[i]));
+        }
+        return text.toString();
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) return i;
+        }
+        return -1;
+    }
+
+    // Interns names for one query, spilling to a local pool when the symbol table is full
+    private static final class Encoder {
+        private final SymbolTable symbols;
+        private List<String> overflow;
+
+        Encoder(SymbolTable symbols) {
+            this.symbols = symbols;
+        }
+
+        int encode(String name) {
+            if (name == null) return NULL_SYMBOL;
+            int id = symbols.id(name);
+            if (id != SymbolTable.FULL) return id;
+            if (overflow == null) overflow = new ArrayList<>();
+            overflow.add(name);
+            return -overflow.size();
+        }
+
+        // Kept with this query only, so literals don't grow the process-wide symbol table
+        int text(String value) {
+            if (overflow == null) overflow = new ArrayList<>();
+            overflow.add(value);
+            return -overflow.size();
+        }
+
+        int[] encode(List<String> names) {
+            if (names == null) return null;
+            if (names.isEmpty()) return NO_INTS;
+            int[] ids = new int[names.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = encode(names.get(i));
+            }
+            return ids;
+        }
+
+        // Splitting on single spaces keeps the original spacing when joined back. Only
+        // identifiers are interned; a token inside a string literal never is, even when it
+        // looks like one.
+        int[] encodeTokens(String text) {
+            if (text == null) return null;
+            String[] tokens = text.split(" ", -1);
+            int[] ids = new int[tokens.length];
+            boolean inLiteral = false;
+            for (int i = 0; i < ids.length; i++) {
+                String token = tokens[i];
+                int quotes = 0;
+                for (int k = 0; k < token.length(); k++) {
+                    if (token.charAt(k) == '\'') quotes++;
+                }
+                boolean identifier = !inLiteral && quotes == 0 && IDENTIFIER.matcher(token).matches();
+                ids[i] = identifier ? encode(token) : text(token);
+                inLiteral ^= (quotes & 1) == 1;
+            }
+            return ids;
+        }
+
+        String[] overflow() {
+            return overflow == null ? NO_STRINGS : overflow.toArray(NO_STRINGS);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.querysence.parser;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.querysence.parser.SqlFingerprinter.*;
+
+// Lexical pre-pass that shrinks long literal/parameter IN lists to their first element
+// and multi-row VALUES to their first row, so parse cost follows query shape, not payload
+@Component
+public class LiteralListFolder {
+
+    private final int threshold;
+
+    public LiteralListFolder(@Value("${parser.fold-threshold:32}") int threshold) {
+        this.threshold = threshold;
+    }
+
+    public Result fold(String sql) {
+        List<ParsedQuery.FoldedList> folded = new ArrayList<>();
+        StringBuilder out = null;
+        int copiedUpTo = 0;
+
+        // The last two words seen (NOT skipped), to spot "col [NOT] IN (" and "VALUES ("
+        String lastWord = null;
+        String previousWord = null;
+        int len = sql.length();
+        int i = 0;
+
+        while (i < len) {
+            char c = sql.charAt(i);
+
+            if (c == '-' && peek(sql, i + 1) == '-') {
+                i = skipLineComment(sql, i + 2);
+            } else if (c == '/' && peek(sql, i + 1) == '*') {
+                i = skipBlockComment(sql, i + 2);
+            } else if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(sql, i + 1, c);
+                lastWord = null;
+                previousWord = null;
+            } else if (isIdentifierStart(c)) {
+                int end = skipIdentifier(sql, i);
+                if (end == i + 1 && peek(sql, end) == '\'' && isStringPrefix(c)) {
+                    i = skipPrefixedString(sql, c, end + 1);
+                    lastWord = null;
+                    previousWord = null;
+                    continue;
+                }
+                String word = sql.substring(i, end);
+                if (!word.equalsIgnoreCase("not")) {
+                    previousWord = lastWord;
+                    lastWord = word;
+                }
+                i = end;
+            } else if (c == '(' && lastWord != null && lastWord.equalsIgnoreCase("in")) {
+                int[] list = scanList(sql, i);
+                if (list != null && list[2] >= threshold) {
+                    out = copy(sql, out, copiedUpTo, list[0]);
+                    out.append(')');
+                    copiedUpTo = list[1];
+                    folded.add(new ParsedQuery.FoldedList("IN", previousWord, list[2]));
+                }
+                i = list != null ? list[1] : i + 1;
+                lastWord = null;
+            } else if (c == '(' && lastWord != null && lastWord.equalsIgnoreCase("values")) {
+                int[] rows = scanRows(sql, i);
+                if (rows != null && rows[2] >= threshold) {
+                    out = copy(sql, out, copiedUpTo, rows[0]);
+                    copiedUpTo = rows[1];
+                    folded.add(new ParsedQuery.FoldedList("VALUES", null, rows[2]));
+                }
+                i = rows != null ? rows[1] : i + 1;
+                lastWord = null;
+            } else {
+                if (c > ' ' && c != '.') {
+                    lastWord = null;
+                    previousWord = null;
+                }
+                i++;
+            }
+        }
+
+        if (out == null) {
+            return new Result(sql, folded);
+        }
+        out.append(sql, copiedUpTo, len);
+        return new Result(out.toString(), folded);
+    }
+
+    private static StringBuilder copy(String sql, StringBuilder out, int from, int to) {
+        if (out == null) {
+            out = new StringBuilder(sql.length() / 4);
+        }
+        return out.append(sql, from, to);
+    }
+
+    // "(e1, e2, ...)" starting at open: {end of first element, index after ')', count} or null
+    private static int[] scanList(String sql, int open) {
+        int i = skipTrivia(sql, open + 1);
+        int firstEnd = -1;
+        int count = 0;
+        while (true) {
+            int end = skipElement(sql, i);
+            if (end < 0) return null;
+            if (firstEnd < 0) firstEnd = end;
+            count++;
+            i = skipTrivia(sql, end);
+            char c = peek(sql, i);
+            if (c == ')') return new int[]{firstEnd, i + 1, count};
+            if (c != ',') return null;
+            i = skipTrivia(sql, i + 1);
+        }
+    }
+
+    // "(..), (..), ..." starting at open: {end of first row, end of last row, row count} or null
+    private static int[] scanRows(String sql, int open) {
+        int firstEnd = -1;
+        int lastEnd;
+        int count = 0;
+        int i = open;
+        while (true) {
+            int[] row = scanList(sql, i);
+            if (row == null) return null;
+            if (firstEnd < 0) firstEnd = row[1];
+            lastEnd = row[1];
+            count++;
+            int next = skipTrivia(sql, lastEnd);
+            if (peek(sql, next) != ',') return new int[]{firstEnd, lastEnd, count};
+            next = skipTrivia(sql, next + 1);
+            if (peek(sql, next) != '(') return null;
+            i = next;
+        }
+    }
+
+    // A literal or bind parameter: returns its end, or -1 for anything else
+    private static int skipElement(String sql, int i) {
+        char c = peek(sql, i);
+        if (c == '+' || c == '-') {
+            i = skipTrivia(sql, i + 1);
+            c = peek(sql, i);
+            return isDigit(c) || (c == '.' && isDigit(peek(sql, i + 1))) ? skipNumber(sql, i) : -1;
+        }
+        if (c == '\'') return skipQuoted(sql, i + 1, '\'');
+        if (isDigit(c) || (c == '.' && isDigit(peek(sql, i + 1)))) return skipNumber(sql, i);
+        if (c == '?') return i + 1;
+        if (c == '$' && isDigit(peek(sql, i + 1))) return skipDigits(sql, i + 1);
+        if (c == ':' && isIdentifierStart(peek(sql, i + 1))) return skipIdentifier(sql, i + 1);
+        if (isIdentifierStart(c)) {
+            int end = skipIdentifier(sql, i);
+            if (end == i + 1 && peek(sql, end) == '\'' && isStringPrefix(c)) {
+                return skipPrefixedString(sql, c, end + 1);
+            }
+            String word = sql.substring(i, end);
+            if (word.equalsIgnoreCase("null") || word.equalsIgnoreCase("true") || word.equalsIgnoreCase("false")) {
+                return end;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipTrivia(String sql, int i) {
+        int len = sql.length();
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c <= ' ') {
+                i++;
+            } else if (c == '-' && peek(sql, i + 1) == '-') {
+                i = skipLineComment(sql, i + 2);
+            } else if (c == '/' && peek(sql, i + 1) == '*') {
+                i = skipBlockComment(sql, i + 2);
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    public record Result(String sql, List<ParsedQuery.FoldedList> foldedLists) {
+    }
+}
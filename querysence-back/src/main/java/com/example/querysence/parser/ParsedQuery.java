@@ -33,6 +33,10 @@ public class ParsedQuery {
     
     @Builder.Default
     private List<String> orderByColumns = new ArrayList<>();
+
+    // ASC or DESC for each ORDER BY column, same positions
+    @Builder.Default
+    private List<String> orderByDirections = new ArrayList<>();
     
     @Builder.Default
     private List<String> groupByColumns = new ArrayList<>();
@@ -43,9 +47,31 @@ public class ParsedQuery {
     @Builder.Default
     private List<String> aggregateFunctions = new ArrayList<>();
     
+    // Operators joining set operation branches, e.g. UNION, UNION ALL, INTERSECT
+    @Builder.Default
+    private List<String> setOperations = new ArrayList<>();
+
+    // Names defined by WITH, their bodies are analyzed as subqueries
+    @Builder.Default
+    private List<String> cteNames = new ArrayList<>();
+
+    @Builder.Default
+    private List<String> windowFunctions = new ArrayList<>();
+
+    private int caseExpressionCount;
     private boolean hasDistinct;
     private boolean hasHaving;
     private int subqueryDepth;
+    // References columns of an enclosing query, so it runs once per outer row
+    private boolean correlated;
+
+    // Canonical text and hash shared by semantically equivalent queries
+    private String canonicalSql;
+    private String canonicalHash;
+
+    // Long literal lists folded away before parsing, with their original size
+    @Builder.Default
+    private List<FoldedList> foldedLists = new ArrayList<>();
     
     @Data
     @Builder
@@ -68,6 +94,18 @@ public class ParsedQuery {
         private String table;
         private String operator;
         private String value;
+        // IN list items or BETWEEN bounds as SQL text, the column set of a MATCH ... AGAINST
+        private List<String> values;
         private boolean isParameterized;
     }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FoldedList {
+        private String type;        // IN, VALUES
+        private String column;
+        private int cardinality;
+    }
 }
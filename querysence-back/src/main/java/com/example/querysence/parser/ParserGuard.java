@@ -0,0 +1,201 @@
+package com.example.querysence.parser;
+
+import com.example.querysence.exception.ParserLimitExceededException;
+import com.example.querysence.exception.ParserLimitExceededException.Limit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.parser.CCJSqlParser;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.parser.feature.Feature;
+import net.sf.jsqlparser.statement.Statement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import static com.example.querysence.parser.SqlFingerprinter.*;
+
+// Rejects oversized or deeply nested SQL before parsing and bounds the parse itself
+// with JSqlParser's timeout, so a pathological statement cannot pin a request thread
+@Component
+@Slf4j
+public class ParserGuard {
+
+    private final int maxStatementLength;
+    private final int maxNestingDepth;
+    private final long timeoutMs;
+
+    // JSqlParser runs each parse on an executor to enforce its timeout, by default
+    // it creates a new single-thread pool per call
+    private final ExecutorService parseExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final DistributionSummary statementLengthSummary;
+    private final DistributionSummary nestingDepthSummary;
+    private final Map<SqlDialect, Profile> profiles = new EnumMap<>(SqlDialect.class);
+    private final Map<Limit, Counter> rejections = new EnumMap<>(Limit.class);
+
+    public ParserGuard(MeterRegistry meterRegistry,
+                       @Value("${parser.max-statement-length:100000}") int maxStatementLength,
+                       @Value("${parser.max-nesting-depth:64}") int maxNestingDepth,
+                       @Value("${parser.timeout-ms:2000}") long timeoutMs) {
+        this.maxStatementLength = maxStatementLength;
+        this.maxNestingDepth = maxNestingDepth;
+        this.timeoutMs = timeoutMs;
+
+        // Histograms top out at the configured limits to show how close traffic gets
+        this.statementLengthSummary = DistributionSummary.builder("sql.parse.statement.length")
+                .baseUnit("characters")
+                .publishPercentileHistogram()
+                .maximumExpectedValue((double) maxStatementLength)
+                .register(meterRegistry);
+        this.nestingDepthSummary = DistributionSummary.builder("sql.parse.nesting.depth")
+                .publishPercentileHistogram()
+                .maximumExpectedValue((double) maxNestingDepth)
+                .register(meterRegistry);
+        for (SqlDialect dialect : SqlDialect.values()) {
+            profiles.put(dialect, new Profile(features(dialect),
+                    parseTimer(meterRegistry, dialect, "success"),
+                    parseTimer(meterRegistry, dialect, "error"),
+                    parseTimer(meterRegistry, dialect, "timeout")));
+        }
+        for (Limit limit : Limit.values()) {
+            rejections.put(limit, Counter.builder("sql.parse.rejected")
+                    .tag("limit", limit.name())
+                    .register(meterRegistry));
+        }
+    }
+
+    // Callers that rewrite the SQL before parsing check the raw text first, so the rewrite
+    // never runs over input that would be rejected anyway
+    public void checkLength(String sql) {
+        statementLengthSummary.record(sql.length());
+        if (sql.length() > maxStatementLength) {
+            throw reject(Limit.STATEMENT_LENGTH, maxStatementLength, sql.length());
+        }
+    }
+
+    public Statement parse(String sql, SqlDialect dialect) throws JSQLParserException {
+        if (sql.length() > maxStatementLength) {
+            throw reject(Limit.STATEMENT_LENGTH, maxStatementLength, sql.length());
+        }
+
+        int depth = nestingDepth(sql);
+        nestingDepthSummary.record(depth);
+        if (depth > maxNestingDepth) {
+            throw reject(Limit.NESTING_DEPTH, maxNestingDepth, depth);
+        }
+
+        Profile profile = profiles.get(dialect);
+        long start = System.nanoTime();
+        try {
+            Statement statement = CCJSqlParserUtil.parse(sql, parseExecutor, profile.features());
+            profile.success().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return statement;
+        } catch (JSQLParserException e) {
+            long elapsed = System.nanoTime() - start;
+            if (e.getCause() instanceof TimeoutException) {
+                profile.timeout().record(elapsed, TimeUnit.NANOSECONDS);
+                throw reject(Limit.PARSE_TIMEOUT, timeoutMs, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+            profile.failure().record(elapsed, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        parseExecutor.shutdownNow();
+    }
+
+    private ParserLimitExceededException reject(Limit limit, long threshold, long actual) {
+        rejections.get(limit).increment();
+        log.warn("Rejected SQL: {} {} exceeds limit {}", limit, actual, threshold);
+        return new ParserLimitExceededException(limit, threshold, actual);
+    }
+
+    // Parser features per dialect, fixed at startup. A fresh CCJSqlParser is needed for
+    // every statement, so the profile is applied to each one rather than shared.
+    private Consumer<CCJSqlParser> features(SqlDialect dialect) {
+        Map<Feature, Boolean> flags = switch (dialect) {
+            case POSTGRESQL -> Map.of(Feature.allowPostgresSpecificSyntax, true);
+            case MYSQL -> Map.of(Feature.allowBackslashEscapeCharacter, true);
+            case SQLSERVER -> Map.of(Feature.allowSquareBracketQuotation, true);
+            case ORACLE -> Map.of();
+        };
+        return parser -> {
+            parser.withTimeOut(timeoutMs);
+            flags.forEach(parser::withFeature);
+        };
+    }
+
+    private Timer parseTimer(MeterRegistry meterRegistry, SqlDialect dialect, String outcome) {
+        return Timer.builder("sql.parse.duration")
+                .tag("dialect", dialect.name())
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(Duration.ofMillis(timeoutMs))
+                .register(meterRegistry);
+    }
+
+    // Deepest nesting of parentheses and CASE blocks, ignoring literals and comments
+    static int nestingDepth(CharSequence sql) {
+        int depth = 0;
+        int maxDepth = 0;
+        int openCases = 0;
+        int len = sql.length();
+        int i = 0;
+
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '-' && peek(sql, i + 1) == '-') {
+                i = skipLineComment(sql, i + 2);
+            } else if (c == '/' && peek(sql, i + 1) == '*') {
+                i = skipBlockComment(sql, i + 2);
+            } else if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(sql, i + 1, c);
+            } else if (c == '(') {
+                maxDepth = Math.max(maxDepth, ++depth);
+                i++;
+            } else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+                i++;
+            } else if (isIdentifierStart(c)) {
+                int end = skipIdentifier(sql, i);
+                if (isWord(sql, i, end, "case")) {
+                    openCases++;
+                    maxDepth = Math.max(maxDepth, ++depth);
+                } else if (openCases > 0 && isWord(sql, i, end, "end")) {
+                    openCases--;
+                    depth = Math.max(0, depth - 1);
+                }
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return maxDepth;
+    }
+
+    private record Profile(Consumer<CCJSqlParser> features, Timer success, Timer failure, Timer timeout) {
+    }
+
+    private static boolean isWord(CharSequence sql, int start, int end, String word) {
+        if (end - start != word.length()) return false;
+        for (int k = 0; k < word.length(); k++) {
+            if (Character.toLowerCase(sql.charAt(start + k)) != word.charAt(k)) return false;
+        }
+        return true;
+    }
+}
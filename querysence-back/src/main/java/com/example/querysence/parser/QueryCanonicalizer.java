@@ -0,0 +1,392 @@
+package com.example.querysence.parser;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.expression.operators.relational.ParenthesedExpressionList;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.ParenthesedSelect;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.SelectItem;
+import net.sf.jsqlparser.statement.select.Values;
+import net.sf.jsqlparser.util.deparser.ExpressionDeParser;
+import net.sf.jsqlparser.util.deparser.SelectDeParser;
+import net.sf.jsqlparser.util.deparser.StatementDeParser;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Deparses a statement into a canonical form so that queries differing only in
+// aliases, AND/OR operand order, IN-list length, literals or keyword case share one hash
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class QueryCanonicalizer {
+
+    private final SqlFingerprinter fingerprinter;
+
+    public CanonicalForm canonicalize(Statement statement) {
+        String text;
+        try {
+            // First pass only collects aliases, the select list is printed before FROM
+            Aliases aliases = new Aliases();
+            deparse(statement, aliases);
+            aliases.collecting = false;
+            text = deparse(statement, aliases);
+        } catch (RuntimeException e) {
+            log.debug("Falling back to lexical fingerprint: {}", e.getMessage());
+            text = statement.toString();
+        }
+        // Folds keyword case and whitespace, and catches any literal the deparser left behind
+        String canonical = fingerprinter.normalize(text);
+        return new CanonicalForm(canonical, fingerprinter.fingerprintHex(canonical));
+    }
+
+    private String deparse(Statement statement, Aliases aliases) {
+        StringBuilder buffer = new StringBuilder();
+        CanonicalExpressionDeParser expressionDeParser = new CanonicalExpressionDeParser(aliases);
+        CanonicalSelectDeParser selectDeParser = new CanonicalSelectDeParser(expressionDeParser, buffer, aliases);
+        expressionDeParser.setSelectVisitor(selectDeParser);
+        expressionDeParser.setBuffer(buffer);
+        statement.accept(new StatementDeParser(expressionDeParser, selectDeParser, buffer), null);
+        return buffer.toString();
+    }
+
+    public record CanonicalForm(String sql, String hash) {
+    }
+
+    // Alias renames shared by both deparsers, filled during the collecting pass. Table and
+    // derived-table qualifiers are scoped to the SELECT body whose FROM declares them, so a
+    // subquery reusing an outer alias resolves to its own table and a correlated reference
+    // falls through to the enclosing one.
+    private static final class Aliases {
+        private boolean collecting = true;
+        private boolean inSelectList;
+        private final Map<Object, String> labels = new IdentityHashMap<>();
+        private final Map<PlainSelect, Map<String, String>> scopes = new IdentityHashMap<>();
+        // Innermost first; the statement's own scope holds UPDATE and DELETE targets
+        private final Deque<Map<String, String>> openScopes = new ArrayDeque<>(List.of(new HashMap<>()));
+        private final Map<String, String> selectAliases = new HashMap<>();
+        private final Map<String, Integer> tableOccurrences = new HashMap<>();
+        private int derivedCount;
+
+        void enter(PlainSelect select) {
+            openScopes.push(scopes.computeIfAbsent(select, k -> new HashMap<>()));
+        }
+
+        void exit() {
+            openScopes.pop();
+        }
+
+        // Self-joins keep apart by occurrence: orders, orders_2, ...
+        String table(Table table) {
+            String label = labels.get(table);
+            if (label == null && collecting) {
+                String name = table.getFullyQualifiedName().toLowerCase();
+                int occurrence = tableOccurrences.merge(name, 1, Integer::sum);
+                label = occurrence == 1 ? name : name + "_" + occurrence;
+                labels.put(table, label);
+                openScopes.peek().putIfAbsent(name, label);
+                if (table.getAlias() != null) {
+                    openScopes.peek().putIfAbsent(table.getAlias().getName().toLowerCase(), label);
+                }
+            }
+            return label;
+        }
+
+        String derived(ParenthesedSelect select) {
+            String label = labels.get(select);
+            if (label == null && collecting) {
+                label = "sq" + (++derivedCount);
+                labels.put(select, label);
+                openScopes.peek().putIfAbsent(select.getAlias().getName().toLowerCase(), label);
+            }
+            return label;
+        }
+
+        String selectAlias(Alias alias) {
+            String key = alias.getName().toLowerCase();
+            if (collecting) {
+                selectAliases.putIfAbsent(key, "c" + (selectAliases.size() + 1));
+            }
+            return selectAliases.getOrDefault(key, key);
+        }
+
+        String qualifier(String qualifier) {
+            String key = qualifier.toLowerCase();
+            for (Map<String, String> scope : openScopes) {
+                String label = scope.get(key);
+                if (label != null) {
+                    return label;
+                }
+            }
+            return qualifier;
+        }
+
+        // ORDER BY / GROUP BY / HAVING may refer to a select alias by its bare name
+        String bareColumn(String name) {
+            if (inSelectList) {
+                return name;
+            }
+            return selectAliases.getOrDefault(name.toLowerCase(), name);
+        }
+    }
+
+    private static final class CanonicalSelectDeParser extends SelectDeParser {
+        private final Aliases aliases;
+
+        CanonicalSelectDeParser(ExpressionDeParser expressionDeParser, StringBuilder buffer, Aliases aliases) {
+            super(expressionDeParser, buffer);
+            this.aliases = aliases;
+        }
+
+        @Override
+        public <S> StringBuilder visit(Table table, S context) {
+            String label = aliases.table(table);
+            String name = table.getFullyQualifiedName().toLowerCase();
+            buffer.append(name);
+            if (label != null && !label.equals(name)) {
+                buffer.append(' ').append(label);
+            }
+            return buffer;
+        }
+
+        @Override
+        public <S> StringBuilder visit(PlainSelect plainSelect, S context) {
+            aliases.enter(plainSelect);
+            try {
+                return super.visit(plainSelect, context);
+            } finally {
+                aliases.exit();
+            }
+        }
+
+        @Override
+        public <S> StringBuilder visit(SelectItem<?> selectItem, S context) {
+            aliases.inSelectList = true;
+            try {
+                selectItem.getExpression().accept(getExpressionVisitor(), context);
+            } finally {
+                aliases.inSelectList = false;
+            }
+            if (selectItem.getAlias() != null) {
+                buffer.append(" AS ").append(aliases.selectAlias(selectItem.getAlias()));
+            }
+            return buffer;
+        }
+
+        @Override
+        public <S> StringBuilder visit(ParenthesedSelect parenthesedSelect, S context) {
+            buffer.append('(');
+            parenthesedSelect.getSelect().accept(this, context);
+            buffer.append(')');
+            if (parenthesedSelect.getAlias() != null) {
+                buffer.append(' ').append(aliases.derived(parenthesedSelect));
+            }
+            return buffer;
+        }
+
+        // Multi-row VALUES collapse to their first row
+        @Override
+        public <S> StringBuilder visit(Values values, S context) {
+            ExpressionList<?> rows = values.getExpressions();
+            if (rows.size() > 1 && rows.get(0) instanceof ExpressionList<?> && isConstant(rows)) {
+                buffer.append("VALUES ");
+                rows.get(0).accept(getExpressionVisitor(), context);
+                return buffer;
+            }
+            return super.visit(values, context);
+        }
+    }
+
+    private static final class CanonicalExpressionDeParser extends ExpressionDeParser {
+        private final Aliases aliases;
+
+        CanonicalExpressionDeParser(Aliases aliases) {
+            this.aliases = aliases;
+        }
+
+        @Override
+        public <S> StringBuilder visit(Column column, S context) {
+            Table table = column.getTable();
+            String qualifier = table != null ? table.getFullyQualifiedName() : null;
+            if (qualifier != null && !qualifier.isEmpty()) {
+                buffer.append(aliases.qualifier(qualifier)).append('.').append(column.getColumnName());
+            } else {
+                buffer.append(aliases.bareColumn(column.getColumnName()));
+            }
+            return buffer;
+        }
+
+        @Override
+        public <S> StringBuilder visit(AndExpression andExpression, S context) {
+            return appendCommutative(andExpression, AndExpression.class, " AND ", context);
+        }
+
+        @Override
+        public <S> StringBuilder visit(OrExpression orExpression, S context) {
+            return appendCommutative(orExpression, OrExpression.class, " OR ", context);
+        }
+
+        // Column = column is symmetric, and a literal on the left moves to the right
+        @Override
+        public <S> StringBuilder visit(EqualsTo equalsTo, S context) {
+            Expression left = equalsTo.getLeftExpression();
+            Expression right = equalsTo.getRightExpression();
+            if (!(left instanceof Column && right instanceof Column) && !(isConstant(left) && !isConstant(right))) {
+                return super.visit(equalsTo, context);
+            }
+            String leftText = render(left, context);
+            String rightText = render(right, context);
+            boolean swap = isConstant(left) || leftText.compareTo(rightText) > 0;
+            buffer.append(swap ? rightText : leftText).append(" = ").append(swap ? leftText : rightText);
+            return buffer;
+        }
+
+        @Override
+        public <S> StringBuilder visit(InExpression inExpression, S context) {
+            if (!(inExpression.getRightExpression() instanceof ExpressionList<?> list) || !isConstant(list)) {
+                return super.visit(inExpression, context);
+            }
+            inExpression.getLeftExpression().accept(this, context);
+            buffer.append(inExpression.isNot() ? " NOT IN (?)" : " IN (?)");
+            return buffer;
+        }
+
+        @Override
+        public <S> StringBuilder visit(SignedExpression signedExpression, S context) {
+            if (isConstant(signedExpression.getExpression())) {
+                return placeholder();
+            }
+            return super.visit(signedExpression, context);
+        }
+
+        @Override
+        public <S> StringBuilder visit(LongValue longValue, S context) {
+            return placeholder();
+        }
+
+        @Override
+        public <S> StringBuilder visit(DoubleValue doubleValue, S context) {
+            return placeholder();
+        }
+
+        @Override
+        public <S> StringBuilder visit(StringValue stringValue, S context) {
+            return placeholder();
+        }
+
+        @Override
+        public <S> StringBuilder visit(HexValue hexValue, S context) {
+            return placeholder();
+        }
+
+        @Override
+        public <S> StringBuilder visit(DateValue dateValue, S context) {
+            return placeholder();
+        }
+
+        @Override
+        public <S> StringBuilder visit(TimeValue timeValue, S context) {
+            return placeholder();
+        }
+
+        @Override
+        public <S> StringBuilder visit(TimestampValue timestampValue, S context) {
+            return placeholder();
+        }
+
+        @Override
+        public <S> StringBuilder visit(JdbcParameter jdbcParameter, S context) {
+            return placeholder();
+        }
+
+        @Override
+        public <S> StringBuilder visit(JdbcNamedParameter jdbcNamedParameter, S context) {
+            return placeholder();
+        }
+
+        private StringBuilder placeholder() {
+            return buffer.append('?');
+        }
+
+        // Flattens a chain of the same operator, renders each operand and sorts them
+        private <S> StringBuilder appendCommutative(BinaryExpression expression, Class<? extends BinaryExpression> type,
+                                                    String separator, S context) {
+            List<Expression> operands = new ArrayList<>();
+            flatten(expression, type, operands);
+
+            List<String> rendered = new ArrayList<>(operands.size());
+            for (Expression operand : operands) {
+                String text = render(operand, context);
+                boolean nested = operand instanceof AndExpression || operand instanceof OrExpression;
+                rendered.add(nested ? "(" + text + ")" : text);
+            }
+            rendered.sort(null);
+            buffer.append(String.join(separator, rendered));
+            return buffer;
+        }
+
+        private static void flatten(Expression expression, Class<? extends BinaryExpression> type, List<Expression> operands) {
+            Expression unwrapped = unwrap(expression);
+            if (type.isInstance(unwrapped)) {
+                BinaryExpression binary = (BinaryExpression) unwrapped;
+                flatten(binary.getLeftExpression(), type, operands);
+                flatten(binary.getRightExpression(), type, operands);
+            } else {
+                operands.add(unwrapped);
+            }
+        }
+
+        private static Expression unwrap(Expression expression) {
+            while (expression instanceof ParenthesedExpressionList<?> parenthesed && parenthesed.size() == 1) {
+                expression = parenthesed.get(0);
+            }
+            return expression;
+        }
+
+        // Renders into the shared buffer and cuts the result back out
+        private <S> String render(Expression expression, S context) {
+            int start = buffer.length();
+            expression.accept(this, context);
+            String text = buffer.substring(start);
+            buffer.setLength(start);
+            return text;
+        }
+    }
+
+    private static boolean isConstant(Expression expression) {
+        if (expression instanceof ExpressionList<?> list) {
+            for (Expression item : list) {
+                if (!isConstant(item)) return false;
+            }
+            return true;
+        }
+        if (expression instanceof SignedExpression signed) {
+            return isConstant(signed.getExpression());
+        }
+        return expression instanceof LongValue
+                || expression instanceof DoubleValue
+                || expression instanceof StringValue
+                || expression instanceof HexValue
+                || expression instanceof DateValue
+                || expression instanceof TimeValue
+                || expression instanceof TimestampValue
+                || expression instanceof NullValue
+                || expression instanceof JdbcParameter
+                || expression instanceof JdbcNamedParameter;
+    }
+}
@@ -2,13 +2,13 @@ package com.example.querysence.parser;
 
 
 import com.example.querysence.exception.*;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.sf.jsqlparser.JSQLParserException;
 import net.sf.jsqlparser.expression.*;
 import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
 import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
 import net.sf.jsqlparser.expression.operators.relational.*;
-import net.sf.jsqlparser.parser.CCJSqlParserUtil;
 import net.sf.jsqlparser.schema.Column;
 import net.sf.jsqlparser.schema.Table;
 import net.sf.jsqlparser.statement.Statement;
@@ -19,16 +19,36 @@ import net.sf.jsqlparser.statement.update.Update;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Component
+@RequiredArgsConstructor
 @Slf4j
 public class SQLParserEngine {
 
+    private static final Set<String> CONTAINMENT_OPERATORS = Set.of("@>", "<@", "?", "?|", "?&");
+
+    private final QueryCanonicalizer canonicalizer;
+    private final ParserGuard parserGuard;
+    private final LiteralListFolder listFolder;
+
     public ParsedQuery parse(String sql) {
+        return parse(sql, SqlDialect.DEFAULT);
+    }
+
+    public ParsedQuery parse(String sql, SqlDialect dialect) {
         try {
-            Statement statement = CCJSqlParserUtil.parse(sql);
-            return parseStatement(statement, 0);
+            parserGuard.checkLength(sql);
+            LiteralListFolder.Result folded = listFolder.fold(sql);
+            Statement statement = parserGuard.parse(folded.sql(), dialect);
+            ParsedQuery parsed = parseStatement(statement, 0);
+            parsed.setFoldedLists(folded.foldedLists());
+            QueryCanonicalizer.CanonicalForm canonical = canonicalizer.canonicalize(statement);
+            parsed.setCanonicalSql(canonical.sql());
+            parsed.setCanonicalHash(canonical.hash());
+            return parsed;
         } catch (JSQLParserException e) {
             log.error("Failed to parse SQL: {}", e.getMessage());
             return ParsedQuery.builder()
@@ -45,7 +65,9 @@ public class SQLParserEngine {
 
         if (statement instanceof Select select) {
             builder.queryType("SELECT");
-            parseSelect(select, builder, depth);
+            SelectScope scope = new SelectScope(depth, Set.of());
+            parseSelect(select, scope);
+            scope.applyTo(builder);
         } else if (statement instanceof Insert insert) {
             builder.queryType("INSERT");
             parseInsert(insert, builder);
@@ -62,101 +84,145 @@ public class SQLParserEngine {
         return builder.build();
     }
 
-    private void parseSelect(Select select, ParsedQuery.ParsedQueryBuilder builder, int depth) {
-        PlainSelect plainSelect = select.getPlainSelect();
-        if (plainSelect == null) {
-            return;
+    // Set operation branches are merged into one scope, so the tables, joins and filters
+    // of every branch are seen by scoring and the index advisor
+    private void parseSelect(Select select, SelectScope scope) {
+        if (select.getWithItemsList() != null) {
+            // Names first, so recursive and later CTEs can reference earlier ones
+            for (WithItem withItem : select.getWithItemsList()) {
+                scope.defineCte(withItem.getAlias().getName());
+            }
+            for (WithItem withItem : select.getWithItemsList()) {
+                scope.subqueries.add(parseSubquery(withItem.getSelect(), scope));
+            }
+        }
+
+        if (select instanceof ParenthesedSelect parenthesed) {
+            parseSelect(parenthesed.getSelect(), scope);
+        } else if (select instanceof SetOperationList setOperations) {
+            setOperations.getOperations().forEach(op -> scope.setOperations.add(op.toString()));
+            for (Select branch : setOperations.getSelects()) {
+                parseSelect(branch, scope);
+            }
+            parseOrderBy(setOperations.getOrderByElements(), scope);
+        } else if (select instanceof PlainSelect plainSelect) {
+            parsePlainSelect(plainSelect, scope);
         }
+    }
+
+    private void parsePlainSelect(PlainSelect plainSelect, SelectScope scope) {
+        ExpressionScanner scanner = new ExpressionScanner(scope);
 
         // Parse SELECT columns
-        List<String> columns = new ArrayList<>();
-        List<String> aggregates = new ArrayList<>();
-        
         for (SelectItem<?> item : plainSelect.getSelectItems()) {
             if (item.getExpression() instanceof AllColumns) {
-                columns.add("*");
+                scope.columns.add("*");
             } else if (item.getExpression() instanceof AllTableColumns atc) {
-                columns.add(atc.getTable().getName() + ".*");
+                scope.columns.add(atc.getTable().getName() + ".*");
             } else if (item.getExpression() instanceof Column col) {
-                columns.add(col.getColumnName());
+                scope.columns.add(col.getColumnName());
             } else if (item.getExpression() instanceof Function func) {
-                aggregates.add(func.getName());
-                columns.add(func.toString());
+                scope.aggregates.add(func.getName());
+                scope.columns.add(func.toString());
             } else {
-                columns.add(item.toString());
+                scope.columns.add(item.toString());
             }
+            scanner.scan(item.getExpression());
         }
-        builder.columns(columns);
-        builder.aggregateFunctions(aggregates);
-        builder.hasDistinct(plainSelect.getDistinct() != null);
+        scope.hasDistinct |= plainSelect.getDistinct() != null;
 
         // Parse FROM clause
-        List<String> tables = new ArrayList<>();
         if (plainSelect.getFromItem() != null) {
-            extractTables(plainSelect.getFromItem(), tables, builder);
+            extractTables(plainSelect.getFromItem(), scope);
         }
-        builder.tables(tables);
 
         // Parse JOINs
-        List<ParsedQuery.JoinInfo> joins = new ArrayList<>();
-        if (plainSelect.getJoins() != null) {
-            for (Join join : plainSelect.getJoins()) {
-                ParsedQuery.JoinInfo joinInfo = parseJoin(join);
-                joins.add(joinInfo);
-                if (join.getFromItem() instanceof Table table) {
-                    tables.add(table.getName());
-                }
-            }
-        }
-        builder.joins(joins);
+        parseJoins(plainSelect.getJoins(), scope);
 
         // Parse WHERE clause
-        List<ParsedQuery.WhereCondition> conditions = new ArrayList<>();
-        List<ParsedQuery> subqueries = new ArrayList<>();
         if (plainSelect.getWhere() != null) {
-            parseWhereExpression(plainSelect.getWhere(), conditions, subqueries, depth);
+            parseWhereExpression(plainSelect.getWhere(), scope.conditions);
+            scanner.scan(plainSelect.getWhere());
         }
-        builder.whereConditions(conditions);
-        builder.subqueries(subqueries);
 
         // Parse GROUP BY
         if (plainSelect.getGroupBy() != null) {
-            List<String> groupByCols = new ArrayList<>();
             plainSelect.getGroupBy().getGroupByExpressionList().forEach(expr -> {
                 if (expr instanceof Column col) {
-                    groupByCols.add(col.getColumnName());
+                    scope.groupByColumns.add(col.getColumnName());
                 }
+                scanner.scan((Expression) expr);
             });
-            builder.groupByColumns(groupByCols);
         }
 
         // Parse HAVING
-        builder.hasHaving(plainSelect.getHaving() != null);
+        if (plainSelect.getHaving() != null) {
+            scope.hasHaving = true;
+            scanner.scan(plainSelect.getHaving());
+        }
 
         // Parse ORDER BY
-        if (plainSelect.getOrderByElements() != null) {
-            List<String> orderByCols = new ArrayList<>();
-            plainSelect.getOrderByElements().forEach(elem -> {
-                if (elem.getExpression() instanceof Column col) {
-                    orderByCols.add(col.getColumnName());
-                }
-            });
-            builder.orderByColumns(orderByCols);
+        parseOrderBy(plainSelect.getOrderByElements(), scope);
+    }
+
+    private void parseJoins(List<Join> joins, SelectScope scope) {
+        if (joins == null) {
+            return;
+        }
+        ExpressionScanner scanner = new ExpressionScanner(scope);
+        for (Join join : joins) {
+            scope.joins.add(parseJoin(join));
+            extractTables(join.getFromItem(), scope);
+            if (join.getOnExpressions() != null) {
+                join.getOnExpressions().forEach(scanner::scan);
+            }
+        }
+    }
+
+    private void parseOrderBy(List<OrderByElement> elements, SelectScope scope) {
+        if (elements == null) {
+            return;
+        }
+        ExpressionScanner scanner = new ExpressionScanner(scope);
+        for (OrderByElement elem : elements) {
+            if (elem.getExpression() instanceof Column col) {
+                scope.orderByColumns.add(col.getColumnName());
+                scope.orderByDirections.add(elem.isAsc() ? "ASC" : "DESC");
+            }
+            scanner.scan(elem.getExpression());
         }
     }
 
-    private void extractTables(FromItem fromItem, List<String> tables, ParsedQuery.ParsedQueryBuilder builder) {
+    private void extractTables(FromItem fromItem, SelectScope scope) {
+        if (fromItem.getAlias() != null) {
+            scope.localNames.add(fromItem.getAlias().getName().toLowerCase());
+        }
         if (fromItem instanceof Table table) {
-            tables.add(table.getName());
+            scope.localNames.add(table.getName().toLowerCase());
+            // References to a CTE are not base tables, the CTE body is analyzed as a subquery
+            if (!scope.isCte(table.getName())) {
+                scope.tables.add(table.getName());
+            }
+        } else if (fromItem instanceof ParenthesedFromItem parenthesed) {
+            extractTables(parenthesed.getFromItem(), scope);
+            parseJoins(parenthesed.getJoins(), scope);
         } else if (fromItem instanceof Select subSelect) {
-            ParsedQuery subquery = parse(subSelect.toString());
-            List<ParsedQuery> subqueries = builder.build().getSubqueries();
-            if (subqueries == null) subqueries = new ArrayList<>();
-            subqueries.add(subquery);
-            builder.subqueries(subqueries);
+            scope.subqueries.add(parseSubquery(subSelect, scope));
         }
     }
 
+    private ParsedQuery parseSubquery(Select subSelect, SelectScope outer) {
+        // Walk the already parsed subtree instead of printing and re-parsing it
+        SelectScope scope = new SelectScope(outer.depth + 1, outer.visibleCtes());
+        parseSelect(subSelect, scope);
+        ParsedQuery.ParsedQueryBuilder builder = ParsedQuery.builder()
+                .valid(true)
+                .queryType("SELECT")
+                .subqueryDepth(scope.depth);
+        scope.applyTo(builder);
+        return builder.build();
+    }
+
     private ParsedQuery.JoinInfo parseJoin(Join join) {
         String joinType = "INNER";
         if (join.isLeft()) joinType = "LEFT";
@@ -188,53 +254,84 @@ public class SQLParserEngine {
                 .build();
     }
 
-    private void parseWhereExpression(Expression expression, 
-                                       List<ParsedQuery.WhereCondition> conditions,
-                                       List<ParsedQuery> subqueries,
-                                       int depth) {
+    // Subqueries in the condition are collected separately by the ExpressionScanner
+    private void parseWhereExpression(Expression expression, List<ParsedQuery.WhereCondition> conditions) {
         if (expression instanceof AndExpression and) {
-            parseWhereExpression(and.getLeftExpression(), conditions, subqueries, depth);
-            parseWhereExpression(and.getRightExpression(), conditions, subqueries, depth);
+            parseWhereExpression(and.getLeftExpression(), conditions);
+            parseWhereExpression(and.getRightExpression(), conditions);
         } else if (expression instanceof OrExpression or) {
-            parseWhereExpression(or.getLeftExpression(), conditions, subqueries, depth);
-            parseWhereExpression(or.getRightExpression(), conditions, subqueries, depth);
+            parseWhereExpression(or.getLeftExpression(), conditions);
+            parseWhereExpression(or.getRightExpression(), conditions);
         } else if (expression instanceof ComparisonOperator comp) {
             ParsedQuery.WhereCondition condition = parseComparisonOperator(comp);
             if (condition != null) conditions.add(condition);
-            
-            // Check for subqueries
-            if (comp.getRightExpression() instanceof Select subSelect) {
-                ParsedQuery subquery = parse(subSelect.toString());
-                subquery.setSubqueryDepth(depth + 1);
-                subqueries.add(subquery);
-            }
         } else if (expression instanceof InExpression in) {
             if (in.getLeftExpression() instanceof Column col) {
                 conditions.add(ParsedQuery.WhereCondition.builder()
                         .column(col.getColumnName())
                         .table(col.getTable() != null ? col.getTable().getName() : "")
                         .operator("IN")
+                        .values(in.getRightExpression() instanceof ExpressionList<?> list
+                                ? list.stream().map(Object::toString).toList()
+                                : null)
                         .build());
             }
-            if (in.getRightExpression() instanceof Select subSelect) {
-                ParsedQuery subquery = parse(subSelect.toString());
-                subquery.setSubqueryDepth(depth + 1);
-                subqueries.add(subquery);
-            }
         } else if (expression instanceof Between between) {
             if (between.getLeftExpression() instanceof Column col) {
                 conditions.add(ParsedQuery.WhereCondition.builder()
                         .column(col.getColumnName())
                         .table(col.getTable() != null ? col.getTable().getName() : "")
                         .operator("BETWEEN")
+                        .values(List.of(between.getBetweenExpressionStart().toString(),
+                                between.getBetweenExpressionEnd().toString()))
                         .build());
             }
         } else if (expression instanceof LikeExpression like) {
             if (like.getLeftExpression() instanceof Column col) {
+                // ILIKE and negations are kept apart, a B-tree can serve neither
+                String keyword = like.getLikeKeyWord() != null
+                        ? like.getLikeKeyWord().name().replace('_', ' ')
+                        : "LIKE";
+                conditions.add(ParsedQuery.WhereCondition.builder()
+                        .column(col.getColumnName())
+                        .table(col.getTable() != null ? col.getTable().getName() : "")
+                        .operator(like.isNot() ? "NOT " + keyword : keyword)
+                        .value(like.getRightExpression().toString())
+                        .isParameterized(like.getRightExpression() instanceof JdbcParameter)
+                        .build());
+            }
+        } else if (expression instanceof JsonOperator json && CONTAINMENT_OPERATORS.contains(json.getStringExpression())) {
+            // JSONB and array containment or key existence
+            if (json.getLeftExpression() instanceof Column col) {
+                conditions.add(ParsedQuery.WhereCondition.builder()
+                        .column(col.getColumnName())
+                        .table(col.getTable() != null ? col.getTable().getName() : "")
+                        .operator(json.getStringExpression())
+                        .value(json.getRightExpression().toString())
+                        .isParameterized(json.getRightExpression() instanceof JdbcParameter)
+                        .build());
+            }
+        } else if (expression instanceof Matches matches) {
+            // Text search: tsvector @@ tsquery
+            if (matches.getLeftExpression() instanceof Column col) {
                 conditions.add(ParsedQuery.WhereCondition.builder()
                         .column(col.getColumnName())
                         .table(col.getTable() != null ? col.getTable().getName() : "")
-                        .operator("LIKE")
+                        .operator("@@")
+                        .value(matches.getRightExpression().toString())
+                        .build());
+            }
+        } else if (expression instanceof FullTextSearch search && search.getMatchColumns() != null) {
+            // MATCH (a, b) AGAINST (...): one condition per column, each listing the whole column set
+            List<String> matchColumns = search.getMatchColumns().stream().map(Column::getColumnName).toList();
+            for (Column col : search.getMatchColumns()) {
+                conditions.add(ParsedQuery.WhereCondition.builder()
+                        .column(col.getColumnName())
+                        .table(col.getTable() != null ? col.getTable().getName() : "")
+                        .operator("MATCH")
+                        .value(search.getAgainstValue() != null ? search.getAgainstValue().toString() : null)
+                        .values(matchColumns)
+                        .isParameterized(search.getAgainstValue() instanceof JdbcParameter)
                         .build());
             }
         } else if (expression instanceof IsNullExpression isNull) {
@@ -245,12 +342,6 @@ public class SQLParserEngine {
                         .operator(isNull.isNot() ? "IS NOT NULL" : "IS NULL")
                         .build());
             }
-        } else if (expression instanceof ExistsExpression exists) {
-            if (exists.getRightExpression() instanceof Select subSelect) {
-                ParsedQuery subquery = parse(subSelect.toString());
-                subquery.setSubqueryDepth(depth + 1);
-                subqueries.add(subquery);
-            }
         }
     }
 
@@ -308,12 +399,20 @@ public class SQLParserEngine {
         }
         builder.columns(columns);
 
-        // Parse WHERE clause
-        List<ParsedQuery.WhereCondition> conditions = new ArrayList<>();
+        // Parse WHERE clause, scalar subqueries in SET values count as well
+        SelectScope scope = new SelectScope(0, Set.of());
+        ExpressionScanner scanner = new ExpressionScanner(scope);
+        if (update.getUpdateSets() != null) {
+            update.getUpdateSets().forEach(set -> set.getValues().forEach(scanner::scan));
+        }
         if (update.getWhere() != null) {
-            parseWhereExpression(update.getWhere(), conditions, new ArrayList<>(), 0);
+            parseWhereExpression(update.getWhere(), scope.conditions);
+            scanner.scan(update.getWhere());
         }
-        builder.whereConditions(conditions);
+        builder.whereConditions(scope.conditions);
+        builder.subqueries(scope.subqueries);
+        builder.windowFunctions(scope.windowFunctions);
+        builder.caseExpressionCount(scope.caseExpressionCount);
     }
 
     private void parseDelete(Delete delete, ParsedQuery.ParsedQueryBuilder builder) {
@@ -322,10 +421,131 @@ public class SQLParserEngine {
         builder.tables(tables);
 
         // Parse WHERE clause
-        List<ParsedQuery.WhereCondition> conditions = new ArrayList<>();
+        SelectScope scope = new SelectScope(0, Set.of());
         if (delete.getWhere() != null) {
-            parseWhereExpression(delete.getWhere(), conditions, new ArrayList<>(), 0);
+            parseWhereExpression(delete.getWhere(), scope.conditions);
+            new ExpressionScanner(scope).scan(delete.getWhere());
+        }
+        builder.whereConditions(scope.conditions);
+        builder.subqueries(scope.subqueries);
+        builder.windowFunctions(scope.windowFunctions);
+        builder.caseExpressionCount(scope.caseExpressionCount);
+    }
+
+    // Everything extracted from one SELECT level, including all branches of a set operation
+    private static final class SelectScope {
+        private final int depth;
+        private final Set<String> outerCtes;
+        private final List<String> columns = new ArrayList<>();
+        private final List<String> aggregates = new ArrayList<>();
+        private final List<String> tables = new ArrayList<>();
+        private final List<ParsedQuery.JoinInfo> joins = new ArrayList<>();
+        private final List<ParsedQuery.WhereCondition> conditions = new ArrayList<>();
+        private final List<String> groupByColumns = new ArrayList<>();
+        private final List<String> orderByColumns = new ArrayList<>();
+        private final List<String> orderByDirections = new ArrayList<>();
+        private final List<ParsedQuery> subqueries = new ArrayList<>();
+        private final List<String> setOperations = new ArrayList<>();
+        private final List<String> cteNames = new ArrayList<>();
+        private final List<String> windowFunctions = new ArrayList<>();
+        // Table names and aliases in FROM, and the qualifiers used by column references
+        private final Set<String> localNames = new HashSet<>();
+        private final Set<String> qualifiers = new HashSet<>();
+        private int caseExpressionCount;
+        private boolean hasDistinct;
+        private boolean hasHaving;
+
+        SelectScope(int depth, Set<String> outerCtes) {
+            this.depth = depth;
+            this.outerCtes = outerCtes;
+        }
+
+        void defineCte(String name) {
+            cteNames.add(name);
+        }
+
+        boolean isCte(String name) {
+            String key = name.toLowerCase();
+            return outerCtes.contains(key) || cteNames.stream().anyMatch(cte -> cte.equalsIgnoreCase(key));
+        }
+
+        Set<String> visibleCtes() {
+            if (cteNames.isEmpty()) {
+                return outerCtes;
+            }
+            Set<String> visible = new HashSet<>(outerCtes);
+            cteNames.forEach(cte -> visible.add(cte.toLowerCase()));
+            return visible;
+        }
+
+        void applyTo(ParsedQuery.ParsedQueryBuilder builder) {
+            builder.columns(columns)
+                    .aggregateFunctions(aggregates)
+                    .tables(tables)
+                    .joins(joins)
+                    .whereConditions(conditions)
+                    .subqueries(subqueries)
+                    .orderByColumns(orderByColumns)
+                    .orderByDirections(orderByDirections)
+                    .setOperations(setOperations)
+                    .cteNames(cteNames)
+                    .windowFunctions(windowFunctions)
+                    .caseExpressionCount(caseExpressionCount)
+                    .hasDistinct(hasDistinct)
+                    .hasHaving(hasHaving)
+                    .correlated(!localNames.containsAll(qualifiers));
+            if (!groupByColumns.isEmpty()) {
+                builder.groupByColumns(groupByColumns);
+            }
+        }
+    }
+
+    // Walks an expression tree for CASE, window functions and subqueries in any position:
+    // SELECT list, function arguments, HAVING, ORDER BY, join conditions. Subqueries are
+    // parsed into their own ParsedQuery and not descended into here.
+    private final class ExpressionScanner extends ExpressionVisitorAdapter<Void> {
+        private final SelectScope scope;
+
+        ExpressionScanner(SelectScope scope) {
+            this.scope = scope;
+        }
+
+        void scan(Expression expression) {
+            if (expression != null) {
+                expression.accept(this, null);
+            }
+        }
+
+        @Override
+        public <S> Void visit(Column column, S context) {
+            if (column.getTable() != null && column.getTable().getName() != null) {
+                scope.qualifiers.add(column.getTable().getName().toLowerCase());
+            }
+            return null;
+        }
+
+        @Override
+        public <S> Void visit(CaseExpression expression, S context) {
+            scope.caseExpressionCount++;
+            return super.visit(expression, context);
+        }
+
+        @Override
+        public <S> Void visit(AnalyticExpression expression, S context) {
+            scope.windowFunctions.add(expression.getName());
+            return super.visit(expression, context);
+        }
+
+        @Override
+        public <S> Void visit(ParenthesedSelect select, S context) {
+            scope.subqueries.add(parseSubquery(select, scope));
+            return null;
+        }
+
+        @Override
+        public <S> Void visit(Select select, S context) {
+            scope.subqueries.add(parseSubquery(select, scope));
+            return null;
         }
-        builder.whereConditions(conditions);
     }
 }
@@ -0,0 +1,49 @@
+package com.example.querysence.parser;
+
+import com.example.querysence.exception.BadRequestException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Locale;
+
+@Slf4j
+public enum SqlDialect {
+    POSTGRESQL,
+    MYSQL,
+    ORACLE,
+    SQLSERVER;
+
+    // Matches the SchemaDefinition default
+    public static final SqlDialect DEFAULT = POSTGRESQL;
+
+    // For dialects given in a request
+    public static SqlDialect from(String name) {
+        SqlDialect dialect = lookup(name);
+        if (dialect == null) {
+            throw new BadRequestException("Unsupported SQL dialect: " + name);
+        }
+        return dialect;
+    }
+
+    // For dialects already stored on a schema, which predate validation and may be anything
+    public static SqlDialect fromStored(String name) {
+        SqlDialect dialect = lookup(name);
+        if (dialect == null) {
+            log.warn("Unsupported stored SQL dialect '{}', parsing as {}", name, DEFAULT);
+            return DEFAULT;
+        }
+        return dialect;
+    }
+
+    private static SqlDialect lookup(String name) {
+        if (name == null || name.isBlank()) {
+            return DEFAULT;
+        }
+        return switch (name.trim().toUpperCase(Locale.ROOT)) {
+            case "POSTGRESQL", "POSTGRES" -> POSTGRESQL;
+            case "MYSQL", "MARIADB" -> MYSQL;
+            case "ORACLE" -> ORACLE;
+            case "SQLSERVER", "SQL_SERVER", "MSSQL" -> SQLSERVER;
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,310 @@
+package com.example.querysence.parser;
+
+import org.springframework.stereotype.Component;
+
+import java.util.HexFormat;
+
+// Single-pass tokenizer that hashes a query's shape without building an AST.
+// Literals and bind parameters become '?', comments are dropped, keywords and
+// identifiers are lower-cased and whitespace is only kept between word tokens.
+@Component
+public class SqlFingerprinter {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final char PLACEHOLDER = '?';
+
+    public long fingerprint(CharSequence sql) {
+        return scan(sql, null);
+    }
+
+    public String fingerprintHex(CharSequence sql) {
+        return HexFormat.of().toHexDigits(fingerprint(sql));
+    }
+
+    public String normalize(CharSequence sql) {
+        StringBuilder out = new StringBuilder(Math.min(sql.length(), 4096));
+        scan(sql, out);
+        return out.toString();
+    }
+
+    // The query as written, literals and case included, with each whitespace run outside
+    // quotes reduced to one space
+    public static String collapseWhitespace(CharSequence sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        int len = sql.length();
+        int i = 0;
+        boolean pendingSpace = false;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c <= ' ') {
+                pendingSpace = out.length() > 0;
+                i++;
+                continue;
+            }
+            if (pendingSpace) {
+                out.append(' ');
+                pendingSpace = false;
+            }
+            int end = i + 1;
+            if (c == '\'' || c == '"' || c == '`') {
+                end = skipQuoted(sql, i + 1, c);
+            } else if (c == '$') {
+                end = Math.max(end, skipDollarQuoted(sql, i));
+            }
+            out.append(sql, i, end);
+            i = end;
+        }
+        return out.toString();
+    }
+
+    // Hashes the canonical form, appending it to out when out is not null
+    private long scan(CharSequence sql, StringBuilder out) {
+        long hash = FNV_OFFSET;
+        boolean lastWasWord = false;
+        int len = sql.length();
+        int i = 0;
+
+        while (i < len) {
+            char c = sql.charAt(i);
+
+            if (c <= ' ') {
+                i++;
+                continue;
+            }
+
+            // Comments
+            if (c == '-' && peek(sql, i + 1) == '-') {
+                i = skipLineComment(sql, i + 2);
+                continue;
+            }
+            if (c == '/' && peek(sql, i + 1) == '*') {
+                i = skipBlockComment(sql, i + 2);
+                continue;
+            }
+
+            // String literals
+            if (c == '\'') {
+                i = skipQuoted(sql, i + 1, '\'');
+                hash = placeholder(hash, lastWasWord, out);
+                lastWasWord = true;
+                continue;
+            }
+
+            // Quoted identifiers are case-sensitive and kept verbatim
+            if (c == '"' || c == '`') {
+                int end = skipQuoted(sql, i + 1, c);
+                if (lastWasWord) hash = mix(hash, ' ', out);
+                for (int j = i; j < end; j++) {
+                    hash = mix(hash, sql.charAt(j), out);
+                }
+                lastWasWord = true;
+                i = end;
+                continue;
+            }
+
+            // Numeric literals
+            if (isDigit(c) || (c == '.' && isDigit(peek(sql, i + 1)))) {
+                i = skipNumber(sql, i);
+                hash = placeholder(hash, lastWasWord, out);
+                lastWasWord = true;
+                continue;
+            }
+
+            // Bind parameters: ?, $1, :name and dollar-quoted strings
+            if (c == '?') {
+                i++;
+                hash = placeholder(hash, lastWasWord, out);
+                lastWasWord = true;
+                continue;
+            }
+            if (c == '$') {
+                int end = isDigit(peek(sql, i + 1)) ? skipDigits(sql, i + 1) : skipDollarQuoted(sql, i);
+                if (end > i) {
+                    i = end;
+                    hash = placeholder(hash, lastWasWord, out);
+                    lastWasWord = true;
+                    continue;
+                }
+            }
+            if (c == ':') {
+                if (peek(sql, i + 1) == ':') {
+                    // PostgreSQL cast
+                    hash = mix(mix(hash, ':', out), ':', out);
+                    lastWasWord = false;
+                    i += 2;
+                    continue;
+                }
+                if (isIdentifierStart(peek(sql, i + 1))) {
+                    i = skipIdentifier(sql, i + 1);
+                    hash = placeholder(hash, lastWasWord, out);
+                    lastWasWord = true;
+                    continue;
+                }
+            }
+
+            // Keywords and identifiers
+            if (isIdentifierStart(c)) {
+                int end = skipIdentifier(sql, i);
+                if (end == i + 1 && peek(sql, end) == '\'' && isStringPrefix(c)) {
+                    // E'..', N'..', X'..' and B'..' literals
+                    i = skipPrefixedString(sql, c, end + 1);
+                    hash = placeholder(hash, lastWasWord, out);
+                    lastWasWord = true;
+                    continue;
+                }
+                if (lastWasWord) hash = mix(hash, ' ', out);
+                for (int j = i; j < end; j++) {
+                    hash = mix(hash, toLowerAscii(sql.charAt(j)), out);
+                }
+                lastWasWord = true;
+                i = end;
+                continue;
+            }
+
+            // Operators and punctuation
+            hash = mix(hash, c, out);
+            lastWasWord = false;
+            i++;
+        }
+
+        return avalanche(hash);
+    }
+
+    private static long placeholder(long hash, boolean lastWasWord, StringBuilder out) {
+        if (lastWasWord) hash = mix(hash, ' ', out);
+        return mix(hash, PLACEHOLDER, out);
+    }
+
+    private static long mix(long hash, char c, StringBuilder out) {
+        if (out != null) out.append(c);
+        return (hash ^ c) * FNV_PRIME;
+    }
+
+    // MurmurHash3 finalizer, spreads FNV's weak low bits across the whole value
+    private static long avalanche(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    static char peek(CharSequence sql, int index) {
+        return index < sql.length() ? sql.charAt(index) : '\0';
+    }
+
+    static int skipLineComment(CharSequence sql, int i) {
+        int len = sql.length();
+        while (i < len && sql.charAt(i) != '\n') i++;
+        return i;
+    }
+
+    static int skipBlockComment(CharSequence sql, int i) {
+        int len = sql.length();
+        while (i < len - 1 && !(sql.charAt(i) == '*' && sql.charAt(i + 1) == '/')) i++;
+        return Math.min(i + 2, len);
+    }
+
+    // Returns the index after the closing quote, a doubled quote is an escaped quote
+    static int skipQuoted(CharSequence sql, int i, char quote) {
+        int len = sql.length();
+        while (i < len) {
+            if (sql.charAt(i) == quote) {
+                if (peek(sql, i + 1) != quote) return i + 1;
+                i++;
+            }
+            i++;
+        }
+        return len;
+    }
+
+    // Only E'..' strings take backslash escapes, so E'it\'s' is one literal
+    static int skipPrefixedString(CharSequence sql, char prefix, int i) {
+        if (toLowerAscii(prefix) != 'e') {
+            return skipQuoted(sql, i, '\'');
+        }
+        int len = sql.length();
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '\'') {
+                if (peek(sql, i + 1) != '\'') return i + 1;
+                i++;
+            }
+            i++;
+        }
+        return len;
+    }
+
+    // $tag$ ... $tag$, returns start when the '$' does not open a dollar quote
+    static int skipDollarQuoted(CharSequence sql, int start) {
+        int len = sql.length();
+        int tagEnd = start + 1;
+        while (tagEnd < len && isIdentifierPart(sql.charAt(tagEnd)) && sql.charAt(tagEnd) != '$') tagEnd++;
+        if (tagEnd >= len || sql.charAt(tagEnd) != '$') return start;
+
+        int tagLength = tagEnd - start + 1;
+        for (int i = tagEnd + 1; i + tagLength <= len; i++) {
+            if (sql.charAt(i) == '$' && regionMatches(sql, i, start, tagLength)) {
+                return i + tagLength;
+            }
+        }
+        return len;
+    }
+
+    private static boolean regionMatches(CharSequence sql, int from, int tagStart, int length) {
+        for (int k = 0; k < length; k++) {
+            if (sql.charAt(from + k) != sql.charAt(tagStart + k)) return false;
+        }
+        return true;
+    }
+
+    static int skipNumber(CharSequence sql, int i) {
+        int len = sql.length();
+        while (i < len && (isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+        if (i < len && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+            int j = i + 1;
+            if (j < len && (sql.charAt(j) == '+' || sql.charAt(j) == '-')) j++;
+            if (j < len && isDigit(sql.charAt(j))) i = skipDigits(sql, j);
+        }
+        return i;
+    }
+
+    static int skipDigits(CharSequence sql, int i) {
+        int len = sql.length();
+        while (i < len && isDigit(sql.charAt(i))) i++;
+        return i;
+    }
+
+    static int skipIdentifier(CharSequence sql, int i) {
+        int len = sql.length();
+        while (i < len && isIdentifierPart(sql.charAt(i))) i++;
+        return i;
+    }
+
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c > 127;
+    }
+
+    static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c) || c == '$';
+    }
+
+    static boolean isStringPrefix(char c) {
+        char lower = toLowerAscii(c);
+        return lower == 'e' || lower == 'n' || lower == 'x' || lower == 'b';
+    }
+
+    private static char toLowerAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c | 0x20) : c;
+    }
+}
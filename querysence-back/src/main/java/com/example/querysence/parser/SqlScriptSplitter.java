@@ -0,0 +1,83 @@
+package com.example.querysence.parser;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.querysence.parser.SqlFingerprinter.*;
+
+// Splits a script on top-level semicolons, ignoring those inside literals,
+// quoted identifiers, dollar-quoted bodies and comments. Unlike
+// CCJSqlParserUtil.parseStatements, one bad statement does not fail the whole script.
+@Component
+public class SqlScriptSplitter {
+
+    public List<String> split(CharSequence script) {
+        List<String> statements = new ArrayList<>();
+        for (Span span : spans(script)) {
+            statements.add(script.subSequence(span.start(), span.end()).toString());
+        }
+        return statements;
+    }
+
+    // Offsets of each statement, trimmed of surrounding whitespace and without the ';'
+    public List<Span> spans(CharSequence script) {
+        List<Span> statements = new ArrayList<>();
+        int len = script.length();
+        int start = 0;
+        boolean hasContent = false;
+        int i = 0;
+
+        while (i < len) {
+            char c = script.charAt(i);
+
+            if (c == ';') {
+                addStatement(script, start, i, hasContent, statements);
+                start = ++i;
+                hasContent = false;
+                continue;
+            }
+            if (c <= ' ') {
+                i++;
+                continue;
+            }
+            if (c == '-' && peek(script, i + 1) == '-') {
+                i = skipLineComment(script, i + 2);
+                continue;
+            }
+            if (c == '/' && peek(script, i + 1) == '*') {
+                i = skipBlockComment(script, i + 2);
+                continue;
+            }
+
+            hasContent = true;
+            if (c == '\'' && i > 0 && isStringPrefix(script.charAt(i - 1))
+                    && (i < 2 || !isIdentifierPart(script.charAt(i - 2)))) {
+                // E'..' may hide a ';' behind a backslash-escaped quote
+                i = skipPrefixedString(script, script.charAt(i - 1), i + 1);
+            } else if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(script, i + 1, c);
+            } else if (c == '$' && !isDigit(peek(script, i + 1))) {
+                int end = skipDollarQuoted(script, i);
+                i = end > i ? end : i + 1;
+            } else {
+                i++;
+            }
+        }
+        addStatement(script, start, len, hasContent, statements);
+        return statements;
+    }
+
+    private static void addStatement(CharSequence script, int start, int end, boolean hasContent, List<Span> statements) {
+        if (!hasContent) {
+            return;
+        }
+        while (script.charAt(start) <= ' ') start++;
+        while (script.charAt(end - 1) <= ' ') end--;
+        statements.add(new Span(start, end));
+    }
+
+    public record Span(int start, int end) {
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.querysence.parser;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Process-wide intern table mapping table, column and operator names to int ids.
+// Ids are never reused, so compact queries can hold them for their whole lifetime.
+@Component
+public class SymbolTable {
+
+    public static final int FULL = -1;
+
+    private final int maxSize;
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[1024];
+    private int size;
+
+    public SymbolTable(@Value("${analysis.symbols.max-size:1000000}") int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    // Returns the symbol's id, or FULL once the table has reached its size limit
+    public int id(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            if (size >= maxSize) {
+                return FULL;
+            }
+            String[] current = names;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                names = current;
+            }
+            current[size] = name;
+            ids.put(name, size);
+            return size++;
+        }
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.querysence.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.querysence.model.ColumnStatistics;
+
+@Repository
+public interface ColumnStatisticsRepository extends JpaRepository<ColumnStatistics, Long> {
+
+    Optional<ColumnStatistics> findByColumnId(Long columnId);
+
+    @Query("SELECT s FROM ColumnStatistics s " +
+           "JOIN FETCH s.column c " +
+           "JOIN FETCH c.table t " +
+           "WHERE t.schema.id = :schemaId")
+    List<ColumnStatistics> findBySchemaId(@Param("schemaId") Long schemaId);
+
+    // Statistics aren't cascaded from their column, so they go before the schema does
+    @Modifying
+    @Query("DELETE FROM ColumnStatistics s WHERE s.column.id IN " +
+           "(SELECT c.id FROM ColumnDefinition c WHERE c.table.schema.id = :schemaId)")
+    int deleteBySchemaId(@Param("schemaId") Long schemaId);
+
+    @Modifying
+    @Query("DELETE FROM ColumnStatistics s WHERE s.column.id IN " +
+           "(SELECT c.id FROM ColumnDefinition c WHERE c.table.schema.project.id = :projectId)")
+    int deleteByProjectId(@Param("projectId") Long projectId);
+}
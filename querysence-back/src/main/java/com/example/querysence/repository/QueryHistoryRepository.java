@@ -51,4 +51,15 @@ public interface QueryHistoryRepository extends JpaRepository<QueryHistory, Long
            "AND qh.executionTimeMs > (SELECT AVG(qh2.executionTimeMs) * 2 FROM QueryHistory qh2 " +
            "WHERE qh2.queryHash = qh.queryHash)")
     List<QueryHistory> findSlowQueriesByUser(User user);
+
+    // One row per fingerprint: hash, a sample text, executions, summed and counted timings, and
+    // a second sample text to tell literals that never change from ones the hash folded together
+    @Query("SELECT qh.queryHash, MIN(qh.queryText), COUNT(qh), SUM(qh.executionTimeMs), COUNT(qh.executionTimeMs), MAX(qh.queryText) " +
+           "FROM QueryHistory qh WHERE qh.project.id = :projectId GROUP BY qh.queryHash")
+    List<Object[]> summarizeWorkloadByProject(@Param("projectId") Long projectId);
+
+    @Query("SELECT qh.queryHash, MIN(qh.queryText), COUNT(qh), SUM(qh.executionTimeMs), COUNT(qh.executionTimeMs), MAX(qh.queryText) " +
+           "FROM QueryHistory qh WHERE qh.project.id = :projectId AND qh.analyzedAt >= :since GROUP BY qh.queryHash")
+    List<Object[]> summarizeWorkloadByProjectSince(@Param("projectId") Long projectId,
+                                                   @Param("since") LocalDateTime since);
 }
\ No newline at end of file
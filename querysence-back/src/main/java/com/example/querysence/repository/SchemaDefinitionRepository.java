@@ -4,7 +4,9 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.querysence.model.Project;
@@ -30,6 +32,18 @@ public interface SchemaDefinitionRepository extends JpaRepository<SchemaDefiniti
 
     @Query("SELECT s FROM SchemaDefinition s LEFT JOIN FETCH s.tables WHERE s.id = :id")
     Optional<SchemaDefinition> findByIdWithTables(Long id);
+
+    @Query("SELECT s.schemaVersion FROM SchemaDefinition s WHERE s.id = :id")
+    Optional<Long> findSchemaVersionById(Long id);
+
+    // One statement, so concurrent changes to a schema can't both read and write the same
+    // version; the row stays locked until the transaction commits
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE SchemaDefinition s SET s.schemaVersion = COALESCE(s.schemaVersion, 0) + 1 WHERE s.id = :id")
+    int incrementSchemaVersion(@Param("id") Long id);
+
+    @Query("SELECT s.dialect FROM SchemaDefinition s WHERE s.id = :id")
+    Optional<String> findDialectById(Long id);
     
     boolean existsByNameAndProject(String name, Project project);
 }
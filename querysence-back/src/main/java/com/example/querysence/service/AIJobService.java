@@ -0,0 +1,215 @@
+package com.example.querysence.service;
+
+import com.example.querysence.exception.AIServiceException;
+import com.example.querysence.exception.BadRequestException;
+import com.example.querysence.exception.ResourceNotFoundException;
+import com.example.querysence.model.dto.AIJobResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+// Runs AI work on the virtual-thread executor, away from request threads and from any
+// transaction. Callers either wait on the returned future or submit a job and poll or
+// subscribe to it by id. Jobs live in memory on the instance that accepted them: unfinished
+// ones are held until they finish, each user may only have a few of them, and finished ones
+// are dropped a while later, or sooner when too many are retained.
+@Service
+@Slf4j
+public class AIJobService {
+
+    private final ExecutorService aiJobExecutor;
+    private final MeterRegistry meterRegistry;
+    private final int maxActivePerUser;
+    private final int maxActive;
+    // Unfinished jobs stay out of the size-bounded cache, so eviction never loses one
+    private final Map<String, Job> active = new ConcurrentHashMap<>();
+    private final Map<String, Integer> activeByUser = new ConcurrentHashMap<>();
+    private final Cache<String, Job> jobs;
+
+    public AIJobService(@Qualifier("aiJobExecutor") ExecutorService aiJobExecutor,
+                        MeterRegistry meterRegistry,
+                        @Value("${ai.jobs.max-retained:10000}") long maxRetained,
+                        @Value("${ai.jobs.retention-minutes:60}") long retentionMinutes,
+                        @Value("${ai.jobs.max-active-per-user:5}") int maxActivePerUser,
+                        @Value("${ai.jobs.max-active:1000}") int maxActive) {
+        this.aiJobExecutor = aiJobExecutor;
+        this.meterRegistry = meterRegistry;
+        this.maxActivePerUser = maxActivePerUser;
+        this.maxActive = maxActive;
+        Gauge.builder("ai.jobs.active", active, Map::size).register(meterRegistry);
+        this.jobs = Caffeine.newBuilder()
+                .maximumSize(maxRetained)
+                .expireAfterWrite(Duration.ofMinutes(retentionMinutes))
+                .build();
+    }
+
+    public <T> CompletableFuture<T> run(String feature, Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(timed(feature, work), aiJobExecutor);
+        } catch (RejectedExecutionException e) {
+            throw new AIServiceException("AI service is shutting down. Please try again later.", e);
+        }
+    }
+
+    // Callers check the user's rate limit first; this bounds how many jobs are waiting
+    public AIJobResponse submit(String feature, String username, Supplier<?> work) {
+        if (active.size() >= maxActive) {
+            throw new AIServiceException("AI service is busy. Please try again shortly.");
+        }
+        activeByUser.compute(username, (user, count) -> {
+            int current = count != null ? count : 0;
+            if (current >= maxActivePerUser) {
+                throw new BadRequestException("Too many AI jobs in progress. Limit: " + maxActivePerUser);
+            }
+            return current + 1;
+        });
+        Job job = new Job(UUID.randomUUID().toString(), feature, username);
+        active.put(job.id, job);
+        CompletableFuture<?> future;
+        try {
+            future = run(feature, () -> {
+                job.status = "RUNNING";
+                return work.get();
+            });
+        } catch (RuntimeException e) {
+            release(job);
+            throw e;
+        }
+        future.whenComplete((result, error) -> {
+            if (error == null) {
+                job.succeed(result);
+            } else {
+                job.fail(error.getCause() != null ? error.getCause() : error);
+            }
+            // Retention counts from completion
+            jobs.put(job.id, job);
+            release(job);
+            job.finished.complete(job);
+        });
+        return job.view();
+    }
+
+    public AIJobResponse get(String id, String username) {
+        return job(id, username).view();
+    }
+
+    // The current state, then the final one once the job finishes
+    public Flux<AIJobResponse> subscribe(String id, String username) {
+        Job job = job(id, username);
+        AIJobResponse current = job.view();
+        if (job.finished.isDone()) {
+            return Flux.just(current);
+        }
+        return Flux.concat(Mono.just(current), Mono.fromFuture(job.finished).map(Job::view));
+    }
+
+    private void release(Job job) {
+        active.remove(job.id);
+        activeByUser.computeIfPresent(job.owner, (user, count) -> count > 1 ? count - 1 : null);
+    }
+
+    // Someone else's job is reported as missing rather than forbidden
+    private Job job(String id, String username) {
+        Job job = active.get(id);
+        if (job == null) {
+            job = jobs.getIfPresent(id);
+        }
+        if (job == null || !job.owner.equals(username)) {
+            throw new ResourceNotFoundException("AI job", "id", id);
+        }
+        return job;
+    }
+
+    private <T> Supplier<T> timed(String feature, Supplier<T> work) {
+        return () -> {
+            long startTime = System.nanoTime();
+            String outcome = "failure";
+            try {
+                T result = work.get();
+                outcome = "success";
+                return result;
+            } finally {
+                Timer.builder("ai.jobs.duration")
+                        .tag("feature", feature)
+                        .tag("outcome", outcome)
+                        .register(meterRegistry)
+                        .record(Duration.ofNanos(System.nanoTime() - startTime));
+            }
+        };
+    }
+
+    private static final class Job {
+        private final String id;
+        private final String feature;
+        private final String owner;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private final CompletableFuture<Job> finished = new CompletableFuture<>();
+        private volatile String status = "PENDING";
+        private volatile Object result;
+        private volatile String error;
+        private volatile Integer errorStatus;
+        private volatile LocalDateTime completedAt;
+
+        Job(String id, String feature, String owner) {
+            this.id = id;
+            this.feature = feature;
+            this.owner = owner;
+        }
+
+        void succeed(Object value) {
+            result = value;
+            completedAt = LocalDateTime.now();
+            status = "SUCCEEDED";
+        }
+
+        // Failures the API maps to a status keep their message, anything else is reported
+        // the way the exception handler reports it
+        void fail(Throwable cause) {
+            ResponseStatus responseStatus = AnnotatedElementUtils.findMergedAnnotation(cause.getClass(), ResponseStatus.class);
+            if (responseStatus != null) {
+                errorStatus = responseStatus.code().value();
+                error = cause.getMessage();
+            } else {
+                log.error("AI job {} ({}) failed: ", id, feature, cause);
+                errorStatus = HttpStatus.INTERNAL_SERVER_ERROR.value();
+                error = "An unexpected error occurred";
+            }
+            completedAt = LocalDateTime.now();
+            status = "FAILED";
+        }
+
+        AIJobResponse view() {
+            return AIJobResponse.builder()
+                    .id(id)
+                    .feature(feature)
+                    .status(status)
+                    .result(result)
+                    .error(error)
+                    .errorStatus(errorStatus)
+                    .submittedAt(submittedAt)
+                    .completedAt(completedAt)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.querysence.service;
+
+import com.example.querysence.exception.AIServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Identical AI requests arriving together share one provider call. On this instance the
+// first caller for a cache key runs the call and later ones wait on it; across instances
+// the first one sets a short-lived Redis marker, and the rest poll the response cache
+// until its result lands there. A waiter whose leader fails, or whose result never shows
+// up, makes the call itself, so coalescing can only save calls and never loses one.
+@Component
+@Slf4j
+public class AIRequestCoalescer {
+
+    // Deletes the marker only if it is still ours
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final AIResponseCache responseCache;
+    private final StringRedisTemplate redis;
+    private final MeterRegistry meterRegistry;
+    private final Duration markerTtl;
+    private final long pollMillis;
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    public AIRequestCoalescer(AIResponseCache responseCache,
+                              StringRedisTemplate redis,
+                              MeterRegistry meterRegistry,
+                              @Value("${ai.coalesce.marker-ttl-seconds:60}") long markerTtlSeconds,
+                              @Value("${ai.coalesce.poll-millis:200}") long pollMillis) {
+        this.responseCache = responseCache;
+        this.redis = redis;
+        this.meterRegistry = meterRegistry;
+        this.markerTtl = Duration.ofSeconds(markerTtlSeconds);
+        this.pollMillis = pollMillis;
+    }
+
+    // call must put its result in the response cache under key for other instances to see it
+    public <T> T coalesce(AIResponseCache.Key key, Class<T> type, Supplier<T> call) {
+        Flight flight = new Flight(key.text(), new CompletableFuture<>());
+        Flight leader = inFlight.putIfAbsent(key.redisKey(), flight);
+        if (leader != null) {
+            T shared = leader.text().equals(key.text()) ? await(leader, type) : null;
+            if (shared != null) {
+                count(key, "local");
+                return shared;
+            }
+            return call.get();
+        }
+        try {
+            T result = acrossInstances(key, type, call);
+            flight.result().complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            flight.result().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key.redisKey(), flight);
+        }
+    }
+
+    private <T> T acrossInstances(AIResponseCache.Key key, Class<T> type, Supplier<T> call) {
+        String marker = key.inFlightKey();
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = mark(marker, token);
+        if (Boolean.FALSE.equals(acquired)) {
+            T shared = awaitRemote(key, type, marker);
+            if (shared != null) {
+                count(key, "redis");
+                return shared;
+            }
+            return call.get();
+        }
+        try {
+            // The previous leader may have finished between our cache miss and the marker
+            T cached = Boolean.TRUE.equals(acquired) ? responseCache.peek(key, type) : null;
+            return cached != null ? cached : call.get();
+        } finally {
+            if (Boolean.TRUE.equals(acquired)) {
+                release(marker, token);
+            }
+        }
+    }
+
+    // null when Redis can't be used, so the caller goes ahead alone
+    private Boolean mark(String marker, String token) {
+        if (!responseCache.redisAvailable()) {
+            return null;
+        }
+        try {
+            return redis.opsForValue().setIfAbsent(marker, token, markerTtl);
+        } catch (RuntimeException e) {
+            responseCache.redisFailed(e);
+            return null;
+        }
+    }
+
+    private void release(String marker, String token) {
+        try {
+            redis.execute(RELEASE, List.of(marker), token);
+        } catch (RuntimeException e) {
+            // It expires on its own
+            log.debug("Could not release in-flight marker {}: {}", marker, e.getMessage());
+        }
+    }
+
+    private <T> T await(Flight leader, Class<T> type) {
+        try {
+            Object result = leader.result().get(markerTtl.toMillis(), TimeUnit.MILLISECONDS);
+            return type.isInstance(result) ? type.cast(result) : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AIServiceException("Interrupted while waiting for the AI service", e);
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    // Polls until the result is cached, or the marker is gone (the leader failed or its
+    // result wasn't cacheable), or the marker would have expired anyway
+    private <T> T awaitRemote(AIResponseCache.Key key, Class<T> type, String marker) {
+        long deadline = System.nanoTime() + markerTtl.toNanos();
+        try {
+            while (System.nanoTime() < deadline) {
+                Thread.sleep(pollMillis);
+                T result = responseCache.peek(key, type);
+                if (result != null) {
+                    return result;
+                }
+                if (!responseCache.redisAvailable() || !Boolean.TRUE.equals(redis.hasKey(marker))) {
+                    return responseCache.peek(key, type);
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AIServiceException("Interrupted while waiting for the AI service", e);
+        } catch (RuntimeException e) {
+            responseCache.redisFailed(e);
+            return null;
+        }
+    }
+
+    private void count(AIResponseCache.Key key, String source) {
+        Counter.builder("ai.coalesced.requests")
+                .tag("feature", key.feature())
+                .tag("source", source)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private record Flight(String text, CompletableFuture<Object> result) {
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.querysence.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// AI results in two tiers: an in-process cache in front of Redis shared by every instance.
+// Keys carry the prompt template version and the schema version, so entries are never
+// stale, only unused; each entry also keeps the text it was computed for, and a lookup
+// whose text differs (a fingerprint collision) is a miss. Redis failures degrade to the
+// local tier and Redis is skipped for a while after one.
+@Component
+@Slf4j
+public class AIResponseCache {
+
+    private static final String KEY_PREFIX = "querysence:ai:";
+    private static final String IN_FLIGHT_PREFIX = "querysence:ai-inflight:";
+
+    private final StringRedisTemplate redis;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, Stored> local;
+    private final Map<String, Duration> ttls;
+    private final boolean redisEnabled;
+    private final long redisBackoffMs;
+    private final Map<String, FeatureStats> stats = new ConcurrentHashMap<>();
+    private final Counter redisErrors;
+    private volatile long redisRetryAt;
+
+    public AIResponseCache(StringRedisTemplate redis,
+                           ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry,
+                           @Value("${ai.cache.local-max-size:2000}") long localMaxSize,
+                           @Value("${ai.cache.explain-ttl-minutes:1440}") long explainTtlMinutes,
+                           @Value("${ai.cache.optimize-ttl-minutes:360}") long optimizeTtlMinutes,
+                           @Value("${ai.cache.security-scan-ttl-minutes:1440}") long securityScanTtlMinutes,
+                           @Value("${ai.cache.redis-enabled:true}") boolean redisEnabled,
+                           @Value("${ai.cache.redis-backoff-seconds:30}") long redisBackoffSeconds) {
+        this.redis = redis;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.ttls = Map.of(
+                "EXPLAIN", Duration.ofMinutes(explainTtlMinutes),
+                "OPTIMIZE", Duration.ofMinutes(optimizeTtlMinutes),
+                "SECURITY_SCAN", Duration.ofMinutes(securityScanTtlMinutes));
+        this.redisEnabled = redisEnabled;
+        this.redisBackoffMs = Duration.ofSeconds(redisBackoffSeconds).toMillis();
+        // Each entry lives as long as its feature's TTL
+        this.local = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfter(new Expiry<String, Stored>() {
+                    @Override
+                    public long expireAfterCreate(String key, Stored value, long currentTime) {
+                        return value.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Stored value, long currentTime, long currentDuration) {
+                        return value.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Stored value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, "aiResponses");
+        this.redisErrors = Counter.builder("ai.cache.redis.errors").register(meterRegistry);
+    }
+
+    // null on a miss
+    public <T> T get(Key key, Class<T> type) {
+        FeatureStats featureStats = stats(key.feature());
+        Hit<T> hit = lookup(key, type);
+        if (hit == null) {
+            featureStats.miss();
+            return null;
+        }
+        featureStats.hit(hit.tier());
+        return hit.value();
+    }
+
+    // A lookup that isn't a request, for callers waiting on a result someone else computes
+    <T> T peek(Key key, Class<T> type) {
+        Hit<T> hit = lookup(key, type);
+        return hit != null ? hit.value() : null;
+    }
+
+    private <T> Hit<T> lookup(Key key, Class<T> type) {
+        String redisKey = key.redisKey();
+        Stored stored = local.getIfPresent(redisKey);
+        String tier = "local";
+        if (stored == null) {
+            stored = readRedis(redisKey);
+            tier = "redis";
+            if (stored != null) {
+                local.put(redisKey, stored.withTtl(ttl(key.feature())));
+            }
+        }
+        if (stored == null || !stored.text().equals(key.text())) {
+            return null;
+        }
+        try {
+            return new Hit<>(objectMapper.readValue(stored.payload(), type), tier);
+        } catch (JsonProcessingException e) {
+            log.warn("Dropping unreadable cached {} result: {}", key.feature(), e.getMessage());
+            local.invalidate(redisKey);
+            return null;
+        }
+    }
+
+    public void put(Key key, Object value) {
+        Duration ttl = ttl(key.feature());
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            log.warn("Not caching {} result: {}", key.feature(), e.getMessage());
+            return;
+        }
+        Stored stored = new Stored(key.text(), payload, ttl.toNanos());
+        String redisKey = key.redisKey();
+        local.put(redisKey, stored);
+        if (redisAvailable()) {
+            try {
+                redis.opsForValue().set(redisKey, objectMapper.writeValueAsString(stored), ttl);
+            } catch (RuntimeException | JsonProcessingException e) {
+                redisFailed(e);
+            }
+        }
+    }
+
+    private Stored readRedis(String redisKey) {
+        if (!redisAvailable()) {
+            return null;
+        }
+        try {
+            String json = redis.opsForValue().get(redisKey);
+            return json != null ? objectMapper.readValue(json, Stored.class) : null;
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring unreadable Redis entry {}: {}", redisKey, e.getMessage());
+            return null;
+        } catch (RuntimeException e) {
+            redisFailed(e);
+            return null;
+        }
+    }
+
+    boolean redisAvailable() {
+        return redisEnabled && System.currentTimeMillis() >= redisRetryAt;
+    }
+
+    void redisFailed(Exception e) {
+        redisErrors.increment();
+        redisRetryAt = System.currentTimeMillis() + redisBackoffMs;
+        log.warn("Redis unavailable for the AI cache, using the local tier for {} ms: {}", redisBackoffMs, e.getMessage());
+    }
+
+    private Duration ttl(String feature) {
+        return ttls.getOrDefault(feature, Duration.ofHours(1));
+    }
+
+    private FeatureStats stats(String feature) {
+        return stats.computeIfAbsent(feature, f -> new FeatureStats(f, meterRegistry));
+    }
+
+    // SHA-256 of the text, for keys where every character matters
+    public static String digest(String text) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    // identity names the input (fingerprint and/or digest), text is what it was computed from;
+    // schemaId is null for results that don't depend on a schema
+    public record Key(String feature, String promptVersion, Long schemaId, long schemaVersion,
+                      String identity, String text) {
+
+        String redisKey() {
+            return KEY_PREFIX + path();
+        }
+
+        // Marks a call for this key in progress somewhere in the cluster
+        String inFlightKey() {
+            return IN_FLIGHT_PREFIX + path();
+        }
+
+        private String path() {
+            return feature + ":" + promptVersion + ":"
+                    + (schemaId != null ? schemaId + "@" + schemaVersion : "-") + ":" + identity;
+        }
+    }
+
+    private record Hit<T>(T value, String tier) {
+    }
+
+    // ttlNanos is only used by the local tier
+    record Stored(String text, String payload, long ttlNanos) {
+
+        Stored withTtl(Duration ttl) {
+            return new Stored(text, payload, ttl.toNanos());
+        }
+    }
+
+    // Hits per tier and misses for one feature, plus their hit ratio
+    private static final class FeatureStats {
+        private final Counter localHits;
+        private final Counter redisHits;
+        private final Counter misses;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong lookups = new AtomicLong();
+
+        FeatureStats(String feature, MeterRegistry meterRegistry) {
+            localHits = requests(meterRegistry, feature, "local");
+            redisHits = requests(meterRegistry, feature, "redis");
+            misses = requests(meterRegistry, feature, "miss");
+            Gauge.builder("ai.cache.hit.ratio", this, FeatureStats::ratio)
+                    .tag("feature", feature)
+                    .register(meterRegistry);
+        }
+
+        private static Counter requests(MeterRegistry meterRegistry, String feature, String result) {
+            return Counter.builder("ai.cache.requests")
+                    .tag("feature", feature)
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+
+        void hit(String tier) {
+            (tier.equals("local") ? localHits : redisHits).increment();
+            hits.incrementAndGet();
+            lookups.incrementAndGet();
+        }
+
+        void miss() {
+            misses.increment();
+            lookups.incrementAndGet();
+        }
+
+        double ratio() {
+            long total = lookups.get();
+            return total > 0 ? (double) hits.get() / total : 0;
+        }
+    }
+}
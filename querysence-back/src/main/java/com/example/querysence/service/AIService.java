@@ -1,50 +1,62 @@
 package com.example.querysence.service;
 
 
+import com.example.querysence.ai.AIProviderClient;
 import com.example.querysence.ai.PromptTemplates;
-import com.example.querysence.exception.AIServiceException;
 import com.example.querysence.exception.BadRequestException;
 import com.example.querysence.exception.ResourceNotFoundException;
 import com.example.querysence.model.AIUsageLog;
-import com.example.querysence.model.SchemaDefinition;
 import com.example.querysence.model.User;
+import com.example.querysence.model.dto.AIStreamEvent;
 import com.example.querysence.model.dto.ExplainResponse;
 import com.example.querysence.model.dto.NLToSQLRequest;
 import com.example.querysence.model.dto.NLToSQLResponse;
 import com.example.querysence.model.dto.OptimizationResponse;
 import com.example.querysence.model.dto.SecurityScanRequest;
 import com.example.querysence.model.dto.SecurityScanResponse;
+import com.example.querysence.parser.SqlDialect;
+import com.example.querysence.parser.SqlFingerprinter;
 import com.example.querysence.repository.AIUsageLogRepository;
-import com.example.querysence.repository.SchemaDefinitionRepository;
 import com.example.querysence.repository.UserRepository;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class AIService {
 
-    private final ChatClient.Builder chatClientBuilder;
-    private final SchemaDefinitionRepository schemaRepository;
+    private final AIProviderClient aiProvider;
+    private final SchemaCatalogCache catalogCache;
     private final UserRepository userRepository;
     private final AIUsageLogRepository aiUsageLogRepository;
     private final ObjectMapper objectMapper;
     private final QueryParserService queryParserService;
+    private final AIResponseCache responseCache;
+    private final AIRequestCoalescer coalescer;
+    private final MeterRegistry meterRegistry;
+    private final PlatformTransactionManager transactionManager;
 
     @Value("${ai.rate-limit.daily-requests:100}")
     private int dailyRequestLimit;
 
-    @Transactional
     public NLToSQLResponse convertNaturalLanguageToSQL(NLToSQLRequest request, String username) {
         checkRateLimit(username);
 
@@ -52,17 +64,17 @@ public class AIService {
         String dialect = "POSTGRESQL";
         
         if (request.getSchemaId() != null) {
-            SchemaDefinition schema = schemaRepository.findByIdWithFullDetails(request.getSchemaId())
+            SchemaCatalog schema = catalogCache.get(request.getSchemaId())
                     .orElseThrow(() -> new ResourceNotFoundException("Schema", "id", request.getSchemaId()));
             schemaDescription = buildSchemaDescription(schema);
-            dialect = schema.getDialect();
+            dialect = schema.dialect();
         }
 
         String prompt = String.format(PromptTemplates.NL_TO_SQL_PROMPT, 
                 schemaDescription, request.getQuery(), dialect);
 
         long startTime = System.currentTimeMillis();
-        String generatedSql = callAI(prompt, username, "NL_TO_SQL");
+        String generatedSql = aiProvider.call("NL_TO_SQL", prompt);
         long responseTime = System.currentTimeMillis() - startTime;
 
         generatedSql = cleanSqlResponse(generatedSql);
@@ -87,21 +99,148 @@ public class AIService {
                 .build();
     }
 
-    @Cacheable(value = "queryExplanations", key = "#sql.hashCode()")
-    @Transactional
     public ExplainResponse explainQuery(String sql, String username) {
+        AIResponseCache.Key cacheKey = sqlCacheKey("EXPLAIN", PromptTemplates.EXPLAIN_SQL_PROMPT, sql, null);
+        ExplainResponse cached = responseCache.get(cacheKey, ExplainResponse.class);
+        if (cached != null) {
+            return cached;
+        }
+        return coalescer.coalesce(cacheKey, ExplainResponse.class, () -> {
+            checkRateLimit(username);
+
+            String prompt = String.format(PromptTemplates.EXPLAIN_SQL_PROMPT, sql);
+
+            long startTime = System.currentTimeMillis();
+            String response = aiProvider.call("EXPLAIN", prompt);
+            long responseTime = System.currentTimeMillis() - startTime;
+
+            logUsage(username, "EXPLAIN", responseTime);
+
+            return parseExplanation(response, cacheKey);
+        });
+    }
+
+    // Tokens as they are generated, then the parsed explanation; a cached one is sent alone
+    public Flux<AIStreamEvent> streamExplainQuery(String sql, String username) {
+        AIResponseCache.Key cacheKey = sqlCacheKey("EXPLAIN", PromptTemplates.EXPLAIN_SQL_PROMPT, sql, null);
+        ExplainResponse cached = responseCache.get(cacheKey, ExplainResponse.class);
+        if (cached != null) {
+            return Flux.just(AIStreamEvent.result(cached));
+        }
         checkRateLimit(username);
 
         String prompt = String.format(PromptTemplates.EXPLAIN_SQL_PROMPT, sql);
+        return streamWithResult(prompt, username, "EXPLAIN", response -> parseExplanation(response, cacheKey));
+    }
+
+    public OptimizationResponse optimizeQuery(String sql, Long schemaId, String username) {
+        SchemaCatalog schema = schemaId != null ? catalog(schemaId) : null;
+
+        AIResponseCache.Key cacheKey = sqlCacheKey("OPTIMIZE", PromptTemplates.OPTIMIZE_SQL_PROMPT, sql, schema);
+        OptimizationResponse cached = responseCache.get(cacheKey, OptimizationResponse.class);
+        if (cached != null) {
+            return cached;
+        }
+        return coalescer.coalesce(cacheKey, OptimizationResponse.class, () -> {
+            checkRateLimit(username);
+
+            String prompt = optimizePrompt(sql, schema);
+
+            long startTime = System.currentTimeMillis();
+            String response = aiProvider.call("OPTIMIZE", prompt);
+            long responseTime = System.currentTimeMillis() - startTime;
+
+            logUsage(username, "OPTIMIZE", responseTime);
+
+            return parseOptimization(response, cacheKey);
+        });
+    }
+
+    public Flux<AIStreamEvent> streamOptimizeQuery(String sql, Long schemaId, String username) {
+        SchemaCatalog schema = schemaId != null ? catalog(schemaId) : null;
+
+        AIResponseCache.Key cacheKey = sqlCacheKey("OPTIMIZE", PromptTemplates.OPTIMIZE_SQL_PROMPT, sql, schema);
+        OptimizationResponse cached = responseCache.get(cacheKey, OptimizationResponse.class);
+        if (cached != null) {
+            return Flux.just(AIStreamEvent.result(cached));
+        }
+        checkRateLimit(username);
+
+        String prompt = optimizePrompt(sql, schema);
+        return streamWithResult(prompt, username, "OPTIMIZE", response -> parseOptimization(response, cacheKey));
+    }
+
+    public SecurityScanResponse scanForSecurity(SecurityScanRequest request, String username) {
+        // Every character of scanned code can matter, so it is keyed by its exact text
+        String scanned = request.getCode() + "\u0000" + request.getContext();
+        String digest = AIResponseCache.digest(scanned);
+        AIResponseCache.Key cacheKey = new AIResponseCache.Key("SECURITY_SCAN",
+                PromptTemplates.version(PromptTemplates.SECURITY_SCAN_PROMPT), null, 0, digest, digest);
+        SecurityScanResponse cached = responseCache.get(cacheKey, SecurityScanResponse.class);
+        if (cached != null) {
+            return cached;
+        }
+        return coalescer.coalesce(cacheKey, SecurityScanResponse.class, () -> {
+            checkRateLimit(username);
+
+            String prompt = String.format(PromptTemplates.SECURITY_SCAN_PROMPT,
+                    request.getCode(), request.getContext());
+
+            long startTime = System.currentTimeMillis();
+            String response = aiProvider.call("SECURITY_SCAN", prompt);
+            long responseTime = System.currentTimeMillis() - startTime;
+
+            logUsage(username, "SECURITY_SCAN", responseTime);
+
+            return parseSecurityScan(response, cacheKey);
+        });
+    }
+
+    public String chat(String message, Long schemaId, String conversationHistory, String username) {
+        checkRateLimit(username);
+
+        String prompt = chatPrompt(message, schemaId, conversationHistory);
 
         long startTime = System.currentTimeMillis();
-        String response = callAI(prompt, username, "EXPLAIN");
+        String response = aiProvider.call("CHAT", prompt);
         long responseTime = System.currentTimeMillis() - startTime;
 
-        logUsage(username, "EXPLAIN", responseTime);
+        logUsage(username, "CHAT", responseTime);
+
+        return response;
+    }
+
+    public Flux<AIStreamEvent> streamChat(String message, Long schemaId, String conversationHistory, String username) {
+        checkRateLimit(username);
+
+        String prompt = chatPrompt(message, schemaId, conversationHistory);
+        return streamAI(prompt, username, "CHAT")
+                .map(AIStreamEvent::token)
+                .onErrorResume(e -> Flux.just(streamError("CHAT", e)));
+    }
+
+    private String chatPrompt(String message, Long schemaId, String conversationHistory) {
+        String schemaDescription = schemaId != null ? buildSchemaDescription(catalog(schemaId)) : "No schema loaded";
+        return String.format(PromptTemplates.CHAT_CONTEXT_PROMPT,
+                schemaDescription, conversationHistory, message);
+    }
+
+    private String optimizePrompt(String sql, SchemaCatalog schema) {
+        String schemaDescription = schema != null ? buildSchemaDescription(schema) : "";
+        String tableStats = schema != null ? buildTableStats(schema) : "No statistics available";
+        return String.format(PromptTemplates.OPTIMIZE_SQL_PROMPT, sql, schemaDescription, tableStats);
+    }
+
+    private SchemaCatalog catalog(Long schemaId) {
+        return catalogCache.get(schemaId)
+                .orElseThrow(() -> new ResourceNotFoundException("Schema", "id", schemaId));
+    }
 
+    private ExplainResponse parseExplanation(String response, AIResponseCache.Key cacheKey) {
         try {
-            return objectMapper.readValue(cleanJsonResponse(response), ExplainResponse.class);
+            ExplainResponse explanation = objectMapper.readValue(cleanJsonResponse(response), ExplainResponse.class);
+            responseCache.put(cacheKey, explanation);
+            return explanation;
         } catch (JsonProcessingException e) {
             log.error("Failed to parse AI response for explain: {}", e.getMessage());
             return ExplainResponse.builder()
@@ -111,30 +250,11 @@ public class AIService {
         }
     }
 
-    @Transactional
-    public OptimizationResponse optimizeQuery(String sql, Long schemaId, String username) {
-        checkRateLimit(username);
-
-        String schemaDescription = "";
-        String tableStats = "No statistics available";
-        
-        if (schemaId != null) {
-            SchemaDefinition schema = schemaRepository.findByIdWithFullDetails(schemaId)
-                    .orElseThrow(() -> new ResourceNotFoundException("Schema", "id", schemaId));
-            schemaDescription = buildSchemaDescription(schema);
-            tableStats = buildTableStats(schema);
-        }
-
-        String prompt = String.format(PromptTemplates.OPTIMIZE_SQL_PROMPT, sql, schemaDescription, tableStats);
-
-        long startTime = System.currentTimeMillis();
-        String response = callAI(prompt, username, "OPTIMIZE");
-        long responseTime = System.currentTimeMillis() - startTime;
-
-        logUsage(username, "OPTIMIZE", responseTime);
-
+    private OptimizationResponse parseOptimization(String response, AIResponseCache.Key cacheKey) {
         try {
-            return objectMapper.readValue(cleanJsonResponse(response), OptimizationResponse.class);
+            OptimizationResponse optimization = objectMapper.readValue(cleanJsonResponse(response), OptimizationResponse.class);
+            responseCache.put(cacheKey, optimization);
+            return optimization;
         } catch (JsonProcessingException e) {
             log.error("Failed to parse AI response for optimize: {}", e.getMessage());
             return OptimizationResponse.builder()
@@ -143,21 +263,11 @@ public class AIService {
         }
     }
 
-    @Transactional
-    public SecurityScanResponse scanForSecurity(SecurityScanRequest request, String username) {
-        checkRateLimit(username);
-
-        String prompt = String.format(PromptTemplates.SECURITY_SCAN_PROMPT, 
-                request.getCode(), request.getContext());
-
-        long startTime = System.currentTimeMillis();
-        String response = callAI(prompt, username, "SECURITY_SCAN");
-        long responseTime = System.currentTimeMillis() - startTime;
-
-        logUsage(username, "SECURITY_SCAN", responseTime);
-
+    private SecurityScanResponse parseSecurityScan(String response, AIResponseCache.Key cacheKey) {
         try {
-            return objectMapper.readValue(cleanJsonResponse(response), SecurityScanResponse.class);
+            SecurityScanResponse scan = objectMapper.readValue(cleanJsonResponse(response), SecurityScanResponse.class);
+            responseCache.put(cacheKey, scan);
+            return scan;
         } catch (JsonProcessingException e) {
             log.error("Failed to parse AI response for security scan: {}", e.getMessage());
             return SecurityScanResponse.builder()
@@ -167,51 +277,72 @@ public class AIService {
         }
     }
 
-    @Transactional
-    public String chat(String message, Long schemaId, String conversationHistory, String username) {
-        checkRateLimit(username);
-
-        String schemaDescription = "No schema loaded";
-        if (schemaId != null) {
-            SchemaDefinition schema = schemaRepository.findByIdWithFullDetails(schemaId)
-                    .orElseThrow(() -> new ResourceNotFoundException("Schema", "id", schemaId));
-            schemaDescription = buildSchemaDescription(schema);
-        }
-
-        String prompt = String.format(PromptTemplates.CHAT_CONTEXT_PROMPT, 
-                schemaDescription, conversationHistory, message);
-
-        long startTime = System.currentTimeMillis();
-        String response = callAI(prompt, username, "CHAT");
-        long responseTime = System.currentTimeMillis() - startTime;
+    // Streams the tokens, then parses everything that was generated into the final result
+    private Flux<AIStreamEvent> streamWithResult(String prompt, String username, String feature,
+                                                 Function<String, Object> parser) {
+        return Flux.defer(() -> {
+            StringBuilder response = new StringBuilder();
+            return streamAI(prompt, username, feature)
+                    .doOnNext(response::append)
+                    .map(AIStreamEvent::token)
+                    // Parsing caches the result, which may reach Redis
+                    .concatWith(Mono.fromCallable(() -> AIStreamEvent.result(parser.apply(response.toString())))
+                            .subscribeOn(Schedulers.boundedElastic()));
+        }).onErrorResume(e -> Flux.just(streamError(feature, e)));
+    }
 
-        logUsage(username, "CHAT", responseTime);
+    // Usage is logged once the stream ends, also when the client goes away mid-stream since
+    // the tokens were generated anyway; the time to the first token is what the user waits for
+    private Flux<String> streamAI(String prompt, String username, String feature) {
+        return Flux.defer(() -> {
+            long startTime = System.nanoTime();
+            AtomicBoolean first = new AtomicBoolean(true);
+            Timer firstToken = Timer.builder("ai.stream.first.token")
+                    .tag("feature", feature)
+                    .register(meterRegistry);
+            return aiProvider.stream(feature, prompt)
+                    .doOnNext(token -> {
+                        if (first.compareAndSet(true, false)) {
+                            firstToken.record(Duration.ofNanos(System.nanoTime() - startTime));
+                        }
+                    })
+                    .doFinally(signal -> {
+                        if (signal != SignalType.ON_ERROR) {
+                            long responseTime = Duration.ofNanos(System.nanoTime() - startTime).toMillis();
+                            // Off the HTTP client's event loop, the log is a blocking JPA write
+                            Schedulers.boundedElastic().schedule(() -> logUsage(username, feature, responseTime));
+                        }
+                    });
+        });
+    }
 
-        return response;
+    private AIStreamEvent streamError(String feature, Throwable e) {
+        log.warn("AI stream failed ({}): {}", feature, e.getMessage());
+        return AIStreamEvent.error("AI service temporarily unavailable. Please try again later.");
     }
 
-   private String callAI(String prompt, String username, String feature) {
-    int retries = 3;
-    while (retries > 0) {
+    // Keyed by the canonical fingerprint plus a digest of the query as written: answers can
+    // quote literal values and explain the exact predicate, so only the same literals share
+    // one. Text that doesn't parse is fingerprinted by the tokenizer instead.
+    private AIResponseCache.Key sqlCacheKey(String feature, String template, String sql, SchemaCatalog schema) {
+        SqlDialect dialect = schema != null ? SqlDialect.fromStored(schema.dialect()) : SqlDialect.DEFAULT;
+        String text = SqlFingerprinter.collapseWhitespace(sql);
+        String fingerprint = null;
         try {
-            ChatClient chatClient = chatClientBuilder.build();
-            return chatClient.prompt()
-                    .user(prompt)
-                    .call()
-                    .content();
-        } catch (Exception e) {
-            retries--;
-            log.warn("AI call failed ({}), retries left {}: {}", feature, retries, e.getMessage());
-            if (retries == 0) throw new AIServiceException(
-                "AI service temporarily unavailable. Please try again later.");
-            try { Thread.sleep(2000); } catch (InterruptedException ignored) {}
+            fingerprint = queryParserService.parseQuery(sql, dialect).getCanonicalHash();
+        } catch (RuntimeException e) {
+            log.debug("Caching unparsable {} input by its text: {}", feature, e.getMessage());
+        }
+        if (fingerprint == null) {
+            fingerprint = queryParserService.computeFingerprint(text);
         }
+        String identity = fingerprint + "-" + AIResponseCache.digest(text).substring(0, 16);
+        return new AIResponseCache.Key(feature, PromptTemplates.version(template),
+                schema != null ? schema.schemaId() : null, schema != null ? schema.version() : 0,
+                identity, text);
     }
-    throw new AIServiceException("Unexpected AI service failure.");
-}
 
-
-    private void checkRateLimit(String username) {
+    public void checkRateLimit(String username) {
         User user = userRepository.findByFullName(username)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
 
@@ -223,36 +354,40 @@ public class AIService {
         }
     }
 
+    // The only write, in a transaction of its own; nothing here holds a connection while
+    // the model is generating
     private void logUsage(String username, String feature, long responseTimeMs) {
         try {
-            User user = userRepository.findByFullName(username).orElse(null);
-            AIUsageLog log = AIUsageLog.builder()
-                    .user(user)
-                    .feature(feature)
-                    .responseTimeMs(responseTimeMs)
-                    .modelUsed("gpt-4")
-                    .build();
-            aiUsageLogRepository.save(log);
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                User user = userRepository.findByFullName(username).orElse(null);
+                AIUsageLog log = AIUsageLog.builder()
+                        .user(user)
+                        .feature(feature)
+                        .responseTimeMs(responseTimeMs)
+                        .modelUsed("gpt-4")
+                        .build();
+                aiUsageLogRepository.save(log);
+            });
         } catch (Exception e) {
             log.warn("Failed to log AI usage: {}", e.getMessage());
         }
     }
 
-    private String buildSchemaDescription(SchemaDefinition schema) {
+    private String buildSchemaDescription(SchemaCatalog schema) {
         StringBuilder sb = new StringBuilder();
-        sb.append("Database: ").append(schema.getName()).append("\n");
-        sb.append("Dialect: ").append(schema.getDialect()).append("\n\n");
+        sb.append("Database: ").append(schema.name()).append("\n");
+        sb.append("Dialect: ").append(schema.dialect()).append("\n\n");
 
-        for (var table : schema.getTables()) {
-            sb.append("Table: ").append(table.getTableName()).append("\n");
+        for (var table : schema.tables()) {
+            sb.append("Table: ").append(table.name()).append("\n");
             sb.append("Columns:\n");
-            for (var col : table.getColumns()) {
-                sb.append("  - ").append(col.getColumnName())
-                  .append(" (").append(col.getDataType()).append(")");
-                if (col.getIsPrimaryKey()) sb.append(" PRIMARY KEY");
-                if (col.getIsForeignKey()) {
-                    sb.append(" REFERENCES ").append(col.getReferencesTable())
-                      .append("(").append(col.getReferencesColumn()).append(")");
+            for (var col : table.columns()) {
+                sb.append("  - ").append(col.name())
+                  .append(" (").append(col.dataType()).append(")");
+                if (col.primaryKey()) sb.append(" PRIMARY KEY");
+                if (col.foreignKey()) {
+                    sb.append(" REFERENCES ").append(col.referencesTable())
+                      .append("(").append(col.referencesColumn()).append(")");
                 }
                 sb.append("\n");
             }
@@ -261,11 +396,11 @@ public class AIService {
         return sb.toString();
     }
 
-    private String buildTableStats(SchemaDefinition schema) {
+    private String buildTableStats(SchemaCatalog schema) {
         StringBuilder sb = new StringBuilder();
-        for (var table : schema.getTables()) {
-            sb.append(table.getTableName()).append(": ")
-              .append(table.getEstimatedRows()).append(" rows\n");
+        for (var table : schema.tables()) {
+            sb.append(table.name()).append(": ")
+              .append(table.estimatedRows()).append(" rows\n");
         }
         return sb.toString();
     }
@@ -0,0 +1,417 @@
+package com.example.querysence.service;
+
+import com.example.querysence.exception.BadRequestException;
+import com.example.querysence.exception.ResourceNotFoundException;
+import com.example.querysence.model.ColumnDefinition;
+import com.example.querysence.model.ColumnStatistics;
+import com.example.querysence.model.SchemaDefinition;
+import com.example.querysence.model.TableDefinition;
+import com.example.querysence.model.dto.StatisticsImportResponse;
+import com.example.querysence.model.dto.StatisticsSampleRequest;
+import com.example.querysence.repository.ColumnStatisticsRepository;
+import com.example.querysence.repository.SchemaDefinitionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+// Stores per-column statistics, either imported from a pg_stats export or collected by
+// reservoir-sampling the tables of a configured database, and serves them to the estimators.
+// Changing statistics bumps the schema version, so cached analyses are recomputed.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ColumnStatisticsService {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][\\w$]*");
+
+    private final SchemaDefinitionRepository schemaRepository;
+    private final ColumnStatisticsRepository statisticsRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${statistics.sampling.url:}")
+    private String samplingUrl;
+
+    @Value("${statistics.sampling.username:}")
+    private String samplingUsername;
+
+    @Value("${statistics.sampling.password:}")
+    private String samplingPassword;
+
+    // Same default as PostgreSQL's ANALYZE: 300 x default_statistics_target
+    @Value("${statistics.sampling.sample-size:30000}")
+    private int defaultSampleSize;
+
+    // The reservoir is held in memory, so requested sizes are capped
+    @Value("${statistics.sampling.max-sample-size:300000}")
+    private int maxSampleSize;
+
+    // Bounds the full scan of each sampled table
+    @Value("${statistics.sampling.query-timeout-seconds:120}")
+    private int queryTimeoutSeconds;
+
+    @Value("${statistics.histogram-buckets:100}")
+    private int histogramBuckets;
+
+    @Value("${statistics.mcv-size:100}")
+    private int mcvSize;
+
+    // Statistics of a schema keyed by lower-case table, then column name
+    public Map<String, Map<String, ColumnStatistics>> forSchema(Long schemaId) {
+        Map<String, Map<String, ColumnStatistics>> byTable = new HashMap<>();
+        if (schemaId == null) {
+            return byTable;
+        }
+        for (ColumnStatistics statistics : statisticsRepository.findBySchemaId(schemaId)) {
+            ColumnDefinition column = statistics.getColumn();
+            byTable.computeIfAbsent(column.getTable().getTableName().toLowerCase(Locale.ROOT), k -> new HashMap<>())
+                    .put(column.getColumnName().toLowerCase(Locale.ROOT), statistics);
+        }
+        return byTable;
+    }
+
+    // Expects the columns of pg_stats with a header row, e.g. from
+    // \copy (SELECT * FROM pg_stats WHERE schemaname = 'public') TO 'stats.csv' CSV HEADER
+    public StatisticsImportResponse importPgStats(Long schemaId, InputStream csv, String username) {
+        findOwnedSchema(schemaId, username);
+
+        List<List<String>> rows;
+        try (Reader reader = new InputStreamReader(csv, StandardCharsets.UTF_8)) {
+            rows = readCsv(reader);
+        } catch (IOException e) {
+            throw new BadRequestException("Could not read statistics file: " + e.getMessage(), e);
+        }
+        if (rows.isEmpty()) {
+            throw new BadRequestException("Statistics file is empty");
+        }
+
+        Map<String, Integer> header = new HashMap<>();
+        for (int i = 0; i < rows.get(0).size(); i++) {
+            header.put(rows.get(0).get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!header.containsKey("tablename") || !header.containsKey("attname")) {
+            throw new BadRequestException("Statistics file needs tablename and attname columns");
+        }
+
+        Map<String, ColumnStatistics> collected = new HashMap<>();
+        for (List<String> row : rows.subList(1, rows.size())) {
+            // Inheritance-tree rows describe parent plus children, the plain rows describe the table
+            String inherited = field(row, header, "inherited");
+            if (inherited != null && (inherited.equals("t") || inherited.equalsIgnoreCase("true"))) {
+                continue;
+            }
+            String table = field(row, header, "tablename");
+            String column = field(row, header, "attname");
+            if (table == null || column == null) {
+                continue;
+            }
+            collected.put(key(table, column), ColumnStatistics.builder()
+                    .source("PG_STATS")
+                    .nullFraction(parseDouble(field(row, header, "null_frac")))
+                    .distinctCount(parseDouble(field(row, header, "n_distinct")))
+                    .mostCommonValues(parseArray(field(row, header, "most_common_vals")))
+                    .mostCommonFrequencies(parseArray(field(row, header, "most_common_freqs")).stream()
+                            .map(Double::parseDouble)
+                            .toList())
+                    .histogramBounds(parseArray(field(row, header, "histogram_bounds")))
+                    .correlation(parseDouble(field(row, header, "correlation")))
+                    .build());
+        }
+        return store(schemaId, "PG_STATS", collected, Map.of());
+    }
+
+    public StatisticsImportResponse sample(Long schemaId, StatisticsSampleRequest request, String username) {
+        if (samplingUrl == null || samplingUrl.isBlank()) {
+            throw new BadRequestException("No sampling datasource configured (statistics.sampling.url)");
+        }
+        SchemaDefinition schema = findOwnedSchema(schemaId, username);
+        int sampleSize = Math.min(maxSampleSize, request.getSampleSize() != null && request.getSampleSize() > 0
+                ? request.getSampleSize() : defaultSampleSize);
+
+        List<TableDefinition> tables = schema.getTables().stream()
+                .filter(t -> request.getTableName() == null || request.getTableName().isBlank()
+                        || t.getTableName().equalsIgnoreCase(request.getTableName()))
+                .toList();
+        if (tables.isEmpty()) {
+            throw new ResourceNotFoundException("Table", "name", request.getTableName());
+        }
+
+        // Sampling reads whole tables, so it runs outside any transaction of the application database
+        Map<String, ColumnStatistics> collected = new HashMap<>();
+        Map<String, Long> rowCounts = new HashMap<>();
+        try (Connection connection = DriverManager.getConnection(samplingUrl, samplingUsername, samplingPassword)) {
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            for (TableDefinition table : tables) {
+                sampleTable(connection, table, sampleSize, collected, rowCounts);
+            }
+        } catch (SQLException e) {
+            throw new BadRequestException("Sampling failed: " + e.getMessage(), e);
+        }
+        return store(schemaId, "SAMPLE", collected, rowCounts);
+    }
+
+    // One pass over the table with Algorithm R: row i replaces a random slot with probability k/i,
+    // so every row ends up in the sample with the same probability whatever the table size
+    private void sampleTable(Connection connection, TableDefinition table, int sampleSize,
+                             Map<String, ColumnStatistics> collected, Map<String, Long> rowCounts) throws SQLException {
+        List<String> columns = table.getColumns().stream().map(ColumnDefinition::getColumnName).toList();
+        if (columns.isEmpty()) {
+            return;
+        }
+        String sql = "SELECT " + String.join(", ", columns.stream().map(ColumnStatisticsService::quote).toList())
+                + " FROM " + quote(table.getTableName());
+
+        List<String[]> reservoir = new ArrayList<>(Math.min(sampleSize, 1 << 16));
+        List<Long> positions = new ArrayList<>(Math.min(sampleSize, 1 << 16));
+        long seen = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            // A fetch size makes the PostgreSQL driver stream instead of loading the table
+            statement.setFetchSize(1000);
+            statement.setQueryTimeout(queryTimeoutSeconds);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    int slot = seen < sampleSize ? (int) seen : (int) random.nextLong(seen + 1);
+                    if (slot < sampleSize) {
+                        String[] row = new String[columns.size()];
+                        for (int i = 0; i < row.length; i++) {
+                            row[i] = rs.getString(i + 1);
+                        }
+                        if (seen < sampleSize) {
+                            reservoir.add(row);
+                            positions.add(seen);
+                        } else {
+                            reservoir.set(slot, row);
+                            positions.set(slot, seen);
+                        }
+                    }
+                    seen++;
+                }
+            }
+        }
+
+        // Back to scan order, so correlation reflects the physical layout
+        Integer[] order = new Integer[reservoir.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(positions.get(a), positions.get(b)));
+
+        for (int c = 0; c < columns.size(); c++) {
+            List<String> values = new ArrayList<>(order.length);
+            for (Integer index : order) {
+                values.add(reservoir.get(index)[c]);
+            }
+            collected.put(key(table.getTableName(), columns.get(c)),
+                    StatisticsCalculator.compute(values, seen, histogramBuckets, mcvSize));
+        }
+        rowCounts.put(table.getTableName().toLowerCase(Locale.ROOT), seen);
+        log.info("Sampled {} of {} rows from {}", reservoir.size(), seen, table.getTableName());
+    }
+
+    private StatisticsImportResponse store(Long schemaId, String source, Map<String, ColumnStatistics> collected,
+                                           Map<String, Long> rowCounts) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            SchemaDefinition schema = schemaRepository.findByIdWithFullDetails(schemaId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Schema", "id", schemaId));
+
+            Set<String> matched = new HashSet<>();
+            Set<String> tables = new HashSet<>();
+            for (TableDefinition table : schema.getTables()) {
+                Long rows = rowCounts.get(table.getTableName().toLowerCase(Locale.ROOT));
+                if (rows != null) {
+                    table.setEstimatedRows(rows);
+                }
+                for (ColumnDefinition column : table.getColumns()) {
+                    String key = key(table.getTableName(), column.getColumnName());
+                    ColumnStatistics incoming = collected.get(key);
+                    if (incoming == null) {
+                        continue;
+                    }
+                    ColumnStatistics statistics = statisticsRepository.findByColumnId(column.getId())
+                            .orElseGet(() -> ColumnStatistics.builder().column(column).build());
+                    statistics.setNullFraction(incoming.getNullFraction());
+                    statistics.setDistinctCount(incoming.getDistinctCount());
+                    statistics.setMostCommonValues(incoming.getMostCommonValues());
+                    statistics.setMostCommonFrequencies(incoming.getMostCommonFrequencies());
+                    statistics.setHistogramBounds(incoming.getHistogramBounds());
+                    statistics.setCorrelation(incoming.getCorrelation());
+                    statistics.setSource(source);
+                    statistics.setSampleSize(incoming.getSampleSize());
+                    statisticsRepository.save(statistics);
+                    matched.add(key);
+                    tables.add(table.getTableName());
+                }
+            }
+            schemaRepository.save(schema);
+            SchemaManagementService.bumpVersion(schemaRepository, schema);
+
+            List<String> skipped = collected.keySet().stream()
+                    .filter(key -> !matched.contains(key))
+                    .sorted()
+                    .toList();
+            return StatisticsImportResponse.builder()
+                    .schemaId(schemaId)
+                    .source(source)
+                    .tablesUpdated(tables.size())
+                    .columnsUpdated(matched.size())
+                    .skipped(skipped)
+                    .build();
+        });
+    }
+
+    private SchemaDefinition findOwnedSchema(Long schemaId, String username) {
+        SchemaDefinition schema = new TransactionTemplate(transactionManager).execute(status -> {
+            SchemaDefinition found = schemaRepository.findByIdWithFullDetails(schemaId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Schema", "id", schemaId));
+            // Touch the owner while the session is open
+            found.getProject().getOwner().getFullName();
+            return found;
+        });
+        if (!schema.getProject().getOwner().getFullName().equals(username)) {
+            throw new BadRequestException("You don't have permission to modify this schema");
+        }
+        return schema;
+    }
+
+    // Identifiers come from the schema definition; anything unusual is rejected rather than escaped
+    private static String quote(String identifier) {
+        List<String> parts = new ArrayList<>();
+        for (String part : identifier.split("\\.")) {
+            if (!IDENTIFIER.matcher(part).matches()) {
+                throw new BadRequestException("Cannot sample identifier: " + identifier);
+            }
+            parts.add('"' + part + '"');
+        }
+        return String.join(".", parts);
+    }
+
+    private static String key(String table, String column) {
+        return table.toLowerCase(Locale.ROOT) + "." + column.toLowerCase(Locale.ROOT);
+    }
+
+    private static String field(List<String> row, Map<String, Integer> header, String name) {
+        Integer index = header.get(name);
+        if (index == null || index >= row.size()) {
+            return null;
+        }
+        String value = row.get(index);
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static Double parseDouble(String value) {
+        try {
+            return value != null ? Double.valueOf(value) : null;
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid number in statistics file: " + value);
+        }
+    }
+
+    // Parses a PostgreSQL array literal such as {a,"b c",NULL}, dropping NULL elements
+    static List<String> parseArray(String text) {
+        List<String> elements = new ArrayList<>();
+        if (text == null) {
+            return elements;
+        }
+        String value = text.trim();
+        if (value.length() < 2 || value.charAt(0) != '{' || value.charAt(value.length() - 1) != '}') {
+            throw new BadRequestException("Invalid array in statistics file: " + text);
+        }
+        int i = 1;
+        int end = value.length() - 1;
+        while (i < end) {
+            StringBuilder element = new StringBuilder();
+            boolean quoted = value.charAt(i) == '"';
+            if (quoted) {
+                i++;
+                while (i < end && value.charAt(i) != '"') {
+                    if (value.charAt(i) == '\\' && i + 1 < end) i++;
+                    element.append(value.charAt(i++));
+                }
+                i++;
+            } else {
+                while (i < end && value.charAt(i) != ',') {
+                    element.append(value.charAt(i++));
+                }
+            }
+            String item = element.toString();
+            if (quoted || !item.equals("NULL")) {
+                elements.add(quoted ? item : item.trim());
+            }
+            i++;
+        }
+        return elements;
+    }
+
+    // RFC 4180 CSV: quoted fields may hold commas, doubled quotes and newlines
+    static List<List<String>> readCsv(Reader reader) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        List<String> row = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            any = true;
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next == -1) break;
+                        reader.reset();
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                row.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r') {
+                    reader.mark(1);
+                    if (reader.read() != '\n') reader.reset();
+                }
+                row.add(field.toString());
+                field.setLength(0);
+                if (!(row.size() == 1 && row.get(0).isEmpty())) rows.add(row);
+                row = new ArrayList<>();
+                any = false;
+            } else {
+                field.append((char) c);
+            }
+        }
+        if (any || field.length() > 0 || !row.isEmpty()) {
+            row.add(field.toString());
+            rows.add(row);
+        }
+        return rows;
+    }
+}
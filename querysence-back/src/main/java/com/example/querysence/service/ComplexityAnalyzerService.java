@@ -1,15 +1,18 @@
 package com.example.querysence.service;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import com.example.querysence.model.dto.ComplexityReport;
+import com.example.querysence.model.dto.CostEstimate;
 import com.example.querysence.parser.ParsedQuery;
 
 import java.util.ArrayList;
 import java.util.List;
 
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class ComplexityAnalyzerService {
 
@@ -24,8 +27,17 @@ public class ComplexityAnalyzerService {
     private static final int GROUP_BY_HAVING_POINTS = 5;
     private static final int EXTRA_WHERE_CONDITION_POINTS = 2;
     private static final int WHERE_THRESHOLD = 5;
+    private static final int LARGE_IN_LIST = 1000;
+    // Roughly a full read of a million-row table
+    private static final double LARGE_SCAN_COST = 20_000;
+
+    private final CostEstimatorService costEstimator;
 
     public ComplexityReport analyze(ParsedQuery parsedQuery) {
+        return analyze(parsedQuery, null);
+    }
+
+    public ComplexityReport analyze(ParsedQuery parsedQuery, Long schemaId) {
         List<ComplexityReport.Factor> factors = new ArrayList<>();
         int score = BASE_SCORE;
 
@@ -68,6 +80,44 @@ public class ComplexityAnalyzerService {
                     .build());
         }
 
+        // Set operations, CASE and window functions anywhere in the query, including
+        // CTE bodies and subqueries, since each one is evaluated on its own
+        int setOperationCount = countSetOperations(parsedQuery);
+        if (setOperationCount > 0) {
+            int setOperationScore = setOperationCount * UNION_POINTS;
+            score += setOperationScore;
+            factors.add(ComplexityReport.Factor.builder()
+                    .name("Set Operations")
+                    .count(setOperationCount)
+                    .points(setOperationScore)
+                    .description("UNION/INTERSECT/EXCEPT combine " + (setOperationCount + 1) + " or more result sets")
+                    .build());
+        }
+
+        int caseCount = countCaseExpressions(parsedQuery);
+        if (caseCount > 0) {
+            int caseScore = caseCount * CASE_POINTS;
+            score += caseScore;
+            factors.add(ComplexityReport.Factor.builder()
+                    .name("CASE Expressions")
+                    .count(caseCount)
+                    .points(caseScore)
+                    .description(caseCount + " CASE expression(s) evaluated per row")
+                    .build());
+        }
+
+        List<String> windowFunctions = collectWindowFunctions(parsedQuery, new ArrayList<>());
+        if (!windowFunctions.isEmpty()) {
+            int windowScore = windowFunctions.size() * WINDOW_FUNCTION_POINTS;
+            score += windowScore;
+            factors.add(ComplexityReport.Factor.builder()
+                    .name("Window Functions")
+                    .count(windowFunctions.size())
+                    .points(windowScore)
+                    .description("Window functions sort or partition the input: " + String.join(", ", windowFunctions))
+                    .build());
+        }
+
         // Check DISTINCT
         if (parsedQuery.isHasDistinct()) {
             score += DISTINCT_POINTS;
@@ -112,6 +162,8 @@ public class ComplexityAnalyzerService {
 
         // Generate warnings based on complexity
         List<String> warnings = generateWarnings(parsedQuery, score);
+        CostEstimate costEstimate = costEstimator.estimate(parsedQuery, schemaId);
+        addPlanWarnings(costEstimate.getPlan(), warnings);
 
         return ComplexityReport.builder()
                 .score(score)
@@ -121,9 +173,56 @@ public class ComplexityAnalyzerService {
                 .joinCount(joinCount)
                 .subqueryDepth(getMaxSubqueryDepth(parsedQuery))
                 .aggregateCount(aggregateCount)
+                .setOperationCount(setOperationCount)
+                .caseExpressionCount(caseCount)
+                .windowFunctionCount(windowFunctions.size())
+                .costEstimate(costEstimate)
                 .build();
     }
 
+    private void addPlanWarnings(CostEstimate.PlanNode node, List<String> warnings) {
+        // A node's cost includes its children, such as SubPlans attached to a scan
+        double ownCost = node.getCost() - node.getChildren().stream().mapToDouble(CostEstimate.PlanNode::getCost).sum();
+        if ("Seq Scan".equals(node.getOperation()) && node.getTable() != null && ownCost >= LARGE_SCAN_COST) {
+            warnings.add("Sequential scan on " + node.getTable() + " (estimated cost " + Math.round(ownCost)
+                    + ") - reads the whole table");
+        }
+        for (CostEstimate.PlanNode child : node.getChildren()) {
+            addPlanWarnings(child, warnings);
+        }
+    }
+
+    private int countSetOperations(ParsedQuery query) {
+        int count = query.getSetOperations().size();
+        for (ParsedQuery subquery : query.getSubqueries()) {
+            count += countSetOperations(subquery);
+        }
+        return count;
+    }
+
+    private int countCaseExpressions(ParsedQuery query) {
+        int count = query.getCaseExpressionCount();
+        for (ParsedQuery subquery : query.getSubqueries()) {
+            count += countCaseExpressions(subquery);
+        }
+        return count;
+    }
+
+    private List<String> collectWindowFunctions(ParsedQuery query, List<String> functions) {
+        functions.addAll(query.getWindowFunctions());
+        for (ParsedQuery subquery : query.getSubqueries()) {
+            collectWindowFunctions(subquery, functions);
+        }
+        return functions;
+    }
+
+    private boolean hasDeduplicatingUnion(ParsedQuery query) {
+        if (query.getSetOperations().stream().anyMatch(op -> op.equalsIgnoreCase("UNION"))) {
+            return true;
+        }
+        return query.getSubqueries().stream().anyMatch(this::hasDeduplicatingUnion);
+    }
+
     private int calculateSubqueryScore(ParsedQuery query) {
         int score = 0;
         for (ParsedQuery subquery : query.getSubqueries()) {
@@ -145,7 +244,7 @@ public class ComplexityAnalyzerService {
     private int getMaxSubqueryDepth(ParsedQuery query) {
         int maxDepth = 0;
         for (ParsedQuery subquery : query.getSubqueries()) {
-            maxDepth = Math.max(maxDepth, subquery.getSubqueryDepth() + 1);
+            maxDepth = Math.max(maxDepth, subquery.getSubqueryDepth());
             maxDepth = Math.max(maxDepth, getMaxSubqueryDepth(subquery));
         }
         return maxDepth;
@@ -177,6 +276,20 @@ public class ComplexityAnalyzerService {
             warnings.add("Deeply nested subqueries (depth: " + maxDepth + ") - consider using CTEs or JOINs");
         }
 
+        // Plain UNION deduplicates the combined result
+        if (hasDeduplicatingUnion(query)) {
+            warnings.add("UNION removes duplicates with a sort or hash - use UNION ALL if duplicates are impossible or acceptable");
+        }
+
+        // Huge IN lists, folded before parsing but still costly for the database to plan
+        for (ParsedQuery.FoldedList list : query.getFoldedLists()) {
+            if ("IN".equals(list.getType()) && list.getCardinality() > LARGE_IN_LIST) {
+                warnings.add("IN list with " + list.getCardinality() + " values"
+                        + (list.getColumn() != null ? " on " + list.getColumn() : "")
+                        + " - consider a temporary table join or an array parameter");
+            }
+        }
+
         // High complexity score
         if (score > 75) {
             warnings.add("Query complexity is CRITICAL - review for optimization opportunities");
@@ -0,0 +1,589 @@
+package com.example.querysence.service;
+
+import com.example.querysence.model.dto.ComplexityReport;
+import com.example.querysence.model.dto.CostEstimate;
+import com.example.querysence.model.dto.CostEstimate.PlanNode;
+import com.example.querysence.parser.ParsedQuery;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Rule-based cost model. Builds a logical plan from the parsed query, picks an access
+// path per table from the declared indexes and row counts, and costs joins, aggregation
+// and sorting with PostgreSQL-like planner constants. Costs are in sequential page fetches.
+// Branches of a set operation are merged by the parser, so they are planned as inputs
+// of one Append node and clauses like GROUP BY apply on top of it.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CostEstimatorService {
+
+    private static final double SEQ_PAGE_COST = 1.0;
+    private static final double RANDOM_PAGE_COST = 4.0;
+    private static final double CPU_TUPLE_COST = 0.01;
+    private static final double CPU_INDEX_TUPLE_COST = 0.005;
+    private static final double CPU_OPERATOR_COST = 0.0025;
+    private static final double ROWS_PER_PAGE = 100;
+    private static final double INDEX_FANOUT = 256;
+    private static final long DEFAULT_ROWS = 1000;
+
+    private static final int DEFAULT_IN_VALUES = 10;
+    private static final double DEFAULT_DISTINCT_VALUES = 200;
+    // A non-unique join column is assumed to repeat each value this many times
+    private static final double DUPLICATES_PER_VALUE = 10;
+
+    private static final Set<String> AGGREGATES = Set.of(
+            "COUNT", "SUM", "AVG", "MIN", "MAX", "ARRAY_AGG", "STRING_AGG", "JSON_AGG", "JSONB_AGG",
+            "BOOL_AND", "BOOL_OR", "STDDEV", "VARIANCE", "GROUP_CONCAT", "LISTAGG");
+    private static final Set<String> EQUALITY_OPERATORS = Set.of("=", "IN");
+    private static final Set<String> RANGE_OPERATORS = Set.of("<", ">", "<=", ">=", "BETWEEN");
+
+    private final SchemaCatalogCache catalogCache;
+    private final SelectivityEstimator selectivityEstimator;
+
+    public CostEstimate estimate(ParsedQuery parsedQuery, Long schemaId) {
+        Catalog catalog = loadCatalog(schemaId);
+        PlanNode plan = plan(parsedQuery, catalog);
+        return CostEstimate.builder()
+                .totalCost(round(plan.getCost()))
+                .estimatedRows(round(plan.getRows()))
+                .level(level(plan.getCost()).name())
+                .usedSchemaStatistics(catalog.loaded())
+                .plan(plan)
+                .build();
+    }
+
+    private Catalog loadCatalog(Long schemaId) {
+        return new Catalog(catalogCache.get(schemaId).orElse(null));
+    }
+
+    private PlanNode plan(ParsedQuery query, Catalog catalog) {
+        Map<String, List<ParsedQuery.WhereCondition>> filters = new LinkedHashMap<>();
+        List<ParsedQuery.WhereCondition> unresolved = new ArrayList<>();
+        for (ParsedQuery.WhereCondition condition : query.getWhereConditions()) {
+            String table = resolveTable(condition.getTable(), condition.getColumn(), query, catalog);
+            if (table != null) {
+                filters.computeIfAbsent(table, k -> new ArrayList<>()).add(condition);
+            } else {
+                unresolved.add(condition);
+            }
+        }
+
+        String queryType = query.getQueryType() != null ? query.getQueryType() : "SELECT";
+        if (queryType.equals("INSERT")) {
+            return insert(query, catalog);
+        }
+
+        PlanNode node = joinTree(query, filters, catalog);
+        if (!unresolved.isEmpty()) {
+            node = filter(node, unresolved, query);
+        }
+        double outerRows = node.getRows();
+        if (queryType.equals("UPDATE") || queryType.equals("DELETE")) {
+            String table = query.getTables().isEmpty() ? null : query.getTables().get(0);
+            node = parent(queryType.charAt(0) + queryType.substring(1).toLowerCase(), table, node.getRows(),
+                    node.getCost() + node.getRows() * CPU_TUPLE_COST * (1 + indexCount(catalog.table(table))),
+                    "Rewrites each matching row and its index entries", node);
+        } else {
+            node = aggregateAndSort(query, node, catalog);
+        }
+        return addSubPlans(query, node, outerRows, catalog);
+    }
+
+    // Scans and joins in FROM order; tables not reached through a JOIN are separate inputs
+    private PlanNode joinTree(ParsedQuery query, Map<String, List<ParsedQuery.WhereCondition>> filters, Catalog catalog) {
+        List<String> tables = query.getTables();
+        List<PlanNode> inputs = new ArrayList<>();
+        List<Set<String>> inputTables = new ArrayList<>();
+        int next = 0;
+
+        for (ParsedQuery.JoinInfo join : query.getJoins()) {
+            int target = indexOfIgnoreCase(tables, join.getTable(), next);
+            PlanNode right;
+            String rightTable = null;
+            if (target >= 0) {
+                for (int i = next; i < target; i++) {
+                    String table = lower(tables.get(i));
+                    inputs.add(scan(table, filters.get(table), query, catalog));
+                    inputTables.add(new HashSet<>(Set.of(table)));
+                }
+                rightTable = lower(tables.get(target));
+                right = scan(rightTable, filters.get(rightTable), query, catalog);
+                next = target + 1;
+            } else {
+                right = leaf("Subquery Scan", join.getTable(), DEFAULT_ROWS, DEFAULT_ROWS * CPU_TUPLE_COST,
+                        "Derived table or CTE, row count assumed " + DEFAULT_ROWS);
+            }
+
+            if (inputs.isEmpty()) {
+                inputs.add(leaf("Subquery Scan", null, DEFAULT_ROWS, DEFAULT_ROWS * CPU_TUPLE_COST,
+                        "Derived table or CTE, row count assumed " + DEFAULT_ROWS));
+                inputTables.add(new HashSet<>());
+            }
+            int last = inputs.size() - 1;
+            PlanNode joined = join(inputs.get(last), inputTables.get(last), right, rightTable, join, filters, query, catalog);
+            inputs.set(last, joined);
+            if (rightTable != null) {
+                inputTables.get(last).add(rightTable);
+            }
+        }
+        for (int i = next; i < tables.size(); i++) {
+            String table = lower(tables.get(i));
+            inputs.add(scan(table, filters.get(table), query, catalog));
+            inputTables.add(new HashSet<>(Set.of(table)));
+        }
+
+        if (inputs.isEmpty()) {
+            return leaf("Result", null, 1, CPU_TUPLE_COST, "No base tables");
+        }
+        if (inputs.size() == 1) {
+            return inputs.get(0);
+        }
+        if (!query.getSetOperations().isEmpty()) {
+            return setOperation(query.getSetOperations(), inputs);
+        }
+
+        // Comma-separated FROM items, the join predicate is assumed to be in WHERE
+        PlanNode node = inputs.get(0);
+        for (int i = 1; i < inputs.size(); i++) {
+            PlanNode right = inputs.get(i);
+            double rows = clampRows(node.getRows() * right.getRows()
+                    / Math.max(distinctValues(node.getRows()), distinctValues(right.getRows())));
+            double cost = node.getCost() + right.getCost()
+                    + right.getRows() * (CPU_OPERATOR_COST + CPU_TUPLE_COST)
+                    + node.getRows() * CPU_OPERATOR_COST + rows * CPU_TUPLE_COST;
+            node = parent("Hash Join", null, rows, cost, "Implicit join, join predicate assumed in WHERE", node, right);
+        }
+        return node;
+    }
+
+    private PlanNode scan(String table, List<ParsedQuery.WhereCondition> conditions, ParsedQuery query, Catalog catalog) {
+        List<ParsedQuery.WhereCondition> predicates = conditions != null ? conditions : List.of();
+        SchemaCatalog.Table stats = catalog.table(table);
+        double rows = tableRows(stats);
+        double pages = Math.max(1, Math.ceil(rows / ROWS_PER_PAGE));
+
+        double selectivity = 1;
+        for (ParsedQuery.WhereCondition condition : predicates) {
+            selectivity *= selectivity(condition, stats, rows, query);
+        }
+        double outRows = clampRows(rows * selectivity);
+        String rowNote = stats != null && stats.estimatedRows() > 0 ? "" : "; row count unknown, assumed " + DEFAULT_ROWS;
+
+        double seqCost = pages * SEQ_PAGE_COST + rows * (CPU_TUPLE_COST + predicates.size() * CPU_OPERATOR_COST);
+        PlanNode best = leaf("Seq Scan", table, outRows, seqCost, describe("Filter", predicates) + rowNote);
+
+        if (stats != null) {
+            for (SchemaCatalog.Index index : stats.indexes()) {
+                IndexMatch match = matchIndex(index, predicates, stats, rows, query);
+                if (match == null) {
+                    continue;
+                }
+                double matched = clampRows(rows * match.selectivity());
+                double cost = indexScanCost(rows, matched) + matched * predicates.size() * CPU_OPERATOR_COST;
+                if (cost < best.getCost()) {
+                    best = leaf("Index Scan", table, outRows, cost,
+                            describe("Index Cond", match.conditions()) + rowNote);
+                    best.setIndex(index.name());
+                }
+            }
+        }
+        return best;
+    }
+
+    // Leftmost-prefix match: equality columns, optionally followed by one range column
+    private IndexMatch matchIndex(SchemaCatalog.Index index, List<ParsedQuery.WhereCondition> predicates,
+                                  SchemaCatalog.Table stats, double rows, ParsedQuery query) {
+        if (!index.isBtree()) {
+            return null;
+        }
+        double selectivity = 1;
+        List<ParsedQuery.WhereCondition> used = new ArrayList<>();
+        for (String column : index.columns()) {
+            ParsedQuery.WhereCondition equality = find(predicates, column, EQUALITY_OPERATORS);
+            if (equality != null) {
+                selectivity *= selectivity(equality, stats, rows, query);
+                used.add(equality);
+                continue;
+            }
+            ParsedQuery.WhereCondition range = find(predicates, column, RANGE_OPERATORS);
+            if (range != null) {
+                selectivity *= selectivity(range, stats, rows, query);
+                used.add(range);
+            }
+            break;
+        }
+        return used.isEmpty() ? null : new IndexMatch(selectivity, used);
+    }
+
+    private PlanNode join(PlanNode left, Set<String> leftTables, PlanNode right, String rightTable,
+                          ParsedQuery.JoinInfo join, Map<String, List<ParsedQuery.WhereCondition>> filters,
+                          ParsedQuery query, Catalog catalog) {
+        double l = left.getRows();
+        double r = right.getRows();
+        List<String> joinColumns = join.getJoinColumns() != null ? join.getJoinColumns() : List.of();
+
+        if ("CROSS".equals(join.getType()) || joinColumns.isEmpty()) {
+            double rows = clampRows(l * r);
+            return parent("Nested Loop", null, rows, left.getCost() + right.getCost() + rows * CPU_TUPLE_COST,
+                    "Cross product", left, right);
+        }
+
+        SchemaCatalog.Table rightStats = catalog.table(rightTable);
+        double rightBaseRows = tableRows(rightStats);
+        String rightColumn = null;
+        for (String column : joinColumns) {
+            if (rightStats != null && rightStats.hasColumn(column)) {
+                rightColumn = lower(column);
+                break;
+            }
+        }
+        boolean rightUnique = rightColumn != null && rightStats.isUnique(rightColumn);
+        boolean leftUnique = false;
+        for (String column : joinColumns) {
+            if (lower(column).equals(rightColumn)) continue;
+            for (String table : leftTables) {
+                SchemaCatalog.Table stats = catalog.table(table);
+                leftUnique |= stats != null && stats.isUnique(lower(column));
+            }
+        }
+
+        double rows;
+        Double leftDistinct = null;
+        for (String column : joinColumns) {
+            if (lower(column).equals(rightColumn)) continue;
+            for (String table : leftTables) {
+                SchemaCatalog.Table stats = catalog.table(table);
+                if (stats != null && stats.hasColumn(column)) {
+                    leftDistinct = selectivityEstimator.distinctValues(stats.selectivityColumn(lower(column)));
+                }
+            }
+        }
+        Double rightDistinct = rightColumn != null
+                ? selectivityEstimator.distinctValues(rightStats.selectivityColumn(rightColumn)) : null;
+        if (rightUnique) {
+            // Each outer row finds at most one match, reduced by the filters on the inner side
+            rows = l * Math.min(1, r / rightBaseRows);
+        } else if (leftUnique) {
+            rows = r;
+        } else {
+            // Distinct counts from statistics, capped by the filtered input sizes
+            double leftValues = leftDistinct != null ? Math.min(leftDistinct, l) : distinctValues(l);
+            double rightValues = rightDistinct != null ? Math.min(rightDistinct, r) : distinctValues(r);
+            rows = l * r / Math.max(1, Math.max(leftValues, rightValues));
+        }
+        rows = switch (join.getType() != null ? join.getType() : "INNER") {
+            case "LEFT" -> Math.max(rows, l);
+            case "RIGHT" -> Math.max(rows, r);
+            case "FULL" -> Math.max(rows, Math.max(l, r));
+            default -> rows;
+        };
+        rows = clampRows(rows);
+
+        // The smaller input is hashed, the larger one probes it
+        double hashCost = left.getCost() + right.getCost()
+                + Math.min(l, r) * (CPU_OPERATOR_COST + CPU_TUPLE_COST)
+                + Math.max(l, r) * CPU_OPERATOR_COST
+                + rows * CPU_TUPLE_COST;
+        PlanNode best = parent("Hash Join", null, rows, hashCost, "Hash Cond: " + join.getCondition(), left, right);
+
+        // Nested loop probing an index on the inner join column, once per outer row
+        if (rightColumn != null) {
+            for (SchemaCatalog.Index index : rightStats.indexes()) {
+                if (!index.isBtree() || index.columns().isEmpty()
+                        || !lower(index.columns().get(0)).equals(rightColumn)) {
+                    continue;
+                }
+                double perProbe = rightUnique ? 1 : Math.max(1, rightBaseRows
+                        / (rightDistinct != null ? rightDistinct : distinctValues(rightBaseRows)));
+                double probeCost = indexScanCost(rightBaseRows, perProbe);
+                double loopCost = left.getCost() + l * probeCost + rows * CPU_TUPLE_COST;
+                if (loopCost < best.getCost()) {
+                    PlanNode probe = leaf("Index Scan", rightTable, perProbe, probeCost,
+                            "Index Cond: " + rightColumn + " = outer." + rightColumn
+                                    + "; executed " + Math.round(l) + " time(s)"
+                                    + describeSuffix(filters.get(rightTable)));
+                    probe.setIndex(index.name());
+                    best = parent("Nested Loop", null, rows, loopCost, "Join Filter: " + join.getCondition(), left, probe);
+                }
+            }
+        }
+        return best;
+    }
+
+    private PlanNode filter(PlanNode input, List<ParsedQuery.WhereCondition> conditions, ParsedQuery query) {
+        double selectivity = 1;
+        for (ParsedQuery.WhereCondition condition : conditions) {
+            selectivity *= selectivity(condition, null, input.getRows(), query);
+        }
+        return parent("Filter", null, clampRows(input.getRows() * selectivity),
+                input.getCost() + input.getRows() * conditions.size() * CPU_OPERATOR_COST,
+                describe("Filter", conditions), input);
+    }
+
+    private PlanNode setOperation(List<String> operations, List<PlanNode> inputs) {
+        double rows = 0;
+        double cost = 0;
+        for (PlanNode input : inputs) {
+            rows += input.getRows();
+            cost += input.getCost();
+        }
+        PlanNode append = parent("Append", null, rows, cost + rows * CPU_TUPLE_COST,
+                String.join(", ", operations), inputs.toArray(PlanNode[]::new));
+
+        boolean setOp = operations.stream().anyMatch(op -> !op.toUpperCase(Locale.ROOT).startsWith("UNION"));
+        boolean distinct = operations.stream().anyMatch(op -> !op.toUpperCase(Locale.ROOT).contains("ALL"));
+        if (setOp) {
+            return parent("HashSetOp", null, inputs.get(0).getRows(), append.getCost() + rows * CPU_OPERATOR_COST,
+                    "INTERSECT/EXCEPT compares the branch results", append);
+        }
+        if (distinct) {
+            return parent("HashAggregate", null, rows, append.getCost() + rows * CPU_OPERATOR_COST,
+                    "UNION removes duplicates", append);
+        }
+        return append;
+    }
+
+    private PlanNode aggregateAndSort(ParsedQuery query, PlanNode node, Catalog catalog) {
+        long aggregates = query.getAggregateFunctions().stream()
+                .filter(name -> AGGREGATES.contains(name.toUpperCase(Locale.ROOT)))
+                .count();
+        if (!query.getGroupByColumns().isEmpty()) {
+            double groups = groups(node.getRows(), query.getGroupByColumns(), query, catalog);
+            node = parent("HashAggregate", null, groups,
+                    node.getCost() + node.getRows() * CPU_OPERATOR_COST * (aggregates + query.getGroupByColumns().size())
+                            + groups * CPU_TUPLE_COST,
+                    "Group Key: " + String.join(", ", query.getGroupByColumns()), node);
+        } else if (aggregates > 0) {
+            node = parent("Aggregate", null, 1, node.getCost() + node.getRows() * CPU_OPERATOR_COST * aggregates,
+                    "Aggregates the whole input into one row", node);
+        }
+
+        if (!query.getWindowFunctions().isEmpty()) {
+            node = parent("WindowAgg", null, node.getRows(),
+                    node.getCost() + sortCost(node.getRows())
+                            + node.getRows() * CPU_OPERATOR_COST * query.getWindowFunctions().size(),
+                    "Sorts each partition for " + String.join(", ", query.getWindowFunctions()), node);
+        }
+        if (query.isHasDistinct()) {
+            double rows = groups(node.getRows(), query.getColumns(), query, catalog);
+            node = parent("HashAggregate", null, rows, node.getCost() + node.getRows() * CPU_OPERATOR_COST,
+                    "DISTINCT removes duplicates", node);
+        }
+        if (!query.getOrderByColumns().isEmpty()) {
+            node = parent("Sort", null, node.getRows(), node.getCost() + sortCost(node.getRows()),
+                    "Sort Key: " + String.join(", ", query.getOrderByColumns()), node);
+        }
+        return node;
+    }
+
+    private PlanNode insert(ParsedQuery query, Catalog catalog) {
+        String table = query.getTables().isEmpty() ? null : query.getTables().get(0);
+        double rows = query.getFoldedLists().stream()
+                .filter(list -> "VALUES".equals(list.getType()))
+                .mapToInt(ParsedQuery.FoldedList::getCardinality)
+                .findFirst()
+                .orElse(1);
+        int indexes = indexCount(catalog.table(table));
+        PlanNode node = leaf("Insert", table, rows,
+                rows / ROWS_PER_PAGE * SEQ_PAGE_COST + rows * (CPU_TUPLE_COST + indexes * CPU_INDEX_TUPLE_COST),
+                "Writes " + Math.round(rows) + " row(s) and " + indexes + " index entr(ies) per row");
+        return addSubPlans(query, node, rows, catalog);
+    }
+
+    // Subqueries are planned on their own; correlated ones run once per outer row
+    private PlanNode addSubPlans(ParsedQuery query, PlanNode node, double outerRows, Catalog catalog) {
+        for (ParsedQuery subquery : query.getSubqueries()) {
+            PlanNode sub = plan(subquery, catalog);
+            boolean correlated = subquery.isCorrelated();
+            double loops = correlated ? Math.max(1, outerRows) : 1;
+            PlanNode subPlan = parent("SubPlan", null, sub.getRows(), sub.getCost() * loops,
+                    correlated ? "Correlated, executed about " + Math.round(loops) + " time(s)" : "Executed once", sub);
+            node.getChildren().add(subPlan);
+            node.setCost(round(node.getCost() + subPlan.getCost()));
+        }
+        return node;
+    }
+
+    private double selectivity(ParsedQuery.WhereCondition condition, SchemaCatalog.Table stats, double rows, ParsedQuery query) {
+        String column = lower(condition.getColumn());
+        SelectivityEstimator.Column facts = stats != null
+                ? stats.selectivityColumn(column)
+                : new SelectivityEstimator.Column(null, rows, false, false);
+        return selectivityEstimator.selectivity(condition, facts, inListSize(query, condition));
+    }
+
+    // Literal IN lists are kept by the parser; folded and subquery lists only have a count
+    private int inListSize(ParsedQuery query, ParsedQuery.WhereCondition condition) {
+        if (condition.getValues() != null && !condition.getValues().isEmpty()) {
+            return condition.getValues().size();
+        }
+        String column = condition.getColumn();
+        return query.getFoldedLists().stream()
+                .filter(list -> "IN".equals(list.getType()) && column != null && column.equalsIgnoreCase(list.getColumn()))
+                .mapToInt(ParsedQuery.FoldedList::getCardinality)
+                .findFirst()
+                .orElse(DEFAULT_IN_VALUES);
+    }
+
+    // A qualifier is a table name or a join alias; otherwise the column is looked up in the schema
+    private String resolveTable(String qualifier, String column, ParsedQuery query, Catalog catalog) {
+        if (qualifier != null && !qualifier.isEmpty()) {
+            for (String table : query.getTables()) {
+                if (table.equalsIgnoreCase(qualifier)) return lower(table);
+            }
+            for (ParsedQuery.JoinInfo join : query.getJoins()) {
+                if (qualifier.equalsIgnoreCase(join.getAlias())) return lower(join.getTable());
+            }
+        }
+        Set<String> tables = new HashSet<>();
+        query.getTables().forEach(table -> tables.add(lower(table)));
+        if (tables.size() == 1) {
+            return tables.iterator().next();
+        }
+        String match = null;
+        for (String table : tables) {
+            SchemaCatalog.Table stats = catalog.table(table);
+            if (stats != null && column != null && stats.hasColumn(column)) {
+                if (match != null) return null;
+                match = table;
+            }
+        }
+        return match;
+    }
+
+    private static double indexScanCost(double tableRows, double matchedRows) {
+        double height = Math.max(1, Math.ceil(Math.log(Math.max(2, tableRows)) / Math.log(INDEX_FANOUT)));
+        // Uncorrelated heap order, so every matching row may cost a random page read
+        double heapPages = Math.min(matchedRows, Math.ceil(tableRows / ROWS_PER_PAGE));
+        return height * RANDOM_PAGE_COST
+                + matchedRows * CPU_INDEX_TUPLE_COST
+                + heapPages * RANDOM_PAGE_COST
+                + matchedRows * CPU_TUPLE_COST;
+    }
+
+    private static double sortCost(double rows) {
+        return rows <= 1 ? 0 : 2 * CPU_OPERATOR_COST * rows * (Math.log(rows) / Math.log(2));
+    }
+
+    // Product of the distinct counts of the grouping columns, never more than the input rows
+    private double groups(double rows, List<String> columns, ParsedQuery query, Catalog catalog) {
+        double groups = 1;
+        for (String column : columns.isEmpty() ? List.of("*") : columns) {
+            int dot = column.lastIndexOf('.');
+            String name = dot >= 0 ? column.substring(dot + 1) : column;
+            String table = resolveTable(dot >= 0 ? column.substring(0, dot) : null, name, query, catalog);
+            SchemaCatalog.Table stats = catalog.table(table);
+            Double distinct = stats != null && stats.hasColumn(name)
+                    ? selectivityEstimator.distinctValues(stats.selectivityColumn(lower(name))) : null;
+            groups *= distinct != null ? distinct : DEFAULT_DISTINCT_VALUES;
+            if (groups >= rows) break;
+        }
+        return clampRows(Math.min(rows, groups));
+    }
+
+    private static double distinctValues(double rows) {
+        return Math.max(1, rows / DUPLICATES_PER_VALUE);
+    }
+
+    private static double tableRows(SchemaCatalog.Table stats) {
+        return stats != null ? stats.rowsOrDefault() : DEFAULT_ROWS;
+    }
+
+    private static int indexCount(SchemaCatalog.Table stats) {
+        return stats != null ? stats.indexes().size() : 0;
+    }
+
+    private static ParsedQuery.WhereCondition find(List<ParsedQuery.WhereCondition> predicates, String column,
+                                                   Set<String> operators) {
+        for (ParsedQuery.WhereCondition condition : predicates) {
+            if (column.equalsIgnoreCase(condition.getColumn()) && condition.getOperator() != null
+                    && operators.contains(condition.getOperator().toUpperCase(Locale.ROOT))) {
+                return condition;
+            }
+        }
+        return null;
+    }
+
+    private static int indexOfIgnoreCase(List<String> values, String value, int from) {
+        if (value == null || value.isEmpty()) return -1;
+        for (int i = from; i < values.size(); i++) {
+            if (values.get(i).equalsIgnoreCase(value)) return i;
+        }
+        return -1;
+    }
+
+    private static String describe(String label, List<ParsedQuery.WhereCondition> conditions) {
+        if (conditions == null || conditions.isEmpty()) {
+            return "No filter";
+        }
+        List<String> parts = new ArrayList<>();
+        for (ParsedQuery.WhereCondition condition : conditions) {
+            parts.add(condition.getColumn() + " " + condition.getOperator()
+                    + (condition.getValue() != null ? " " + condition.getValue() : ""));
+        }
+        return label + ": " + String.join(" AND ", parts);
+    }
+
+    private static String describeSuffix(List<ParsedQuery.WhereCondition> conditions) {
+        return conditions == null || conditions.isEmpty() ? "" : "; " + describe("Filter", conditions);
+    }
+
+    private static ComplexityReport.Level level(double cost) {
+        if (cost <= 1_000) return ComplexityReport.Level.LOW;
+        if (cost <= 100_000) return ComplexityReport.Level.MEDIUM;
+        if (cost <= 10_000_000) return ComplexityReport.Level.HIGH;
+        return ComplexityReport.Level.CRITICAL;
+    }
+
+    private static PlanNode leaf(String operation, String table, double rows, double cost, String detail) {
+        return PlanNode.builder()
+                .operation(operation)
+                .table(table)
+                .rows(round(rows))
+                .cost(round(cost))
+                .detail(detail)
+                .build();
+    }
+
+    private static PlanNode parent(String operation, String table, double rows, double cost, String detail,
+                                   PlanNode... children) {
+        PlanNode node = leaf(operation, table, rows, cost, detail);
+        node.getChildren().addAll(List.of(children));
+        return node;
+    }
+
+    private static double clampRows(double rows) {
+        return Math.max(1, rows);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static String lower(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private record Catalog(SchemaCatalog schema) {
+        boolean loaded() {
+            return schema != null;
+        }
+
+        SchemaCatalog.Table table(String name) {
+            return schema != null ? schema.table(name) : null;
+        }
+    }
+
+    private record IndexMatch(double selectivity, List<ParsedQuery.WhereCondition> conditions) {
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.querysence.service;
+
+import com.example.querysence.exception.InvalidSQLException;
+import com.example.querysence.exception.ResourceNotFoundException;
+import com.example.querysence.model.QueryParseResponse;
+import com.example.querysence.model.dto.ComplexityReport;
+import com.example.querysence.model.dto.EditorSessionRequest;
+import com.example.querysence.model.dto.EditorSessionResponse;
+import com.example.querysence.parser.ParsedQuery;
+import com.example.querysence.parser.SqlDialect;
+import com.example.querysence.parser.SqlScriptSplitter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+// Keeps the statements of an open editor worksheet and their analyses between
+// keystrokes, so each update only parses the statements whose text changed
+@Service
+@Slf4j
+public class EditorSessionService {
+
+    private final QueryParserService parserService;
+    private final ComplexityAnalyzerService complexityService;
+    private final SqlScriptSplitter scriptSplitter;
+    private final ExecutorService scriptAnalysisExecutor;
+    private final Cache<String, Session> sessions;
+    private final int maxStatements;
+
+    public EditorSessionService(QueryParserService parserService,
+                                ComplexityAnalyzerService complexityService,
+                                SqlScriptSplitter scriptSplitter,
+                                ExecutorService scriptAnalysisExecutor,
+                                @Value("${editor.session.max-sessions:10000}") long maxSessions,
+                                @Value("${editor.session.ttl-minutes:30}") long ttlMinutes,
+                                @Value("${editor.session.max-statements:1000}") int maxStatements) {
+        this.parserService = parserService;
+        this.complexityService = complexityService;
+        this.scriptSplitter = scriptSplitter;
+        this.scriptAnalysisExecutor = scriptAnalysisExecutor;
+        this.maxStatements = maxStatements;
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .expireAfterAccess(Duration.ofMinutes(ttlMinutes))
+                .build();
+    }
+
+    public EditorSessionResponse open(EditorSessionRequest request, String username) {
+        Session session = new Session(UUID.randomUUID().toString(), username, SqlDialect.from(request.getDialect()));
+        sessions.put(session.id, session);
+        synchronized (session) {
+            return apply(session, request.getContent());
+        }
+    }
+
+    public EditorSessionResponse update(String sessionId, EditorSessionRequest request, String username) {
+        Session session = find(sessionId, username);
+        synchronized (session) {
+            return apply(session, request.getContent());
+        }
+    }
+
+    public void close(String sessionId, String username) {
+        find(sessionId, username);
+        sessions.invalidate(sessionId);
+    }
+
+    private Session find(String sessionId, String username) {
+        Session session = sessions.getIfPresent(sessionId);
+        if (session == null || !session.username.equals(username)) {
+            throw new ResourceNotFoundException("Editor session", "id", sessionId);
+        }
+        return session;
+    }
+
+    private EditorSessionResponse apply(Session session, String content) {
+        String text = content != null ? content : "";
+        List<SqlScriptSplitter.Span> spans = scriptSplitter.spans(text);
+        // The session keeps its previous version when the worksheet is rejected
+        if (spans.size() > maxStatements) {
+            throw new InvalidSQLException("Worksheet has " + spans.size()
+                    + " statements, the limit is " + maxStatements);
+        }
+        List<String> statements = new ArrayList<>(spans.size());
+        for (SqlScriptSplitter.Span span : spans) {
+            statements.add(text.substring(span.start(), span.end()));
+        }
+
+        // Only statements not seen in the previous version are parsed
+        Set<String> edited = new LinkedHashSet<>();
+        for (String statement : statements) {
+            if (!session.results.containsKey(statement)) {
+                edited.add(statement);
+            }
+        }
+        Map<String, StatementAnalysis> results = new HashMap<>();
+        for (String statement : statements) {
+            StatementAnalysis previous = session.results.get(statement);
+            if (previous != null) {
+                results.put(statement, previous);
+            }
+        }
+        results.putAll(analyzeAll(edited, session.dialect));
+
+        List<EditorSessionResponse.StatementDelta> changes = diff(session.statements, statements, results);
+
+        // Results of statements that are no longer in the worksheet are dropped
+        session.statements = statements;
+        session.results = results;
+        session.version++;
+
+        return EditorSessionResponse.builder()
+                .sessionId(session.id)
+                .version(session.version)
+                .statementCount(statements.size())
+                .reparsedCount(edited.size())
+                .boundaries(spans.stream()
+                        .map(span -> new EditorSessionResponse.Boundary(span.start(), span.end()))
+                        .toList())
+                .changes(changes)
+                .build();
+    }
+
+    // A single edited statement is parsed inline, a paste or a newly opened worksheet in parallel
+    private Map<String, StatementAnalysis> analyzeAll(Set<String> statements, SqlDialect dialect) {
+        Map<String, StatementAnalysis> results = new HashMap<>();
+        if (statements.size() == 1) {
+            String statement = statements.iterator().next();
+            results.put(statement, analyze(statement, dialect));
+            return results;
+        }
+        Map<String, CompletableFuture<StatementAnalysis>> futures = new HashMap<>();
+        for (String statement : statements) {
+            futures.put(statement, CompletableFuture.supplyAsync(() -> analyze(statement, dialect), scriptAnalysisExecutor));
+        }
+        futures.forEach((statement, future) -> results.put(statement, future.join()));
+        return results;
+    }
+
+    private StatementAnalysis analyze(String sql, SqlDialect dialect) {
+        try {
+            ParsedQuery parsed = parserService.parseQuery(sql, dialect);
+            return new StatementAnalysis(true, null, parserService.format(parsed), complexityService.analyze(parsed));
+        } catch (RuntimeException e) {
+            return new StatementAnalysis(false, e.getMessage(), null, null);
+        }
+    }
+
+    // Lines the two versions up on their longest common subsequence of statements, so an
+    // insertion doesn't report every statement after it as changed. Of the rest, a statement
+    // whose text was elsewhere in the previous version is MOVED, one that takes the place of
+    // a vanished statement between the same unchanged neighbours is CHANGED, and the others
+    // are ADDED or REMOVED. Moves carry no analysis, the client already has it.
+    private static List<EditorSessionResponse.StatementDelta> diff(List<String> previous, List<String> current,
+                                                                   Map<String, StatementAnalysis> results) {
+        // An edit usually touches one statement, so the table only spans what lies between
+        // the unchanged head and tail
+        int head = 0;
+        while (head < previous.size() && head < current.size() && previous.get(head).equals(current.get(head))) {
+            head++;
+        }
+        int tail = 0;
+        while (tail < previous.size() - head && tail < current.size() - head
+                && previous.get(previous.size() - 1 - tail).equals(current.get(current.size() - 1 - tail))) {
+            tail++;
+        }
+        int m = previous.size() - head - tail;
+        int n = current.size() - head - tail;
+        int[] previousHashes = new int[m];
+        int[] currentHashes = new int[n];
+        for (int i = 0; i < m; i++) previousHashes[i] = previous.get(head + i).hashCode();
+        for (int j = 0; j < n; j++) currentHashes[j] = current.get(head + j).hashCode();
+
+        // lcs[i][j]: common subsequence length of previous[i..] and current[j..]
+        int[][] lcs = new int[m + 1][n + 1];
+        for (int i = m - 1; i >= 0; i--) {
+            for (int j = n - 1; j >= 0; j--) {
+                lcs[i][j] = same(previous, previousHashes, i, current, currentHashes, j, head)
+                        ? lcs[i + 1][j + 1] + 1
+                        : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+            }
+        }
+
+        // Unmatched statements, numbered by the gap between matches they fall in
+        List<int[]> unmatchedPrevious = new ArrayList<>();
+        List<int[]> unmatchedCurrent = new ArrayList<>();
+        int gap = 0;
+        for (int i = 0, j = 0; i < m || j < n; ) {
+            if (i < m && j < n && same(previous, previousHashes, i, current, currentHashes, j, head)) {
+                i++;
+                j++;
+                gap++;
+            } else if (j >= n || (i < m && lcs[i + 1][j] >= lcs[i][j + 1])) {
+                unmatchedPrevious.add(new int[]{head + i++, gap});
+            } else {
+                unmatchedCurrent.add(new int[]{head + j++, gap});
+            }
+        }
+
+        Map<String, Deque<int[]>> vanished = new HashMap<>();
+        for (int[] entry : unmatchedPrevious) {
+            vanished.computeIfAbsent(previous.get(entry[0]), k -> new ArrayDeque<>()).add(entry);
+        }
+        Set<int[]> moved = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<EditorSessionResponse.StatementDelta> changes = new ArrayList<>();
+        List<int[]> fresh = new ArrayList<>();
+        for (int[] entry : unmatchedCurrent) {
+            Deque<int[]> sources = vanished.get(current.get(entry[0]));
+            int[] source = sources != null ? sources.poll() : null;
+            if (source != null) {
+                moved.add(source);
+                changes.add(EditorSessionResponse.StatementDelta.builder()
+                        .index(entry[0]).previousIndex(source[0]).change("MOVED").build());
+            } else {
+                fresh.add(entry);
+            }
+        }
+        Map<Integer, Deque<int[]>> replaceable = new HashMap<>();
+        for (int[] entry : unmatchedPrevious) {
+            if (!moved.contains(entry)) {
+                replaceable.computeIfAbsent(entry[1], k -> new ArrayDeque<>()).add(entry);
+            }
+        }
+        for (int[] entry : fresh) {
+            Deque<int[]> candidates = replaceable.get(entry[1]);
+            int[] replaced = candidates != null ? candidates.poll() : null;
+            EditorSessionResponse.StatementDelta delta = delta(entry[0], replaced != null ? "CHANGED" : "ADDED",
+                    results.get(current.get(entry[0])));
+            if (replaced != null) {
+                delta.setPreviousIndex(replaced[0]);
+            }
+            changes.add(delta);
+        }
+        for (Deque<int[]> leftover : replaceable.values()) {
+            for (int[] entry : leftover) {
+                changes.add(EditorSessionResponse.StatementDelta.builder()
+                        .index(entry[0]).change("REMOVED").build());
+            }
+        }
+        // Current statements in editor order, then the removed ones in their previous order
+        changes.sort(Comparator.comparing((EditorSessionResponse.StatementDelta delta) -> delta.getChange().equals("REMOVED"))
+                .thenComparingInt(EditorSessionResponse.StatementDelta::getIndex));
+        return changes;
+    }
+
+    private static boolean same(List<String> previous, int[] previousHashes, int i,
+                                List<String> current, int[] currentHashes, int j, int offset) {
+        return previousHashes[i] == currentHashes[j] && previous.get(offset + i).equals(current.get(offset + j));
+    }
+
+    private static EditorSessionResponse.StatementDelta delta(int index, String change, StatementAnalysis analysis) {
+        return EditorSessionResponse.StatementDelta.builder()
+                .index(index)
+                .change(change)
+                .valid(analysis.valid())
+                .error(analysis.error())
+                .parseResult(analysis.parseResult())
+                .complexity(analysis.complexity())
+                .build();
+    }
+
+    private static final class Session {
+        private final String id;
+        private final String username;
+        private final SqlDialect dialect;
+        private long version;
+        private List<String> statements = List.of();
+        // Keyed by the statement text, so moving or duplicating a statement reuses its result
+        private Map<String, StatementAnalysis> results = Map.of();
+
+        Session(String id, String username, SqlDialect dialect) {
+            this.id = id;
+            this.username = username;
+            this.dialect = dialect;
+        }
+    }
+
+    private record StatementAnalysis(boolean valid, String error,
+                                     QueryParseResponse parseResult, ComplexityReport complexity) {
+    }
+}
@@ -3,15 +3,17 @@ package com.example.querysence.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import com.example.querysence.model.IndexDefinition;
-import com.example.querysence.model.TableDefinition;
+import com.example.querysence.exception.ResourceNotFoundException;
 import com.example.querysence.model.dto.IndexSuggestionResponse;
+import com.example.querysence.model.dto.RedundantIndexResponse;
 import com.example.querysence.parser.ParsedQuery;
-import com.example.querysence.repository.SchemaDefinitionRepository;
+import com.example.querysence.parser.SqlDialect;
 
 import java.util.*;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Service
@@ -19,34 +21,59 @@ import java.util.stream.Collectors;
 @Slf4j
 public class IndexAdvisorService {
 
-    private final SchemaDefinitionRepository schemaRepository;
+    // Above this share of rows an index rarely beats a sequential scan
+    private static final double LOW_SELECTIVITY = 0.2;
+    private static final double HIGH_SELECTIVITY = 0.01;
+
+    private static final Set<String> RANGE_OPERATORS = Set.of("<", ">", "<=", ">=", "BETWEEN", "LIKE");
+    // Predicates a B-tree can't search, whatever the column
+    private static final Set<String> NON_BTREE_OPERATORS = Set.of("ILIKE", "SIMILAR TO", "REGEXP", "RLIKE",
+            "@>", "<@", "?", "?|", "?&", "@@", "MATCH");
+    private static final Set<String> CONTAINMENT_OPERATORS = Set.of("@>", "<@", "?", "?|", "?&");
+    // Trigram indexes need this many literal characters in a row to narrow anything down
+    private static final int MIN_TRIGRAM_LITERAL = 3;
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][\\w$]*");
+
+    private final SchemaCatalogCache catalogCache;
+    private final SelectivityEstimator selectivityEstimator;
+    private final IndexCostEstimator costEstimator;
+    private final WorkloadIndexAdvisor workloadAdvisor;
+
+    // Wider covering sets bloat the index more than the heap fetches they save
+    @Value("${index.advisor.max-include-columns:3}")
+    private int maxIncludeColumns;
+
+    // Past this share of a table's statements maintaining the index, its impact drops a level
+    @Value("${index.advisor.write-heavy-share:0.5}")
+    private double writeHeavyShare;
+
+    // BRIN pays off only on big tables whose rows are stored in the column's order
+    @Value("${index.advisor.brin-min-rows:1000000}")
+    private long brinMinRows;
+
+    @Value("${index.advisor.brin-min-correlation:0.9}")
+    private double brinMinCorrelation;
+
+    // Below this average key width a B-tree is as small as a hash index and does more
+    @Value("${index.advisor.hash-min-width:24}")
+    private int hashMinWidth;
 
     public List<IndexSuggestionResponse> suggestIndexes(ParsedQuery parsedQuery, Long schemaId) {
-        Map<String, Set<String>> existingIndexes = new HashMap<>();
-        Map<String, Long> tableRowCounts = new HashMap<>();
-
-        // Load existing indexes from schema if provided
-        if (schemaId != null) {
-            schemaRepository.findByIdWithFullDetails(schemaId).ifPresent(schema -> {
-                for (TableDefinition table : schema.getTables()) {
-                    String tableName = table.getTableName().toLowerCase();
-                    tableRowCounts.put(tableName, table.getEstimatedRows());
-                    
-                    Set<String> indexedColumns = new HashSet<>();
-                    for (IndexDefinition index : table.getIndexes()) {
-                        indexedColumns.addAll(index.getColumns().stream()
-                                .map(String::toLowerCase)
-                                .collect(Collectors.toSet()));
-                    }
-                    existingIndexes.put(tableName, indexedColumns);
-                }
-            });
-        }
+        // Existing indexes, row counts and statistics when a schema is provided
+        SchemaCatalog catalog = catalogCache.get(schemaId).orElse(null);
+        SqlDialect dialect = catalog != null ? SqlDialect.fromStored(catalog.dialect()) : SqlDialect.DEFAULT;
 
         List<IndexSuggestionResponse> suggestions = new ArrayList<>();
 
         // Analyze WHERE clause columns
         Map<String, Set<String>> whereColumnsByTable = new HashMap<>();
+        Map<String, Set<String>> rangeColumnsByTable = new HashMap<>();
+        Map<String, Double> whereSelectivity = new HashMap<>();
+        // Same estimate with default selectivities filling in, for heap-fetch estimates
+        Map<String, Double> rowSelectivity = new HashMap<>();
+        // Conditions by table.column, and the ones that need another index type than a B-tree
+        Map<String, List<ParsedQuery.WhereCondition>> conditionsByColumn = new HashMap<>();
+        Map<String, List<ParsedQuery.WhereCondition>> typedConditionsByTable = new HashMap<>();
         for (ParsedQuery.WhereCondition condition : parsedQuery.getWhereConditions()) {
             String table = condition.getTable().toLowerCase();
             String column = condition.getColumn().toLowerCase();
@@ -56,7 +83,29 @@ public class IndexAdvisorService {
             }
             
             if (!table.isEmpty()) {
+                if (!btreeSearchable(condition)) {
+                    if (indexShape(condition, dialect) != null) {
+                        typedConditionsByTable.computeIfAbsent(table, k -> new ArrayList<>()).add(condition);
+                    }
+                    continue;
+                }
+                conditionsByColumn.computeIfAbsent(table + "." + column, k -> new ArrayList<>()).add(condition);
                 whereColumnsByTable.computeIfAbsent(table, k -> new LinkedHashSet<>()).add(column);
+                if (RANGE_OPERATORS.contains(condition.getOperator() != null ? condition.getOperator().toUpperCase() : "")) {
+                    rangeColumnsByTable.computeIfAbsent(table, k -> new LinkedHashSet<>()).add(column);
+                }
+                SchemaCatalog.Table catalogTable = catalog != null ? catalog.table(table) : null;
+                SchemaCatalog.Column catalogColumn = catalogTable != null ? catalogTable.column(column) : null;
+                SelectivityEstimator.Column facts = catalogTable != null
+                        ? catalogTable.selectivityColumn(column)
+                        : new SelectivityEstimator.Column(null, SchemaCatalog.DEFAULT_ROWS, false, false);
+                int listSize = condition.getValues() != null ? condition.getValues().size() : 1;
+                double conditionSelectivity = selectivityEstimator.selectivity(condition, facts, Math.max(1, listSize));
+                rowSelectivity.merge(table + "." + column, conditionSelectivity, (a, b) -> a * b);
+                // Without statistics the defaults would only restate the row-count heuristic
+                if (catalogColumn != null && catalogColumn.statistics() != null) {
+                    whereSelectivity.merge(table + "." + column, conditionSelectivity, (a, b) -> a * b);
+                }
             }
         }
 
@@ -94,50 +143,150 @@ public class IndexAdvisorService {
         allTables.addAll(joinColumnsByTable.keySet());
         allTables.addAll(orderByColumnsByTable.keySet());
         allTables.addAll(groupByColumnsByTable.keySet());
+        allTables.addAll(typedConditionsByTable.keySet());
+
+        // Reads and writes per table across the project's query history
+        Map<String, WorkloadIndexAdvisor.TableWrites> writeProfile = catalog != null && !allTables.isEmpty()
+                ? workloadAdvisor.writeProfile(catalog.projectId())
+                : Map.of();
 
         for (String table : allTables) {
-            Set<String> existing = existingIndexes.getOrDefault(table, Collections.emptySet());
-            Long rowCount = tableRowCounts.getOrDefault(table, 0L);
+            int tableStart = suggestions.size();
+            SchemaCatalog.Table catalogTable = catalog != null ? catalog.table(table) : null;
+            IndexTrie existing = catalogTable != null ? catalogTable.indexTrie() : new IndexTrie();
+            Long rowCount = catalogTable != null ? catalogTable.estimatedRows() : 0L;
 
             // Check for composite index opportunity (WHERE + JOIN)
             Set<String> whereCols = whereColumnsByTable.getOrDefault(table, Collections.emptySet());
             Set<String> joinCols = joinColumnsByTable.getOrDefault(table, Collections.emptySet());
             
+            Set<String> rangeCols = rangeColumnsByTable.getOrDefault(table, Collections.emptySet());
+            Set<String> equalityCols = new LinkedHashSet<>(joinCols);
+            whereCols.stream().filter(column -> !rangeCols.contains(column)).forEach(equalityCols::add);
+            List<String> orderList = new ArrayList<>(orderByColumnsByTable.getOrDefault(table, Collections.emptySet()));
+
+            // What the existing indexes already serve through a leftmost prefix
+            IndexTrie.Match served = existing.match(equalityCols, rangeCols, orderList);
+
+            // Key order: the prefix an existing index already has, so the suggestion extends it,
+            // then equality columns, then the ORDER BY columns so rows come back sorted, then
+            // range columns. Statistics put the most selective column first within each group.
+            Set<String> filterCols = new LinkedHashSet<>(joinCols);
+            filterCols.addAll(whereCols);
+            List<String> equalityKey = bySelectivity(equalityCols.stream()
+                    .filter(column -> !served.equalityColumns().contains(column)).toList(),
+                    table, whereSelectivity, catalogTable);
+            // ORDER BY columns are unqualified, so only a single-table query's sort is attributable;
+            // columns bound by equality are constant and don't affect the order
+            List<String> sortKey = parsedQuery.getTables().size() == 1
+                    ? orderList.stream().filter(column -> !equalityCols.contains(column)).toList()
+                    : List.of();
+            List<String> rangeKey = bySelectivity(rangeCols.stream()
+                    .filter(column -> !sortKey.contains(column) && !equalityCols.contains(column)).toList(),
+                    table, whereSelectivity, catalogTable);
             Set<String> combinedCols = new LinkedHashSet<>();
-            // Order: JOIN columns first (more selective for joins), then WHERE columns
-            combinedCols.addAll(joinCols);
-            combinedCols.addAll(whereCols);
-            
-            // Remove already indexed columns
-            combinedCols.removeAll(existing);
-            
+            combinedCols.addAll(served.equalityColumns());
+            combinedCols.addAll(equalityKey);
+            combinedCols.addAll(sortKey);
+            combinedCols.addAll(rangeKey);
+            if (filterCols.isEmpty()
+                    || (served.servedColumns().containsAll(filterCols) && (sortKey.isEmpty() || served.sortProvided()))) {
+                combinedCols.clear();
+            }
+            // Descending columns need their direction in the key only when directions are mixed,
+            // a uniform order is served by scanning the index backwards
+            Set<String> descending = mixedDirections(parsedQuery, sortKey)
+                    ? sortKey.stream().filter(column -> isDescending(parsedQuery, column)).collect(Collectors.toSet())
+                    : Set.of();
+            String extendsNote = served.indexName() != null && !served.equalityColumns().isEmpty()
+                    ? " - extends the (" + String.join(", ", served.equalityColumns()) + ") prefix already indexed by " + served.indexName()
+                    : "";
+
+            // Combined share of rows the WHERE columns keep, when statistics cover them
+            Double selectivity = null;
+            for (String column : combinedCols) {
+                Double columnSelectivity = whereSelectivity.get(table + "." + column);
+                if (columnSelectivity != null) {
+                    selectivity = (selectivity != null ? selectivity : 1.0) * columnSelectivity;
+                }
+            }
+
+            // Columns outside the key the query reads, when an index-only scan is within reach
+            List<String> includeCols = combinedCols.isEmpty() ? null
+                    : coveringColumns(parsedQuery, table, catalog, combinedCols, dialect);
+            IndexSuggestionResponse keySuggestion = null;
             if (combinedCols.size() >= 2) {
                 String impact = calculateImpact(rowCount, true, joinCols.size() > 0);
-                suggestions.add(createSuggestion(
+                String reason = "Composite index for WHERE and JOIN conditions" + extendsNote
+                        + orderNote(concat(served.equalityColumns(), equalityKey), sortKey, rangeKey, descending);
+                if (joinCols.isEmpty() && selectivity != null) {
+                    impact = selectivityImpact(impact, rowCount, selectivity);
+                    reason += selectivityNote(selectivity);
+                }
+                keySuggestion = createSuggestion(
                         table, 
                         new ArrayList<>(combinedCols), 
                         "COMPOSITE", 
                         impact,
-                        "Composite index for WHERE and JOIN conditions"
-                ));
+                        reason
+                );
+                keySuggestion.setCreateStatement(generateCreateStatement(table, keySuggestion.getColumns(),
+                        keySuggestion.getIndexName(), descending));
             } else if (combinedCols.size() == 1) {
                 String column = combinedCols.iterator().next();
                 String impact = calculateImpact(rowCount, whereCols.contains(column), joinCols.contains(column));
                 String reason = joinCols.contains(column) ? "Used in JOIN condition" : "Used in WHERE clause";
-                suggestions.add(createSuggestion(
+                if (!joinCols.contains(column) && selectivity != null) {
+                    impact = selectivityImpact(impact, rowCount, selectivity);
+                    reason += selectivityNote(selectivity);
+                }
+                keySuggestion = createSuggestion(
                         table, 
                         List.of(column), 
                         "SINGLE", 
                         impact, 
                         reason
-                ));
+                );
+            }
+            if (keySuggestion != null) {
+                if (includeCols != null) {
+                    cover(keySuggestion, includeCols, dialect, descending);
+                } else if (combinedCols.size() == 1 && sortKey.isEmpty() && joinCols.isEmpty()
+                        && dialect == SqlDialect.POSTGRESQL) {
+                    String column = combinedCols.iterator().next();
+                    List<ParsedQuery.WhereCondition> conditions = conditionsByColumn.getOrDefault(table + "." + column, List.of());
+                    boolean ordered = orderList.contains(column)
+                            || groupByColumnsByTable.getOrDefault(table, Set.of()).contains(column);
+                    if (!ordered) {
+                        retype(keySuggestion, column, conditions, catalogTable, writeProfile.get(table));
+                    }
+                }
+                // Heap rows read per execution today (table scan or the served prefix) against
+                // the rows the new index still fetches, none for an index-only scan
+                if (rowCount > 0) {
+                    double before = rowCount * keySelectivity(served.servedColumns(), table, rowSelectivity, catalogTable);
+                    // Sort-only columns don't filter, range columns after the sort still do as index conditions
+                    Set<String> keyFilters = new LinkedHashSet<>(combinedCols);
+                    keyFilters.retainAll(filterCols);
+                    double matched = rowCount * keySelectivity(keyFilters, table, rowSelectivity, catalogTable);
+                    double after = includeCols != null ? 0 : matched;
+                    long reduction = Math.max(0, Math.round(before - after));
+                    keySuggestion.setHeapFetchReduction(reduction);
+                    if (reduction > 0) {
+                        String note = " - avoids ~" + reduction + " heap fetches per execution";
+                        if (includeCols != null && !includeCols.isEmpty()) {
+                            note += ", ~" + Math.round(matched) + " of them still made by the same index without the extra columns";
+                        }
+                        keySuggestion.setReasoning(keySuggestion.getReasoning() + note);
+                    }
+                }
+                suggestions.add(keySuggestion);
             }
 
             // ORDER BY index suggestion
             Set<String> orderCols = orderByColumnsByTable.getOrDefault(table, Collections.emptySet());
-            orderCols.removeAll(existing);
             for (String col : orderCols) {
-                if (!combinedCols.contains(col)) {
+                if (!served.sortProvided() && !combinedCols.contains(col) && !existing.hasPrefix(List.of(col))) {
                     suggestions.add(createSuggestion(
                             table, 
                             List.of(col), 
@@ -150,9 +299,8 @@ public class IndexAdvisorService {
 
             // GROUP BY index suggestion (lower priority)
             Set<String> groupCols = groupByColumnsByTable.getOrDefault(table, Collections.emptySet());
-            groupCols.removeAll(existing);
             for (String col : groupCols) {
-                if (!combinedCols.contains(col) && !orderCols.contains(col)) {
+                if (!combinedCols.contains(col) && !orderCols.contains(col) && !existing.hasPrefix(List.of(col))) {
                     suggestions.add(createSuggestion(
                             table, 
                             List.of(col), 
@@ -162,12 +310,81 @@ public class IndexAdvisorService {
                     ));
                 }
             }
+
+            // GIN, trigram and FULLTEXT indexes for predicates a B-tree can't search
+            for (IndexSuggestionResponse typed : typedSuggestions(table,
+                    typedConditionsByTable.getOrDefault(table, List.of()), catalogTable, dialect, rowCount)) {
+                suggestions.add(typed);
+            }
+
+            // Indexes of the tables this query touches that only cost writes and cache
+            for (IndexTrie.Redundancy redundancy : existing.redundancies()) {
+                RedundantIndexResponse redundant = toResponse(table, redundancy, dialect);
+                suggestions.add(IndexSuggestionResponse.builder()
+                        .tableName(table)
+                        .columns(redundant.getColumns())
+                        .indexName(redundant.getIndexName())
+                        .suggestionType("REDUNDANT")
+                        .impactScore("LOW")
+                        .reasoning(redundant.getReasoning())
+                        .createStatement(redundant.getDropStatement())
+                        .build());
+            }
+
+            if (catalogTable != null) {
+                WorkloadIndexAdvisor.TableWrites writes = writeProfile.get(table);
+                for (IndexSuggestionResponse suggestion : suggestions.subList(tableStart, suggestions.size())) {
+                    annotateCost(suggestion, catalogTable, writes);
+                }
+            }
         }
 
         return suggestions;
     }
 
-    private String calculateImpact(Long rowCount, boolean inWhere, boolean inJoin) {
+    // Duplicate and prefix-redundant indexes across the whole schema
+    public List<RedundantIndexResponse> findRedundantIndexes(Long schemaId) {
+        SchemaCatalog catalog = catalogCache.get(schemaId)
+                .orElseThrow(() -> new ResourceNotFoundException("Schema", "id", schemaId));
+        SqlDialect dialect = SqlDialect.fromStored(catalog.dialect());
+        List<RedundantIndexResponse> redundant = new ArrayList<>();
+        for (SchemaCatalog.Table table : catalog.tables()) {
+            for (IndexTrie.Redundancy redundancy : table.indexTrie().redundancies()) {
+                redundant.add(toResponse(table.name(), redundancy, dialect));
+            }
+        }
+        redundant.sort(Comparator.comparing(RedundantIndexResponse::getTableName)
+                .thenComparing(RedundantIndexResponse::getIndexName));
+        return redundant;
+    }
+
+    private RedundantIndexResponse toResponse(String table, IndexTrie.Redundancy redundancy, SqlDialect dialect) {
+        SchemaCatalog.Index index = redundancy.index();
+        SchemaCatalog.Index coveredBy = redundancy.coveredBy();
+        String covering = coveredBy.name() + " (" + String.join(", ", coveredBy.columns()) + ")";
+        String reasoning = redundancy.kind().equals("DUPLICATE")
+                ? "Same columns as " + covering + " - every write maintains both"
+                : "Leading columns of " + covering + ", which serves the same lookups and sorts";
+        return RedundantIndexResponse.builder()
+                .tableName(table)
+                .indexName(index.name())
+                .columns(index.columns())
+                .kind(redundancy.kind())
+                .coveredBy(coveredBy.name())
+                .reasoning(reasoning)
+                .dropStatement(dropStatement(table, index.name(), dialect))
+                .build();
+    }
+
+    // MySQL and SQL Server index names are per table, so the drop has to name it
+    private static String dropStatement(String table, String indexName, SqlDialect dialect) {
+        return switch (dialect) {
+            case MYSQL, SQLSERVER -> "DROP INDEX " + indexName + " ON " + table + ";";
+            case POSTGRESQL, ORACLE -> "DROP INDEX " + indexName + ";";
+        };
+    }
+
+    private static String calculateImpact(Long rowCount, boolean inWhere, boolean inJoin) {
         if (inJoin && inWhere) {
             return "HIGH";
         }
@@ -180,6 +397,470 @@ public class IndexAdvisorService {
         return "LOW";
     }
 
+    // Statistics override the row-count heuristic: an index that still reads a large share
+    // of the table is rarely used, a very selective one on a big table pays off most
+    private String selectivityImpact(String impact, Long rowCount, double selectivity) {
+        if (selectivity > LOW_SELECTIVITY) {
+            return "LOW";
+        }
+        if (selectivity <= HIGH_SELECTIVITY && rowCount != null && rowCount > 10000) {
+            return "HIGH";
+        }
+        return impact;
+    }
+
+    private String selectivityNote(double selectivity) {
+        String percent = formatPercent(selectivity);
+        if (selectivity > LOW_SELECTIVITY) {
+            return " - low selectivity (~" + percent + " of rows), the planner will likely prefer a sequential scan";
+        }
+        return " (matches ~" + percent + " of rows)";
+    }
+
+    private String formatPercent(double fraction) {
+        double percent = fraction * 100;
+        if (percent >= 1) return Math.round(percent) + "%";
+        if (percent >= 0.01) return String.format(Locale.ROOT, "%.2f%%", percent);
+        return "<0.01%";
+    }
+
+    // Select-list, WHERE, sort and group columns of the table that are not in the key. Null when
+    // the query reads more than it names (*, expressions, subqueries) or more than the limit.
+    private List<String> coveringColumns(ParsedQuery query, String table, SchemaCatalog catalog,
+                                         Set<String> key, SqlDialect dialect) {
+        if (!"SELECT".equals(query.getQueryType()) || !query.getSubqueries().isEmpty()
+                || !query.getSetOperations().isEmpty() || query.getColumns().isEmpty()) {
+            return null;
+        }
+        List<String> tables = query.getTables().stream().map(String::toLowerCase).toList();
+        if (!tables.contains(table)) {
+            return null;
+        }
+        Set<String> needed = new LinkedHashSet<>();
+        for (String item : query.getColumns()) {
+            String upper = item.toUpperCase(Locale.ROOT).replace(" ", "");
+            if (upper.equals("COUNT(*)") || upper.equals("COUNT(1)")) {
+                continue;
+            }
+            if (!IDENTIFIER.matcher(item).matches()) {
+                return null;
+            }
+            String owner = owningTable(item, tables, catalog);
+            if (owner == null) {
+                return null;
+            }
+            if (owner.equals(table)) {
+                needed.add(item.toLowerCase());
+            }
+        }
+        // Every WHERE column of the table, including the ones filtered without the key's help:
+        // the scan still has to read them from the index to evaluate those conditions
+        SchemaCatalog.Table catalogTable = catalog != null ? catalog.table(table) : null;
+        for (ParsedQuery.WhereCondition condition : query.getWhereConditions()) {
+            String column = condition.getColumn() != null ? condition.getColumn() : "";
+            String owner = condition.getTable() != null && !condition.getTable().isEmpty()
+                    ? condition.getTable().toLowerCase()
+                    : owningTable(column, tables, catalog);
+            if (owner == null) {
+                return null;
+            }
+            if (!owner.equals(table)) {
+                continue;
+            }
+            // MATCH needs a FULLTEXT index, and expressions or unknown columns can't be stored
+            if ("MATCH".equalsIgnoreCase(condition.getOperator()) || !IDENTIFIER.matcher(column).matches()
+                    || (catalogTable != null && !catalogTable.hasColumn(column.toLowerCase()))) {
+                return null;
+            }
+            needed.add(column.toLowerCase());
+        }
+        // Sort and group columns are unqualified, only attributable in single-table queries
+        if (tables.size() == 1) {
+            query.getOrderByColumns().forEach(column -> needed.add(column.toLowerCase()));
+            query.getGroupByColumns().forEach(column -> needed.add(column.toLowerCase()));
+        }
+        needed.removeAll(key);
+        if (dialect == SqlDialect.MYSQL && catalogTable != null) {
+            // InnoDB secondary indexes already carry the primary key
+            needed.removeIf(column -> catalogTable.hasColumn(column) && catalogTable.column(column).primaryKey());
+        }
+        return needed.size() <= maxIncludeColumns ? new ArrayList<>(needed) : null;
+    }
+
+    // The single query table a select-list column belongs to, null when it can't be told
+    private String owningTable(String column, List<String> tables, SchemaCatalog catalog) {
+        if (tables.size() == 1) {
+            return tables.get(0);
+        }
+        if (catalog == null) {
+            return null;
+        }
+        List<String> owners = tables.stream()
+                .filter(table -> catalog.table(table) != null && catalog.table(table).hasColumn(column))
+                .toList();
+        return owners.size() == 1 ? owners.get(0) : null;
+    }
+
+    // PostgreSQL and SQL Server keep INCLUDE columns out of the search key; elsewhere they
+    // become trailing key columns
+    private void cover(IndexSuggestionResponse suggestion, List<String> includeCols, SqlDialect dialect,
+                       Set<String> descending) {
+        String reason = " - covers every column the query reads from " + suggestion.getTableName()
+                + ", so it can be answered by an index-only scan";
+        if (includeCols.isEmpty()) {
+            suggestion.setReasoning(suggestion.getReasoning() + reason);
+            return;
+        }
+        List<String> keyCols = suggestion.getColumns();
+        boolean include = dialect == SqlDialect.POSTGRESQL || dialect == SqlDialect.SQLSERVER;
+        if (include) {
+            suggestion.setIncludeColumns(includeCols);
+            suggestion.setCreateStatement(String.format("CREATE INDEX %s ON %s (%s) INCLUDE (%s);",
+                    suggestion.getIndexName(), suggestion.getTableName(), keyList(keyCols, descending),
+                    String.join(", ", includeCols)));
+        } else {
+            List<String> columns = new ArrayList<>(keyCols);
+            columns.addAll(includeCols);
+            suggestion.setColumns(columns);
+            suggestion.setCreateStatement(generateCreateStatement(suggestion.getTableName(), columns,
+                    suggestion.getIndexName(), descending));
+        }
+        suggestion.setReasoning(suggestion.getReasoning() + reason
+                + (include ? " (INCLUDE " : " (trailing ") + String.join(", ", includeCols) + ")");
+    }
+
+    // Whether a B-tree can narrow the rows down for this condition: not for negations, ILIKE,
+    // pattern matches with a leading wildcard, containment or text search
+    private static boolean btreeSearchable(ParsedQuery.WhereCondition condition) {
+        String operator = condition.getOperator() != null ? condition.getOperator().toUpperCase(Locale.ROOT) : "";
+        if (operator.startsWith("NOT ") || NON_BTREE_OPERATORS.contains(operator)) {
+            return false;
+        }
+        return !operator.equals("LIKE") || !leadingWildcard(condition);
+    }
+
+    private static boolean leadingWildcard(ParsedQuery.WhereCondition condition) {
+        String pattern = SelectivityEstimator.literal(condition.getValue());
+        return pattern != null && !pattern.isEmpty() && (pattern.charAt(0) == '%' || pattern.charAt(0) == '_');
+    }
+
+    // Index type that can serve a condition a B-tree can't, null when the dialect has none
+    private static String indexShape(ParsedQuery.WhereCondition condition, SqlDialect dialect) {
+        String operator = condition.getOperator() != null ? condition.getOperator().toUpperCase(Locale.ROOT) : "";
+        if (dialect == SqlDialect.POSTGRESQL) {
+            if ((operator.equals("LIKE") || operator.equals("ILIKE"))
+                    && longestLiteralRun(SelectivityEstimator.literal(condition.getValue())) >= MIN_TRIGRAM_LITERAL) {
+                return "TRIGRAM";
+            }
+            if (CONTAINMENT_OPERATORS.contains(operator) || operator.equals("@@")) {
+                return "GIN";
+            }
+        } else if (dialect == SqlDialect.MYSQL) {
+            if (operator.equals("MATCH")) {
+                return "FULLTEXT";
+            }
+            if (operator.equals("LIKE")
+                    && longestLiteralRun(SelectivityEstimator.literal(condition.getValue())) >= MIN_TRIGRAM_LITERAL) {
+                return "FULLTEXT";
+            }
+        }
+        return null;
+    }
+
+    private static int longestLiteralRun(String pattern) {
+        if (pattern == null) return 0;
+        int longest = 0;
+        int run = 0;
+        for (char c : pattern.toCharArray()) {
+            run = c == '%' || c == '_' ? 0 : run + 1;
+            longest = Math.max(longest, run);
+        }
+        return longest;
+    }
+
+    // One suggestion per column (per column set for MATCH), naming the predicate behind it
+    private List<IndexSuggestionResponse> typedSuggestions(String table, List<ParsedQuery.WhereCondition> conditions,
+                                                           SchemaCatalog.Table catalogTable, SqlDialect dialect,
+                                                           Long rowCount) {
+        Map<List<String>, List<ParsedQuery.WhereCondition>> byColumns = new LinkedHashMap<>();
+        for (ParsedQuery.WhereCondition condition : conditions) {
+            List<String> columns = condition.getOperator().equalsIgnoreCase("MATCH") && condition.getValues() != null
+                    ? condition.getValues().stream().map(column -> column.toLowerCase(Locale.ROOT)).toList()
+                    : List.of(condition.getColumn().toLowerCase(Locale.ROOT));
+            List<ParsedQuery.WhereCondition> group = byColumns.computeIfAbsent(columns, k -> new ArrayList<>());
+            // MATCH repeats the condition for each of its columns
+            if (group.stream().noneMatch(seen -> seen.getOperator().equals(condition.getOperator())
+                    && Objects.equals(seen.getValue(), condition.getValue()))) {
+                group.add(condition);
+            }
+        }
+
+        List<IndexSuggestionResponse> suggestions = new ArrayList<>();
+        for (Map.Entry<List<String>, List<ParsedQuery.WhereCondition>> entry : byColumns.entrySet()) {
+            List<String> columns = entry.getKey();
+            List<ParsedQuery.WhereCondition> group = entry.getValue();
+            String shape = indexShape(group.get(0), dialect);
+            String predicates = group.stream().map(IndexAdvisorService::describe).collect(Collectors.joining(" and "));
+            String column = columns.get(0);
+            String impact = calculateImpact(rowCount, true, false);
+            String indexType;
+            String indexName;
+            String statement;
+            String reason;
+            switch (shape) {
+                case "TRIGRAM" -> {
+                    if (hasIndex(catalogTable, columns, Set.of("GIN", "GIST"))) continue;
+                    boolean caseInsensitive = group.stream().anyMatch(c -> c.getOperator().equalsIgnoreCase("ILIKE"));
+                    indexType = "GIN";
+                    indexName = "idx_" + table + "_" + column + "_trgm";
+                    statement = String.format("CREATE EXTENSION IF NOT EXISTS pg_trgm; CREATE INDEX %s ON %s USING GIN (%s gin_trgm_ops);",
+                            indexName, table, column);
+                    reason = predicates + (caseInsensitive ? " is case-insensitive" : " has a leading wildcard")
+                            + ", which a B-tree can't search - a trigram GIN index (pg_trgm) matches any pattern with "
+                            + MIN_TRIGRAM_LITERAL + "+ literal characters, in any case";
+                }
+                case "GIN" -> {
+                    if (hasIndex(catalogTable, columns, Set.of("GIN", "GIST"))) continue;
+                    boolean textSearch = group.stream().anyMatch(c -> c.getOperator().equals("@@"));
+                    SchemaCatalog.Column catalogColumn = catalogTable != null ? catalogTable.column(column) : null;
+                    // jsonb_path_ops only supports @>, but is smaller and faster for it
+                    boolean pathOps = !textSearch && catalogColumn != null && catalogColumn.dataType() != null
+                            && catalogColumn.dataType().toLowerCase(Locale.ROOT).startsWith("jsonb")
+                            && group.stream().allMatch(c -> c.getOperator().equals("@>"));
+                    indexType = "GIN";
+                    indexName = "idx_" + table + "_" + column + "_gin";
+                    statement = String.format("CREATE INDEX %s ON %s USING GIN (%s%s);",
+                            indexName, table, column, pathOps ? " jsonb_path_ops" : "");
+                    reason = predicates + (textSearch
+                            ? " is a text search - a GIN index keeps a posting list per lexeme"
+                            : " tests containment, which a B-tree can't search - a GIN index keeps a posting list per key and element")
+                            + (pathOps ? "; jsonb_path_ops since only @> is used" : "");
+                }
+                default -> {
+                    if (hasIndex(catalogTable, columns, Set.of("FULLTEXT"))) continue;
+                    boolean match = group.stream().anyMatch(c -> c.getOperator().equalsIgnoreCase("MATCH"));
+                    indexType = "FULLTEXT";
+                    indexName = "idx_" + table + "_" + String.join("_", columns) + "_fulltext";
+                    statement = String.format("CREATE FULLTEXT INDEX %s ON %s (%s);",
+                            indexName, table, String.join(", ", columns));
+                    if (match) {
+                        impact = "HIGH";
+                        reason = predicates + " needs a FULLTEXT index over exactly these columns;"
+                                + " without one InnoDB rejects natural-language searches";
+                    } else {
+                        impact = "LOW";
+                        reason = predicates + " has a leading wildcard, which no MySQL index can search - a FULLTEXT"
+                                + " index serves it once rewritten as MATCH (" + column + ") AGAINST (...),"
+                                + " which matches whole words rather than substrings";
+                    }
+                }
+            }
+            IndexSuggestionResponse suggestion = createSuggestion(table, columns,
+                    columns.size() > 1 ? "COMPOSITE" : "SINGLE", impact, reason);
+            suggestion.setIndexName(indexName);
+            suggestion.setIndexType(indexType);
+            suggestion.setCreateStatement(statement);
+            suggestions.add(suggestion);
+        }
+        return suggestions;
+    }
+
+    // A single-column key only searched one way may be better served by another index type:
+    // BRIN for ranges over a column that follows the physical row order of a big table,
+    // hash for pure equality on a wide column
+    private void retype(IndexSuggestionResponse suggestion, String column, List<ParsedQuery.WhereCondition> conditions,
+                        SchemaCatalog.Table catalogTable, WorkloadIndexAdvisor.TableWrites writes) {
+        if (conditions.isEmpty() || catalogTable == null || hasIndex(catalogTable, List.of(column), Set.of("BRIN", "HASH"))) {
+            return;
+        }
+        Set<String> operators = conditions.stream()
+                .map(condition -> condition.getOperator().toUpperCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+        String predicates = conditions.stream().map(IndexAdvisorService::describe).collect(Collectors.joining(" and "));
+        SchemaCatalog.Column catalogColumn = catalogTable.column(column);
+        String dataType = catalogColumn != null && catalogColumn.dataType() != null
+                ? catalogColumn.dataType().toLowerCase(Locale.ROOT) : "";
+        String table = suggestion.getTableName();
+
+        boolean range = operators.stream().allMatch(operator -> RANGE_OPERATORS.contains(operator) && !operator.equals("LIKE"));
+        if (range && catalogTable.estimatedRows() >= brinMinRows) {
+            Double correlation = catalogColumn != null && catalogColumn.statistics() != null
+                    ? catalogColumn.statistics().correlation() : null;
+            boolean temporal = dataType.startsWith("timestamp") || dataType.startsWith("date");
+            String order = null;
+            if (correlation != null && Math.abs(correlation) >= brinMinCorrelation) {
+                order = "stored in " + column + " order (correlation " + String.format(Locale.ROOT, "%.2f", correlation) + ")";
+            } else if (correlation == null && temporal && writes != null && writes.appendOnly(column)) {
+                order = "appended in " + column + " order (history only inserts rows and never updates " + column + ")";
+            }
+            if (order != null) {
+                String indexName = "idx_" + table + "_" + column + "_brin";
+                suggestion.setIndexName(indexName);
+                suggestion.setIndexType("BRIN");
+                suggestion.setCreateStatement(String.format("CREATE INDEX %s ON %s USING BRIN (%s);", indexName, table, column));
+                suggestion.setReasoning("BRIN index for " + predicates + " - " + catalogTable.estimatedRows()
+                        + " rows " + order + ", so one min/max summary per block range skips most of the table"
+                        + " at a fraction of a B-tree's size");
+                return;
+            }
+        }
+        boolean equality = operators.equals(Set.of("="));
+        if (equality && IndexCostEstimator.columnWidth(catalogColumn != null ? catalogColumn.dataType() : null) >= hashMinWidth) {
+            String indexName = "idx_" + table + "_" + column + "_hash";
+            suggestion.setIndexName(indexName);
+            suggestion.setIndexType("HASH");
+            suggestion.setCreateStatement(String.format("CREATE INDEX %s ON %s USING HASH (%s);", indexName, table, column));
+            suggestion.setReasoning(suggestion.getReasoning() + " - hash index since " + predicates
+                    + " only tests equality on a wide " + dataType + " column: it stores a 4-byte hash"
+                    + " instead of the key, but can't serve ranges, sorting or uniqueness");
+        }
+    }
+
+    private static boolean hasIndex(SchemaCatalog.Table catalogTable, List<String> columns, Set<String> types) {
+        if (catalogTable == null) {
+            return false;
+        }
+        for (SchemaCatalog.Index index : catalogTable.indexes()) {
+            if (!types.contains(index.type())) continue;
+            boolean matches = index.type().equals("FULLTEXT")
+                    ? new HashSet<>(index.columns()).equals(new HashSet<>(columns))
+                    : index.columns().get(0).equals(columns.get(0));
+            if (matches) return true;
+        }
+        return false;
+    }
+
+    private static String describe(ParsedQuery.WhereCondition condition) {
+        if ("MATCH".equalsIgnoreCase(condition.getOperator()) && condition.getValues() != null) {
+            return "MATCH (" + String.join(", ", condition.getValues()) + ") AGAINST (" + condition.getValue() + ")";
+        }
+        return condition.getColumn() + " " + condition.getOperator()
+                + (condition.getValue() != null ? " " + condition.getValue()
+                : condition.getValues() != null ? " " + String.join(" AND ", condition.getValues()) : "");
+    }
+
+    // Size, build time and write cost of the suggested index, or what dropping a redundant one
+    // frees. Indexes most of the table's statements would have to maintain are demoted.
+    private void annotateCost(IndexSuggestionResponse suggestion, SchemaCatalog.Table catalogTable,
+                              WorkloadIndexAdvisor.TableWrites writes) {
+        List<String> columns = new ArrayList<>(suggestion.getColumns());
+        if (suggestion.getIncludeColumns() != null) {
+            columns.addAll(suggestion.getIncludeColumns());
+        }
+        boolean redundant = "REDUNDANT".equals(suggestion.getSuggestionType());
+        long size = costEstimator.sizeBytes(catalogTable, columns, 1, suggestion.getIndexType());
+        suggestion.setEstimatedSizeBytes(size);
+        if (!redundant) {
+            suggestion.setEstimatedBuildSeconds(costEstimator.buildSeconds(catalogTable, size, 1, suggestion.getIndexType()));
+        }
+        // A redundant index is one of the existing ones, its writes would be saved. A write
+        // only widens a BRIN summary, which costs next to nothing.
+        int otherIndexes = catalogTable.indexes().size() - (redundant ? 1 : 0);
+        boolean brin = "BRIN".equals(suggestion.getIndexType());
+        double amplification = brin ? 0 : IndexCostEstimator.writeAmplification(otherIndexes);
+        suggestion.setWriteAmplification(Math.round(amplification * 1000) / 1000.0);
+        if (writes == null || writes.writes() == 0) {
+            suggestion.setWriteShare(writes != null ? 0.0 : null);
+            return;
+        }
+        double writeShare = writes.maintainingShare(columns);
+        suggestion.setWriteShare(Math.round(writeShare * 1000) / 1000.0);
+        if (redundant || brin || writeShare == 0) {
+            return;
+        }
+        boolean writeHeavy = writeShare >= writeHeavyShare;
+        if (writeHeavy) {
+            suggestion.setImpactScore(lowerImpact(suggestion.getImpactScore()));
+        }
+        suggestion.setReasoning(suggestion.getReasoning() + (writeHeavy ? " - write-heavy table: " : " - ")
+                + formatPercent(writeShare) + " of the statements on " + suggestion.getTableName()
+                + " are writes that would maintain it, each doing ~" + formatPercent(amplification) + " more write work");
+    }
+
+    private static String lowerImpact(String impact) {
+        return switch (impact) {
+            case "HIGH" -> "MEDIUM";
+            default -> "LOW";
+        };
+    }
+
+    // Columns with statistics lead, most selective first; the others keep the query's order
+    private List<String> bySelectivity(List<String> columns, String table, Map<String, Double> whereSelectivity,
+                                       SchemaCatalog.Table catalogTable) {
+        Map<String, Double> known = new HashMap<>();
+        for (String column : columns) {
+            Double selectivity = whereSelectivity.get(table + "." + column);
+            if (selectivity == null && catalogTable != null && catalogTable.hasColumn(column)
+                    && catalogTable.column(column).statistics() != null) {
+                Double distinct = selectivityEstimator.distinctValues(catalogTable.selectivityColumn(column));
+                selectivity = distinct != null && distinct >= 1 ? 1 / distinct : null;
+            }
+            if (selectivity != null) {
+                known.put(column, selectivity);
+            }
+        }
+        List<String> ordered = new ArrayList<>(known.keySet());
+        ordered.sort(Comparator.comparingDouble(known::get));
+        columns.stream().filter(column -> !known.containsKey(column)).forEach(ordered::add);
+        return ordered;
+    }
+
+    private static boolean isDescending(ParsedQuery query, String column) {
+        List<String> columns = query.getOrderByColumns();
+        List<String> directions = query.getOrderByDirections();
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).equalsIgnoreCase(column)) {
+                return i < directions.size() && "DESC".equals(directions.get(i));
+            }
+        }
+        return false;
+    }
+
+    private static boolean mixedDirections(ParsedQuery query, List<String> sortKey) {
+        return sortKey.stream().map(column -> isDescending(query, column)).distinct().count() > 1;
+    }
+
+    private static String orderNote(List<String> equality, List<String> sort, List<String> range,
+                                    Set<String> descending) {
+        if (sort.isEmpty() && (range.isEmpty() || equality.isEmpty())) {
+            return "";
+        }
+        List<String> parts = new ArrayList<>();
+        if (!equality.isEmpty()) parts.add("equality on " + String.join(", ", equality));
+        if (!sort.isEmpty()) parts.add("ORDER BY " + keyList(sort, descending) + " so rows come back sorted");
+        if (!range.isEmpty()) parts.add("range on " + String.join(", ", range));
+        return " - ordered " + String.join(", then ", parts);
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        List<String> joined = new ArrayList<>(first);
+        joined.addAll(second);
+        return joined;
+    }
+
+    private static String keyList(List<String> columns, Set<String> descending) {
+        return columns.stream()
+                .map(column -> descending.contains(column) ? column + " DESC" : column)
+                .collect(Collectors.joining(", "));
+    }
+
+    // Share of rows an index on these columns still visits; join columns count as one value
+    private double keySelectivity(Set<String> columns, String table, Map<String, Double> rowSelectivity,
+                                  SchemaCatalog.Table catalogTable) {
+        double selectivity = 1;
+        for (String column : columns) {
+            Double where = rowSelectivity.get(table + "." + column);
+            if (where != null) {
+                selectivity *= where;
+                continue;
+            }
+            Double distinct = catalogTable != null && catalogTable.hasColumn(column)
+                    ? selectivityEstimator.distinctValues(catalogTable.selectivityColumn(column)) : null;
+            selectivity *= distinct != null && distinct >= 1 ? 1 / distinct : SelectivityEstimator.EQ_SELECTIVITY;
+        }
+        return selectivity;
+    }
+
     private IndexSuggestionResponse createSuggestion(String table, List<String> columns, 
                                                       String type, String impact, String reasoning) {
         String indexName = "idx_" + table + "_" + String.join("_", columns);
@@ -197,7 +878,12 @@ public class IndexAdvisorService {
     }
 
     private String generateCreateStatement(String table, List<String> columns, String indexName) {
+        return generateCreateStatement(table, columns, indexName, Set.of());
+    }
+
+    private String generateCreateStatement(String table, List<String> columns, String indexName,
+                                           Set<String> descending) {
         return String.format("CREATE INDEX %s ON %s (%s);", 
-                indexName, table, String.join(", ", columns));
+                indexName, table, keyList(columns, descending));
     }
 }
@@ -0,0 +1,118 @@
+package com.example.querysence.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// What an index costs besides its read benefit: disk, the time CREATE INDEX takes (scan the
+// heap, sort the keys, write the leaves) and the extra work every write that maintains it does.
+// Widths come from declared column types, rows from the table's estimate.
+@Component
+public class IndexCostEstimator {
+
+    static final long MIN_INDEX_BYTES = 8192;
+    // Index tuple header plus heap pointer, and leaf pages filled to 90%
+    private static final int INDEX_TUPLE_OVERHEAD = 16;
+    private static final double LEAF_FILL = 0.9;
+    // Heap tuple header plus line pointer
+    private static final int HEAP_TUPLE_OVERHEAD = 28;
+    private static final int PAGE_BYTES = 8192;
+    private static final int BRIN_PAGES_PER_RANGE = 128;
+    // Compressed item pointer in a GIN posting list
+    private static final int GIN_POSTING_BYTES = 6;
+    private static final Pattern LENGTH = Pattern.compile("\\((\\d+)");
+
+    @Value("${index.cost.scan-mb-per-second:200}")
+    private double scanMbPerSecond = 200;
+
+    @Value("${index.cost.write-mb-per-second:100}")
+    private double writeMbPerSecond = 100;
+
+    @Value("${index.cost.sort-comparisons-per-second:50000000}")
+    private double sortComparisonsPerSecond = 50_000_000;
+
+    // Leaf size of an index over these columns, covering a fraction of the rows for a partial index
+    public long sizeBytes(SchemaCatalog.Table table, List<String> columns, double rowFraction) {
+        return sizeBytes(table, columns, rowFraction, "BTREE");
+    }
+
+    // Hash entries hold a 4-byte hash instead of the key, BRIN one min/max summary per block
+    // range, GIN and FULLTEXT a posting entry per token (about one per two bytes of value)
+    public long sizeBytes(SchemaCatalog.Table table, List<String> columns, double rowFraction, String indexType) {
+        double keyWidth = 0;
+        for (String column : columns) {
+            keyWidth += columnWidth(dataType(table, column));
+        }
+        double rows = rows(table) * rowFraction;
+        double bytes = switch (indexType != null ? indexType : "BTREE") {
+            case "HASH" -> rows * (INDEX_TUPLE_OVERHEAD + 4) / LEAF_FILL;
+            case "BRIN" -> Math.ceil(tableBytes(table) / (double) (BRIN_PAGES_PER_RANGE * PAGE_BYTES))
+                    * (INDEX_TUPLE_OVERHEAD + 2 * keyWidth);
+            case "GIN", "FULLTEXT" -> rows * keyWidth / 2 * GIN_POSTING_BYTES / LEAF_FILL;
+            default -> rows * (INDEX_TUPLE_OVERHEAD + keyWidth) / LEAF_FILL;
+        };
+        return Math.max(MIN_INDEX_BYTES, Math.round(bytes));
+    }
+
+    public long tableBytes(SchemaCatalog.Table table) {
+        double width = HEAP_TUPLE_OVERHEAD;
+        if (table != null) {
+            for (SchemaCatalog.Column column : table.columns()) {
+                width += columnWidth(column.dataType());
+            }
+        }
+        return Math.round(rows(table) * width);
+    }
+
+    public double buildSeconds(SchemaCatalog.Table table, long indexBytes, double rowFraction) {
+        return buildSeconds(table, indexBytes, rowFraction, "BTREE");
+    }
+
+    // BRIN summarizes block ranges as it scans, there are no keys to sort
+    public double buildSeconds(SchemaCatalog.Table table, long indexBytes, double rowFraction, String indexType) {
+        double keys = Math.max(1, rows(table) * rowFraction);
+        double scan = tableBytes(table) / (scanMbPerSecond * 1024 * 1024);
+        double sort = "BRIN".equals(indexType) ? 0 : keys * (Math.log(keys) / Math.log(2)) / sortComparisonsPerSecond;
+        double write = indexBytes / (writeMbPerSecond * 1024 * 1024);
+        return Math.round((scan + sort + write) * 100) / 100.0;
+    }
+
+    // Added cost of a write that maintains one more index: it already writes the heap row
+    // and an entry in each existing index
+    public static double writeAmplification(int existingIndexes) {
+        return 1.0 / (existingIndexes + 1);
+    }
+
+    // Average stored width in bytes by declared type; variable-length types are assumed half full
+    static int columnWidth(String dataType) {
+        if (dataType == null) return 8;
+        String type = dataType.toLowerCase(Locale.ROOT).trim();
+        if (type.startsWith("bool")) return 1;
+        if (type.startsWith("smallint") || type.startsWith("int2")) return 2;
+        if (type.startsWith("bigint") || type.startsWith("int8") || type.startsWith("bigserial")) return 8;
+        if (type.startsWith("int") || type.startsWith("serial") || type.equals("date") || type.equals("real")) return 4;
+        if (type.startsWith("timestamp") || type.startsWith("double") || type.startsWith("float")) return 8;
+        if (type.startsWith("uuid")) return 16;
+        if (type.startsWith("numeric") || type.startsWith("decimal")) return 8;
+        if (type.startsWith("char") || type.startsWith("varchar") || type.startsWith("character")) {
+            Matcher length = LENGTH.matcher(type);
+            return length.find() ? Math.min(64, Integer.parseInt(length.group(1)) / 2 + 1) : 32;
+        }
+        if (type.startsWith("text")) return 32;
+        if (type.startsWith("json")) return 64;
+        return 8;
+    }
+
+    private static double rows(SchemaCatalog.Table table) {
+        return table != null ? table.rowsOrDefault() : SchemaCatalog.DEFAULT_ROWS;
+    }
+
+    private static String dataType(SchemaCatalog.Table table, String column) {
+        SchemaCatalog.Column found = table != null ? table.column(column) : null;
+        return found != null ? found.dataType() : null;
+    }
+}
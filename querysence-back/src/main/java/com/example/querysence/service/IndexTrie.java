@@ -0,0 +1,198 @@
+package com.example.querysence.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// B-tree indexes of one table as a trie over their ordered column lists. Every path from
+// the root is a leftmost prefix, so lookups only credit what an index can really serve:
+// equality on leading columns in any order, then one range column or the sort order.
+final class IndexTrie {
+
+    private final Node root = new Node();
+
+    static IndexTrie of(Collection<SchemaCatalog.Index> indexes) {
+        IndexTrie trie = new IndexTrie();
+        for (SchemaCatalog.Index index : indexes) {
+            trie.add(index);
+        }
+        return trie;
+    }
+
+    void add(SchemaCatalog.Index index) {
+        if (!index.isBtree() || index.columns().isEmpty()) {
+            return;
+        }
+        Node node = root;
+        for (String column : index.columns()) {
+            node = node.children.computeIfAbsent(column, k -> new Node());
+            if (node.first == null) {
+                node.first = index;
+            }
+        }
+        node.terminal.add(index);
+    }
+
+    // True when some index starts with exactly these columns in this order
+    boolean hasPrefix(List<String> columns) {
+        return find(columns) != null;
+    }
+
+    List<SchemaCatalog.Index> indexes() {
+        List<SchemaCatalog.Index> indexes = new ArrayList<>();
+        collect(root, indexes);
+        return indexes;
+    }
+
+    // Best use of the existing indexes for these predicates: most equality columns,
+    // then a range column, then an index order that makes the sort unnecessary
+    Match match(Set<String> equality, Set<String> range, List<String> sort) {
+        Match best = new Match(null, List.of(), null, sort.isEmpty());
+        return match(root, lowerAll(equality), lowerAll(range), lowerList(sort), new ArrayList<>(), best);
+    }
+
+    private Match match(Node node, Set<String> equality, Set<String> range, List<String> sort,
+                        List<String> used, Match best) {
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            String column = child.getKey();
+            if (equality.contains(column) && !used.contains(column)) {
+                used.add(column);
+                // Name the index that also carries the sort columns when one does
+                Node sorted = sort.isEmpty() ? null : find(child.getValue(), remaining(sort, equality));
+                Node named = sorted != null ? sorted : child.getValue();
+                Match here = new Match(named.first.name(), List.copyOf(used), null, sorted != null || sort.isEmpty());
+                best = better(here, best);
+                best = match(child.getValue(), equality, range, sort, used, best);
+                used.remove(used.size() - 1);
+            } else if (range.contains(column)) {
+                // A range ends the usable prefix, the index still returns rows in its order
+                boolean ordered = !sort.isEmpty() && sort.get(0).equals(column)
+                        && followsOrder(node, sort, equality);
+                best = better(new Match(child.getValue().first.name(), List.copyOf(used), column, ordered), best);
+            }
+        }
+        if (!sort.isEmpty() && followsOrder(node, sort, equality)) {
+            Node end = find(node, remaining(sort, equality));
+            if (end != null && end != root) {
+                best = better(new Match(end.first.name(), List.copyOf(used), null, true), best);
+            }
+        }
+        return best;
+    }
+
+    // Duplicate column lists and non-unique strict prefixes of a longer index
+    List<Redundancy> redundancies() {
+        List<Redundancy> found = new ArrayList<>();
+        redundancies(root, found);
+        return found;
+    }
+
+    private void redundancies(Node node, List<Redundancy> found) {
+        if (!node.terminal.isEmpty()) {
+            // Keep a unique index over a plain one, it also enforces a constraint
+            SchemaCatalog.Index kept = node.terminal.stream()
+                    .filter(SchemaCatalog.Index::unique)
+                    .findFirst()
+                    .orElse(node.terminal.get(0));
+            for (SchemaCatalog.Index index : node.terminal) {
+                if (index != kept) {
+                    found.add(new Redundancy(index, "DUPLICATE", kept));
+                }
+            }
+            if (!node.children.isEmpty() && !kept.unique()) {
+                found.add(new Redundancy(kept, "PREFIX", longest(node)));
+            }
+        }
+        for (Node child : node.children.values()) {
+            redundancies(child, found);
+        }
+    }
+
+    private static SchemaCatalog.Index longest(Node node) {
+        Node current = node;
+        while (!current.children.isEmpty()) {
+            current = current.children.values().iterator().next();
+        }
+        return current.terminal.isEmpty() ? current.first : current.terminal.get(0);
+    }
+
+    // Sort columns bound by equality are constant, so they can be skipped
+    private static List<String> remaining(List<String> sort, Set<String> equality) {
+        return sort.stream().filter(column -> !equality.contains(column)).toList();
+    }
+
+    private boolean followsOrder(Node node, List<String> sort, Set<String> equality) {
+        List<String> rest = remaining(sort, equality);
+        return rest.isEmpty() || find(node, rest) != null;
+    }
+
+    private Node find(List<String> columns) {
+        Node node = find(root, lowerList(columns));
+        return node != root ? node : null;
+    }
+
+    private static Node find(Node start, List<String> columns) {
+        Node node = start;
+        for (String column : columns) {
+            node = node.children.get(column);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private static void collect(Node node, List<SchemaCatalog.Index> indexes) {
+        indexes.addAll(node.terminal);
+        for (Node child : node.children.values()) {
+            collect(child, indexes);
+        }
+    }
+
+    private static Match better(Match candidate, Match best) {
+        return candidate.score() > best.score() ? candidate : best;
+    }
+
+    private static Set<String> lowerAll(Set<String> values) {
+        Set<String> lowered = new HashSet<>();
+        values.forEach(value -> lowered.add(lower(value)));
+        return lowered;
+    }
+
+    private static List<String> lowerList(List<String> values) {
+        return values.stream().map(IndexTrie::lower).toList();
+    }
+
+    private static String lower(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    // Equality columns in index order, the range column after them if any
+    record Match(String indexName, List<String> equalityColumns, String rangeColumn, boolean sortProvided) {
+
+        int score() {
+            return equalityColumns.size() * 4 + (rangeColumn != null ? 2 : 0) + (sortProvided ? 1 : 0);
+        }
+
+        Set<String> servedColumns() {
+            Set<String> served = new HashSet<>(equalityColumns);
+            if (rangeColumn != null) served.add(rangeColumn);
+            return served;
+        }
+    }
+
+    record Redundancy(SchemaCatalog.Index index, String kind, SchemaCatalog.Index coveredBy) {
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new LinkedHashMap<>();
+        private final List<SchemaCatalog.Index> terminal = new ArrayList<>();
+        // Some index whose columns pass through this node
+        private SchemaCatalog.Index first;
+    }
+}
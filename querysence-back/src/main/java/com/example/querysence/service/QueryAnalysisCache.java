@@ -0,0 +1,72 @@
+package com.example.querysence.service;
+
+import com.example.querysence.model.dto.ComplexityReport;
+import com.example.querysence.model.dto.IndexSuggestionResponse;
+import com.example.querysence.parser.CompactParsedQuery;
+import com.example.querysence.repository.SchemaDefinitionRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+// Keyed by query hash plus schema version, so a schema change never serves stale results
+@Component
+@Slf4j
+public class QueryAnalysisCache {
+
+    // Version used when the schema is unknown or has been deleted
+    private static final long NO_SCHEMA_VERSION = -1L;
+
+    private final SchemaDefinitionRepository schemaRepository;
+    private final Cache<Key, CachedAnalysis> cache;
+
+    public QueryAnalysisCache(SchemaDefinitionRepository schemaRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${analysis.cache.max-size:10000}") long maxSize,
+                              @Value("${analysis.cache.ttl-minutes:30}") long ttlMinutes) {
+        this.schemaRepository = schemaRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        // Exposes cache.gets (hit/miss), cache.evictions and cache.size
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "queryAnalysis");
+    }
+
+    public CachedAnalysis get(String queryHash, Long schemaId, Supplier<CachedAnalysis> loader) {
+        Key key = new Key(queryHash, schemaId, currentVersion(schemaId));
+        return cache.get(key, k -> loader.get());
+    }
+
+    public void invalidateSchema(Long schemaId) {
+        cache.asMap().keySet().removeIf(key -> Objects.equals(key.schemaId(), schemaId));
+        log.debug("Invalidated cached analyses for schema {}", schemaId);
+    }
+
+    private long currentVersion(Long schemaId) {
+        if (schemaId == null) {
+            return 0L;
+        }
+        return schemaRepository.findSchemaVersionById(schemaId)
+                .map(version -> version != null ? version : 0L)
+                .orElse(NO_SCHEMA_VERSION);
+    }
+
+    private record Key(String queryHash, Long schemaId, long schemaVersion) {
+    }
+
+    // The parse response is rendered from the compact query on use instead of being cached
+    public record CachedAnalysis(CompactParsedQuery parsedQuery,
+                                 ComplexityReport complexity,
+                                 List<IndexSuggestionResponse> indexSuggestions) {
+    }
+}
@@ -1,4 +1,5 @@
 package com.example.querysence.service;
+import com.example.querysence.exception.InvalidSQLException;
 import com.example.querysence.exception.ResourceNotFoundException;
 import com.example.querysence.model.IndexSuggestion;
 import com.example.querysence.model.Project;
@@ -8,20 +9,35 @@ import com.example.querysence.model.dto.ComplexityReport;
 import com.example.querysence.model.dto.IndexSuggestionResponse;
 import com.example.querysence.model.dto.QueryAnalysisRequest;
 import com.example.querysence.model.dto.QueryAnalysisResponse;
-import com.example.querysence.model.dto.QueryParseResponse;
+import com.example.querysence.model.dto.ScriptAnalysisRequest;
+import com.example.querysence.model.dto.ScriptAnalysisResponse;
 
+import com.example.querysence.parser.CompactParsedQuery;
 import com.example.querysence.parser.ParsedQuery;
+import com.example.querysence.parser.SqlDialect;
+import com.example.querysence.parser.SqlScriptSplitter;
+import com.example.querysence.parser.SymbolTable;
 import com.example.querysence.repository.ProjectRepository;
+import com.example.querysence.repository.SchemaDefinitionRepository;
 import com.example.querysence.repository.QueryHistoryRepository;
 import com.example.querysence.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -34,44 +50,173 @@ public class QueryAnalysisService {
     private final QueryHistoryRepository historyRepository;
     private final UserRepository userRepository;
     private final ProjectRepository projectRepository;
+    private final SchemaDefinitionRepository schemaRepository;
+    private final QueryAnalysisCache analysisCache;
+    private final SqlScriptSplitter scriptSplitter;
+    private final ExecutorService scriptAnalysisExecutor;
+    private final SymbolTable symbolTable;
+    private final WorkloadIndexAdvisor workloadAdvisor;
+
+    private static final List<String> IMPACT_ORDER = List.of("HIGH", "MEDIUM", "LOW");
+
+    @Value("${analysis.script.max-statements:1000}")
+    private int maxScriptStatements;
 
     @Transactional
     public QueryAnalysisResponse analyze(QueryAnalysisRequest request, String username) {
         User user = userRepository.findByFullName(username)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
 
-        // Parse the query
-        ParsedQuery parsedQuery = parserService.parseQuery(request.getSql());
-        
-        // Analyze complexity
-        ComplexityReport complexityReport = complexityService.analyze(parsedQuery);
-        
-        // Get index suggestions
-        List<IndexSuggestionResponse> indexSuggestions = 
-                indexAdvisorService.suggestIndexes(parsedQuery, request.getSchemaId());
-
-        // Build warnings list
-        List<String> warnings = new ArrayList<>(complexityReport.getWarnings());
+        QueryAnalysisCache.CachedAnalysis analysis = analyzeCached(request.getSql(), request.getSchemaId(),
+                resolveDialect(request.getSchemaId()));
+        ComplexityReport complexityReport = analysis.complexity();
 
         // Save to history
-        QueryHistory history = saveToHistory(request, user, parsedQuery, complexityReport, indexSuggestions);
-
-        // Build parse response
-        com.example.querysence.model.QueryParseResponse parseResponse = parserService.parseAndFormat(request.getSql(), "POSTGRESQL");
+        QueryHistory history = historyRepository.save(buildHistory(request.getSql(), request.getExecutionTimeMs(),
+                user, findProject(request.getProjectId()), analysis));
+        workloadAdvisor.record(request.getProjectId(), history.getQueryHash(),
+                analysis.parsedQuery().expand(), request.getExecutionTimeMs());
 
         log.info("Analyzed query for user {}, complexity: {}", username, complexityReport.getLevel());
 
+        return toResponse(history, analysis);
+    }
+
+    // Analyzes every statement of a script in parallel and stores their history in one transaction
+    public ScriptAnalysisResponse analyzeScript(ScriptAnalysisRequest request, String username) {
+        User user = userRepository.findByFullName(username)
+                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+        Project project = findProject(request.getProjectId());
+
+        List<String> statements = scriptSplitter.split(request.getScript() != null ? request.getScript() : "");
+        if (statements.isEmpty()) {
+            throw new InvalidSQLException("Script contains no SQL statements");
+        }
+        if (statements.size() > maxScriptStatements) {
+            throw new InvalidSQLException("Script has " + statements.size()
+                    + " statements, the limit is " + maxScriptStatements);
+        }
+
+        SqlDialect dialect = resolveDialect(request.getSchemaId());
+        List<CompletableFuture<StatementOutcome>> futures = statements.stream()
+                .map(sql -> CompletableFuture.supplyAsync(
+                        () -> analyzeStatement(sql, request.getSchemaId(), dialect), scriptAnalysisExecutor))
+                .toList();
+        List<StatementOutcome> outcomes = futures.stream().map(CompletableFuture::join).toList();
+
+        List<QueryHistory> histories = new ArrayList<>();
+        for (int i = 0; i < outcomes.size(); i++) {
+            StatementOutcome outcome = outcomes.get(i);
+            if (outcome.analysis() != null) {
+                histories.add(buildHistory(statements.get(i), null, user, project, outcome.analysis()));
+            }
+        }
+        // saveAll stores the histories in one transaction. QueryHistory ids are IDENTITY, so
+        // Hibernate can't batch them: each row is still its own INSERT.
+        Iterator<QueryHistory> saved = historyRepository.saveAll(histories).iterator();
+
+        List<ScriptAnalysisResponse.StatementResult> results = new ArrayList<>(outcomes.size());
+        for (int i = 0; i < outcomes.size(); i++) {
+            StatementOutcome outcome = outcomes.get(i);
+            ScriptAnalysisResponse.StatementResult.StatementResultBuilder result = ScriptAnalysisResponse.StatementResult.builder()
+                    .index(i + 1)
+                    .sql(statements.get(i))
+                    .valid(outcome.analysis() != null)
+                    .error(outcome.error());
+            if (outcome.analysis() != null) {
+                QueryHistory history = saved.next();
+                if (project != null) {
+                    workloadAdvisor.record(project.getId(), history.getQueryHash(), outcome.analysis().parsedQuery().expand(), null);
+                }
+                result.analysis(toResponse(history, outcome.analysis()));
+            }
+            results.add(result.build());
+        }
+
+        log.info("Analyzed script of {} statements for user {}, {} failed",
+                statements.size(), username, statements.size() - histories.size());
+
+        return aggregate(results);
+    }
+
+    private StatementOutcome analyzeStatement(String sql, Long schemaId, SqlDialect dialect) {
+        try {
+            return new StatementOutcome(analyzeCached(sql, schemaId, dialect), null);
+        } catch (RuntimeException e) {
+            return new StatementOutcome(null, e.getMessage());
+        }
+    }
+
+    private ScriptAnalysisResponse aggregate(List<ScriptAnalysisResponse.StatementResult> results) {
+        List<QueryAnalysisResponse> analyses = results.stream()
+                .map(ScriptAnalysisResponse.StatementResult::getAnalysis)
+                .filter(Objects::nonNull)
+                .toList();
+
+        int total = analyses.stream().mapToInt(a -> a.getComplexity().getScore()).sum();
+        int max = analyses.stream().mapToInt(a -> a.getComplexity().getScore()).max().orElse(0);
+
+        // The same index can be suggested by many statements, keep it once with its highest impact
+        Map<String, IndexSuggestionResponse> suggestions = new LinkedHashMap<>();
+        for (QueryAnalysisResponse analysis : analyses) {
+            for (IndexSuggestionResponse suggestion : analysis.getIndexSuggestions()) {
+                suggestions.merge(suggestion.getTableName() + suggestion.getColumns(), suggestion,
+                        (a, b) -> IMPACT_ORDER.indexOf(b.getImpactScore()) < IMPACT_ORDER.indexOf(a.getImpactScore()) ? b : a);
+            }
+        }
+
+        return ScriptAnalysisResponse.builder()
+                .statementCount(results.size())
+                .analyzedCount(analyses.size())
+                .failedCount(results.size() - analyses.size())
+                .totalComplexityScore(total)
+                .maxComplexityScore(max)
+                .averageComplexityScore(analyses.isEmpty() ? 0 : (double) total / analyses.size())
+                .complexityLevels(analyses.stream().collect(Collectors.groupingBy(
+                        a -> a.getComplexity().getLevel(), TreeMap::new, Collectors.counting())))
+                .queryTypes(analyses.stream().collect(Collectors.groupingBy(
+                        QueryAnalysisResponse::getQueryType, TreeMap::new, Collectors.counting())))
+                .indexSuggestions(new ArrayList<>(suggestions.values()))
+                .statements(results)
+                .analyzedAt(LocalDateTime.now())
+                .build();
+    }
+
+    // Parse, score and advise once per query hash and schema version, the dialect follows the schema
+    private QueryAnalysisCache.CachedAnalysis analyzeCached(String sql, Long schemaId, SqlDialect dialect) {
+        String queryHash = parserService.computeQueryHash(sql);
+        return analysisCache.get(queryHash, schemaId, () -> runAnalysis(sql, schemaId, dialect));
+    }
+
+    private SqlDialect resolveDialect(Long schemaId) {
+        if (schemaId == null) {
+            return SqlDialect.DEFAULT;
+        }
+        return schemaRepository.findDialectById(schemaId)
+                .map(SqlDialect::fromStored)
+                .orElse(SqlDialect.DEFAULT);
+    }
+
+    private QueryAnalysisResponse toResponse(QueryHistory history, QueryAnalysisCache.CachedAnalysis analysis) {
         return QueryAnalysisResponse.builder()
                 .queryId(history.getId())
-                .queryType(parsedQuery.getQueryType())
-                .complexity(complexityReport)
-                .indexSuggestions(indexSuggestions)
-                .warnings(warnings)
-                .parseResult(parseResponse)
+                .queryType(analysis.parsedQuery().getQueryType())
+                .complexity(analysis.complexity())
+                .indexSuggestions(analysis.indexSuggestions())
+                .warnings(new ArrayList<>(analysis.complexity().getWarnings()))
+                .parseResult(parserService.format(analysis.parsedQuery().expand()))
                 .analyzedAt(history.getAnalyzedAt())
                 .build();
     }
 
+    private QueryAnalysisCache.CachedAnalysis runAnalysis(String sql, Long schemaId, SqlDialect dialect) {
+        ParsedQuery parsedQuery = parserService.parseQuery(sql, dialect);
+        ComplexityReport complexityReport = complexityService.analyze(parsedQuery, schemaId);
+        List<IndexSuggestionResponse> indexSuggestions = indexAdvisorService.suggestIndexes(parsedQuery, schemaId);
+        return new QueryAnalysisCache.CachedAnalysis(
+                CompactParsedQuery.of(parsedQuery, symbolTable), complexityReport, indexSuggestions);
+    }
+
     @Transactional(readOnly = true)
     public QueryAnalysisResponse getById(Long id, String fullName) {
         QueryHistory history = historyRepository.findByIdWithDetails(id)
@@ -96,7 +241,7 @@ public class QueryAnalysisService {
                         .build())
                 .toList();
 
-        com.example.querysence.model.QueryParseResponse parseResponse = parserService.parseAndFormat(history.getQueryText(), "POSTGRESQL");
+        com.example.querysence.model.QueryParseResponse parseResponse = parserService.format(parsedQuery);
 
         return QueryAnalysisResponse.builder()
                 .queryId(history.getId())
@@ -109,27 +254,39 @@ public class QueryAnalysisService {
                 .build();
     }
 
-    private QueryHistory saveToHistory(QueryAnalysisRequest request, User user, 
-                                        ParsedQuery parsedQuery, ComplexityReport complexity,
-                                        List<IndexSuggestionResponse> suggestions) {
-        Project project = null;
-        if (request.getProjectId() != null) {
-            project = projectRepository.findById(request.getProjectId()).orElseThrow(()->new RuntimeException("project not found"));
+    private Project findProject(Long projectId) {
+        if (projectId == null) {
+            return null;
         }
+        return projectRepository.findById(projectId).orElseThrow(()->new RuntimeException("project not found"));
+    }
+
+    private QueryHistory buildHistory(String sql, Long executionTimeMs, User user, Project project,
+                                      QueryAnalysisCache.CachedAnalysis analysis) {
+        CompactParsedQuery parsedQuery = analysis.parsedQuery();
+
+        // Equivalent queries share one hash so slow-query grouping aggregates them together
+        String queryHash = parsedQuery.getCanonicalHash() != null
+                ? parsedQuery.getCanonicalHash()
+                : parserService.computeFingerprint(sql);
 
         QueryHistory history = QueryHistory.builder()
                 .user(user)
                 .project(project)
-                .queryText(request.getSql())
-                .queryHash(parserService.computeQueryHash(request.getSql()))
+                .queryText(sql)
+                .queryHash(queryHash)
                 .queryType(parsedQuery.getQueryType())
-                .complexityScore(complexity.getScore())
-                .executionTimeMs(request.getExecutionTimeMs())
+                .complexityScore(analysis.complexity().getScore())
+                .executionTimeMs(executionTimeMs)
                 .analyzedAt(LocalDateTime.now())
                 .build();
 
-        // Add index suggestions
-        for (IndexSuggestionResponse suggestion : suggestions) {
+        // Add index suggestions; redundant existing indexes are findings about the schema, not
+        // indexes to create for this query
+        for (IndexSuggestionResponse suggestion : analysis.indexSuggestions()) {
+            if ("REDUNDANT".equals(suggestion.getSuggestionType())) {
+                continue;
+            }
             IndexSuggestion indexSuggestion = IndexSuggestion.builder()
                     .queryHistory(history)
                     .tableName(suggestion.getTableName())
@@ -141,6 +298,9 @@ public class QueryAnalysisService {
             history.getIndexSuggestions().add(indexSuggestion);
         }
 
-        return historyRepository.save(history);
+        return history;
+    }
+
+    private record StatementOutcome(QueryAnalysisCache.CachedAnalysis analysis, String error) {
     }
 }
@@ -8,6 +8,8 @@ import com.example.querysence.exception.InvalidSQLException;
 import com.example.querysence.model.QueryParseResponse;
 import com.example.querysence.parser.ParsedQuery;
 import com.example.querysence.parser.SQLParserEngine;
+import com.example.querysence.parser.SqlDialect;
+import com.example.querysence.parser.SqlFingerprinter;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -20,13 +22,18 @@ import java.util.HexFormat;
 public class QueryParserService {
 
     private final SQLParserEngine parserEngine;
+    private final SqlFingerprinter fingerprinter;
 
     public ParsedQuery parseQuery(String sql) {
+        return parseQuery(sql, SqlDialect.DEFAULT);
+    }
+
+    public ParsedQuery parseQuery(String sql, SqlDialect dialect) {
         if (sql == null || sql.trim().isEmpty()) {
             throw new InvalidSQLException("SQL query cannot be empty");
         }
 
-        ParsedQuery result = parserEngine.parse(sql.trim());
+        ParsedQuery result = parserEngine.parse(sql.trim(), dialect);
 
         if (!result.isValid()) {
             throw new InvalidSQLException(result.getErrorMessage());
@@ -36,8 +43,10 @@ public class QueryParserService {
     }
 
     public QueryParseResponse parseAndFormat(String sql, String dialect) {
-        ParsedQuery parsed = parseQuery(sql);
+        return format(parseQuery(sql, SqlDialect.from(dialect)));
+    }
 
+    public QueryParseResponse format(ParsedQuery parsed) {
         return QueryParseResponse.builder()
                 .valid(parsed.isValid())
                 .queryType(parsed.getQueryType())
@@ -66,12 +75,18 @@ public class QueryParserService {
                 .hasDistinct(parsed.isHasDistinct())
                 .hasHaving(parsed.isHasHaving())
                 .aggregateFunctions(parsed.getAggregateFunctions())
+                .setOperations(parsed.getSetOperations())
+                .cteNames(parsed.getCteNames())
+                .windowFunctions(parsed.getWindowFunctions())
+                .caseExpressionCount(parsed.getCaseExpressionCount())
                 .build();
     }
 
+    // Keys the analysis cache: only whitespace outside quotes is collapsed, so literals,
+    // quoted identifiers and their case still tell two queries apart
     public String computeQueryHash(String sql) {
         try {
-            String normalized = normalizeSql(sql);
+            String normalized = SqlFingerprinter.collapseWhitespace(sql);
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             byte[] hash = digest.digest(normalized.getBytes(StandardCharsets.UTF_8));
             return HexFormat.of().formatHex(hash);
@@ -80,12 +95,9 @@ public class QueryParserService {
         }
     }
 
-    private String normalizeSql(String sql) {
-        return sql.trim()
-                .toLowerCase()
-                .replaceAll("\\s+", " ")
-                .replaceAll("\\s*,\\s*", ",")
-                .replaceAll("\\s*=\\s*", "=");
+    // Literal-insensitive shape hash, WHERE id = 1 and WHERE id = 2 share one fingerprint
+    public String computeFingerprint(String sql) {
+        return fingerprinter.fingerprintHex(sql);
     }
 
     private int countSubqueries(ParsedQuery parsed) {
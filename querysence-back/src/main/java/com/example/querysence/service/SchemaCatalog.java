@@ -0,0 +1,247 @@
+package com.example.querysence.service;
+
+import com.example.querysence.model.ColumnDefinition;
+import com.example.querysence.model.ColumnStatistics;
+import com.example.querysence.model.IndexDefinition;
+import com.example.querysence.model.SchemaDefinition;
+import com.example.querysence.model.TableDefinition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Immutable snapshot of one schema version: tables, columns, indexes, foreign keys and
+// column statistics with case-folded lookups. Built once per version by SchemaCatalogCache
+// and shared by every request, so nothing here may be mutated after construction.
+public final class SchemaCatalog {
+
+    // Row count assumed for tables without an estimate
+    static final long DEFAULT_ROWS = 1000;
+
+    private final long schemaId;
+    private final long version;
+    private final Long projectId;
+    private final String name;
+    private final String dialect;
+    private final Map<String, Table> tables;
+    private final List<ForeignKey> foreignKeys;
+    private final int weight;
+
+    private SchemaCatalog(long schemaId, long version, Long projectId, String name, String dialect,
+                          Map<String, Table> tables, List<ForeignKey> foreignKeys) {
+        this.schemaId = schemaId;
+        this.version = version;
+        this.projectId = projectId;
+        this.name = name;
+        this.dialect = dialect;
+        this.tables = tables;
+        this.foreignKeys = foreignKeys;
+        int columnsAndIndexes = 0;
+        for (Table table : tables.values()) {
+            columnsAndIndexes += table.columns().size() + table.indexes().size();
+        }
+        this.weight = 1 + tables.size() + columnsAndIndexes;
+    }
+
+    // statistics are keyed by lower-case table, then column name
+    static SchemaCatalog of(SchemaDefinition schema, Map<String, Map<String, ColumnStatistics>> statistics) {
+        Map<String, Table> tables = new LinkedHashMap<>();
+        List<ForeignKey> foreignKeys = new ArrayList<>();
+        List<TableDefinition> ordered = new ArrayList<>(schema.getTables());
+        ordered.sort(Comparator.comparing(TableDefinition::getTableName, String.CASE_INSENSITIVE_ORDER));
+        for (TableDefinition table : ordered) {
+            String key = lower(table.getTableName());
+            Table built = Table.of(table, statistics.getOrDefault(key, Map.of()));
+            tables.put(key, built);
+            for (Column column : built.columns()) {
+                if (column.foreignKey() && column.referencesTable() != null) {
+                    foreignKeys.add(new ForeignKey(built.name(), column.name(),
+                            column.referencesTable(), column.referencesColumn()));
+                }
+            }
+        }
+        long version = schema.getSchemaVersion() != null ? schema.getSchemaVersion() : 0L;
+        Long projectId = schema.getProject() != null ? schema.getProject().getId() : null;
+        return new SchemaCatalog(schema.getId(), version, projectId, schema.getName(), schema.getDialect(),
+                Collections.unmodifiableMap(tables), List.copyOf(foreignKeys));
+    }
+
+    public long schemaId() {
+        return schemaId;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    // null for a schema outside any project
+    public Long projectId() {
+        return projectId;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String dialect() {
+        return dialect;
+    }
+
+    public Table table(String name) {
+        return name != null ? tables.get(lower(name)) : null;
+    }
+
+    // Tables in name order
+    public List<Table> tables() {
+        return List.copyOf(tables.values());
+    }
+
+    public List<ForeignKey> foreignKeys() {
+        return foreignKeys;
+    }
+
+    // Rough size for cache eviction: tables plus their columns and indexes
+    int weight() {
+        return weight;
+    }
+
+    private static String lower(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    public static final class Table {
+        private final String name;
+        private final long estimatedRows;
+        private final List<Column> columns;
+        private final Map<String, Column> columnsByName;
+        private final List<Index> indexes;
+        private final Set<String> uniqueColumns;
+        private final IndexTrie indexTrie;
+
+        private Table(String name, long estimatedRows, List<Column> columns, List<Index> indexes) {
+            this.name = name;
+            this.estimatedRows = estimatedRows;
+            this.columns = columns;
+            this.indexes = indexes;
+            Map<String, Column> byName = new HashMap<>();
+            List<String> primaryKey = new ArrayList<>();
+            for (Column column : columns) {
+                byName.put(lower(column.name()), column);
+                if (column.primaryKey()) primaryKey.add(lower(column.name()));
+            }
+            this.columnsByName = Collections.unmodifiableMap(byName);
+            // Single-column primary keys and unique indexes identify a row
+            Set<String> unique = new HashSet<>();
+            if (primaryKey.size() == 1) unique.add(primaryKey.get(0));
+            for (Index index : indexes) {
+                if (index.unique() && index.columns().size() == 1) unique.add(index.columns().get(0));
+            }
+            this.uniqueColumns = Set.copyOf(unique);
+            this.indexTrie = IndexTrie.of(indexes);
+        }
+
+        static Table of(TableDefinition table, Map<String, ColumnStatistics> statistics) {
+            long rows = table.getEstimatedRows() != null ? table.getEstimatedRows() : 0;
+            double statisticsRows = rows > 0 ? rows : DEFAULT_ROWS;
+            List<Column> columns = new ArrayList<>();
+            List<ColumnDefinition> ordered = new ArrayList<>(table.getColumns());
+            ordered.sort(Comparator.comparing(ColumnDefinition::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+            for (ColumnDefinition column : ordered) {
+                ColumnStatistics columnStatistics = statistics.get(lower(column.getColumnName()));
+                columns.add(new Column(
+                        column.getColumnName(),
+                        column.getDataType(),
+                        !Boolean.FALSE.equals(column.getIsNullable()),
+                        Boolean.TRUE.equals(column.getIsPrimaryKey()),
+                        Boolean.TRUE.equals(column.getIsForeignKey()),
+                        column.getReferencesTable(),
+                        column.getReferencesColumn(),
+                        columnStatistics != null ? SelectivityEstimator.ColumnStats.of(columnStatistics, statisticsRows) : null));
+            }
+            // The fetch join over columns and indexes repeats each index once per column
+            List<Index> indexes = new ArrayList<>();
+            Set<IndexDefinition> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (IndexDefinition index : table.getIndexes()) {
+                if (!seen.add(index) || index.getColumns() == null || index.getColumns().isEmpty()) continue;
+                indexes.add(new Index(index.getIndexName(),
+                        index.getColumns().stream().map(SchemaCatalog::lower).toList(),
+                        Boolean.TRUE.equals(index.getIsUnique()),
+                        index.getIndexType() != null ? index.getIndexType().toUpperCase(Locale.ROOT) : "BTREE"));
+            }
+            return new Table(table.getTableName(), rows, List.copyOf(columns), List.copyOf(indexes));
+        }
+
+        public String name() {
+            return name;
+        }
+
+        // 0 when unknown
+        public long estimatedRows() {
+            return estimatedRows;
+        }
+
+        public long rowsOrDefault() {
+            return estimatedRows > 0 ? estimatedRows : DEFAULT_ROWS;
+        }
+
+        public List<Column> columns() {
+            return columns;
+        }
+
+        public Column column(String name) {
+            return name != null ? columnsByName.get(lower(name)) : null;
+        }
+
+        public boolean hasColumn(String name) {
+            return column(name) != null;
+        }
+
+        public List<Index> indexes() {
+            return indexes;
+        }
+
+        public boolean isUnique(String column) {
+            return column != null && uniqueColumns.contains(lower(column));
+        }
+
+        public boolean isNotNull(String column) {
+            Column found = column(column);
+            return found != null && !found.nullable();
+        }
+
+        // Facts the selectivity estimator needs about one column
+        public SelectivityEstimator.Column selectivityColumn(String column) {
+            Column found = column(column);
+            return new SelectivityEstimator.Column(found != null ? found.statistics() : null,
+                    rowsOrDefault(), isUnique(column), isNotNull(column));
+        }
+
+        IndexTrie indexTrie() {
+            return indexTrie;
+        }
+    }
+
+    public record Column(String name, String dataType, boolean nullable, boolean primaryKey, boolean foreignKey,
+                         String referencesTable, String referencesColumn,
+                         SelectivityEstimator.ColumnStats statistics) {
+    }
+
+    // Column names are lower case
+    public record Index(String name, List<String> columns, boolean unique, String type) {
+
+        public boolean isBtree() {
+            return type.equals("BTREE");
+        }
+    }
+
+    public record ForeignKey(String table, String column, String referencesTable, String referencesColumn) {
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.querysence.service;
+
+import com.example.querysence.repository.SchemaDefinitionRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Optional;
+
+// Schema catalogs keyed by schema id plus version. A catalog is built once per version from
+// the full schema graph and its statistics; any change bumps the version, so a stale entry
+// is never served, and mutations drop the old entries once their transaction commits.
+@Component
+@Slf4j
+public class SchemaCatalogCache {
+
+    private final SchemaDefinitionRepository schemaRepository;
+    private final ColumnStatisticsService statisticsService;
+    private final TransactionTemplate readOnly;
+    private final Cache<Key, SchemaCatalog> cache;
+
+    public SchemaCatalogCache(SchemaDefinitionRepository schemaRepository,
+                              ColumnStatisticsService statisticsService,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${schema.catalog.max-weight:200000}") long maxWeight) {
+        this.schemaRepository = schemaRepository;
+        this.statisticsService = statisticsService;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        // Weighted by tables, columns and indexes so a few huge schemas can't crowd out memory
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((Key key, SchemaCatalog catalog) -> catalog.weight())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "schemaCatalog");
+    }
+
+    public Optional<SchemaCatalog> get(Long schemaId) {
+        if (schemaId == null) {
+            return Optional.empty();
+        }
+        Optional<Long> version = schemaRepository.findSchemaVersionById(schemaId)
+                .map(found -> found != null ? found : 0L);
+        if (version.isEmpty()) {
+            return Optional.empty();
+        }
+        Key key = new Key(schemaId, version.get());
+        SchemaCatalog catalog = cache.getIfPresent(key);
+        if (catalog == null) {
+            catalog = cache.get(key, this::build);
+            // Older versions of the same schema can't be requested again
+            cache.asMap().keySet().removeIf(old -> old.schemaId() == key.schemaId() && old.version() < key.version());
+        }
+        return Optional.ofNullable(catalog);
+    }
+
+    // Drops every cached version of the schema, after the surrounding transaction commits
+    public void invalidate(Long schemaId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(schemaId);
+                }
+            });
+        } else {
+            evict(schemaId);
+        }
+    }
+
+    private void evict(Long schemaId) {
+        cache.asMap().keySet().removeIf(key -> key.schemaId() == schemaId);
+        log.debug("Invalidated schema catalog {}", schemaId);
+    }
+
+    private SchemaCatalog build(Key key) {
+        SchemaCatalog catalog = readOnly.execute(status -> schemaRepository.findByIdWithFullDetails(key.schemaId())
+                .map(schema -> SchemaCatalog.of(schema, statisticsService.forSchema(key.schemaId())))
+                .orElse(null));
+        if (catalog != null) {
+            log.debug("Built schema catalog {} v{} ({} tables)", key.schemaId(), key.version(), catalog.tables().size());
+        }
+        return catalog;
+    }
+
+    private record Key(long schemaId, long version) {
+    }
+}
@@ -23,6 +23,8 @@ import com.example.querysence.model.dto.ProjectResponse;
 import com.example.querysence.model.dto.SchemaCreateRequest;
 import com.example.querysence.model.dto.SchemaResponse;
 import com.example.querysence.model.dto.TableCreateRequest;
+import com.example.querysence.parser.SqlDialect;
+import com.example.querysence.repository.ColumnStatisticsRepository;
 import com.example.querysence.repository.ProjectRepository;
 import com.example.querysence.repository.SchemaDefinitionRepository;
 import com.example.querysence.repository.TableDefinitionRepository;
@@ -42,6 +44,14 @@ public class SchemaManagementService {
     private  SchemaDefinitionRepository schemaRepository;
         @Autowired
     private  TableDefinitionRepository tableRepository;
+        @Autowired
+    private  QueryAnalysisCache analysisCache;
+        @Autowired
+    private  WorkloadIndexAdvisor workloadAdvisor;
+        @Autowired
+    private  SchemaCatalogCache catalogCache;
+        @Autowired
+    private  ColumnStatisticsRepository statisticsRepository;
 
     @Transactional
     public ProjectResponse create(ProjectCreateRequest request, String username) {
@@ -96,7 +106,9 @@ public class SchemaManagementService {
             throw new BadRequestException("You don't have permission to delete this project");
         }
 
+        statisticsRepository.deleteByProjectId(id);
         projectRepository.delete(project);
+        workloadAdvisor.forgetProject(id);
     }
 
     private ProjectResponse mapToResponse(Project project) {
@@ -148,10 +160,14 @@ public class SchemaManagementService {
             throw new BadRequestException("Schema with this name already exists in the project");
         }
 
+        // Rejects what the parser has no profile for
+        SqlDialect.from(request.getDialect());
+
         SchemaDefinition schema = SchemaDefinition.builder()
                 .name(request.getName())
                 .dialect(request.getDialect())
                 .project(project)
+                .schemaVersion(1L)
                 .build();
 
         // Parse DDL script if provided
@@ -190,7 +206,11 @@ public class SchemaManagementService {
             throw new BadRequestException("You don't have permission to delete this schema");
         }
 
+        statisticsRepository.deleteBySchemaId(schemaId);
         schemaRepository.delete(schema);
+        // A deleted schema has no version left to compare against, drop its entries directly
+        analysisCache.invalidateSchema(schemaId);
+        catalogCache.invalidate(schemaId);
     }
 
     @Transactional
@@ -246,10 +266,20 @@ public class SchemaManagementService {
 
         schema.getTables().add(table);
         schema = schemaRepository.save(schema);
+        bumpVersion(schemaRepository, schema);
+        catalogCache.invalidate(schemaId);
 
         return mapToResponse(schema);
     }
 
+    // Cached analyses are keyed by this version, bumping it retires them. The increment runs in
+    // the database; the entity is given the result so its own flush writes the same value.
+    static void bumpVersion(SchemaDefinitionRepository schemaRepository, SchemaDefinition schema) {
+        schemaRepository.incrementSchemaVersion(schema.getId());
+        schema.setSchemaVersion(schemaRepository.findSchemaVersionById(schema.getId())
+                .orElseThrow(() -> new ResourceNotFoundException("Schema", "id", schema.getId())));
+    }
+
     private void parseDDL(String ddlScript, SchemaDefinition schema) {
         // Simple DDL parser for CREATE TABLE statements
         Pattern createTablePattern = Pattern.compile(
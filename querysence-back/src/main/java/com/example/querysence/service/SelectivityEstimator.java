@@ -0,0 +1,283 @@
+package com.example.querysence.service;
+
+import com.example.querysence.model.ColumnStatistics;
+import com.example.querysence.parser.ParsedQuery;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Estimates the fraction of rows a WHERE condition keeps. Uses column statistics when
+// present (MCV list, equi-depth histogram, null fraction, distinct count) and falls back
+// to PostgreSQL's default selectivities otherwise.
+@Service
+public class SelectivityEstimator {
+
+    static final double EQ_SELECTIVITY = 0.005;
+    static final double RANGE_SELECTIVITY = 1.0 / 3;
+    static final double BETWEEN_SELECTIVITY = 0.005;
+    static final double MATCH_SELECTIVITY = 0.005;
+    static final double NULL_SELECTIVITY = 0.005;
+    // Each literal character after a LIKE prefix keeps roughly this share of rows
+    private static final double FIXED_CHAR_SELECTIVITY = 0.2;
+    private static final double MIN_SELECTIVITY = 1e-9;
+
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?");
+    private static final Pattern TYPED_STRING = Pattern.compile("(?s)[A-Za-z_ ]+\\s*'(.*)'");
+
+    // Column facts the estimate depends on; stats may be null
+    public record Column(ColumnStats stats, double tableRows, boolean unique, boolean notNull) {
+    }
+
+    public double selectivity(ParsedQuery.WhereCondition condition, Column column, int listSize) {
+        String operator = condition.getOperator() != null ? condition.getOperator().toUpperCase(Locale.ROOT) : "";
+        double selectivity = switch (operator) {
+            case "=" -> equality(column, literal(condition.getValue()));
+            case "!=", "<>" -> 1 - equality(column, literal(condition.getValue())) - nullFraction(column);
+            case "<", "<=" -> range(column, literal(condition.getValue()), true, operator.equals("<="));
+            case ">", ">=" -> range(column, literal(condition.getValue()), false, operator.equals(">="));
+            case "BETWEEN" -> between(column, condition.getValues());
+            case "LIKE", "ILIKE" -> like(column, literal(condition.getValue()));
+            case "NOT LIKE", "NOT ILIKE" -> 1 - like(column, literal(condition.getValue())) - nullFraction(column);
+            case "IN" -> in(column, condition.getValues(), listSize);
+            case "IS NULL" -> column.notNull() ? 0 : nullFraction(column);
+            case "IS NOT NULL" -> column.notNull() ? 1 : 1 - nullFraction(column);
+            default -> RANGE_SELECTIVITY;
+        };
+        return Math.min(1, Math.max(MIN_SELECTIVITY, selectivity));
+    }
+
+    // Distinct non-null values of the column, null when nothing is known about it
+    public Double distinctValues(Column column) {
+        if (column.stats() != null && column.stats().distinctCount() > 0) {
+            return column.stats().distinctCount();
+        }
+        return column.unique() ? column.tableRows() : null;
+    }
+
+    private double equality(Column column, String value) {
+        if (column.unique()) {
+            return 1 / Math.max(1, column.tableRows());
+        }
+        ColumnStats stats = column.stats();
+        if (stats == null) {
+            return EQ_SELECTIVITY;
+        }
+        if (value != null) {
+            int mcv = stats.mostCommonValues().indexOf(value);
+            if (mcv >= 0) {
+                return stats.mostCommonFrequencies()[mcv];
+            }
+            if (stats.distinctCount() <= 0) {
+                return EQ_SELECTIVITY;
+            }
+            // Not a common value: spread what the MCVs leave over the remaining distinct values
+            double others = Math.max(1, stats.distinctCount() - stats.mostCommonValues().size());
+            return Math.min(stats.remainingFraction() / others, stats.leastCommonFrequency());
+        }
+        // Parameter or expression: the average value
+        if (stats.distinctCount() <= 0) {
+            return EQ_SELECTIVITY;
+        }
+        return (1 - stats.nullFraction()) / Math.max(1, stats.distinctCount());
+    }
+
+    private double range(Column column, String value, boolean below, boolean inclusive) {
+        ColumnStats stats = column.stats();
+        if (stats == null || value == null || (stats.numeric() && !isNumber(value))) {
+            return RANGE_SELECTIVITY;
+        }
+        Comparator<String> order = stats.order();
+        double mcvPart = 0;
+        for (int i = 0; i < stats.mostCommonValues().size(); i++) {
+            int cmp = order.compare(stats.mostCommonValues().get(i), value);
+            if (below ? cmp < 0 || (inclusive && cmp == 0) : cmp > 0 || (inclusive && cmp == 0)) {
+                mcvPart += stats.mostCommonFrequencies()[i];
+            }
+        }
+        double histogramPart;
+        if (stats.histogramBounds().size() >= 2) {
+            double fraction = histogramFraction(stats, value);
+            histogramPart = (below ? fraction : 1 - fraction) * stats.remainingFraction();
+        } else {
+            histogramPart = RANGE_SELECTIVITY * stats.remainingFraction();
+        }
+        return mcvPart + histogramPart;
+    }
+
+    private double between(Column column, List<String> bounds) {
+        if (column.stats() == null || bounds == null || bounds.size() != 2) {
+            return BETWEEN_SELECTIVITY;
+        }
+        String low = literal(bounds.get(0));
+        String high = literal(bounds.get(1));
+        if (low == null || high == null) {
+            return BETWEEN_SELECTIVITY;
+        }
+        double selectivity = range(column, high, true, true) - range(column, low, true, false);
+        return Math.max(selectivity, equality(column, low));
+    }
+
+    // A LIKE with a literal prefix is a range scan over [prefix, next prefix)
+    private double like(Column column, String pattern) {
+        if (pattern == null) {
+            return MATCH_SELECTIVITY;
+        }
+        int wildcard = firstWildcard(pattern);
+        if (wildcard < 0) {
+            return equality(column, pattern);
+        }
+        ColumnStats stats = column.stats();
+        if (stats == null) {
+            return MATCH_SELECTIVITY;
+        }
+
+        Pattern regex = likeToRegex(pattern);
+        double mcvPart = 0;
+        for (int i = 0; i < stats.mostCommonValues().size(); i++) {
+            if (regex.matcher(stats.mostCommonValues().get(i)).matches()) {
+                mcvPart += stats.mostCommonFrequencies()[i];
+            }
+        }
+
+        String prefix = pattern.substring(0, wildcard);
+        double restPart;
+        if (prefix.isEmpty() || stats.numeric() || stats.histogramBounds().size() < 2) {
+            restPart = MATCH_SELECTIVITY * stats.remainingFraction();
+        } else {
+            String upper = prefix.substring(0, prefix.length() - 1) + (char) (prefix.charAt(prefix.length() - 1) + 1);
+            double fraction = histogramFraction(stats, upper) - histogramFraction(stats, prefix);
+            String rest = pattern.substring(wildcard);
+            // Literal characters after the prefix, e.g. 'ab%cd' keeps fewer rows than 'ab%'
+            long fixedChars = rest.chars().filter(c -> c != '%' && c != '_').count();
+            restPart = Math.max(fraction, 0) * Math.pow(FIXED_CHAR_SELECTIVITY, fixedChars) * stats.remainingFraction();
+        }
+        return mcvPart + restPart;
+    }
+
+    private double in(Column column, List<String> values, int listSize) {
+        if (values == null || values.size() < listSize) {
+            // Folded or subquery lists: the values are unknown, only their count
+            return listSize * equality(column, null);
+        }
+        double selectivity = 0;
+        for (String value : values) {
+            selectivity += equality(column, literal(value));
+        }
+        return Math.min(selectivity, 1 - nullFraction(column));
+    }
+
+    private double nullFraction(Column column) {
+        if (column.notNull()) return 0;
+        return column.stats() != null ? column.stats().nullFraction() : NULL_SELECTIVITY;
+    }
+
+    // Share of the histogram below value, interpolated inside the bucket for numbers
+    private static double histogramFraction(ColumnStats stats, String value) {
+        List<String> bounds = stats.histogramBounds();
+        Comparator<String> order = stats.order();
+        int buckets = bounds.size() - 1;
+        if (order.compare(value, bounds.get(0)) <= 0) return 0;
+        if (order.compare(value, bounds.get(buckets)) >= 0) return 1;
+
+        int bucket = Collections.binarySearch(bounds, value, order);
+        if (bucket >= 0) {
+            return (double) bucket / buckets;
+        }
+        bucket = -bucket - 2;
+        double within = 0.5;
+        if (stats.numeric()) {
+            double low = Double.parseDouble(bounds.get(bucket));
+            double high = Double.parseDouble(bounds.get(bucket + 1));
+            within = high > low ? (Double.parseDouble(value) - low) / (high - low) : 0.5;
+        }
+        return (bucket + within) / buckets;
+    }
+
+    // Value of a SQL literal as text, null for parameters, columns and expressions
+    static String literal(String text) {
+        if (text == null) return null;
+        String value = text.trim();
+        if (value.length() >= 2 && value.startsWith("'") && value.endsWith("'")) {
+            return value.substring(1, value.length() - 1).replace("''", "'");
+        }
+        if (NUMBER.matcher(value).matches()) {
+            return value;
+        }
+        var typed = TYPED_STRING.matcher(value);
+        if (typed.matches()) {
+            return typed.group(1).replace("''", "'");
+        }
+        return null;
+    }
+
+    private static int firstWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '%' || c == '_') return i;
+        }
+        return -1;
+    }
+
+    private static Pattern likeToRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '%') regex.append(".*");
+            else if (c == '_') regex.append('.');
+            else regex.append(Pattern.quote(String.valueOf(c)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    static boolean isNumber(String value) {
+        return value != null && NUMBER.matcher(value).matches();
+    }
+
+    // Immutable statistics of one column with the distinct count resolved against the row count
+    public record ColumnStats(double nullFraction, double distinctCount, List<String> mostCommonValues,
+                              double[] mostCommonFrequencies, List<String> histogramBounds,
+                              Double correlation, boolean numeric) {
+
+        public static ColumnStats of(ColumnStatistics statistics, double tableRows) {
+            double nullFraction = statistics.getNullFraction() != null ? statistics.getNullFraction() : 0;
+            double distinct = statistics.getDistinctCount() != null ? statistics.getDistinctCount() : 0;
+            if (distinct < 0) {
+                distinct = -distinct * Math.max(1, tableRows);
+            }
+            List<String> mcv = statistics.getMostCommonValues() != null ? statistics.getMostCommonValues() : List.of();
+            List<Double> freqs = statistics.getMostCommonFrequencies() != null ? statistics.getMostCommonFrequencies() : List.of();
+            int size = Math.min(mcv.size(), freqs.size());
+            double[] frequencies = new double[size];
+            for (int i = 0; i < size; i++) {
+                frequencies[i] = freqs.get(i);
+            }
+            List<String> bounds = statistics.getHistogramBounds() != null ? statistics.getHistogramBounds() : List.of();
+            boolean numeric = !(mcv.isEmpty() && bounds.isEmpty())
+                    && mcv.stream().allMatch(SelectivityEstimator::isNumber)
+                    && bounds.stream().allMatch(SelectivityEstimator::isNumber);
+            return new ColumnStats(nullFraction, distinct, List.copyOf(mcv.subList(0, size)), frequencies,
+                    List.copyOf(bounds), statistics.getCorrelation(), numeric);
+        }
+
+        // Rows that are neither null nor one of the most common values
+        double remainingFraction() {
+            double mcvTotal = 0;
+            for (double frequency : mostCommonFrequencies) mcvTotal += frequency;
+            return Math.max(0, 1 - nullFraction - mcvTotal);
+        }
+
+        // A value missing from the MCV list is assumed no more common than the rarest one listed
+        double leastCommonFrequency() {
+            double least = 1;
+            for (double frequency : mostCommonFrequencies) least = Math.min(least, frequency);
+            return least;
+        }
+
+        Comparator<String> order() {
+            return numeric ? Comparator.comparingDouble(Double::parseDouble) : Comparator.naturalOrder();
+        }
+    }
+}
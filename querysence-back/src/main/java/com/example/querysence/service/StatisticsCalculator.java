@@ -0,0 +1,140 @@
+package com.example.querysence.service;
+
+import com.example.querysence.model.ColumnStatistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+// Derives pg_stats-style statistics from a row sample, following the approach of
+// PostgreSQL's ANALYZE: Haas-Stokes distinct estimate, MCVs above 1.25x the average
+// frequency, an equi-depth histogram over the rest, and physical-order correlation.
+final class StatisticsCalculator {
+
+    private static final double MCV_THRESHOLD = 1.25;
+    // Above this share of the table the distinct count is stored as a negative fraction
+    private static final double SCALING_DISTINCT_RATIO = 0.1;
+
+    private StatisticsCalculator() {
+    }
+
+    // values are in scan order and may contain nulls
+    static ColumnStatistics compute(List<String> values, long totalRows, int buckets, int mcvSize) {
+        int sampleRows = values.size();
+        List<String> nonNull = new ArrayList<>(sampleRows);
+        for (String value : values) {
+            if (value != null) nonNull.add(value);
+        }
+        ColumnStatistics statistics = ColumnStatistics.builder()
+                .source("SAMPLE")
+                .sampleSize((long) sampleRows)
+                .nullFraction(sampleRows == 0 ? 0.0 : (double) (sampleRows - nonNull.size()) / sampleRows)
+                .mostCommonValues(List.of())
+                .mostCommonFrequencies(List.of())
+                .histogramBounds(List.of())
+                .build();
+        if (nonNull.isEmpty()) {
+            statistics.setDistinctCount(0.0);
+            return statistics;
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (String value : nonNull) {
+            counts.merge(value, 1, Integer::sum);
+        }
+        int distinct = counts.size();
+        long singletons = counts.values().stream().filter(count -> count == 1).count();
+        double rows = Math.max(totalRows, sampleRows);
+        double nonNullRows = rows * nonNull.size() / sampleRows;
+
+        double estimate;
+        if (singletons == distinct) {
+            // Every sampled value is unique, assume the column is
+            estimate = nonNullRows;
+        } else if (sampleRows >= rows) {
+            estimate = distinct;
+        } else {
+            // Haas-Stokes Duj1 estimator
+            double n = nonNull.size();
+            estimate = n * distinct / (n - singletons + singletons * n / nonNullRows);
+            estimate = Math.max(distinct, Math.min(estimate, nonNullRows));
+        }
+        statistics.setDistinctCount(estimate > SCALING_DISTINCT_RATIO * rows ? -estimate / rows : Math.rint(estimate));
+
+        // Values clearly more common than average, most common first
+        double average = (double) nonNull.size() / distinct;
+        boolean allFit = distinct <= mcvSize && singletons == 0;
+        List<Map.Entry<String, Integer>> common = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > 1 && (allFit || entry.getValue() > MCV_THRESHOLD * average)) {
+                common.add(entry);
+            }
+        }
+        common.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        if (common.size() > mcvSize) {
+            common = common.subList(0, mcvSize);
+        }
+        List<String> mcv = new ArrayList<>();
+        List<Double> frequencies = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : common) {
+            mcv.add(entry.getKey());
+            frequencies.add((double) entry.getValue() / sampleRows);
+        }
+        statistics.setMostCommonValues(mcv);
+        statistics.setMostCommonFrequencies(frequencies);
+
+        Comparator<String> order = nonNull.stream().allMatch(SelectivityEstimator::isNumber)
+                ? Comparator.comparingDouble(Double::parseDouble)
+                : Comparator.naturalOrder();
+
+        // Equi-depth histogram over the values not covered by the MCV list
+        List<String> rest = new ArrayList<>();
+        HashSet<String> mcvSet = new HashSet<>(mcv);
+        for (String value : nonNull) {
+            if (!mcvSet.contains(value)) rest.add(value);
+        }
+        rest.sort(order);
+        if (rest.size() >= 2) {
+            int bounds = Math.min(buckets + 1, (int) rest.stream().distinct().count());
+            List<String> histogram = new ArrayList<>();
+            if (bounds >= 2) {
+                for (int i = 0; i < bounds; i++) {
+                    String bound = rest.get((int) ((long) i * (rest.size() - 1) / (bounds - 1)));
+                    if (histogram.isEmpty() || !histogram.get(histogram.size() - 1).equals(bound)) {
+                        histogram.add(bound);
+                    }
+                }
+            }
+            statistics.setHistogramBounds(histogram.size() >= 2 ? histogram : List.of());
+        }
+
+        statistics.setCorrelation(correlation(nonNull, order));
+        return statistics;
+    }
+
+    // Pearson correlation between scan position and value rank, 1 means stored in value order
+    private static Double correlation(List<String> values, Comparator<String> order) {
+        int n = values.size();
+        if (n < 2) {
+            return null;
+        }
+        Integer[] byValue = new Integer[n];
+        for (int i = 0; i < n; i++) byValue[i] = i;
+        Arrays.sort(byValue, (a, b) -> order.compare(values.get(a), values.get(b)));
+        double[] rank = new double[n];
+        for (int r = 0; r < n; r++) rank[byValue[r]] = r;
+
+        double mean = (n - 1) / 2.0;
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < n; i++) {
+            covariance += (i - mean) * (rank[i] - mean);
+            variance += (i - mean) * (i - mean);
+        }
+        return variance == 0 ? null : covariance / variance;
+    }
+}
@@ -0,0 +1,1000 @@
+package com.example.querysence.service;
+
+import com.example.querysence.exception.ResourceNotFoundException;
+import com.example.querysence.model.Project;
+import com.example.querysence.model.SchemaDefinition;
+import com.example.querysence.model.dto.WorkloadIndexAdviceResponse;
+import com.example.querysence.parser.ParsedQuery;
+import com.example.querysence.parser.SqlDialect;
+import com.example.querysence.repository.ProjectRepository;
+import com.example.querysence.repository.QueryHistoryRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Recommends one index set for a project's whole workload instead of one query at a time.
+// Each query fingerprint is weighted by executions x average execution time, candidates
+// come from the columns the fingerprints filter, join and sort on, and the set is picked
+// greedily by weighted benefit, net of the write cost of maintaining the index, per byte
+// under an index count and storage budget.
+// Fingerprints, column usage and per-table write counters live in memory and are updated as
+// analyses are stored, so advice is recomputed from the fingerprints instead of rescanning
+// history. A project's workload is reloaded from history once it is old, which also brings
+// in what other instances recorded.
+@Service
+@Slf4j
+public class WorkloadIndexAdvisor {
+
+    // Share of a table's work an index saves when it only provides the sort order
+    private static final double SORT_BENEFIT = 0.3;
+    private static final long DEFAULT_ROWS = 1000;
+    private static final int MAX_INDEX_COLUMNS = 4;
+    private static final Set<String> WRITE_STATEMENTS = Set.of("INSERT", "UPDATE", "DELETE");
+    private static final Set<String> EQUALITY_OPERATORS = Set.of("=", "IN", "IS NULL");
+    private static final Set<String> RANGE_OPERATORS = Set.of("<", ">", "<=", ">=", "BETWEEN");
+
+    private final QueryHistoryRepository historyRepository;
+    private final ProjectRepository projectRepository;
+    private final SchemaCatalogCache catalogCache;
+    private final QueryParserService parserService;
+    private final SelectivityEstimator selectivityEstimator;
+    private final IndexCostEstimator costEstimator;
+
+    private final Cache<Long, Workload> workloads;
+
+    @Value("${workload.advisor.max-indexes:10}")
+    private int defaultMaxIndexes;
+
+    @Value("${workload.advisor.max-storage-mb:1024}")
+    private long defaultMaxStorageMb;
+
+    // An index must save at least this share of the workload to be worth its write cost
+    @Value("${workload.advisor.min-benefit-share:0.01}")
+    private double minBenefitShare;
+
+    // A literal equality this share of a table's workload filters on earns a partial index
+    @Value("${workload.advisor.partial-min-share:0.8}")
+    private double partialMinShare;
+
+    // Lightest fingerprints are dropped past this many per project
+    @Value("${workload.advisor.max-fingerprints:5000}")
+    private int maxFingerprints;
+
+    public WorkloadIndexAdvisor(QueryHistoryRepository historyRepository,
+                                ProjectRepository projectRepository,
+                                SchemaCatalogCache catalogCache,
+                                QueryParserService parserService,
+                                SelectivityEstimator selectivityEstimator,
+                                IndexCostEstimator costEstimator,
+                                @Value("${workload.advisor.max-projects:500}") long maxProjects,
+                                @Value("${workload.advisor.reload-minutes:360}") long reloadMinutes) {
+        this.historyRepository = historyRepository;
+        this.projectRepository = projectRepository;
+        this.catalogCache = catalogCache;
+        this.parserService = parserService;
+        this.selectivityEstimator = selectivityEstimator;
+        this.costEstimator = costEstimator;
+        this.workloads = Caffeine.newBuilder()
+                .maximumSize(maxProjects)
+                .expireAfterWrite(Duration.ofMinutes(reloadMinutes))
+                .build();
+    }
+
+    // Counts a stored analysis once its transaction commits. Projects not loaded yet are
+    // skipped, their first advice request reads the row from history instead.
+    public void record(Long projectId, String queryHash, ParsedQuery parsedQuery, Long executionTimeMs) {
+        if (projectId == null || queryHash == null || parsedQuery == null) {
+            return;
+        }
+        Runnable apply = () -> {
+            Workload workload = workloads.getIfPresent(projectId);
+            if (workload != null) {
+                workload.add(queryHash, demands(parsedQuery), access(parsedQuery), 1,
+                        executionTimeMs != null ? executionTimeMs : 0, executionTimeMs != null ? 1 : 0, maxFingerprints);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    public void forgetProject(Long projectId) {
+        workloads.invalidate(projectId);
+    }
+
+    @Transactional(readOnly = true)
+    public WorkloadIndexAdviceResponse advise(Long projectId, String username, Integer maxIndexes,
+                                              Long maxStorageMb, LocalDateTime since) {
+        Project project = projectRepository.findByIdWithSchemas(projectId);
+        if (project == null || !project.getOwner().getFullName().equals(username)) {
+            throw new ResourceNotFoundException("Project", "id", projectId);
+        }
+        SqlDialect dialect = dialect(project);
+
+        // A time window is a one-off aggregate, the whole history is served from memory
+        Workload workload;
+        String source;
+        if (since != null) {
+            workload = load(historyRepository.summarizeWorkloadByProjectSince(projectId, since), dialect);
+            source = "HISTORY";
+        } else {
+            source = workloads.getIfPresent(projectId) != null ? "INCREMENTAL" : "HISTORY";
+            workload = workload(projectId, dialect);
+        }
+
+        int indexBudget = maxIndexes != null && maxIndexes > 0 ? maxIndexes : defaultMaxIndexes;
+        long storageBudget = (maxStorageMb != null && maxStorageMb > 0 ? maxStorageMb : defaultMaxStorageMb) * 1024 * 1024;
+        Snapshot snapshot = workload.snapshot();
+        // MySQL and Oracle have no partial (filtered) indexes
+        boolean partialIndexes = dialect == SqlDialect.POSTGRESQL || dialect == SqlDialect.SQLSERVER;
+        WorkloadIndexAdviceResponse response = select(snapshot, loadCatalog(project), indexBudget, storageBudget,
+                partialIndexes);
+        response.setProjectId(projectId);
+        response.setSince(since);
+        response.setSource(source);
+        return response;
+    }
+
+    // Reads and writes per table of the project's whole workload, for weighing an index's
+    // read benefit against the writes that have to maintain it. Per-query analysis doesn't
+    // wait for a history load: until the project's workload is loaded the profile is empty.
+    Map<String, TableWrites> writeProfile(Long projectId) {
+        Workload workload = projectId != null ? workloads.getIfPresent(projectId) : null;
+        return workload != null ? workload.writes() : Map.of();
+    }
+
+    // Loaded outside the cache so no lock is held while history is read and parsed; when two
+    // callers race, the first to finish wins
+    private Workload workload(Long projectId, SqlDialect dialect) {
+        Workload loaded = workloads.getIfPresent(projectId);
+        if (loaded != null) {
+            return loaded;
+        }
+        Workload fresh = load(historyRepository.summarizeWorkloadByProject(projectId), dialect);
+        Workload raced = workloads.asMap().putIfAbsent(projectId, fresh);
+        return raced != null ? raced : fresh;
+    }
+
+    private static SqlDialect dialect(Project project) {
+        return project.getSchemas().isEmpty()
+                ? SqlDialect.DEFAULT
+                : SqlDialect.fromStored(project.getSchemas().get(0).getDialect());
+    }
+
+    // Rows are keyed by the canonical hash of their sample rather than the stored one. History
+    // written before canonical hashing holds 64-hex SHA-256 hashes of the lowercased text, so
+    // its groups merge here with the 16-hex fingerprints recorded since.
+    private Workload load(List<Object[]> rows, SqlDialect dialect) {
+        Workload workload = new Workload();
+        int failed = 0;
+        for (Object[] row : rows) {
+            try {
+                ParsedQuery parsed = parserService.parseQuery((String) row[1], dialect);
+                String hash = parsed.getCanonicalHash() != null ? parsed.getCanonicalHash() : (String) row[0];
+                List<Demand> demands = demands(parsed);
+                String other = (String) row[5];
+                if (other != null && !other.equals(row[1]) && demands.stream().anyMatch(d -> !d.constants().isEmpty())) {
+                    demands = keepSharedConstants(demands, otherDemands(other, dialect));
+                }
+                workload.add(hash, demands, access(parsed), ((Number) row[2]).longValue(),
+                        row[3] != null ? ((Number) row[3]).longValue() : 0, ((Number) row[4]).longValue(), maxFingerprints);
+            } catch (RuntimeException e) {
+                failed++;
+            }
+        }
+        log.info("Loaded {} query fingerprints from history, {} could not be parsed", rows.size() - failed, failed);
+        return workload;
+    }
+
+    // Demands of another sample of the fingerprint, none when it no longer parses
+    private List<Demand> otherDemands(String sql, SqlDialect dialect) {
+        try {
+            return demands(parserService.parseQuery(sql, dialect));
+        } catch (RuntimeException e) {
+            return List.of();
+        }
+    }
+
+    private WorkloadIndexAdviceResponse select(Snapshot snapshot, Map<String, TableInfo> catalog,
+                                               int indexBudget, long storageBudget, boolean partialIndexes) {
+        // Untimed fingerprints count as the average timed execution
+        long timed = 0;
+        long timedMs = 0;
+        for (Fingerprint fingerprint : snapshot.fingerprints()) {
+            timed += fingerprint.timedExecutions();
+            timedMs += fingerprint.totalMs();
+        }
+        double defaultMs = timed > 0 ? Math.max(1, (double) timedMs / timed) : 1;
+
+        // Weighted demands grouped by table, each carrying its table's share of the query
+        Map<String, List<WeightedDemand>> demandsByTable = new LinkedHashMap<>();
+        // Writes that maintain every index of their target table, or the ones over SET columns
+        Map<String, List<WeightedWrite>> writesByTable = new HashMap<>();
+        Map<String, TableWrites> writeProfile = snapshot.writes();
+        double totalWeight = 0;
+        long queryCount = 0;
+        for (Fingerprint fingerprint : snapshot.fingerprints()) {
+            double weight = fingerprint.weight(defaultMs);
+            totalWeight += weight;
+            queryCount += fingerprint.executions();
+            if (fingerprint.access() != null && fingerprint.access().isWrite()) {
+                writesByTable.computeIfAbsent(fingerprint.access().target(), k -> new ArrayList<>())
+                        .add(new WeightedWrite(fingerprint.access(), weight));
+            }
+            double tableRows = 0;
+            for (Demand demand : fingerprint.demands()) {
+                tableRows += rows(catalog.get(demand.table()));
+            }
+            for (Demand demand : fingerprint.demands()) {
+                Demand known = restrictToCatalog(demand, catalog.get(demand.table()));
+                if (known.isEmpty()) continue;
+                double share = rows(catalog.get(demand.table())) / Math.max(1, tableRows);
+                demandsByTable.computeIfAbsent(demand.table(), k -> new ArrayList<>())
+                        .add(new WeightedDemand(known, weight * share, fingerprint.hash(), fingerprint.executions()));
+            }
+        }
+
+        // Benefit each demand already gets from existing indexes, keyed by identity
+        // since demands of different fingerprints can be equal
+        Map<WeightedDemand, Double> covered = new IdentityHashMap<>();
+        List<Candidate> candidates = new ArrayList<>();
+        for (Map.Entry<String, List<WeightedDemand>> entry : demandsByTable.entrySet()) {
+            String table = entry.getKey();
+            TableInfo info = catalog.get(table);
+            IndexTrie existing = info != null ? info.indexes() : new IndexTrie();
+            List<List<String>> existingColumns = existing.indexes().stream()
+                    .map(SchemaCatalog.Index::columns)
+                    .toList();
+            Partial partial = partialIndexes ? dominantConstant(entry.getValue(), info) : null;
+            Set<List<String>> seen = new HashSet<>();
+            Set<List<String>> seenPartial = new HashSet<>();
+            for (WeightedDemand demand : entry.getValue()) {
+                double best = 0;
+                for (List<String> index : existingColumns) {
+                    best = Math.max(best, benefit(demand.demand(), index));
+                }
+                covered.put(demand, best);
+                boolean filtersOnPartial = partial != null
+                        && partial.value().equals(demand.demand().constants().get(partial.column()));
+                for (List<String> columns : candidateColumns(demand.demand(), snapshot.usage().get(table))) {
+                    if (seen.add(columns) && !existing.hasPrefix(columns)) {
+                        candidates.add(new Candidate(table, columns, indexSize(info, columns, 1), null));
+                    }
+                    // The constant column is implied by the index predicate, the rest stays the key
+                    List<String> rest = filtersOnPartial
+                            ? columns.stream().filter(column -> !column.equals(partial.column())).toList()
+                            : List.of();
+                    if (!rest.isEmpty() && seenPartial.add(rest)) {
+                        candidates.add(new Candidate(table, rest, indexSize(info, rest, partial.fraction()), partial));
+                    }
+                }
+            }
+        }
+
+        // Indexes each table already has plus the ones picked so far
+        Map<String, Integer> indexCounts = new HashMap<>();
+        List<WorkloadIndexAdviceResponse.Recommendation> recommendations = new ArrayList<>();
+        long usedBytes = 0;
+        double saved = 0;
+        while (recommendations.size() < indexBudget) {
+            Candidate pick = null;
+            double pickGain = 0;
+            double pickPenalty = 0;
+            double pickRatio = 0;
+            for (Candidate candidate : candidates) {
+                if (usedBytes + candidate.sizeBytes() > storageBudget) continue;
+                double penalty = writePenalty(candidate, writesByTable.get(candidate.table()),
+                        indexCount(indexCounts, candidate.table(), catalog));
+                double gain = gain(candidate, demandsByTable.get(candidate.table()), covered) - penalty;
+                double ratio = gain / candidate.sizeBytes();
+                if (gain > minBenefitShare * totalWeight && (ratio > pickRatio || (ratio == pickRatio && pick != null
+                        && candidate.columns().size() < pick.columns().size()))) {
+                    pick = candidate;
+                    pickGain = gain;
+                    pickPenalty = penalty;
+                    pickRatio = ratio;
+                }
+            }
+            if (pick == null) break;
+
+            Set<String> served = new HashSet<>();
+            double heapFetches = 0;
+            for (WeightedDemand demand : demandsByTable.get(pick.table())) {
+                double benefit = benefit(pick, demand.demand());
+                if (benefit > covered.get(demand)) {
+                    // Share of the table's rows each execution no longer reads
+                    heapFetches += demand.executions() * rows(catalog.get(pick.table())) * (benefit - covered.get(demand));
+                    covered.put(demand, benefit);
+                    served.add(demand.fingerprint());
+                }
+            }
+            candidates.remove(pick);
+            indexCounts.merge(pick.table(), 1, Integer::sum);
+            usedBytes += pick.sizeBytes();
+            saved += pickGain;
+            TableInfo info = catalog.get(pick.table());
+            TableWrites writes = writeProfile.getOrDefault(pick.table(), TableWrites.empty());
+            recommendations.add(recommend(pick, pickGain, pickPenalty, totalWeight, served.size(), Math.round(heapFetches),
+                    demandsByTable.get(pick.table()),
+                    costEstimator.buildSeconds(info != null ? info.table() : null, pick.sizeBytes(),
+                            pick.partial() != null ? pick.partial().fraction() : 1),
+                    writes.maintainingShare(maintainedColumns(pick))));
+        }
+
+        return WorkloadIndexAdviceResponse.builder()
+                .fingerprintCount(snapshot.fingerprints().size())
+                .queryCount(queryCount)
+                .workloadWeight(round(totalWeight))
+                .maxIndexes(indexBudget)
+                .maxStorageBytes(storageBudget)
+                .usedStorageBytes(usedBytes)
+                .estimatedSavingsShare(totalWeight > 0 ? round(saved / totalWeight) : 0)
+                .recommendations(recommendations)
+                .columnUsage(snapshot.usageResponse())
+                .build();
+    }
+
+    // Weighted time the target table's writes spend maintaining one more index. Updates that
+    // leave the index columns alone can stay heap-only and are not charged; a partial index
+    // is only maintained for the rows its predicate matches.
+    private static double writePenalty(Candidate candidate, List<WeightedWrite> writes, int existingIndexes) {
+        if (writes == null) {
+            return 0;
+        }
+        List<String> columns = maintainedColumns(candidate);
+        double penalty = 0;
+        for (WeightedWrite write : writes) {
+            if (write.access().maintains(columns)) {
+                penalty += write.weight();
+            }
+        }
+        double fraction = candidate.partial() != null ? candidate.partial().fraction() : 1;
+        return penalty * fraction * IndexCostEstimator.writeAmplification(existingIndexes);
+    }
+
+    private static List<String> maintainedColumns(Candidate candidate) {
+        return candidate.partial() != null
+                ? concat(List.of(candidate.partial().column()), candidate.columns())
+                : candidate.columns();
+    }
+
+    private static int indexCount(Map<String, Integer> picked, String table, Map<String, TableInfo> catalog) {
+        TableInfo info = catalog.get(table);
+        int existing = info != null && info.table() != null ? info.table().indexes().size() : 0;
+        return existing + picked.getOrDefault(table, 0);
+    }
+
+    // Weighted improvement over what the chosen and existing indexes already give
+    private static double gain(Candidate candidate, List<WeightedDemand> demands, Map<WeightedDemand, Double> covered) {
+        double gain = 0;
+        for (WeightedDemand demand : demands) {
+            double benefit = benefit(candidate, demand.demand());
+            gain += demand.weight() * Math.max(0, benefit - covered.get(demand));
+        }
+        return gain;
+    }
+
+    // A partial index only serves queries with its predicate, and then acts like a full
+    // index that leads with the predicate column
+    private static double benefit(Candidate candidate, Demand demand) {
+        Partial partial = candidate.partial();
+        if (partial == null) {
+            return benefit(demand, candidate.columns());
+        }
+        if (!partial.value().equals(demand.constants().get(partial.column()))) {
+            return 0;
+        }
+        return benefit(demand, concat(List.of(partial.column()), candidate.columns()));
+    }
+
+    // The literal equality most of the table's workload filters on, if one is common enough.
+    // Literals seen in a single execution are not known to be constant and don't count.
+    private Partial dominantConstant(List<WeightedDemand> demands, TableInfo info) {
+        double tableWeight = 0;
+        Map<Map.Entry<String, String>, Double> weights = new LinkedHashMap<>();
+        for (WeightedDemand demand : demands) {
+            tableWeight += demand.weight();
+            if (demand.executions() < 2) continue;
+            demand.demand().constants().forEach((column, value) ->
+                    weights.merge(Map.entry(column, value), demand.weight(), Double::sum));
+        }
+        Map.Entry<Map.Entry<String, String>, Double> best = weights.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .orElse(null);
+        if (best == null || best.getValue() < partialMinShare * tableWeight) {
+            return null;
+        }
+        String column = best.getKey().getKey();
+        String value = best.getKey().getValue();
+        SelectivityEstimator.Column facts = info != null && info.table() != null
+                ? info.table().selectivityColumn(column)
+                : new SelectivityEstimator.Column(null, rows(info), false, false);
+        ParsedQuery.WhereCondition predicate = ParsedQuery.WhereCondition.builder()
+                .column(column).operator("=").value(value).build();
+        double fraction = selectivityEstimator.selectivity(predicate, facts, 1);
+        return new Partial(column, value, fraction, best.getValue() / tableWeight);
+    }
+
+    // Fraction of the table work an index saves: leftmost equality columns, then one range column
+    static double benefit(Demand demand, List<String> columns) {
+        double selectivity = 1;
+        int matched = 0;
+        int equalities = 0;
+        for (String column : columns) {
+            if (demand.equality().contains(column) || demand.join().contains(column)) {
+                selectivity *= SelectivityEstimator.EQ_SELECTIVITY;
+                matched++;
+                equalities++;
+                continue;
+            }
+            if (demand.range().contains(column)) {
+                selectivity *= SelectivityEstimator.RANGE_SELECTIVITY;
+                matched++;
+            }
+            break;
+        }
+        if (matched == 0) {
+            return !demand.sort().isEmpty() && columns.get(0).equals(demand.sort().get(0)) ? SORT_BENEFIT : 0;
+        }
+        // Equality prefix followed by the sort column also skips the sort
+        if (matched == equalities && columns.size() > matched && !demand.sort().isEmpty()
+                && columns.get(matched).equals(demand.sort().get(0))) {
+            return 1 - selectivity * (1 - SORT_BENEFIT);
+        }
+        return 1 - selectivity;
+    }
+
+    // Equality columns lead, ordered by how often the workload filters on them so
+    // several queries can share one index through its prefix
+    private static List<List<String>> candidateColumns(Demand demand, Map<String, Usage> usage) {
+        Comparator<String> byUsage = Comparator.<String>comparingLong(column -> {
+            Usage counters = usage != null ? usage.get(column) : null;
+            return counters != null ? counters.equality + counters.join : 0;
+        }).reversed().thenComparing(Comparator.naturalOrder());
+
+        Set<String> filtered = new LinkedHashSet<>(demand.equality());
+        filtered.addAll(demand.join());
+        List<String> equality = new ArrayList<>(filtered);
+        equality.sort(byUsage);
+        if (equality.size() > MAX_INDEX_COLUMNS - 1) {
+            equality = equality.subList(0, MAX_INDEX_COLUMNS - 1);
+        }
+
+        List<List<String>> candidates = new ArrayList<>();
+        for (String column : equality) {
+            candidates.add(List.of(column));
+        }
+        if (equality.size() > 1) {
+            candidates.add(List.copyOf(equality));
+        }
+        for (String range : demand.range()) {
+            candidates.add(List.copyOf(concat(equality, List.of(range))));
+        }
+        if (!demand.sort().isEmpty()) {
+            String sort = demand.sort().get(0);
+            if (!equality.contains(sort)) {
+                candidates.add(List.copyOf(concat(equality, List.of(sort))));
+            }
+        }
+        return candidates;
+    }
+
+    private WorkloadIndexAdviceResponse.Recommendation recommend(Candidate candidate, double gain, double writePenalty,
+                                                                 double totalWeight, int served, long heapFetches,
+                                                                 List<WeightedDemand> demands, double buildSeconds,
+                                                                 double writeShare) {
+        Set<String> equality = new LinkedHashSet<>();
+        Set<String> range = new LinkedHashSet<>();
+        Set<String> sort = new LinkedHashSet<>();
+        for (WeightedDemand weighted : demands) {
+            Demand demand = weighted.demand();
+            for (String column : candidate.columns()) {
+                if (demand.equality().contains(column) || demand.join().contains(column)) equality.add(column);
+                else if (demand.range().contains(column)) range.add(column);
+                else if (demand.sort().contains(column)) sort.add(column);
+            }
+        }
+        List<String> uses = new ArrayList<>();
+        if (!equality.isEmpty()) uses.add("equality on " + String.join(", ", equality));
+        if (!range.isEmpty()) uses.add("range on " + String.join(", ", range));
+        if (!sort.isEmpty()) uses.add("sort on " + String.join(", ", sort));
+
+        double share = totalWeight > 0 ? gain / totalWeight : 0;
+        Partial partial = candidate.partial();
+        String indexName = "idx_" + candidate.table() + "_" + String.join("_", candidate.columns())
+                + (partial != null ? "_where_" + partial.column() : "");
+        String predicate = partial != null ? partial.column() + " = " + partial.value() : null;
+        String reasoning = "Serves " + served + " query fingerprint(s), saving about "
+                + Math.round(share * 100) + "% of the workload's weighted time ("
+                + String.join("; ", uses) + ")";
+        if (partial != null) {
+            reasoning += " - partial on " + predicate + ", which " + Math.round(partial.workloadShare() * 100)
+                    + "% of the table's workload filters on; it indexes only "
+                    + (partial.fraction() < 0.01 ? "<1%" : "~" + Math.round(partial.fraction() * 100) + "%")
+                    + " of the rows";
+        }
+        reasoning += " - avoids ~" + heapFetches + " heap fetches across the served executions";
+        if (writePenalty > 0) {
+            reasoning += " - net of ~" + Math.round(writePenalty / Math.max(1, totalWeight) * 100)
+                    + "% added to the workload by the " + Math.round(writeShare * 100)
+                    + "% of the table's statements that would maintain it";
+        }
+        return WorkloadIndexAdviceResponse.Recommendation.builder()
+                .tableName(candidate.table())
+                .columns(candidate.columns())
+                .indexName(indexName)
+                .partialPredicate(predicate)
+                .createStatement(String.format("CREATE INDEX %s ON %s (%s)%s;",
+                        indexName, candidate.table(), String.join(", ", candidate.columns()),
+                        predicate != null ? " WHERE " + predicate : ""))
+                .estimatedSizeBytes(candidate.sizeBytes())
+                .estimatedBuildSeconds(buildSeconds)
+                .writeShare(round(writeShare))
+                .writePenalty(round(writePenalty))
+                .benefit(round(gain))
+                .benefitShare(round(share))
+                .queriesServed(served)
+                .heapFetchReduction(heapFetches)
+                .reasoning(reasoning)
+                .build();
+    }
+
+    // Statement kind and the tables it reads; writes also name their target and SET columns
+    static Access access(ParsedQuery query) {
+        String statement = query.getQueryType() != null ? query.getQueryType().toUpperCase(Locale.ROOT) : "SELECT";
+        Set<String> tables = new LinkedHashSet<>();
+        collectTables(query, tables);
+        String target = WRITE_STATEMENTS.contains(statement) && !query.getTables().isEmpty()
+                ? lower(query.getTables().get(0))
+                : null;
+        Set<String> setColumns = new HashSet<>();
+        if (statement.equals("UPDATE")) {
+            query.getColumns().forEach(column -> setColumns.add(lower(column)));
+        }
+        return new Access(statement, target, Set.copyOf(setColumns), Set.copyOf(tables));
+    }
+
+    private static void collectTables(ParsedQuery query, Set<String> tables) {
+        query.getTables().forEach(table -> tables.add(lower(table)));
+        for (ParsedQuery subquery : query.getSubqueries()) {
+            collectTables(subquery, tables);
+        }
+    }
+
+    // Columns each table of the query filters, joins, sorts and groups on
+    static List<Demand> demands(ParsedQuery query) {
+        Map<String, Demand> byTable = new LinkedHashMap<>();
+        collectDemands(query, byTable);
+        return byTable.values().stream().filter(demand -> !demand.isEmpty()).toList();
+    }
+
+    private static void collectDemands(ParsedQuery query, Map<String, Demand> byTable) {
+        Map<String, String> aliases = new HashMap<>();
+        Set<String> joined = new HashSet<>();
+        for (ParsedQuery.JoinInfo join : query.getJoins()) {
+            if (join.getTable() == null) continue;
+            joined.add(lower(join.getTable()));
+            if (join.getAlias() != null && !join.getAlias().isEmpty()) {
+                aliases.put(lower(join.getAlias()), lower(join.getTable()));
+            }
+        }
+        Set<String> tables = new LinkedHashSet<>();
+        query.getTables().forEach(table -> tables.add(lower(table)));
+        // The FROM alias is not kept by the parser; an unknown qualifier goes to the
+        // only table that is not reached through a JOIN
+        Set<String> unjoined = new LinkedHashSet<>(tables);
+        unjoined.removeAll(joined);
+
+        for (ParsedQuery.WhereCondition condition : query.getWhereConditions()) {
+            String table = resolve(condition.getTable(), tables, aliases, unjoined);
+            String operator = condition.getOperator() != null ? condition.getOperator().toUpperCase(Locale.ROOT) : "";
+            if (table == null || condition.getColumn() == null) continue;
+            Demand demand = byTable.computeIfAbsent(table, Demand::empty);
+            String column = lower(condition.getColumn());
+            if (EQUALITY_OPERATORS.contains(operator)) {
+                demand.equality().add(column);
+                // A literal rather than a bind parameter may pick out a fixed slice of the table
+                if (operator.equals("=") && !condition.isParameterized()
+                        && SelectivityEstimator.literal(condition.getValue()) != null) {
+                    demand.constants().putIfAbsent(column, condition.getValue().trim());
+                }
+            } else if (RANGE_OPERATORS.contains(operator) || (operator.equals("LIKE") && hasLiteralPrefix(condition))) {
+                demand.range().add(column);
+            }
+        }
+        for (ParsedQuery.JoinInfo join : query.getJoins()) {
+            if (join.getTable() == null || join.getJoinColumns() == null || !tables.contains(lower(join.getTable()))) {
+                continue;
+            }
+            Demand demand = byTable.computeIfAbsent(lower(join.getTable()), Demand::empty);
+            join.getJoinColumns().forEach(column -> demand.join().add(lower(column)));
+        }
+        // ORDER BY and GROUP BY columns are unqualified, only attributable in single-table queries
+        if (tables.size() == 1) {
+            Demand demand = byTable.computeIfAbsent(tables.iterator().next(), Demand::empty);
+            query.getOrderByColumns().forEach(column -> demand.sort().add(lower(column)));
+            query.getGroupByColumns().forEach(column -> demand.group().add(lower(column)));
+        }
+        for (ParsedQuery subquery : query.getSubqueries()) {
+            collectDemands(subquery, byTable);
+        }
+    }
+
+    // Keeps the constants the other sample of the same fingerprint filters on with the same
+    // literal; the fingerprint folds literals, so differing ones were never constant
+    static List<Demand> keepSharedConstants(List<Demand> demands, List<Demand> other) {
+        List<Demand> kept = new ArrayList<>(demands.size());
+        for (Demand demand : demands) {
+            if (demand.constants().isEmpty()) {
+                kept.add(demand);
+                continue;
+            }
+            Map<String, String> otherConstants = other.stream()
+                    .filter(candidate -> candidate.table().equals(demand.table()))
+                    .findFirst()
+                    .map(Demand::constants)
+                    .orElse(Map.of());
+            Map<String, String> shared = new LinkedHashMap<>(demand.constants());
+            shared.entrySet().removeIf(entry -> !entry.getValue().equals(otherConstants.get(entry.getKey())));
+            kept.add(shared.size() == demand.constants().size() ? demand
+                    : new Demand(demand.table(), demand.equality(), demand.range(), demand.join(),
+                            demand.sort(), demand.group(), shared));
+        }
+        return kept;
+    }
+
+    private static String resolve(String qualifier, Set<String> tables, Map<String, String> aliases, Set<String> unjoined) {
+        if (qualifier == null || qualifier.isEmpty()) {
+            return tables.size() == 1 ? tables.iterator().next() : null;
+        }
+        String name = lower(qualifier);
+        if (tables.contains(name)) return name;
+        if (aliases.containsKey(name)) return aliases.get(name);
+        return unjoined.size() == 1 ? unjoined.iterator().next() : null;
+    }
+
+    private static boolean hasLiteralPrefix(ParsedQuery.WhereCondition condition) {
+        String pattern = SelectivityEstimator.literal(condition.getValue());
+        return pattern != null && !pattern.isEmpty() && pattern.charAt(0) != '%' && pattern.charAt(0) != '_';
+    }
+
+    // Drops columns the schema does not have, e.g. the outer side of a join condition
+    private static Demand restrictToCatalog(Demand demand, TableInfo info) {
+        if (info == null || info.columnTypes().isEmpty()) {
+            return demand;
+        }
+        Set<String> columns = info.columnTypes().keySet();
+        Demand known = Demand.empty(demand.table());
+        demand.equality().stream().filter(columns::contains).forEach(known.equality()::add);
+        demand.range().stream().filter(columns::contains).forEach(known.range()::add);
+        demand.join().stream().filter(columns::contains).forEach(known.join()::add);
+        demand.sort().stream().filter(columns::contains).forEach(known.sort()::add);
+        demand.group().stream().filter(columns::contains).forEach(known.group()::add);
+        demand.constants().forEach((column, value) -> {
+            if (columns.contains(column)) known.constants().put(column, value);
+        });
+        return known;
+    }
+
+    private Map<String, TableInfo> loadCatalog(Project project) {
+        Map<String, TableInfo> catalog = new HashMap<>();
+        for (SchemaDefinition schema : project.getSchemas()) {
+            catalogCache.get(schema.getId()).ifPresent(full -> {
+                for (SchemaCatalog.Table table : full.tables()) {
+                    Map<String, String> types = new HashMap<>();
+                    for (SchemaCatalog.Column column : table.columns()) {
+                        types.put(lower(column.name()), column.dataType());
+                    }
+                    catalog.put(lower(table.name()), new TableInfo(table.rowsOrDefault(), types, table.indexTrie(), table));
+                }
+            });
+        }
+        return catalog;
+    }
+
+    private long indexSize(TableInfo info, List<String> columns, double rowFraction) {
+        return costEstimator.sizeBytes(info != null ? info.table() : null, columns, rowFraction);
+    }
+
+    private static double rows(TableInfo info) {
+        return info != null ? info.rows() : DEFAULT_ROWS;
+    }
+
+    private static <T> List<T> concat(List<T> first, List<T> second) {
+        List<T> result = new ArrayList<>(first);
+        result.addAll(second);
+        return result;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    private static String lower(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : null;
+    }
+
+    // constants maps columns compared to a literal with = to that literal's SQL text
+    record Demand(String table, Set<String> equality, Set<String> range, Set<String> join,
+                  List<String> sort, List<String> group, Map<String, String> constants) {
+
+        static Demand empty(String table) {
+            return new Demand(table, new LinkedHashSet<>(), new LinkedHashSet<>(), new LinkedHashSet<>(),
+                    new ArrayList<>(), new ArrayList<>(), new LinkedHashMap<>());
+        }
+
+        boolean isEmpty() {
+            return equality.isEmpty() && range.isEmpty() && join.isEmpty() && sort.isEmpty();
+        }
+    }
+
+    // target is null for reads
+    record Access(String statement, String target, Set<String> setColumns, Set<String> tables) {
+
+        boolean isWrite() {
+            return target != null;
+        }
+
+        // Inserts and deletes touch every index; an update only those over a column it sets
+        boolean maintains(Collection<String> indexColumns) {
+            if (!isWrite()) return false;
+            if (!statement.equals("UPDATE")) return true;
+            return indexColumns.stream().anyMatch(setColumns::contains);
+        }
+    }
+
+    // Executions per kind of statement touching one table
+    static final class TableWrites {
+        private long reads;
+        private long inserts;
+        private long deletes;
+        // Update executions by the columns they set
+        private final Map<Set<String>, Long> updates = new HashMap<>();
+
+        static TableWrites empty() {
+            return new TableWrites();
+        }
+
+        // executions is negative when a fingerprint is dropped
+        void addRead(long executions) {
+            reads += executions;
+        }
+
+        void addWrite(Access access, long executions) {
+            switch (access.statement()) {
+                case "INSERT" -> inserts += executions;
+                case "DELETE" -> deletes += executions;
+                default -> {
+                    if (updates.merge(access.setColumns(), executions, Long::sum) <= 0) {
+                        updates.remove(access.setColumns());
+                    }
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return statements() <= 0;
+        }
+
+        TableWrites copy() {
+            TableWrites copy = new TableWrites();
+            copy.reads = reads;
+            copy.inserts = inserts;
+            copy.deletes = deletes;
+            copy.updates.putAll(updates);
+            return copy;
+        }
+
+        long writes() {
+            return inserts + deletes + updates.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        long statements() {
+            return reads + writes();
+        }
+
+        // Write executions an index over these columns would have to be maintained by
+        long maintaining(Collection<String> indexColumns) {
+            long maintaining = inserts + deletes;
+            for (Map.Entry<Set<String>, Long> update : updates.entrySet()) {
+                if (indexColumns.stream().anyMatch(update.getKey()::contains)) {
+                    maintaining += update.getValue();
+                }
+            }
+            return maintaining;
+        }
+
+        // Rows are only added and the column is never rewritten, so its values follow insertion order
+        boolean appendOnly(String column) {
+            return inserts > 0 && deletes * 10 <= inserts
+                    && updates.keySet().stream().noneMatch(columns -> columns.contains(column));
+        }
+
+        // Share of the table's statements that would maintain an index over these columns
+        double maintainingShare(Collection<String> indexColumns) {
+            long statements = statements();
+            return statements > 0 ? (double) maintaining(indexColumns) / statements : 0;
+        }
+    }
+
+    private record Fingerprint(String hash, List<Demand> demands, Access access, long executions, long totalMs,
+                               long timedExecutions) {
+
+        double weight(double defaultMs) {
+            double averageMs = timedExecutions > 0 ? (double) totalMs / timedExecutions : defaultMs;
+            return executions * Math.max(1, averageMs);
+        }
+    }
+
+    private record WeightedDemand(Demand demand, double weight, String fingerprint, long executions) {
+    }
+
+    private record WeightedWrite(Access access, double weight) {
+    }
+
+    // partial is null for a full index
+    private record Candidate(String table, List<String> columns, long sizeBytes, Partial partial) {
+    }
+
+    // Literal equality kept in an index predicate; fraction is the share of rows it matches,
+    // workloadShare the share of the table's workload weight that filters on it
+    private record Partial(String column, String value, double fraction, double workloadShare) {
+    }
+
+    private record TableInfo(long rows, Map<String, String> columnTypes, IndexTrie indexes, SchemaCatalog.Table table) {
+    }
+
+    private record Snapshot(List<Fingerprint> fingerprints, Map<String, Map<String, Usage>> usage,
+                            Map<String, TableWrites> writes) {
+
+        Map<String, Map<String, WorkloadIndexAdviceResponse.ColumnUsage>> usageResponse() {
+            Map<String, Map<String, WorkloadIndexAdviceResponse.ColumnUsage>> response = new TreeMap<>();
+            usage.forEach((table, columns) -> {
+                Map<String, WorkloadIndexAdviceResponse.ColumnUsage> byColumn = new TreeMap<>();
+                columns.forEach((column, counters) -> byColumn.put(column, counters.toResponse()));
+                response.put(table, byColumn);
+            });
+            return response;
+        }
+    }
+
+    private static final class Usage {
+        private long equality;
+        private long range;
+        private long join;
+        private long sort;
+        private long group;
+        private int fingerprints;
+
+        Usage copy() {
+            Usage copy = new Usage();
+            copy.equality = equality;
+            copy.range = range;
+            copy.join = join;
+            copy.sort = sort;
+            copy.group = group;
+            copy.fingerprints = fingerprints;
+            return copy;
+        }
+
+        WorkloadIndexAdviceResponse.ColumnUsage toResponse() {
+            return WorkloadIndexAdviceResponse.ColumnUsage.builder()
+                    .equality(equality).range(range).join(join).sort(sort).group(group)
+                    .fingerprints(fingerprints)
+                    .build();
+        }
+    }
+
+    // Fingerprints of one project plus usage and write counters kept in step with them
+    private static final class Workload {
+        private final Map<String, Fingerprint> fingerprints = new HashMap<>();
+        private final Map<String, Map<String, Usage>> usage = new HashMap<>();
+        private final Map<String, TableWrites> writes = new HashMap<>();
+
+        synchronized void add(String hash, List<Demand> demands, Access access, long executions, long totalMs, long timed,
+                              int limit) {
+            Fingerprint previous = fingerprints.get(hash);
+            Fingerprint current = previous == null
+                    ? new Fingerprint(hash, demands, access, executions, totalMs, timed)
+                    : new Fingerprint(hash, keepSharedConstants(previous.demands(), demands), previous.access(),
+                            previous.executions() + executions, previous.totalMs() + totalMs,
+                            previous.timedExecutions() + timed);
+            fingerprints.put(hash, current);
+            count(current.demands(), executions, previous == null ? 1 : 0);
+            countAccess(current.access(), executions);
+
+            if (fingerprints.size() > limit) {
+                Fingerprint lightest = fingerprints.values().stream()
+                        .min(Comparator.comparingDouble(fingerprint -> fingerprint.weight(1)))
+                        .orElseThrow();
+                fingerprints.remove(lightest.hash());
+                count(lightest.demands(), -lightest.executions(), -1);
+                countAccess(lightest.access(), -lightest.executions());
+            }
+        }
+
+        // A write counts against its target table, every other table it touches is read
+        private void countAccess(Access access, long executions) {
+            if (access == null) return;
+            if (access.isWrite()) {
+                tableWrites(access.target()).addWrite(access, executions);
+            }
+            for (String table : access.tables()) {
+                if (!access.isWrite() || !table.equals(access.target())) {
+                    tableWrites(table).addRead(executions);
+                }
+            }
+            writes.values().removeIf(TableWrites::isEmpty);
+        }
+
+        private TableWrites tableWrites(String table) {
+            return writes.computeIfAbsent(table, k -> TableWrites.empty());
+        }
+
+        synchronized Map<String, TableWrites> writes() {
+            Map<String, TableWrites> copy = new HashMap<>();
+            writes.forEach((table, counters) -> copy.put(table, counters.copy()));
+            return copy;
+        }
+
+        private void count(List<Demand> demands, long executions, int fingerprintDelta) {
+            for (Demand demand : demands) {
+                Map<String, Usage> columns = usage.computeIfAbsent(demand.table(), k -> new HashMap<>());
+                Set<String> touched = new HashSet<>();
+                demand.equality().forEach(column -> { usage(columns, column).equality += executions; touched.add(column); });
+                demand.range().forEach(column -> { usage(columns, column).range += executions; touched.add(column); });
+                demand.join().forEach(column -> { usage(columns, column).join += executions; touched.add(column); });
+                demand.sort().forEach(column -> { usage(columns, column).sort += executions; touched.add(column); });
+                demand.group().forEach(column -> { usage(columns, column).group += executions; touched.add(column); });
+                for (String column : touched) {
+                    Usage counters = columns.get(column);
+                    counters.fingerprints += fingerprintDelta;
+                    if (counters.fingerprints <= 0) columns.remove(column);
+                }
+                if (columns.isEmpty()) usage.remove(demand.table());
+            }
+        }
+
+        private static Usage usage(Map<String, Usage> columns, String column) {
+            return columns.computeIfAbsent(column, k -> new Usage());
+        }
+
+        synchronized Snapshot snapshot() {
+            Map<String, Map<String, Usage>> copy = new HashMap<>();
+            usage.forEach((table, columns) -> {
+                Map<String, Usage> columnsCopy = new HashMap<>();
+                columns.forEach((column, counters) -> columnsCopy.put(column, counters.copy()));
+                copy.put(table, columnsCopy);
+            });
+            return new Snapshot(List.copyOf(fingerprints.values()), copy, writes());
+        }
+    }
+}
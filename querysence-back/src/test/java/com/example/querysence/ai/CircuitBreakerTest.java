@@ -0,0 +1,122 @@
+package com.example.querysence.ai;
+
+import com.example.querysence.ai.AIProviderClient.CircuitBreaker;
+import com.example.querysence.ai.AIProviderClient.CircuitState;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private static final long NEVER = Duration.ofHours(1).toNanos();
+
+    @Test
+    void staysClosedBelowTheMinimumNumberOfCalls() {
+        CircuitBreaker breaker = new CircuitBreaker(10, 4, 0.5, NEVER, 2);
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(breaker.tryAcquire());
+        }
+        assertThat(breaker.state()).isEqualTo(CircuitState.CLOSED);
+        breaker.onFailure(breaker.tryAcquire());
+        assertThat(breaker.state()).isEqualTo(CircuitState.OPEN);
+    }
+
+    @Test
+    void opensAtTheFailureRateOverTheWindow() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 4, 0.5, NEVER, 2);
+        breaker.onSuccess(breaker.tryAcquire());
+        breaker.onSuccess(breaker.tryAcquire());
+        breaker.onSuccess(breaker.tryAcquire());
+        breaker.onFailure(breaker.tryAcquire());
+        assertThat(breaker.state()).isEqualTo(CircuitState.CLOSED);
+        // The window slides: the first success drops out, two failures of four
+        breaker.onFailure(breaker.tryAcquire());
+        assertThat(breaker.state()).isEqualTo(CircuitState.OPEN);
+    }
+
+    @Test
+    void openCircuitRejectsUntilItCoolsDown() {
+        CircuitBreaker breaker = open(new CircuitBreaker(2, 1, 0.5, NEVER, 1));
+        assertThat(breaker.tryAcquire()).isNull();
+        assertThat(breaker.state()).isEqualTo(CircuitState.OPEN);
+    }
+
+    @Test
+    void halfOpenLetsOnlyTheProbesThroughAndClosesWhenTheyAllSucceed() {
+        CircuitBreaker breaker = open(new CircuitBreaker(2, 1, 0.5, 0, 2));
+        CircuitBreaker.Permit first = breaker.tryAcquire();
+        CircuitBreaker.Permit second = breaker.tryAcquire();
+        assertThat(breaker.state()).isEqualTo(CircuitState.HALF_OPEN);
+        assertThat(first.probe()).isTrue();
+        assertThat(second.probe()).isTrue();
+        assertThat(breaker.tryAcquire()).isNull();
+
+        breaker.onSuccess(first);
+        assertThat(breaker.state()).isEqualTo(CircuitState.HALF_OPEN);
+        // A probe that succeeded still counts against the budget until the circuit closes
+        assertThat(breaker.tryAcquire()).isNull();
+        breaker.onSuccess(second);
+        assertThat(breaker.state()).isEqualTo(CircuitState.CLOSED);
+        assertThat(breaker.tryAcquire().probe()).isFalse();
+    }
+
+    @Test
+    void failedProbeOpensTheCircuitAgain() {
+        CircuitBreaker breaker = open(new CircuitBreaker(2, 1, 0.5, 0, 2));
+        breaker.onFailure(breaker.tryAcquire());
+        assertThat(breaker.state()).isEqualTo(CircuitState.OPEN);
+    }
+
+    @Test
+    void abandonedProbeFreesItsSlot() {
+        CircuitBreaker breaker = open(new CircuitBreaker(2, 1, 0.5, 0, 1));
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+        assertThat(breaker.tryAcquire()).isNull();
+        breaker.onAbandoned(probe);
+        assertThat(breaker.tryAcquire()).isNotNull();
+        assertThat(breaker.state()).isEqualTo(CircuitState.HALF_OPEN);
+    }
+
+    @Test
+    void callAdmittedWhileClosedDoesNotCountAsAProbe() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 2, 0.5, 0, 1);
+        CircuitBreaker.Permit slow = breaker.tryAcquire();
+        breaker.onFailure(breaker.tryAcquire());
+        breaker.onFailure(breaker.tryAcquire());
+        assertThat(breaker.state()).isEqualTo(CircuitState.OPEN);
+
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+        assertThat(breaker.state()).isEqualTo(CircuitState.HALF_OPEN);
+        // The call from before the circuit opened finishes now: neither a probe success
+        // nor a release of the probe's slot
+        breaker.onSuccess(slow);
+        assertThat(breaker.state()).isEqualTo(CircuitState.HALF_OPEN);
+        breaker.onAbandoned(slow);
+        assertThat(breaker.tryAcquire()).isNull();
+
+        breaker.onSuccess(probe);
+        assertThat(breaker.state()).isEqualTo(CircuitState.CLOSED);
+    }
+
+    @Test
+    void staleFailureDoesNotReopenTheCircuit() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 2, 0.5, 0, 1);
+        CircuitBreaker.Permit slow = breaker.tryAcquire();
+        breaker.onFailure(breaker.tryAcquire());
+        breaker.onFailure(breaker.tryAcquire());
+        breaker.onSuccess(breaker.tryAcquire());
+        assertThat(breaker.state()).isEqualTo(CircuitState.CLOSED);
+
+        breaker.onFailure(slow);
+        assertThat(breaker.state()).isEqualTo(CircuitState.CLOSED);
+    }
+
+    private static CircuitBreaker open(CircuitBreaker breaker) {
+        while (breaker.state() != CircuitState.OPEN) {
+            breaker.onFailure(breaker.tryAcquire());
+        }
+        return breaker;
+    }
+}
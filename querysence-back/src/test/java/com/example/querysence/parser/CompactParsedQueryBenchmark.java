@@ -0,0 +1,107 @@
+package com.example.querysence.parser;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// Retained heap per query of ParsedQuery beans against CompactParsedQuery (symbol table
+// included) over a synthetic corpus, then the cost of expand() and whether every
+// round-trip equals the bean it came from. A plain main rather than JMH, which this
+// build doesn't carry, and not picked up by surefire: run it from the IDE or with java
+// on the test classpath after mvn test-compile, ideally with -XX:+UseSerialGC.
+public class CompactParsedQueryBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        ParserGuard guard = new ParserGuard(new SimpleMeterRegistry(), 100_000, 64, 10_000);
+        SQLParserEngine engine = new SQLParserEngine(new QueryCanonicalizer(new SqlFingerprinter()),
+                guard, new LiteralListFolder(32));
+        try {
+            List<String> corpus = corpus(count, new Random(42));
+
+            long before = usedHeap();
+            List<ParsedQuery> beans = new ArrayList<>(count);
+            for (String sql : corpus) {
+                beans.add(engine.parse(sql));
+            }
+            long beanBytes = usedHeap() - before;
+
+            SymbolTable symbols = new SymbolTable(1_000_000);
+            before = usedHeap();
+            List<CompactParsedQuery> compact = new ArrayList<>(count);
+            for (ParsedQuery bean : beans) {
+                compact.add(CompactParsedQuery.of(bean, symbols));
+            }
+            long compactBytes = usedHeap() - before;
+
+            long start = System.nanoTime();
+            int mismatches = 0;
+            for (int i = 0; i < count; i++) {
+                ParsedQuery expanded = compact.get(i).expand();
+                // Only the canonical hash is kept
+                ParsedQuery original = beans.get(i);
+                original.setCanonicalSql(null);
+                if (!expanded.equals(original)) {
+                    mismatches++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf(Locale.ROOT, "%d queries, %d symbols%n", count, symbols.size());
+            System.out.printf(Locale.ROOT, "ParsedQuery         %6d B per query%n", beanBytes / count);
+            System.out.printf(Locale.ROOT, "CompactParsedQuery  %6d B per query%n", compactBytes / count);
+            System.out.printf(Locale.ROOT, "expand() and compare %.2f us per query, %d mismatches%n",
+                    elapsed / 1e3 / count, mismatches);
+        } finally {
+            guard.shutdown();
+        }
+    }
+
+    // 60 tables of 20 columns; 0-3 joins, 1-5 predicates with random literals, and now
+    // and then a correlated IN subquery
+    static List<String> corpus(int count, Random random) {
+        String[] operators = {"=", "<", ">", "<>", "LIKE", "IN"};
+        List<String> corpus = new ArrayList<>(count);
+        for (int q = 0; q < count; q++) {
+            int table = random.nextInt(60);
+            StringBuilder sql = new StringBuilder("SELECT t.c").append(random.nextInt(20))
+                    .append(", t.c").append(random.nextInt(20))
+                    .append(" FROM table_").append(table).append(" t");
+            int joins = random.nextInt(4);
+            for (int j = 0; j < joins; j++) {
+                sql.append(" JOIN table_").append(random.nextInt(60)).append(" j").append(j)
+                        .append(" ON j").append(j).append(".c0 = t.c").append(random.nextInt(20));
+            }
+            sql.append(" WHERE ");
+            int predicates = 1 + random.nextInt(5);
+            for (int p = 0; p < predicates; p++) {
+                if (p > 0) sql.append(" AND ");
+                String operator = operators[random.nextInt(operators.length)];
+                sql.append("t.c").append(random.nextInt(20)).append(' ').append(operator).append(' ');
+                switch (operator) {
+                    case "LIKE" -> sql.append("'v").append(random.nextInt(100_000)).append("%'");
+                    case "IN" -> sql.append("(").append(random.nextInt(1000)).append(", ")
+                            .append(random.nextInt(1000)).append(")");
+                    default -> sql.append(random.nextInt(1_000_000));
+                }
+            }
+            if (random.nextInt(5) == 0) {
+                sql.append(" AND t.c1 IN (SELECT s.c1 FROM table_").append(random.nextInt(60))
+                        .append(" s WHERE s.c2 = t.c2 AND s.c3 > ").append(random.nextInt(1000)).append(")");
+            }
+            corpus.add(sql.toString());
+        }
+        return corpus;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
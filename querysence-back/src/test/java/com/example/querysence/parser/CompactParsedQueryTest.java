@@ -0,0 +1,44 @@
+package com.example.querysence.parser;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactParsedQueryTest {
+
+    private final SQLParserEngine engine = new SQLParserEngine(new QueryCanonicalizer(new SqlFingerprinter()),
+            new ParserGuard(new SimpleMeterRegistry(), 100_000, 64, 2000), new LiteralListFolder(32));
+    private final SymbolTable symbols = new SymbolTable(10_000);
+
+    @Test
+    void joinConditionsRenderBackUnchanged() {
+        ParsedQuery parsed = engine.parse("SELECT o.id FROM orders o JOIN customers c "
+                + "ON c.id = o.customer_id AND o.total > 42 AND c.name = 'ann  o.id'");
+
+        ParsedQuery expanded = CompactParsedQuery.of(parsed, symbols).expand();
+
+        assertThat(expanded.getJoins()).extracting(ParsedQuery.JoinInfo::getCondition)
+                .singleElement().asString().contains("'ann  o.id'");
+        assertThat(expanded.getJoins()).extracting(ParsedQuery.JoinInfo::getCondition)
+                .isEqualTo(parsed.getJoins().stream().map(ParsedQuery.JoinInfo::getCondition).toList());
+        assertThat(expanded.getTables()).isEqualTo(parsed.getTables());
+    }
+
+    @Test
+    void joinLiteralsStayOutOfTheSymbolTable() {
+        CompactParsedQuery.of(join(0), symbols);
+        int size = symbols.size();
+
+        for (int i = 1; i < 100; i++) {
+            CompactParsedQuery.of(join(i), symbols);
+        }
+
+        assertThat(symbols.size()).isEqualTo(size);
+    }
+
+    private ParsedQuery join(int literal) {
+        return engine.parse("SELECT o.id FROM orders o JOIN customers c ON c.id = o.customer_id"
+                + " AND o.total > " + literal + " AND c.name = 'customer " + literal + "'");
+    }
+}
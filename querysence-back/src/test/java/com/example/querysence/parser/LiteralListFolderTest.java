@@ -0,0 +1,78 @@
+package com.example.querysence.parser;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LiteralListFolderTest {
+
+    private final LiteralListFolder folder = new LiteralListFolder(3);
+
+    @Test
+    void foldsLongInListsToTheirFirstElement() {
+        LiteralListFolder.Result result = folder.fold("SELECT * FROM t WHERE t.id IN (1, 2, 3, 4) AND a = 1");
+        assertThat(result.sql()).isEqualTo("SELECT * FROM t WHERE t.id IN (1) AND a = 1");
+        assertThat(result.foldedLists()).containsExactly(new ParsedQuery.FoldedList("IN", "id", 4));
+    }
+
+    @Test
+    void foldsNotInListsAndMixedLiteralKinds() {
+        LiteralListFolder.Result result = folder.fold(
+                "SELECT * FROM t WHERE status NOT IN ('a', -2, 1.5e3, NULL, ?, $1, :p, E'x\\'y')");
+        assertThat(result.sql()).isEqualTo("SELECT * FROM t WHERE status NOT IN ('a')");
+        assertThat(result.foldedLists()).extracting(ParsedQuery.FoldedList::getCardinality).containsExactly(8);
+    }
+
+    @Test
+    void leavesShortListsAlone() {
+        String sql = "SELECT * FROM t WHERE id IN (1, 2)";
+        LiteralListFolder.Result result = folder.fold(sql);
+        assertThat(result.sql()).isSameAs(sql);
+        assertThat(result.foldedLists()).isEmpty();
+    }
+
+    @Test
+    void leavesListsWithExpressionsOrSubqueriesAlone() {
+        assertThat(folder.fold("SELECT * FROM t WHERE id IN (1, 2, a + 1, 4)").foldedLists()).isEmpty();
+        assertThat(folder.fold("SELECT * FROM t WHERE id IN (SELECT id FROM u)").foldedLists()).isEmpty();
+        assertThat(folder.fold("SELECT * FROM t WHERE id IN (f(1), 2, 3)").foldedLists()).isEmpty();
+    }
+
+    @Test
+    void foldsMultiRowValuesToTheFirstRow() {
+        LiteralListFolder.Result result = folder.fold("INSERT INTO t (a, b) VALUES (1, 'x'), (2, 'y'), (3, 'z') RETURNING a");
+        assertThat(result.sql()).isEqualTo("INSERT INTO t (a, b) VALUES (1, 'x') RETURNING a");
+        assertThat(result.foldedLists()).containsExactly(new ParsedQuery.FoldedList("VALUES", null, 3));
+    }
+
+    @Test
+    void ignoresListsInsideLiteralsAndComments() {
+        String sql = "SELECT 'IN (1, 2, 3, 4)', E'it\\'s IN (1, 2, 3, 4)' -- IN (1, 2, 3, 4)\nFROM t /* VALUES (1), (2), (3) */";
+        assertThat(folder.fold(sql).sql()).isSameAs(sql);
+    }
+
+    @Test
+    void foldsEveryListInTheStatement() {
+        String ids = IntStream.range(0, 1000).mapToObj(Integer::toString).collect(Collectors.joining(", "));
+        LiteralListFolder.Result result = folder.fold(
+                "SELECT * FROM t WHERE a IN (" + ids + ") OR b IN (" + ids + ")");
+        assertThat(result.sql()).isEqualTo("SELECT * FROM t WHERE a IN (0) OR b IN (0)");
+        assertThat(result.foldedLists()).extracting(ParsedQuery.FoldedList::getColumn).containsExactly("a", "b");
+    }
+
+    @Test
+    void foldedStatementsParseToTheSameShape() {
+        SQLParserEngine engine = new SQLParserEngine(new QueryCanonicalizer(new SqlFingerprinter()),
+                new ParserGuard(new SimpleMeterRegistry(), 100_000, 64, 2000),
+                folder);
+        ParsedQuery parsed = engine.parse("SELECT id FROM t WHERE id IN (1, 2, 3, 4, 5)");
+        assertThat(parsed.isValid()).isTrue();
+        assertThat(parsed.getFoldedLists()).hasSize(1);
+        assertThat(parsed.getCanonicalHash())
+                .isEqualTo(engine.parse("SELECT id FROM t WHERE id IN (9)").getCanonicalHash());
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.querysence.parser;
+
+import com.example.querysence.exception.ParserLimitExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.statement.select.Select;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ParserGuardTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ParserGuard guard = new ParserGuard(meterRegistry, 200, 5, 2000);
+
+    @AfterEach
+    void shutdown() {
+        guard.shutdown();
+    }
+
+    @Test
+    void parsesStatementsWithinTheLimits() throws JSQLParserException {
+        assertThat(guard.parse("SELECT id FROM users WHERE (a = 1 OR (b = 2))", SqlDialect.POSTGRESQL))
+                .isInstanceOf(Select.class);
+    }
+
+    @Test
+    void rejectsStatementsOverTheLengthLimit() {
+        String sql = "SELECT " + "1, ".repeat(80) + "1";
+        assertThatThrownBy(() -> guard.parse(sql, SqlDialect.POSTGRESQL))
+                .isInstanceOfSatisfying(ParserLimitExceededException.class, e -> {
+                    assertThat(e.getLimit()).isEqualTo(ParserLimitExceededException.Limit.STATEMENT_LENGTH);
+                    assertThat(e.getThreshold()).isEqualTo(200);
+                    assertThat(e.getActual()).isEqualTo(sql.length());
+                });
+        assertThat(rejected(ParserLimitExceededException.Limit.STATEMENT_LENGTH)).isEqualTo(1);
+    }
+
+    @Test
+    void checkLengthRecordsAndRejectsTheRawText() {
+        guard.checkLength("SELECT 1");
+        assertThatThrownBy(() -> guard.checkLength("x".repeat(201)))
+                .isInstanceOf(ParserLimitExceededException.class);
+        assertThat(meterRegistry.get("sql.parse.statement.length").summary().count()).isEqualTo(2);
+    }
+
+    @Test
+    void rejectsStatementsNestedTooDeeply() {
+        String sql = "SELECT " + "(".repeat(6) + "1" + ")".repeat(6);
+        assertThatThrownBy(() -> guard.parse(sql, SqlDialect.POSTGRESQL))
+                .isInstanceOfSatisfying(ParserLimitExceededException.class, e -> {
+                    assertThat(e.getLimit()).isEqualTo(ParserLimitExceededException.Limit.NESTING_DEPTH);
+                    assertThat(e.getActual()).isEqualTo(6);
+                });
+    }
+
+    @Test
+    void nestingCountsParenthesesAndCaseBlocksOutsideLiteralsAndComments() {
+        assertThat(ParserGuard.nestingDepth("SELECT (a + (b))")).isEqualTo(2);
+        assertThat(ParserGuard.nestingDepth("SELECT CASE WHEN (a) THEN CASE WHEN b THEN 1 END END")).isEqualTo(2);
+        assertThat(ParserGuard.nestingDepth("SELECT '((((', \"((\" -- ((((\n /* (( */ FROM t")).isZero();
+        assertThat(ParserGuard.nestingDepth("SELECT a FROM t ORDER BY x) )")).isZero();
+    }
+
+    @Test
+    void rejectsParsesThatRunOverTheTimeout() {
+        ParserGuard impatient = new ParserGuard(meterRegistry, 10_000_000, 64, 1);
+        try {
+            StringBuilder sql = new StringBuilder("SELECT * FROM t WHERE ");
+            for (int i = 0; i < 20_000; i++) {
+                sql.append("a").append(i).append(" = ").append(i).append(" OR ");
+            }
+            sql.append("b = 1");
+            assertThatThrownBy(() -> impatient.parse(sql.toString(), SqlDialect.POSTGRESQL))
+                    .isInstanceOfSatisfying(ParserLimitExceededException.class, e ->
+                            assertThat(e.getLimit()).isEqualTo(ParserLimitExceededException.Limit.PARSE_TIMEOUT));
+        } finally {
+            impatient.shutdown();
+        }
+    }
+
+    @Test
+    void syntaxErrorsAreNotLimitRejections() {
+        assertThatThrownBy(() -> guard.parse("SELEC id FROM", SqlDialect.POSTGRESQL))
+                .isInstanceOf(JSQLParserException.class);
+        assertThat(meterRegistry.find("sql.parse.rejected").counters())
+                .allSatisfy(counter -> assertThat(counter.count()).isZero());
+    }
+
+    @Test
+    void dialectProfilesEnableTheirSyntax() throws JSQLParserException {
+        assertThat(guard.parse("SELECT [name] FROM [users]", SqlDialect.SQLSERVER)).isInstanceOf(Select.class);
+    }
+
+    private double rejected(ParserLimitExceededException.Limit limit) {
+        return meterRegistry.get("sql.parse.rejected").tag("limit", limit.name()).counter().count();
+    }
+}
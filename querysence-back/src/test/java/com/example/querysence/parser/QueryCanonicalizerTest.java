@@ -0,0 +1,90 @@
+package com.example.querysence.parser;
+
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryCanonicalizerTest {
+
+    private final QueryCanonicalizer canonicalizer = new QueryCanonicalizer(new SqlFingerprinter());
+
+    @Test
+    void tableAliasesDoNotChangeTheHash() throws JSQLParserException {
+        assertSameHash("SELECT o.id FROM orders o JOIN customers c ON c.id = o.customer_id",
+                "SELECT x.id FROM orders x JOIN customers y ON y.id = x.customer_id");
+    }
+
+    @Test
+    void andAndOrOperandOrderDoesNotChangeTheHash() throws JSQLParserException {
+        assertSameHash("SELECT * FROM t WHERE a = 1 AND b = 2 AND (c = 3 OR d = 4)",
+                "SELECT * FROM t WHERE (d = 4 OR c = 3) AND b = 2 AND a = 1");
+    }
+
+    @Test
+    void literalSideOfEqualityDoesNotChangeTheHash() throws JSQLParserException {
+        assertSameHash("SELECT * FROM t WHERE 5 = a", "SELECT * FROM t WHERE a = 5");
+        assertSameHash("SELECT * FROM a JOIN b ON b.id = a.id", "SELECT * FROM a JOIN b ON a.id = b.id");
+    }
+
+    @Test
+    void inListLengthAndLiteralsDoNotChangeTheHash() throws JSQLParserException {
+        assertSameHash("SELECT * FROM t WHERE id IN (1, 2, 3)", "SELECT * FROM t WHERE id IN (7)");
+        assertSameHash("INSERT INTO t (a, b) VALUES (1, 'x'), (2, 'y')", "INSERT INTO t (a, b) VALUES (3, 'z')");
+    }
+
+    @Test
+    void selectAliasesDoNotChangeTheHash() throws JSQLParserException {
+        assertSameHash("SELECT count(*) AS total FROM t GROUP BY a ORDER BY total",
+                "SELECT count(*) AS n FROM t GROUP BY a ORDER BY n");
+    }
+
+    @Test
+    void selfJoinsKeepTheirOccurrencesApart() throws JSQLParserException {
+        QueryCanonicalizer.CanonicalForm form = canonicalize(
+                "SELECT a.id FROM orders a JOIN orders b ON b.parent_id = a.id");
+        assertThat(form.sql()).contains("orders_2");
+    }
+
+    @Test
+    void subqueryAliasesShadowTheOuterOnes() throws JSQLParserException {
+        String shadowed = "SELECT o.id FROM customers o WHERE EXISTS (SELECT 1 FROM orders o WHERE o.total > 5)";
+
+        assertSameHash(shadowed, "SELECT o.id FROM customers o WHERE EXISTS (SELECT 1 FROM orders x WHERE x.total > 5)");
+        assertThat(canonicalize(shadowed).sql()).contains("orders.total");
+        // A correlated reference still resolves to the enclosing query
+        assertThat(canonicalize(shadowed).hash()).isNotEqualTo(canonicalize(
+                "SELECT o.id FROM customers o WHERE EXISTS (SELECT 1 FROM orders x WHERE o.total > 5)").hash());
+        assertSameHash("SELECT c.id FROM customers c WHERE EXISTS (SELECT 1 FROM orders o WHERE o.customer_id = c.id)",
+                "SELECT o.id FROM customers o WHERE EXISTS (SELECT 1 FROM orders c WHERE c.customer_id = o.id)");
+    }
+
+    @Test
+    void differentQueriesKeepDifferentHashes() throws JSQLParserException {
+        assertThat(canonicalize("SELECT * FROM t WHERE a = 1").hash())
+                .isNotEqualTo(canonicalize("SELECT * FROM t WHERE b = 1").hash());
+        assertThat(canonicalize("SELECT * FROM t WHERE a = 1 AND b = 2").hash())
+                .isNotEqualTo(canonicalize("SELECT * FROM t WHERE a = 1 OR b = 2").hash());
+        assertThat(canonicalize("SELECT * FROM a JOIN b ON a.x = b.y").hash())
+                .isNotEqualTo(canonicalize("SELECT * FROM a LEFT JOIN b ON a.x = b.y").hash());
+    }
+
+    @Test
+    void canonicalTextHasNoLiterals() throws JSQLParserException {
+        assertThat(canonicalize("SELECT * FROM t WHERE name = 'secret' AND n > 42").sql())
+                .doesNotContain("secret")
+                .doesNotContain("42");
+    }
+
+    private void assertSameHash(String first, String second) throws JSQLParserException {
+        QueryCanonicalizer.CanonicalForm a = canonicalize(first);
+        QueryCanonicalizer.CanonicalForm b = canonicalize(second);
+        assertThat(a.sql()).isEqualTo(b.sql());
+        assertThat(a.hash()).isEqualTo(b.hash());
+    }
+
+    private QueryCanonicalizer.CanonicalForm canonicalize(String sql) throws JSQLParserException {
+        return canonicalizer.canonicalize(CCJSqlParserUtil.parse(sql));
+    }
+}
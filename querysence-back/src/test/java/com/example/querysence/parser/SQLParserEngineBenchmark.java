@@ -0,0 +1,79 @@
+package com.example.querysence.parser;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Parse time of nested queries with subqueries walked in the parsed AST, against the
+// same parse plus a re-parse of every nested level's text, which is what printing each
+// subquery back to SQL and parsing it again cost. A plain main rather than JMH, which
+// this build doesn't carry, and not picked up by surefire: run it from the IDE or with
+// java on the test classpath after mvn test-compile.
+public class SQLParserEngineBenchmark {
+
+    public static void main(String[] args) throws JSQLParserException {
+        ParserGuard guard = new ParserGuard(new SimpleMeterRegistry(), 1_000_000, 256, 10_000);
+        SQLParserEngine engine = new SQLParserEngine(new QueryCanonicalizer(new SqlFingerprinter()),
+                guard, new LiteralListFolder(32));
+        try {
+            for (int depth : new int[]{1, 3, 6}) {
+                List<String> levels = nestedQuery(depth);
+                int iterations = 300;
+                for (int i = 0; i < iterations; i++) {
+                    walk(engine, levels);
+                    reparse(engine, levels);
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    reparse(engine, levels);
+                }
+                long reparsed = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    walk(engine, levels);
+                }
+                long walked = System.nanoTime();
+                System.out.printf(Locale.ROOT, "depth %d: re-parse %7.3f ms, walk %7.3f ms per query%n", depth,
+                        (reparsed - start) / 1e6 / iterations, (walked - reparsed) / 1e6 / iterations);
+            }
+        } finally {
+            guard.shutdown();
+        }
+    }
+
+    private static int walk(SQLParserEngine engine, List<String> levels) {
+        ParsedQuery parsed = engine.parse(levels.get(0));
+        if (!parsed.isValid()) {
+            throw new IllegalStateException(parsed.getErrorMessage());
+        }
+        return parsed.getSubqueries().size();
+    }
+
+    private static int reparse(SQLParserEngine engine, List<String> levels) throws JSQLParserException {
+        int statements = walk(engine, levels);
+        for (String level : levels.subList(1, levels.size())) {
+            CCJSqlParserUtil.parse(level);
+            statements++;
+        }
+        return statements;
+    }
+
+    // The query and each of its nested levels, outermost first
+    static List<String> nestedQuery(int depth) {
+        List<String> levels = new ArrayList<>();
+        String inner = "SELECT c.id FROM customers_" + depth + " c WHERE c.region = 'EU' AND c.score > 10";
+        levels.add(inner);
+        for (int level = depth - 1; level >= 0; level--) {
+            inner = "SELECT o.id, o.total, (SELECT max(p.amount) FROM payments p WHERE p.order_id = o.id) AS paid"
+                    + " FROM orders_" + level + " o JOIN items i ON i.order_id = o.id"
+                    + " WHERE o.customer_id IN (" + inner + ")"
+                    + " AND EXISTS (SELECT 1 FROM refunds r WHERE r.order_id = o.id AND r.amount > 5)"
+                    + " ORDER BY o.total DESC";
+            levels.add(0, inner);
+        }
+        return levels;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.querysence.parser;
+
+import com.example.querysence.exception.BadRequestException;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SqlDialectTest {
+
+    @Test
+    void namesAndAliasesResolveCaseInsensitively() {
+        assertThat(SqlDialect.from("postgres")).isEqualTo(SqlDialect.POSTGRESQL);
+        assertThat(SqlDialect.from(" MariaDB ")).isEqualTo(SqlDialect.MYSQL);
+        assertThat(SqlDialect.from("mssql")).isEqualTo(SqlDialect.SQLSERVER);
+        assertThat(SqlDialect.from("Oracle")).isEqualTo(SqlDialect.ORACLE);
+    }
+
+    @Test
+    void missingDialectIsTheDefault() {
+        assertThat(SqlDialect.from(null)).isEqualTo(SqlDialect.DEFAULT);
+        assertThat(SqlDialect.from("  ")).isEqualTo(SqlDialect.DEFAULT);
+    }
+
+    @Test
+    void unknownDialectIsABadRequest() {
+        assertThatThrownBy(() -> SqlDialect.from("sqlite")).isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    void unknownStoredDialectFallsBackToTheDefault() {
+        assertThat(SqlDialect.fromStored("SQLite")).isEqualTo(SqlDialect.DEFAULT);
+        assertThat(SqlDialect.fromStored("mysql")).isEqualTo(SqlDialect.MYSQL);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.querysence.parser;
+
+import com.example.querysence.service.QueryParserService;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+// Compares the tokenizer fingerprint with the regex + SHA-256 query hash on IN-list
+// statements of growing size, then the bytes each allocates per call. A plain main
+// rather than JMH, which this build doesn't carry, and not picked up by surefire: run it
+// from the IDE or with java on the test classpath after mvn test-compile.
+public class SqlFingerprinterBenchmark {
+
+    public static void main(String[] args) {
+        SqlFingerprinter fingerprinter = new SqlFingerprinter();
+        QueryParserService parserService = new QueryParserService(null, fingerprinter);
+
+        for (int size : new int[]{1 << 10, 64 << 10, 1 << 20}) {
+            String sql = inListQuery(size);
+            int iterations = size >= 1 << 20 ? 30 : size >= 64 << 10 ? 300 : 20_000;
+            for (int i = 0; i < iterations; i++) {
+                parserService.computeQueryHash(sql);
+                fingerprinter.fingerprint(sql);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                parserService.computeQueryHash(sql);
+            }
+            long hashed = System.nanoTime();
+            long sink = 0;
+            for (int i = 0; i < iterations; i++) {
+                sink += fingerprinter.fingerprint(sql);
+            }
+            long fingerprinted = System.nanoTime();
+            System.out.printf(Locale.ROOT, "%8d chars: sha-256 %9.1f us/op, fingerprint %8.1f us/op (%d)%n",
+                    sql.length(), (hashed - start) / 1e3 / iterations,
+                    (fingerprinted - hashed) / 1e3 / iterations, sink & 1);
+        }
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String sql = inListQuery(1 << 10);
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1000; i++) {
+            parserService.computeQueryHash(sql);
+        }
+        long between = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1000; i++) {
+            fingerprinter.fingerprint(sql);
+        }
+        long after = threads.getCurrentThreadAllocatedBytes();
+        System.out.printf(Locale.ROOT, "allocated per call on 1 KB: sha-256 %d B, fingerprint %d B%n",
+                (between - before) / 1000, (after - between) / 1000);
+    }
+
+    static String inListQuery(int size) {
+        StringBuilder sql = new StringBuilder("SELECT o.id, o.total FROM orders o WHERE o.status = 'ACTIVE' AND o.id IN (");
+        for (int i = 0; sql.length() < size; i++) {
+            sql.append(i).append(", ");
+        }
+        return sql.append("0) -- trailing comment\n ORDER BY o.id").toString();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.querysence.parser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SqlFingerprinterTest {
+
+    private final SqlFingerprinter fingerprinter = new SqlFingerprinter();
+
+    @Test
+    void replacesLiteralsAndBindParametersWithPlaceholders() {
+        assertThat(fingerprinter.normalize("SELECT * FROM t WHERE a = 42 AND b = 'x' AND c = 1.5e3"))
+                .isEqualTo("select*from t where a=? and b=? and c=?");
+        assertThat(fingerprinter.normalize("SELECT * FROM t WHERE a = ? AND b = $1 AND c = :name AND d = $$x$$"))
+                .isEqualTo("select*from t where a=? and b=? and c=? and d=?");
+    }
+
+    @Test
+    void dropsCommentsAndCollapsesWhitespace() {
+        assertThat(fingerprinter.normalize("SELECT  id -- trailing\nFROM /* block */ users\n\tWHERE id = 1"))
+                .isEqualTo(fingerprinter.normalize("select id from users where id = 2"));
+    }
+
+    @Test
+    void keepsQuotedIdentifiersVerbatim() {
+        assertThat(fingerprinter.normalize("SELECT \"Name\" FROM `Users`"))
+                .isEqualTo("select \"Name\" from `Users`");
+    }
+
+    @Test
+    void keepsCastsAndPrefixedStrings() {
+        assertThat(fingerprinter.normalize("SELECT a::text FROM t WHERE b = E'x\\'y' AND c = N'z'"))
+                .isEqualTo("select a::text from t where b=? and c=?");
+    }
+
+    @Test
+    void equalShapesShareAFingerprint() {
+        assertThat(fingerprinter.fingerprint("SELECT id FROM users WHERE email = 'a@b.c'"))
+                .isEqualTo(fingerprinter.fingerprint("select id from USERS where email='x@y.z'"));
+        assertThat(fingerprinter.fingerprint("SELECT id FROM users WHERE email = 'a'"))
+                .isNotEqualTo(fingerprinter.fingerprint("SELECT id FROM users WHERE name = 'a'"));
+        assertThat(fingerprinter.fingerprintHex("SELECT 1")).hasSize(16);
+    }
+
+    @Test
+    void fingerprintIsTheHashOfTheNormalizedForm() {
+        String sql = "SELECT a, b FROM t WHERE c IN (1, 2, 3)";
+        assertThat(fingerprinter.fingerprint(sql)).isEqualTo(fingerprinter.fingerprint(fingerprinter.normalize(sql)));
+    }
+
+    @Test
+    void unterminatedLiteralsAndCommentsDoNotThrow() {
+        assertThat(fingerprinter.normalize("SELECT 'abc")).isEqualTo("select ?");
+        assertThat(fingerprinter.normalize("SELECT 1 /* open")).isEqualTo("select ?");
+    }
+
+    @Test
+    void collapseWhitespaceKeepsLiteralsAndCase() {
+        assertThat(SqlFingerprinter.collapseWhitespace("  SELECT\n\tName  FROM t WHERE s = 'a  b'  "))
+                .isEqualTo("SELECT Name FROM t WHERE s = 'a  b'");
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.querysence.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SqlScriptSplitterTest {
+
+    private final SqlScriptSplitter splitter = new SqlScriptSplitter();
+
+    @Test
+    void splitsOnTopLevelSemicolonsAndTrims() {
+        assertThat(splitter.split("  SELECT 1;\n\nSELECT 2 ;SELECT 3"))
+                .containsExactly("SELECT 1", "SELECT 2", "SELECT 3");
+    }
+
+    @Test
+    void ignoresSemicolonsInLiteralsAndQuotedIdentifiers() {
+        assertThat(splitter.split("SELECT 'a;b', \"c;d\", `e;f` FROM t; SELECT 'it''s;'"))
+                .containsExactly("SELECT 'a;b', \"c;d\", `e;f` FROM t", "SELECT 'it''s;'");
+    }
+
+    @Test
+    void ignoresSemicolonsInEscapeStrings() {
+        assertThat(splitter.split("SELECT E'it\\'s; fine'; SELECT 2"))
+                .containsExactly("SELECT E'it\\'s; fine'", "SELECT 2");
+    }
+
+    @Test
+    void ignoresSemicolonsInDollarQuotedBodies() {
+        String function = "CREATE FUNCTION f() RETURNS int AS $body$ BEGIN RETURN 1; END; $body$ LANGUAGE plpgsql";
+        assertThat(splitter.split(function + "; SELECT f()"))
+                .containsExactly(function, "SELECT f()");
+    }
+
+    @Test
+    void ignoresSemicolonsInComments() {
+        assertThat(splitter.split("SELECT 1 -- one; two\n; /* three; */ SELECT 2"))
+                .containsExactly("SELECT 1 -- one; two", "/* three; */ SELECT 2");
+    }
+
+    @Test
+    void skipsEmptyAndCommentOnlyStatements() {
+        assertThat(splitter.split(";;  ; -- nothing here\n; SELECT 1;")).containsExactly("SELECT 1");
+        assertThat(splitter.split("")).isEmpty();
+    }
+
+    @Test
+    void spansPointIntoTheScript() {
+        String script = "SELECT 1;\n  UPDATE t SET a = 1  ";
+        List<SqlScriptSplitter.Span> spans = splitter.spans(script);
+        assertThat(spans).containsExactly(new SqlScriptSplitter.Span(0, 8), new SqlScriptSplitter.Span(12, 30));
+        assertThat(script.substring(spans.get(1).start(), spans.get(1).end())).isEqualTo("UPDATE t SET a = 1");
+    }
+
+    @Test
+    void positionalParametersAreNotDollarQuotes() {
+        assertThat(splitter.split("SELECT $1; SELECT $2")).containsExactly("SELECT $1", "SELECT $2");
+    }
+}
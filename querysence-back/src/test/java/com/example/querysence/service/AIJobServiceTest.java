@@ -0,0 +1,115 @@
+package com.example.querysence.service;
+
+import com.example.querysence.exception.AIServiceException;
+import com.example.querysence.exception.BadRequestException;
+import com.example.querysence.exception.ResourceNotFoundException;
+import com.example.querysence.model.dto.AIJobResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AIJobServiceTest {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AIJobService jobs = new AIJobService(executor, meterRegistry, 100, 60, 2, 3);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void runTimesTheWorkOnAVirtualThread() throws Exception {
+        CompletableFuture<Boolean> virtual = jobs.run("EXPLAIN", () -> Thread.currentThread().isVirtual());
+
+        assertThat(virtual.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(meterRegistry.timer("ai.jobs.duration", "feature", "EXPLAIN", "outcome", "success").count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void aSubmittedJobCanBeFollowedToItsResult() {
+        CompletableFuture<String> release = new CompletableFuture<>();
+        AIJobResponse submitted = jobs.submit("CHAT", "ann", release::join);
+
+        assertThat(submitted.getStatus()).isIn("PENDING", "RUNNING");
+        release.complete("hello");
+        List<AIJobResponse> states = jobs.subscribe(submitted.getId(), "ann").collectList().block(Duration.ofSeconds(5));
+
+        assertThat(states).last().satisfies(state -> {
+            assertThat(state.getStatus()).isEqualTo("SUCCEEDED");
+            assertThat(state.getResult()).isEqualTo("hello");
+            assertThat(state.getCompletedAt()).isNotNull();
+        });
+        assertThat(jobs.get(submitted.getId(), "ann").getStatus()).isEqualTo("SUCCEEDED");
+    }
+
+    @Test
+    void failuresKeepTheStatusTheBlockingEndpointWouldReturn() {
+        AIJobResponse rejected = finished(jobs.submit("EXPLAIN", "ann", () -> {
+            throw new BadRequestException("Daily AI request limit exceeded. Limit: 100");
+        }));
+        AIJobResponse crashed = finished(jobs.submit("EXPLAIN", "ann", () -> {
+            throw new IllegalStateException("connection reset by provider");
+        }));
+
+        assertThat(rejected.getStatus()).isEqualTo("FAILED");
+        assertThat(rejected.getErrorStatus()).isEqualTo(400);
+        assertThat(rejected.getError()).startsWith("Daily AI request limit exceeded");
+        assertThat(crashed.getErrorStatus()).isEqualTo(500);
+        assertThat(crashed.getError()).isEqualTo("An unexpected error occurred");
+    }
+
+    @Test
+    void jobsAreOnlyVisibleToTheirSubmitter() {
+        AIJobResponse submitted = jobs.submit("CHAT", "ann", () -> "hi");
+
+        assertThatThrownBy(() -> jobs.get(submitted.getId(), "bob")).isInstanceOf(ResourceNotFoundException.class);
+        assertThatThrownBy(() -> jobs.get("missing", "ann")).isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void eachUserMayOnlyHaveAFewUnfinishedJobs() {
+        CompletableFuture<String> release = new CompletableFuture<>();
+        AIJobResponse first = jobs.submit("CHAT", "ann", release::join);
+        jobs.submit("CHAT", "ann", release::join);
+
+        assertThatThrownBy(() -> jobs.submit("CHAT", "ann", () -> "hi")).isInstanceOf(BadRequestException.class);
+        jobs.submit("CHAT", "bob", release::join);
+        assertThatThrownBy(() -> jobs.submit("CHAT", "cid", () -> "hi")).isInstanceOf(AIServiceException.class);
+        assertThat(meterRegistry.get("ai.jobs.active").gauge().value()).isEqualTo(3);
+
+        release.complete("done");
+        finished(first);
+        jobs.subscribe(jobs.submit("CHAT", "ann", () -> "again").getId(), "ann").blockLast(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void unfinishedJobsAreNeverEvicted() {
+        AIJobService retainingOne = new AIJobService(executor, meterRegistry, 1, 60, 5, 10);
+        CompletableFuture<String> release = new CompletableFuture<>();
+        AIJobResponse pending = retainingOne.submit("CHAT", "ann", release::join);
+        for (int i = 0; i < 3; i++) {
+            String id = retainingOne.submit("CHAT", "ann", () -> "quick").getId();
+            retainingOne.subscribe(id, "ann").blockLast(Duration.ofSeconds(5));
+        }
+
+        assertThat(retainingOne.get(pending.getId(), "ann").getStatus()).isIn("PENDING", "RUNNING");
+        release.complete("done");
+    }
+
+    private AIJobResponse finished(AIJobResponse submitted) {
+        return jobs.subscribe(submitted.getId(), "ann").blockLast(Duration.ofSeconds(5));
+    }
+}
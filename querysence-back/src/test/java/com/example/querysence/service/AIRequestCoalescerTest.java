@@ -0,0 +1,127 @@
+package com.example.querysence.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AIRequestCoalescerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // Redis is turned off, so only the in-process path is exercised
+    private final AIResponseCache responseCache = new AIResponseCache(null, new ObjectMapper(), meterRegistry,
+            100, 60, 60, 60, false, 30);
+    private final AIRequestCoalescer coalescer = new AIRequestCoalescer(responseCache, null, meterRegistry, 5, 10);
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentIdenticalRequestsShareOneCall() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AIResponseCache.Key key = key("SELECT 1");
+
+        CompletableFuture<Map> leader = submit(key, release);
+        awaitCalls(1);
+        List<CompletableFuture<Map>> followers = IntStream.range(0, 4).mapToObj(i -> submit(key, release)).toList();
+        Thread.sleep(100);
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).containsEntry("summary", "SELECT 1");
+        for (CompletableFuture<Map> follower : followers) {
+            assertThat(follower.get(5, TimeUnit.SECONDS)).isSameAs(leader.get());
+        }
+        assertThat(calls).hasValue(1);
+        assertThat(meterRegistry.counter("ai.coalesced.requests", "feature", "EXPLAIN", "source", "local").count())
+                .isEqualTo(4);
+    }
+
+    @Test
+    void aCollidingKeyWithDifferentTextMakesItsOwnCall() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Map> first = submit(key("SELECT * FROM t WHERE name = 'Bob'"), release);
+        awaitCalls(1);
+        CompletableFuture<Map> second = submit(key("SELECT * FROM t WHERE name = 'BOB'"), release);
+        awaitCalls(2);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).containsEntry("summary", "SELECT * FROM t WHERE name = 'Bob'");
+        assertThat(second.get(5, TimeUnit.SECONDS)).containsEntry("summary", "SELECT * FROM t WHERE name = 'BOB'");
+    }
+
+    @Test
+    void waitersMakeTheCallThemselvesWhenTheLeaderFails() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AIResponseCache.Key key = key("SELECT 1");
+        CompletableFuture<Map> leader = CompletableFuture.supplyAsync(() -> coalescer.coalesce(key, Map.class, () -> {
+            calls.incrementAndGet();
+            await(release);
+            throw new IllegalStateException("provider down");
+        }), executor);
+        awaitCalls(1);
+        CompletableFuture<Map> follower = submit(key, new CountDownLatch(0));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(follower.get(5, TimeUnit.SECONDS)).containsEntry("summary", "SELECT 1");
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void laterRequestsStartANewFlight() {
+        AIResponseCache.Key key = key("SELECT 1");
+
+        coalescer.coalesce(key, Map.class, () -> Map.of("n", calls.incrementAndGet()));
+        coalescer.coalesce(key, Map.class, () -> Map.of("n", calls.incrementAndGet()));
+
+        assertThat(calls).hasValue(2);
+    }
+
+    private CompletableFuture<Map> submit(AIResponseCache.Key key, CountDownLatch release) {
+        return CompletableFuture.supplyAsync(() -> coalescer.coalesce(key, Map.class, () -> {
+            calls.incrementAndGet();
+            await(release);
+            return Map.of("summary", key.text());
+        }), executor);
+    }
+
+    private void awaitCalls(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (calls.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(calls.get()).isGreaterThanOrEqualTo(expected);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Same fingerprint for every text, as if the texts collided
+    private static AIResponseCache.Key key(String text) {
+        return new AIResponseCache.Key("EXPLAIN", "p1", null, 0, "fp", text);
+    }
+}
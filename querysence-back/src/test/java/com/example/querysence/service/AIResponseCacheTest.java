@@ -0,0 +1,121 @@
+package com.example.querysence.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AIResponseCacheTest {
+
+    private final Map<String, String> redisEntries = new HashMap<>();
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        when(redis.opsForValue()).thenReturn(values);
+        when(values.get(anyString())).thenAnswer(call -> redisEntries.get(call.<String>getArgument(0)));
+        doAnswer(call -> redisEntries.put(call.getArgument(0), call.getArgument(1)))
+                .when(values).set(anyString(), anyString(), any(Duration.class));
+    }
+
+    @Test
+    void aStoredResultIsServedFromTheLocalTier() {
+        AIResponseCache cache = cache(true);
+        cache.put(key(1L, "SELECT * FROM t WHERE id = ?"), Map.of("summary", "reads t"));
+
+        assertThat(cache.get(key(1L, "SELECT * FROM t WHERE id = ?"), Map.class)).containsEntry("summary", "reads t");
+        assertThat(requests("local")).isEqualTo(1);
+        verify(values, times(0)).get(anyString());
+    }
+
+    @Test
+    void anotherInstanceReadsItFromRedis() {
+        cache(true).put(key(1L, "SELECT 1"), Map.of("summary", "constant"));
+        AIResponseCache other = cache(true);
+
+        assertThat(other.get(key(1L, "SELECT 1"), Map.class)).containsEntry("summary", "constant");
+        assertThat(requests("redis")).isEqualTo(1);
+        // Promoted to the local tier
+        assertThat(other.get(key(1L, "SELECT 1"), Map.class)).isNotNull();
+        assertThat(requests("local")).isEqualTo(1);
+    }
+
+    @Test
+    void differentTextUnderTheSameKeyIsAMiss() {
+        AIResponseCache cache = cache(true);
+        cache.put(key(1L, "SELECT * FROM t WHERE name = 'Bob'"), Map.of("summary", "bob"));
+
+        assertThat(cache.get(key(1L, "SELECT * FROM t WHERE name = 'BOB'"), Map.class)).isNull();
+        assertThat(requests("miss")).isEqualTo(1);
+    }
+
+    @Test
+    void keysMoveWithThePromptAndSchemaVersion() {
+        AIResponseCache.Key key = key(1L, "SELECT 1");
+        AIResponseCache.Key newerSchema = new AIResponseCache.Key("EXPLAIN", "p1", 1L, 2, "fp", "SELECT 1");
+        AIResponseCache.Key newerPrompt = new AIResponseCache.Key("EXPLAIN", "p2", 1L, 1, "fp", "SELECT 1");
+        AIResponseCache cache = cache(true);
+        cache.put(key, Map.of("summary", "v1"));
+
+        assertThat(cache.get(newerSchema, Map.class)).isNull();
+        assertThat(cache.get(newerPrompt, Map.class)).isNull();
+        assertThat(key.redisKey()).isEqualTo("querysence:ai:EXPLAIN:p1:1@1:fp");
+        assertThat(new AIResponseCache.Key("SECURITY_SCAN", "p1", null, 0, "d", "x").redisKey())
+                .isEqualTo("querysence:ai:SECURITY_SCAN:p1:-:d");
+    }
+
+    @Test
+    void aRedisFailureFallsBackToTheLocalTierAndBacksOff() {
+        when(values.get(anyString())).thenThrow(new RedisConnectionFailureException("down"));
+        AIResponseCache cache = cache(true);
+
+        assertThat(cache.get(key(1L, "SELECT 1"), Map.class)).isNull();
+        cache.put(key(1L, "SELECT 1"), Map.of("summary", "constant"));
+        assertThat(cache.get(key(1L, "SELECT 1"), Map.class)).isNotNull();
+        assertThat(cache.get(key(2L, "SELECT 1"), Map.class)).isNull();
+
+        verify(values, times(1)).get(anyString());
+        verify(values, times(0)).set(anyString(), anyString(), any(Duration.class));
+        assertThat(meterRegistry.counter("ai.cache.redis.errors").count()).isEqualTo(1);
+    }
+
+    @Test
+    void redisCanBeTurnedOff() {
+        AIResponseCache cache = cache(false);
+        cache.put(key(1L, "SELECT 1"), Map.of("summary", "constant"));
+
+        assertThat(cache.get(key(1L, "SELECT 1"), Map.class)).isNotNull();
+        assertThat(redisEntries).isEmpty();
+    }
+
+    private AIResponseCache cache(boolean redisEnabled) {
+        return new AIResponseCache(redis, new ObjectMapper(), meterRegistry, 100, 60, 60, 60, redisEnabled, 30);
+    }
+
+    private static AIResponseCache.Key key(Long schemaId, String text) {
+        return new AIResponseCache.Key("EXPLAIN", "p1", schemaId, 1, "fp", text);
+    }
+
+    private double requests(String result) {
+        return meterRegistry.counter("ai.cache.requests", "feature", "EXPLAIN", "result", result).count();
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.querysence.service;
+
+import com.example.querysence.ai.AIProviderClient;
+import com.example.querysence.exception.BadRequestException;
+import com.example.querysence.model.User;
+import com.example.querysence.model.dto.AIStreamEvent;
+import com.example.querysence.model.dto.ExplainResponse;
+import com.example.querysence.parser.LiteralListFolder;
+import com.example.querysence.parser.ParserGuard;
+import com.example.querysence.parser.QueryCanonicalizer;
+import com.example.querysence.parser.SQLParserEngine;
+import com.example.querysence.parser.SqlFingerprinter;
+import com.example.querysence.repository.AIUsageLogRepository;
+import com.example.querysence.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AIServiceStreamTest {
+
+    private static final String SQL = "SELECT * FROM orders WHERE id = 1";
+
+    private final ChatClient.Builder chatClientBuilder = mock(ChatClient.Builder.class, RETURNS_DEEP_STUBS);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final AIUsageLogRepository usageLogRepository = mock(AIUsageLogRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AIService service;
+
+    @BeforeEach
+    void setUp() {
+        SqlFingerprinter fingerprinter = new SqlFingerprinter();
+        QueryParserService parserService = new QueryParserService(new SQLParserEngine(new QueryCanonicalizer(fingerprinter),
+                new ParserGuard(meterRegistry, 100_000, 64, 2000), new LiteralListFolder(32)), fingerprinter);
+        AIResponseCache responseCache = new AIResponseCache(null, new ObjectMapper(), meterRegistry,
+                100, 60, 60, 60, false, 30);
+        AIProviderClient provider = new AIProviderClient(chatClientBuilder, meterRegistry, 8, 500, 3, 1, 10, 20, 10, 0.5, 30, 2);
+        service = new AIService(provider, mock(SchemaCatalogCache.class), userRepository, usageLogRepository,
+                new ObjectMapper(), parserService, responseCache,
+                new AIRequestCoalescer(responseCache, null, meterRegistry, 60, 200), meterRegistry,
+                mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(service, "dailyRequestLimit", 100);
+        when(userRepository.findByFullName("ann")).thenReturn(Optional.of(User.builder().fullName("ann").build()));
+        when(usageLogRepository.countByUserSince(any(), any())).thenReturn(0L);
+    }
+
+    @Test
+    void tokensStreamBeforeTheParsedResult() {
+        stream(Flux.just("{\"summary\": ", "\"reads one order\"}"));
+
+        List<AIStreamEvent> events = collect(service.streamExplainQuery(SQL, "ann"));
+
+        assertThat(events).extracting(AIStreamEvent::getType).containsExactly("token", "token", "result");
+        assertThat(((ExplainResponse) events.get(2).getData()).getSummary()).isEqualTo("reads one order");
+        assertThat(meterRegistry.timer("ai.stream.first.token", "feature", "EXPLAIN").count()).isEqualTo(1);
+    }
+
+    @Test
+    void aCachedResultIsSentAlone() {
+        stream(Flux.just("{\"summary\": \"reads one order\"}"));
+        collect(service.streamExplainQuery(SQL, "ann"));
+        when(usageLogRepository.countByUserSince(any(), any())).thenReturn(1000L);
+
+        List<AIStreamEvent> events = collect(service.streamExplainQuery(SQL, "ann"));
+
+        assertThat(events).singleElement().satisfies(event -> assertThat(event.getType()).isEqualTo("result"));
+    }
+
+    @Test
+    void onlyTheSameLiteralsShareACachedResult() {
+        stream(Flux.just("{\"summary\": \"reads one order\"}"));
+        collect(service.streamExplainQuery(SQL, "ann"));
+        when(usageLogRepository.countByUserSince(any(), any())).thenReturn(1000L);
+
+        assertThat(collect(service.streamExplainQuery("SELECT *\n  FROM orders WHERE id = 1", "ann")))
+                .singleElement().satisfies(event -> assertThat(event.getType()).isEqualTo("result"));
+        assertThatThrownBy(() -> service.streamExplainQuery("SELECT * FROM orders WHERE id = 2", "ann"))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    void failuresAfterTheStreamStartsBecomeAnErrorEvent() {
+        stream(Flux.concat(Flux.just("{\"sum"), Flux.error(new IllegalStateException("provider reset"))));
+
+        List<AIStreamEvent> events = collect(service.streamExplainQuery(SQL, "ann"));
+
+        assertThat(events).extracting(AIStreamEvent::getType).containsExactly("token", "error");
+    }
+
+    @Test
+    void theRateLimitIsCheckedBeforeTheStreamOpens() {
+        when(usageLogRepository.countByUserSince(any(), any())).thenReturn(100L);
+
+        assertThatThrownBy(() -> service.streamExplainQuery(SQL, "ann")).isInstanceOf(BadRequestException.class);
+        verify(chatClientBuilder.build(), never()).prompt();
+    }
+
+    private void stream(Flux<String> tokens) {
+        when(chatClientBuilder.build().prompt().user(anyString()).stream().content()).thenReturn(tokens);
+    }
+
+    private static List<AIStreamEvent> collect(Flux<AIStreamEvent> events) {
+        return events.collectList().block(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.querysence.service;
+
+import com.example.querysence.model.dto.ComplexityReport;
+import com.example.querysence.parser.LiteralListFolder;
+import com.example.querysence.parser.ParsedQuery;
+import com.example.querysence.parser.ParserGuard;
+import com.example.querysence.parser.QueryCanonicalizer;
+import com.example.querysence.parser.SQLParserEngine;
+import com.example.querysence.parser.SqlFingerprinter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ComplexityAnalyzerServiceTest {
+
+    private final SQLParserEngine engine = new SQLParserEngine(new QueryCanonicalizer(new SqlFingerprinter()),
+            new ParserGuard(new SimpleMeterRegistry(), 100_000, 64, 2000), new LiteralListFolder(32));
+    private final ComplexityAnalyzerService analyzer = new ComplexityAnalyzerService(
+            new CostEstimatorService(mock(SchemaCatalogCache.class), new SelectivityEstimator()));
+
+    @Test
+    void setOperationsAreScoredAndEveryBranchIsSeen() {
+        ParsedQuery parsed = parse("SELECT id FROM a WHERE x = 1 UNION SELECT id FROM b UNION ALL SELECT id FROM c");
+        assertThat(parsed.getTables()).containsExactlyInAnyOrder("a", "b", "c");
+        assertThat(parsed.getSetOperations()).hasSize(2);
+
+        ComplexityReport report = analyzer.analyze(parsed);
+        assertThat(report.getSetOperationCount()).isEqualTo(2);
+        assertThat(factorPoints(report, "Set Operations")).isEqualTo(20);
+        assertThat(report.getWarnings()).anyMatch(warning -> warning.contains("UNION ALL"));
+    }
+
+    @Test
+    void unionAllAloneDoesNotWarn() {
+        ComplexityReport report = analyzer.analyze(parse("SELECT id FROM a UNION ALL SELECT id FROM b"));
+        assertThat(report.getWarnings()).noneMatch(warning -> warning.contains("UNION ALL"));
+    }
+
+    @Test
+    void caseExpressionsAndWindowFunctionsAreScored() {
+        ComplexityReport report = analyzer.analyze(parse(
+                "SELECT CASE WHEN a > 1 THEN 'x' ELSE 'y' END, row_number() OVER (PARTITION BY b ORDER BY c),"
+                        + " sum(d) OVER (ORDER BY c) FROM t"));
+        assertThat(report.getCaseExpressionCount()).isEqualTo(1);
+        assertThat(factorPoints(report, "CASE Expressions")).isEqualTo(5);
+        assertThat(report.getWindowFunctionCount()).isEqualTo(2);
+        assertThat(factorPoints(report, "Window Functions")).isEqualTo(14);
+    }
+
+    @Test
+    void cteBodiesAreSubqueriesAndTheirNamesAreNotTables() {
+        ParsedQuery parsed = parse("WITH recent AS (SELECT id FROM orders WHERE created_at > now())"
+                + " SELECT r.id FROM recent r JOIN customers c ON c.id = r.id");
+        assertThat(parsed.getCteNames()).containsExactly("recent");
+        assertThat(parsed.getTables()).doesNotContain("recent").contains("customers");
+        assertThat(parsed.getSubqueries()).singleElement()
+                .satisfies(body -> assertThat(body.getTables()).containsExactly("orders"));
+    }
+
+    @Test
+    void scalarSubqueriesOutsideWhereAreFound() {
+        ParsedQuery parsed = parse("SELECT (SELECT max(p.amount) FROM payments p), coalesce((SELECT 1 FROM x), 0)"
+                + " FROM t GROUP BY a HAVING count(*) > (SELECT count(*) FROM y)");
+        assertThat(parsed.getSubqueries()).hasSize(3);
+
+        ComplexityReport report = analyzer.analyze(parsed);
+        assertThat(report.getSubqueryDepth()).isEqualTo(1);
+        assertThat(report.getScore()).isGreaterThanOrEqualTo(36);
+    }
+
+    @Test
+    void simpleQueriesStayLow() {
+        ComplexityReport report = analyzer.analyze(parse("SELECT id FROM users WHERE id = 1"));
+        assertThat(report.getLevel()).isEqualTo("LOW");
+        assertThat(report.getSetOperationCount()).isZero();
+        assertThat(report.getCaseExpressionCount()).isZero();
+        assertThat(report.getWindowFunctionCount()).isZero();
+    }
+
+    private ParsedQuery parse(String sql) {
+        ParsedQuery parsed = engine.parse(sql);
+        assertThat(parsed.isValid()).as(parsed.getErrorMessage()).isTrue();
+        return parsed;
+    }
+
+    private static int factorPoints(ComplexityReport report, String name) {
+        return report.getFactors().stream()
+                .filter(factor -> factor.getName().equals(name))
+                .mapToInt(ComplexityReport.Factor::getPoints)
+                .sum();
+    }
+}
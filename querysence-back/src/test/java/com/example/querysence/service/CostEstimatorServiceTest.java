@@ -0,0 +1,182 @@
+package com.example.querysence.service;
+
+import com.example.querysence.model.ColumnDefinition;
+import com.example.querysence.model.ColumnStatistics;
+import com.example.querysence.model.IndexDefinition;
+import com.example.querysence.model.SchemaDefinition;
+import com.example.querysence.model.TableDefinition;
+import com.example.querysence.model.dto.CostEstimate;
+import com.example.querysence.parser.LiteralListFolder;
+import com.example.querysence.parser.ParsedQuery;
+import com.example.querysence.parser.ParserGuard;
+import com.example.querysence.parser.QueryCanonicalizer;
+import com.example.querysence.parser.SQLParserEngine;
+import com.example.querysence.parser.SqlFingerprinter;
+import com.example.querysence.repository.SchemaDefinitionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CostEstimatorServiceTest {
+
+    private final SQLParserEngine engine = new SQLParserEngine(new QueryCanonicalizer(new SqlFingerprinter()),
+            new ParserGuard(new SimpleMeterRegistry(), 100_000, 64, 2000), new LiteralListFolder(32));
+    private final SchemaDefinitionRepository schemaRepository = mock(SchemaDefinitionRepository.class);
+    private final ColumnStatisticsService statisticsService = mock(ColumnStatisticsService.class);
+    private final CostEstimatorService estimator = new CostEstimatorService(
+            new SchemaCatalogCache(schemaRepository, statisticsService, mock(PlatformTransactionManager.class),
+                    new SimpleMeterRegistry(), 10_000),
+            new SelectivityEstimator());
+
+    @Test
+    void withoutASchemaRowCountsAreAssumed() {
+        CostEstimate estimate = estimator.estimate(parse("SELECT * FROM orders"), null);
+
+        assertThat(estimate.isUsedSchemaStatistics()).isFalse();
+        assertThat(estimate.getPlan().getOperation()).isEqualTo("Seq Scan");
+        assertThat(estimate.getEstimatedRows()).isEqualTo(1000);
+    }
+
+    @Test
+    void selectiveEqualityOnAnIndexedColumnUsesTheIndex() {
+        schema(1L, table("orders", 10_000_000, List.of("id", "customer_id", "status"), "id",
+                index("idx_orders_customer", "customer_id")));
+
+        CostEstimate estimate = estimator.estimate(parse("SELECT * FROM orders WHERE customer_id = 7"), 1L);
+
+        assertThat(estimate.isUsedSchemaStatistics()).isTrue();
+        assertThat(estimate.getPlan().getOperation()).isEqualTo("Index Scan");
+        assertThat(estimate.getPlan().getIndex()).isEqualTo("idx_orders_customer");
+    }
+
+    @Test
+    void onlyTheLeftmostPrefixOfAnIndexCanBeUsed() {
+        schema(1L, table("orders", 10_000_000, List.of("id", "customer_id", "status"), "id",
+                index("idx_orders_customer_status", "customer_id", "status")));
+
+        CostEstimate estimate = estimator.estimate(parse("SELECT * FROM orders WHERE status = 'NEW'"), 1L);
+
+        assertThat(estimate.getPlan().getOperation()).isEqualTo("Seq Scan");
+    }
+
+    @Test
+    void columnStatisticsOverrideTheDefaultSelectivity() {
+        schema(1L, table("orders", 10_000_000, List.of("id", "status"), "id", index("idx_orders_status", "status")));
+        String sql = "SELECT * FROM orders WHERE status = 'DONE'";
+        assertThat(estimator.estimate(parse(sql), 1L).getPlan().getOperation()).isEqualTo("Index Scan");
+
+        ColumnStatistics status = ColumnStatistics.builder()
+                .nullFraction(0.0)
+                .distinctCount(3.0)
+                .mostCommonValues(List.of("DONE", "NEW", "FAILED"))
+                .mostCommonFrequencies(List.of(0.9, 0.08, 0.02))
+                .build();
+        when(statisticsService.forSchema(1L)).thenReturn(Map.of("orders", Map.of("status", status)));
+        // Refreshing statistics bumps the schema version
+        when(schemaRepository.findSchemaVersionById(1L)).thenReturn(Optional.of(2L));
+
+        CostEstimate estimate = estimator.estimate(parse(sql), 1L);
+        assertThat(estimate.getPlan().getOperation()).isEqualTo("Seq Scan");
+        assertThat(estimate.getEstimatedRows()).isEqualTo(9_000_000);
+    }
+
+    @Test
+    void primaryKeyEqualityReturnsOneRow() {
+        schema(1L, table("orders", 10_000_000, List.of("id", "status"), "id"));
+
+        CostEstimate estimate = estimator.estimate(parse("SELECT * FROM orders WHERE id = 42"), 1L);
+
+        assertThat(estimate.getEstimatedRows()).isEqualTo(1);
+    }
+
+    @Test
+    void theSameJoinCostsMoreOnBiggerTables() {
+        String sql = "SELECT * FROM orders o JOIN customers c ON c.id = o.customer_id";
+        schema(1L, table("orders", 10, List.of("id", "customer_id"), "id"),
+                table("customers", 10, List.of("id", "name"), "id"));
+        schema(2L, table("orders", 500_000_000, List.of("id", "customer_id"), "id"),
+                table("customers", 500_000_000, List.of("id", "name"), "id"));
+
+        CostEstimate small = estimator.estimate(parse(sql), 1L);
+        CostEstimate large = estimator.estimate(parse(sql), 2L);
+
+        assertThat(small.getLevel()).isEqualTo("LOW");
+        assertThat(large.getLevel()).isEqualTo("CRITICAL");
+        assertThat(large.getTotalCost()).isGreaterThan(small.getTotalCost() * 100_000);
+        assertThat(operations(large.getPlan())).containsAnyOf("Hash Join", "Nested Loop");
+    }
+
+    @Test
+    void correlatedSubqueriesAreChargedPerOuterRow() {
+        schema(1L, table("orders", 1_000_000, List.of("id", "customer_id", "total"), "id"),
+                table("refunds", 100_000, List.of("id", "order_id"), "id"));
+
+        CostEstimate correlated = estimator.estimate(parse(
+                "SELECT o.id FROM orders o WHERE EXISTS (SELECT 1 FROM refunds r WHERE r.order_id = o.id)"), 1L);
+        CostEstimate uncorrelated = estimator.estimate(parse(
+                "SELECT o.id FROM orders o WHERE EXISTS (SELECT 1 FROM refunds r WHERE r.order_id = 5)"), 1L);
+
+        assertThat(correlated.getTotalCost()).isGreaterThan(uncorrelated.getTotalCost() * 10);
+    }
+
+    @Test
+    void sortAndAggregationGetTheirOwnNodes() {
+        CostEstimate estimate = estimator.estimate(parse(
+                "SELECT status, count(*) FROM orders GROUP BY status ORDER BY status"), null);
+
+        assertThat(operations(estimate.getPlan())).contains("Seq Scan", "Sort").anyMatch(op -> op.contains("Aggregate"));
+    }
+
+    private ParsedQuery parse(String sql) {
+        ParsedQuery parsed = engine.parse(sql);
+        assertThat(parsed.isValid()).as(parsed.getErrorMessage()).isTrue();
+        return parsed;
+    }
+
+    private void schema(Long id, TableDefinition... tables) {
+        SchemaDefinition schema = SchemaDefinition.builder().id(id).name("s" + id).tables(new HashSet<>(List.of(tables))).build();
+        when(schemaRepository.findByIdWithFullDetails(id)).thenReturn(Optional.of(schema));
+        when(schemaRepository.findSchemaVersionById(id)).thenReturn(Optional.of(1L));
+    }
+
+    private static TableDefinition table(String name, long rows, List<String> columns, String primaryKey,
+                                         IndexDefinition... indexes) {
+        TableDefinition table = TableDefinition.builder()
+                .tableName(name)
+                .estimatedRows(rows)
+                .indexes(new ArrayList<>(List.of(indexes)))
+                .build();
+        for (String column : columns) {
+            table.getColumns().add(ColumnDefinition.builder()
+                    .columnName(column)
+                    .dataType("bigint")
+                    .isPrimaryKey(column.equals(primaryKey))
+                    .isNullable(!column.equals(primaryKey))
+                    .build());
+        }
+        return table;
+    }
+
+    private static IndexDefinition index(String name, String... columns) {
+        return IndexDefinition.builder().indexName(name).columns(List.of(columns)).build();
+    }
+
+    private static List<String> operations(CostEstimate.PlanNode node) {
+        List<String> operations = new ArrayList<>();
+        operations.add(node.getOperation());
+        for (CostEstimate.PlanNode child : node.getChildren()) {
+            operations.addAll(operations(child));
+        }
+        return operations;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.querysence.service;
+
+import com.example.querysence.exception.InvalidSQLException;
+import com.example.querysence.exception.ResourceNotFoundException;
+import com.example.querysence.model.dto.EditorSessionRequest;
+import com.example.querysence.model.dto.EditorSessionResponse;
+import com.example.querysence.parser.LiteralListFolder;
+import com.example.querysence.parser.ParserGuard;
+import com.example.querysence.parser.QueryCanonicalizer;
+import com.example.querysence.parser.SQLParserEngine;
+import com.example.querysence.parser.SqlFingerprinter;
+import com.example.querysence.parser.SqlScriptSplitter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class EditorSessionServiceTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final EditorSessionService service = new EditorSessionService(parserService(),
+            new ComplexityAnalyzerService(
+            new CostEstimatorService(mock(SchemaCatalogCache.class), new SelectivityEstimator())), new SqlScriptSplitter(), executor, 100, 30, 5);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void openingParsesEveryStatement() {
+        EditorSessionResponse response = service.open(request("SELECT 1; SELECT id FROM t; SELEC"), "ann");
+
+        assertThat(response.getVersion()).isEqualTo(1);
+        assertThat(response.getStatementCount()).isEqualTo(3);
+        assertThat(response.getReparsedCount()).isEqualTo(3);
+        assertThat(response.getChanges()).extracting(EditorSessionResponse.StatementDelta::getChange)
+                .containsExactly("ADDED", "ADDED", "ADDED");
+        assertThat(response.getChanges()).extracting(EditorSessionResponse.StatementDelta::getValid)
+                .containsExactly(true, true, false);
+        assertThat(response.getBoundaries()).extracting(EditorSessionResponse.Boundary::getStart)
+                .containsExactly(0, 10, 28);
+    }
+
+    @Test
+    void updateOnlyReparsesEditedStatements() {
+        String id = service.open(request("SELECT 1; SELECT id FROM t; SELECT 3"), "ann").getSessionId();
+
+        EditorSessionResponse response = service.update(id, request("SELECT 1; SELECT id FROM u; SELECT 3"), "ann");
+
+        assertThat(response.getVersion()).isEqualTo(2);
+        assertThat(response.getReparsedCount()).isEqualTo(1);
+        assertThat(response.getChanges()).singleElement().satisfies(delta -> {
+            assertThat(delta.getIndex()).isEqualTo(1);
+            assertThat(delta.getChange()).isEqualTo("CHANGED");
+            assertThat(delta.getParseResult().getTables()).containsExactly("u");
+        });
+    }
+
+    @Test
+    void unchangedContentHasNoChanges() {
+        String id = service.open(request("SELECT 1; SELECT 2"), "ann").getSessionId();
+
+        EditorSessionResponse response = service.update(id, request("SELECT 1;\n\nSELECT 2;"), "ann");
+
+        assertThat(response.getReparsedCount()).isZero();
+        assertThat(response.getChanges()).isEmpty();
+    }
+
+    @Test
+    void removedStatementsAreReported() {
+        String id = service.open(request("SELECT 1; SELECT 2; SELECT 3"), "ann").getSessionId();
+
+        EditorSessionResponse response = service.update(id, request("SELECT 1; SELECT 2"), "ann");
+
+        assertThat(response.getReparsedCount()).isZero();
+        assertThat(response.getChanges()).singleElement().satisfies(delta -> {
+            assertThat(delta.getIndex()).isEqualTo(2);
+            assertThat(delta.getChange()).isEqualTo("REMOVED");
+        });
+    }
+
+    @Test
+    void anInsertionOnlyReportsTheNewStatement() {
+        String id = service.open(request("SELECT 1; SELECT 2; SELECT 3"), "ann").getSessionId();
+
+        EditorSessionResponse response = service.update(id, request("SELECT 0; SELECT 1; SELECT 2; SELECT 3"), "ann");
+
+        assertThat(response.getReparsedCount()).isEqualTo(1);
+        assertThat(response.getChanges()).singleElement().satisfies(delta -> {
+            assertThat(delta.getIndex()).isZero();
+            assertThat(delta.getChange()).isEqualTo("ADDED");
+            assertThat(delta.getValid()).isTrue();
+        });
+    }
+
+    @Test
+    void reorderedStatementsAreMovedWithoutTheirAnalysis() {
+        String id = service.open(request("SELECT 1; SELECT 2; SELECT 3"), "ann").getSessionId();
+
+        EditorSessionResponse response = service.update(id, request("SELECT 3; SELECT 1; SELECT 2"), "ann");
+
+        assertThat(response.getReparsedCount()).isZero();
+        assertThat(response.getChanges()).singleElement().satisfies(delta -> {
+            assertThat(delta.getChange()).isEqualTo("MOVED");
+            assertThat(delta.getIndex()).isZero();
+            assertThat(delta.getPreviousIndex()).isEqualTo(2);
+            assertThat(delta.getValid()).isNull();
+            assertThat(delta.getParseResult()).isNull();
+        });
+    }
+
+    @Test
+    void aReplacementBetweenTheSameNeighboursIsChanged() {
+        String id = service.open(request("SELECT 1; SELECT 2; SELECT 3"), "ann").getSessionId();
+
+        EditorSessionResponse response = service.update(id, request("SELECT 1; SELECT 0; SELECT 4; SELECT 3"), "ann");
+
+        assertThat(response.getChanges()).extracting(EditorSessionResponse.StatementDelta::getChange)
+                .containsExactly("CHANGED", "ADDED");
+        assertThat(response.getChanges().get(0).getPreviousIndex()).isEqualTo(1);
+    }
+
+    @Test
+    void worksheetsOverTheStatementCapAreRejected() {
+        String id = service.open(request("SELECT 1"), "ann").getSessionId();
+
+        assertThatThrownBy(() -> service.update(id, request("SELECT 1; SELECT 2; SELECT 3; SELECT 4; SELECT 5; SELECT 6"), "ann"))
+                .isInstanceOf(InvalidSQLException.class);
+        assertThat(service.update(id, request("SELECT 1; SELECT 2"), "ann").getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    void sessionsBelongToTheirOwner() {
+        String id = service.open(request("SELECT 1"), "ann").getSessionId();
+
+        assertThatThrownBy(() -> service.update(id, request("SELECT 2"), "bob"))
+                .isInstanceOf(ResourceNotFoundException.class);
+        service.close(id, "ann");
+        assertThatThrownBy(() -> service.update(id, request("SELECT 2"), "ann"))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    private static EditorSessionRequest request(String content) {
+        return EditorSessionRequest.builder().content(content).build();
+    }
+
+    private static QueryParserService parserService() {
+        SqlFingerprinter fingerprinter = new SqlFingerprinter();
+        SQLParserEngine engine = new SQLParserEngine(new QueryCanonicalizer(fingerprinter),
+                new ParserGuard(new SimpleMeterRegistry(), 100_000, 64, 2000), new LiteralListFolder(32));
+        return new QueryParserService(engine, fingerprinter);
+    }
+}
@@ -0,0 +1,336 @@
+package com.example.querysence.service;
+
+import com.example.querysence.model.ColumnDefinition;
+import com.example.querysence.model.ColumnStatistics;
+import com.example.querysence.model.IndexDefinition;
+import com.example.querysence.model.Project;
+import com.example.querysence.model.SchemaDefinition;
+import com.example.querysence.model.TableDefinition;
+import com.example.querysence.model.dto.IndexSuggestionResponse;
+import com.example.querysence.model.dto.RedundantIndexResponse;
+import com.example.querysence.parser.LiteralListFolder;
+import com.example.querysence.parser.ParsedQuery;
+import com.example.querysence.parser.ParserGuard;
+import com.example.querysence.parser.QueryCanonicalizer;
+import com.example.querysence.parser.SQLParserEngine;
+import com.example.querysence.parser.SqlFingerprinter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IndexAdvisorServiceTest {
+
+    private static final Map<String, String> COLUMNS = new LinkedHashMap<>();
+
+    static {
+        COLUMNS.put("id", "bigint");
+        COLUMNS.put("customer_id", "bigint");
+        COLUMNS.put("status", "varchar(16)");
+        COLUMNS.put("total", "bigint");
+        COLUMNS.put("created_at", "timestamp");
+        COLUMNS.put("email", "varchar(255)");
+        COLUMNS.put("attributes", "jsonb");
+        COLUMNS.put("body", "text");
+    }
+
+    private final SQLParserEngine engine = new SQLParserEngine(new QueryCanonicalizer(new SqlFingerprinter()),
+            new ParserGuard(new SimpleMeterRegistry(), 100_000, 64, 2000), new LiteralListFolder(32));
+    private final SchemaCatalogCache catalogCache = mock(SchemaCatalogCache.class);
+    private final WorkloadIndexAdvisor workloadAdvisor = mock(WorkloadIndexAdvisor.class);
+    private final IndexAdvisorService advisor = new IndexAdvisorService(catalogCache, new SelectivityEstimator(),
+            new IndexCostEstimator(), workloadAdvisor);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(advisor, "maxIncludeColumns", 3);
+        ReflectionTestUtils.setField(advisor, "writeHeavyShare", 0.5);
+        ReflectionTestUtils.setField(advisor, "brinMinRows", 1_000_000L);
+        ReflectionTestUtils.setField(advisor, "brinMinCorrelation", 0.9);
+        ReflectionTestUtils.setField(advisor, "hashMinWidth", 24);
+    }
+
+    @Test
+    void readColumnsBecomeIncludeColumnsOnPostgres() {
+        schema("postgresql");
+
+        IndexSuggestionResponse suggestion = single("SELECT id, total FROM orders WHERE customer_id = 7");
+
+        assertThat(suggestion.getColumns()).containsExactly("customer_id");
+        assertThat(suggestion.getIncludeColumns()).containsExactly("id", "total");
+        assertThat(suggestion.getCreateStatement()).endsWith("(customer_id) INCLUDE (id, total);");
+        assertThat(suggestion.getHeapFetchReduction()).isPositive();
+    }
+
+    @Test
+    void mysqlAppendsTrailingColumnsWithoutThePrimaryKey() {
+        schema("mysql");
+
+        IndexSuggestionResponse suggestion = single("SELECT id, total FROM orders WHERE customer_id = 7");
+
+        assertThat(suggestion.getColumns()).containsExactly("customer_id", "total");
+        assertThat(suggestion.getIncludeColumns()).isNull();
+    }
+
+    @Test
+    void selectStarCannotBeCovered() {
+        schema("postgresql");
+
+        IndexSuggestionResponse suggestion = single("SELECT * FROM orders WHERE customer_id = 7");
+
+        assertThat(suggestion.getIncludeColumns()).isNull();
+        assertThat(suggestion.getCreateStatement()).doesNotContain("INCLUDE");
+    }
+
+    @Test
+    void tooManyReadColumnsAreNotCovered() {
+        schema("postgresql");
+
+        IndexSuggestionResponse suggestion =
+                single("SELECT id, total, status, created_at FROM orders WHERE customer_id = 7");
+
+        assertThat(suggestion.getIncludeColumns()).isNull();
+    }
+
+    @Test
+    void anIndexOnlyScanAvoidsMoreHeapFetchesThanAPlainIndex() {
+        schema("postgresql");
+
+        long covered = single("SELECT total FROM orders WHERE customer_id = 7").getHeapFetchReduction();
+        long plain = single("SELECT * FROM orders WHERE customer_id = 7").getHeapFetchReduction();
+
+        assertThat(covered).isGreaterThan(plain);
+        assertThat(plain).isPositive();
+    }
+
+    @Test
+    void keyColumnsGoEqualityThenSortThenRange() {
+        schema("postgresql");
+
+        IndexSuggestionResponse suggestion = single(
+                "SELECT * FROM orders WHERE created_at > '2024-01-01' AND customer_id = 7 ORDER BY status");
+
+        assertThat(suggestion.getColumns()).containsExactly("customer_id", "status", "created_at");
+    }
+
+    @Test
+    void sortColumnsPinnedByEqualityAreSkipped() {
+        schema("postgresql");
+
+        IndexSuggestionResponse suggestion =
+                single("SELECT * FROM orders WHERE customer_id = 7 ORDER BY customer_id, created_at");
+
+        assertThat(suggestion.getColumns()).containsExactly("customer_id", "created_at");
+    }
+
+    @Test
+    void mixedSortDirectionsAreSpelledOut() {
+        schema("postgresql");
+
+        IndexSuggestionResponse suggestion =
+                single("SELECT * FROM orders WHERE customer_id = 7 ORDER BY created_at DESC, total ASC");
+
+        assertThat(suggestion.getColumns()).containsExactly("customer_id", "created_at", "total");
+        assertThat(suggestion.getCreateStatement()).contains("(customer_id, created_at DESC, total)");
+    }
+
+    @Test
+    void moreSelectiveEqualityColumnsLead() {
+        schema("postgresql", Map.of("orders", Map.of(
+                "status", ColumnStatistics.builder().nullFraction(0.0).distinctCount(3.0).build(),
+                "customer_id", ColumnStatistics.builder().nullFraction(0.0).distinctCount(100_000.0).build())));
+
+        IndexSuggestionResponse suggestion =
+                single("SELECT * FROM orders WHERE status = 'NEW' AND customer_id = 7");
+
+        assertThat(suggestion.getColumns()).containsExactly("customer_id", "status");
+    }
+
+    @Test
+    void suggestionsCarrySizeAndBuildTime() {
+        schema("postgresql");
+
+        IndexSuggestionResponse suggestion = single("SELECT * FROM orders WHERE customer_id = 7");
+
+        assertThat(suggestion.getEstimatedSizeBytes()).isEqualTo(Math.round(1_000_000 * 24 / 0.9));
+        assertThat(suggestion.getEstimatedBuildSeconds()).isPositive();
+        assertThat(suggestion.getWriteAmplification()).isEqualTo(1.0);
+        assertThat(suggestion.getWriteShare()).isNull();
+    }
+
+    @Test
+    void writeHeavyTablesDemoteTheSuggestion() {
+        schema("postgresql");
+        String sql = "SELECT * FROM orders WHERE customer_id = 7";
+        String impact = single(sql).getImpactScore();
+
+        WorkloadIndexAdvisor.TableWrites writes = WorkloadIndexAdvisor.TableWrites.empty();
+        writes.addRead(10);
+        writes.addWrite(new WorkloadIndexAdvisor.Access("INSERT", "orders", Set.of(), Set.of("orders")), 90);
+        when(workloadAdvisor.writeProfile(7L)).thenReturn(Map.of("orders", writes));
+        IndexSuggestionResponse suggestion = single(sql);
+
+        assertThat(impact).isEqualTo("HIGH");
+        assertThat(suggestion.getWriteShare()).isEqualTo(0.9);
+        assertThat(suggestion.getImpactScore()).isEqualTo("MEDIUM");
+        assertThat(suggestion.getReasoning()).contains("write-heavy");
+    }
+
+    @Test
+    void infixLikeGetsATrigramIndexOnPostgres() {
+        schema("postgresql");
+
+        IndexSuggestionResponse suggestion = single("SELECT * FROM orders WHERE email LIKE '%smith%'");
+
+        assertThat(suggestion.getIndexType()).isEqualTo("GIN");
+        assertThat(suggestion.getCreateStatement()).contains("USING GIN (email gin_trgm_ops)");
+    }
+
+    @Test
+    void jsonContainmentGetsAPathOpsGinIndex() {
+        schema("postgresql");
+
+        IndexSuggestionResponse suggestion =
+                single("SELECT * FROM orders WHERE attributes @> '{\"gift\": true}'");
+
+        assertThat(suggestion.getIndexType()).isEqualTo("GIN");
+        assertThat(suggestion.getCreateStatement()).contains("USING GIN (attributes jsonb_path_ops)");
+    }
+
+    @Test
+    void equalityOnAWideColumnGetsAHashIndex() {
+        schema("postgresql");
+
+        IndexSuggestionResponse suggestion = single("SELECT * FROM orders WHERE email = 'ann@example.com'");
+
+        assertThat(suggestion.getIndexType()).isEqualTo("HASH");
+        assertThat(suggestion.getCreateStatement()).contains("USING HASH (email)");
+        assertThat(suggestion.getEstimatedSizeBytes()).isEqualTo(Math.round(1_000_000 * 20 / 0.9));
+    }
+
+    @Test
+    void rangesOverPhysicallyOrderedColumnsGetBrin() {
+        schema("postgresql", Map.of("orders", Map.of("created_at",
+                ColumnStatistics.builder().nullFraction(0.0).distinctCount(-1.0).correlation(0.99).build())));
+
+        IndexSuggestionResponse suggestion = single("SELECT * FROM orders WHERE created_at > '2024-01-01'");
+
+        assertThat(suggestion.getIndexType()).isEqualTo("BRIN");
+        assertThat(suggestion.getCreateStatement()).contains("USING BRIN (created_at)");
+        assertThat(suggestion.getEstimatedSizeBytes()).isLessThan(100_000);
+    }
+
+    @Test
+    void rangesOverUnorderedColumnsStayBtree() {
+        schema("postgresql", Map.of("orders", Map.of("created_at",
+                ColumnStatistics.builder().nullFraction(0.0).distinctCount(-1.0).correlation(0.1).build())));
+
+        assertThat(single("SELECT * FROM orders WHERE created_at > '2024-01-01'").getIndexType()).isEqualTo("BTREE");
+    }
+
+    @Test
+    void mysqlMatchGetsAFulltextIndexOverTheColumnSet() {
+        schema("mysql");
+
+        List<IndexSuggestionResponse> suggestions = advisor.suggestIndexes(
+                parse("SELECT * FROM orders WHERE MATCH(body, email) AGAINST ('refund')"), 1L);
+
+        assertThat(suggestions).singleElement().satisfies(suggestion -> {
+            assertThat(suggestion.getIndexType()).isEqualTo("FULLTEXT");
+            assertThat(suggestion.getCreateStatement()).contains("(body, email)");
+        });
+    }
+
+    @Test
+    void unsearchablePredicatesStayOutOfTheBtreeKey() {
+        schema("mysql");
+
+        IndexSuggestionResponse suggestion =
+                single("SELECT * FROM orders WHERE customer_id = 7 AND status NOT LIKE 'X%'");
+
+        assertThat(suggestion.getColumns()).containsExactly("customer_id");
+    }
+
+    @Test
+    void whereColumnsOutsideTheKeyAreCoveredToo() {
+        schema("postgresql");
+
+        List<IndexSuggestionResponse> suggestions = advisor.suggestIndexes(
+                parse("SELECT id, total FROM orders WHERE customer_id = 7 AND email ILIKE '%smith%'"), 1L);
+
+        assertThat(suggestions).filteredOn(s -> "BTREE".equals(s.getIndexType())).singleElement()
+                .satisfies(key -> {
+                    assertThat(key.getColumns()).containsExactly("customer_id");
+                    assertThat(key.getIncludeColumns()).containsExactlyInAnyOrder("id", "total", "email");
+                });
+    }
+
+    @Test
+    void unknownStoredDialectsAreAdvisedAsTheDefault() {
+        schema("SQLite");
+
+        IndexSuggestionResponse suggestion = single("SELECT id, total FROM orders WHERE customer_id = 7");
+
+        assertThat(suggestion.getIncludeColumns()).containsExactly("id", "total");
+    }
+
+    @Test
+    void redundantIndexesAreDroppedInTheSchemaDialect() {
+        schema("mysql", Map.of(), index("idx_customer", "customer_id"), index("idx_customer_status", "customer_id", "status"));
+        assertThat(advisor.findRedundantIndexes(1L)).singleElement().satisfies(redundant -> {
+            assertThat(redundant.getIndexName()).isEqualTo("idx_customer");
+            assertThat(redundant.getDropStatement()).isEqualTo("DROP INDEX idx_customer ON orders;");
+        });
+
+        schema("postgresql", Map.of(), index("idx_customer", "customer_id"), index("idx_customer_status", "customer_id", "status"));
+        assertThat(advisor.findRedundantIndexes(1L)).extracting(RedundantIndexResponse::getDropStatement)
+                .containsExactly("DROP INDEX idx_customer;");
+    }
+
+    private IndexSuggestionResponse single(String sql) {
+        List<IndexSuggestionResponse> suggestions = advisor.suggestIndexes(parse(sql), 1L);
+        assertThat(suggestions).hasSize(1);
+        return suggestions.get(0);
+    }
+
+    private ParsedQuery parse(String sql) {
+        ParsedQuery parsed = engine.parse(sql);
+        assertThat(parsed.isValid()).as(parsed.getErrorMessage()).isTrue();
+        return parsed;
+    }
+
+    private void schema(String dialect) {
+        schema(dialect, Map.of());
+    }
+
+    private void schema(String dialect, Map<String, Map<String, ColumnStatistics>> statistics,
+                        IndexDefinition... indexes) {
+        TableDefinition orders = TableDefinition.builder().tableName("orders").estimatedRows(1_000_000L).build();
+        orders.getIndexes().addAll(List.of(indexes));
+        COLUMNS.forEach((column, type) -> orders.getColumns().add(ColumnDefinition.builder()
+                .columnName(column)
+                .dataType(type)
+                .isPrimaryKey(column.equals("id"))
+                .isNullable(!column.equals("id"))
+                .build()));
+        SchemaDefinition schema = SchemaDefinition.builder().id(1L).name("shop").dialect(dialect)
+                .project(Project.builder().id(7L).build())
+                .tables(new HashSet<>(List.of(orders))).build();
+        when(catalogCache.get(1L)).thenReturn(Optional.of(SchemaCatalog.of(schema, statistics)));
+    }
+
+    private static IndexDefinition index(String name, String... columns) {
+        return IndexDefinition.builder().indexName(name).columns(List.of(columns)).build();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.querysence.service;
+
+import com.example.querysence.model.ColumnDefinition;
+import com.example.querysence.model.SchemaDefinition;
+import com.example.querysence.model.TableDefinition;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class IndexCostEstimatorTest {
+
+    private final IndexCostEstimator estimator = new IndexCostEstimator();
+
+    @Test
+    void columnWidthsFollowTheDeclaredType() {
+        assertThat(IndexCostEstimator.columnWidth("boolean")).isEqualTo(1);
+        assertThat(IndexCostEstimator.columnWidth("INTEGER")).isEqualTo(4);
+        assertThat(IndexCostEstimator.columnWidth("bigint")).isEqualTo(8);
+        assertThat(IndexCostEstimator.columnWidth("timestamp with time zone")).isEqualTo(8);
+        assertThat(IndexCostEstimator.columnWidth("uuid")).isEqualTo(16);
+        assertThat(IndexCostEstimator.columnWidth("varchar(16)")).isEqualTo(9);
+        assertThat(IndexCostEstimator.columnWidth("varchar(1000)")).isEqualTo(64);
+        assertThat(IndexCostEstimator.columnWidth("text")).isEqualTo(32);
+        assertThat(IndexCostEstimator.columnWidth(null)).isEqualTo(8);
+    }
+
+    @Test
+    void sizeScalesWithRowsWidthAndPartialFraction() {
+        SchemaCatalog.Table orders = table(1_000_000);
+
+        long customer = estimator.sizeBytes(orders, List.of("customer_id"), 1);
+        long wide = estimator.sizeBytes(orders, List.of("customer_id", "note"), 1);
+        long partial = estimator.sizeBytes(orders, List.of("customer_id"), 0.1);
+
+        // (16 + 8) bytes per entry in 90% full leaves
+        assertThat(customer).isEqualTo(Math.round(1_000_000 * 24 / 0.9));
+        assertThat(wide).isGreaterThan(customer);
+        assertThat(partial).isCloseTo(customer / 10, within(1L));
+    }
+
+    @Test
+    void tinyIndexesTakeAtLeastOnePage() {
+        assertThat(estimator.sizeBytes(table(10), List.of("customer_id"), 1)).isEqualTo(IndexCostEstimator.MIN_INDEX_BYTES);
+        assertThat(estimator.sizeBytes(null, List.of("customer_id"), 0.001)).isEqualTo(IndexCostEstimator.MIN_INDEX_BYTES);
+    }
+
+    @Test
+    void biggerTablesTakeLongerToIndex() {
+        SchemaCatalog.Table small = table(100_000);
+        SchemaCatalog.Table big = table(100_000_000);
+
+        double smallSeconds = estimator.buildSeconds(small, estimator.sizeBytes(small, List.of("customer_id"), 1), 1);
+        double bigSeconds = estimator.buildSeconds(big, estimator.sizeBytes(big, List.of("customer_id"), 1), 1);
+
+        assertThat(bigSeconds).isGreaterThan(smallSeconds * 100);
+        assertThat(bigSeconds).isGreaterThan(1);
+    }
+
+    @Test
+    void eachExistingIndexDilutesTheWriteAmplification() {
+        assertThat(IndexCostEstimator.writeAmplification(0)).isEqualTo(1.0);
+        assertThat(IndexCostEstimator.writeAmplification(3)).isEqualTo(0.25);
+    }
+
+    @Test
+    void updatesOnlyMaintainIndexesOverTheColumnsTheySet() {
+        WorkloadIndexAdvisor.TableWrites writes = WorkloadIndexAdvisor.TableWrites.empty();
+        writes.addRead(60);
+        writes.addWrite(new WorkloadIndexAdvisor.Access("INSERT", "orders", Set.of(), Set.of("orders")), 10);
+        writes.addWrite(new WorkloadIndexAdvisor.Access("UPDATE", "orders", Set.of("status"), Set.of("orders")), 30);
+
+        assertThat(writes.maintainingShare(List.of("customer_id"))).isEqualTo(0.1);
+        assertThat(writes.maintainingShare(List.of("customer_id", "status"))).isEqualTo(0.4);
+    }
+
+    private static SchemaCatalog.Table table(long rows) {
+        TableDefinition orders = TableDefinition.builder().tableName("orders").estimatedRows(rows).build();
+        Map.of("id", "bigint", "customer_id", "bigint", "note", "text").forEach((name, type) ->
+                orders.getColumns().add(ColumnDefinition.builder().columnName(name).dataType(type).build()));
+        SchemaDefinition schema = SchemaDefinition.builder().id(1L).name("shop")
+                .tables(new HashSet<>(List.of(orders))).build();
+        return SchemaCatalog.of(schema, Map.of()).table("orders");
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.querysence.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexTrieTest {
+
+    @Test
+    void onlyLeadingColumnsArePrefixes() {
+        IndexTrie trie = IndexTrie.of(List.of(index("idx_ab", false, "a", "b")));
+
+        assertThat(trie.hasPrefix(List.of("a"))).isTrue();
+        assertThat(trie.hasPrefix(List.of("A", "B"))).isTrue();
+        assertThat(trie.hasPrefix(List.of("b"))).isFalse();
+        assertThat(trie.hasPrefix(List.of("b", "a"))).isFalse();
+    }
+
+    @Test
+    void filterOnTheSecondColumnAloneIsNotServed() {
+        IndexTrie trie = IndexTrie.of(List.of(index("idx_ab", false, "a", "b")));
+
+        IndexTrie.Match match = trie.match(Set.of("b"), Set.of(), List.of());
+
+        assertThat(match.indexName()).isNull();
+        assertThat(match.servedColumns()).isEmpty();
+    }
+
+    @Test
+    void equalityColumnsMatchInAnyOrderThenOneRange() {
+        IndexTrie trie = IndexTrie.of(List.of(index("idx_abc", false, "a", "b", "c")));
+
+        IndexTrie.Match match = trie.match(Set.of("b", "a"), Set.of("c"), List.of());
+
+        assertThat(match.indexName()).isEqualTo("idx_abc");
+        assertThat(match.equalityColumns()).containsExactly("a", "b");
+        assertThat(match.rangeColumn()).isEqualTo("c");
+        assertThat(match.servedColumns()).containsExactlyInAnyOrder("a", "b", "c");
+    }
+
+    @Test
+    void aRangeEndsTheUsablePrefix() {
+        IndexTrie trie = IndexTrie.of(List.of(index("idx_abc", false, "a", "b", "c")));
+
+        IndexTrie.Match match = trie.match(Set.of("a", "c"), Set.of("b"), List.of());
+
+        assertThat(match.equalityColumns()).containsExactly("a");
+        assertThat(match.rangeColumn()).isEqualTo("b");
+        assertThat(match.servedColumns()).doesNotContain("c");
+    }
+
+    @Test
+    void sortColumnsBoundByEqualityAreSkipped() {
+        IndexTrie trie = IndexTrie.of(List.of(index("idx_tenant_created", false, "tenant_id", "created_at")));
+
+        IndexTrie.Match match = trie.match(Set.of("tenant_id"), Set.of(), List.of("tenant_id", "created_at"));
+
+        assertThat(match.indexName()).isEqualTo("idx_tenant_created");
+        assertThat(match.sortProvided()).isTrue();
+    }
+
+    @Test
+    void indexOrderCanProvideTheSortWithoutAFilter() {
+        IndexTrie trie = IndexTrie.of(List.of(index("idx_created", false, "created_at")));
+
+        assertThat(trie.match(Set.of(), Set.of(), List.of("created_at")).sortProvided()).isTrue();
+        assertThat(trie.match(Set.of(), Set.of(), List.of("updated_at")).sortProvided()).isFalse();
+    }
+
+    @Test
+    void nonBtreeIndexesAreIgnored() {
+        SchemaCatalog.Index gin = new SchemaCatalog.Index("idx_gin", List.of("a"), false, "GIN");
+
+        assertThat(IndexTrie.of(List.of(gin)).hasPrefix(List.of("a"))).isFalse();
+    }
+
+    @Test
+    void duplicatesKeepTheUniqueIndex() {
+        SchemaCatalog.Index plain = index("idx_email", false, "email");
+        SchemaCatalog.Index unique = index("uq_email", true, "email");
+
+        List<IndexTrie.Redundancy> redundancies = IndexTrie.of(List.of(plain, unique)).redundancies();
+
+        assertThat(redundancies).singleElement().satisfies(redundancy -> {
+            assertThat(redundancy.kind()).isEqualTo("DUPLICATE");
+            assertThat(redundancy.index()).isSameAs(plain);
+            assertThat(redundancy.coveredBy()).isSameAs(unique);
+        });
+    }
+
+    @Test
+    void nonUniquePrefixesOfALongerIndexAreRedundant() {
+        SchemaCatalog.Index prefix = index("idx_a", false, "a");
+        SchemaCatalog.Index longer = index("idx_ab", false, "a", "b");
+        SchemaCatalog.Index uniquePrefix = index("uq_c", true, "c");
+        SchemaCatalog.Index longerC = index("idx_cd", false, "c", "d");
+
+        List<IndexTrie.Redundancy> redundancies =
+                IndexTrie.of(List.of(prefix, longer, uniquePrefix, longerC)).redundancies();
+
+        assertThat(redundancies).singleElement().satisfies(redundancy -> {
+            assertThat(redundancy.kind()).isEqualTo("PREFIX");
+            assertThat(redundancy.index()).isSameAs(prefix);
+            assertThat(redundancy.coveredBy()).isSameAs(longer);
+        });
+    }
+
+    private static SchemaCatalog.Index index(String name, boolean unique, String... columns) {
+        return new SchemaCatalog.Index(name, List.of(columns), unique, "BTREE");
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.querysence.service;
+
+import com.example.querysence.parser.LiteralListFolder;
+import com.example.querysence.parser.ParserGuard;
+import com.example.querysence.parser.QueryCanonicalizer;
+import com.example.querysence.parser.SQLParserEngine;
+import com.example.querysence.parser.SqlFingerprinter;
+import com.example.querysence.repository.SchemaDefinitionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class QueryAnalysisCacheTest {
+
+    private SchemaDefinitionRepository schemaRepository;
+    private QueryAnalysisCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        schemaRepository = mock(SchemaDefinitionRepository.class);
+        when(schemaRepository.findSchemaVersionById(1L)).thenReturn(Optional.of(1L));
+        when(schemaRepository.findSchemaVersionById(2L)).thenReturn(Optional.of(1L));
+        cache = new QueryAnalysisCache(schemaRepository, new SimpleMeterRegistry(), 100, 30);
+    }
+
+    @Test
+    void sameHashAndSchemaVersionIsServedFromTheCache() {
+        QueryAnalysisCache.CachedAnalysis first = cache.get("hash", 1L, loader());
+        QueryAnalysisCache.CachedAnalysis second = cache.get("hash", 1L, loader());
+
+        assertThat(second).isSameAs(first);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void differentHashOrSchemaIsAMiss() {
+        cache.get("hash", 1L, loader());
+        cache.get("other", 1L, loader());
+        cache.get("hash", 2L, loader());
+        cache.get("hash", null, loader());
+
+        assertThat(loads).hasValue(4);
+    }
+
+    @Test
+    void bumpedSchemaVersionRetiresEntries() {
+        cache.get("hash", 1L, loader());
+        when(schemaRepository.findSchemaVersionById(1L)).thenReturn(Optional.of(2L));
+        cache.get("hash", 1L, loader());
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void invalidateSchemaDropsOnlyThatSchema() {
+        cache.get("hash", 1L, loader());
+        cache.get("hash", 2L, loader());
+        cache.invalidateSchema(1L);
+        cache.get("hash", 1L, loader());
+        cache.get("hash", 2L, loader());
+
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void deletedSchemaDoesNotShareEntriesWithTheLiveOne() {
+        cache.get("hash", 1L, loader());
+        when(schemaRepository.findSchemaVersionById(1L)).thenReturn(Optional.empty());
+        cache.get("hash", 1L, loader());
+        cache.get("hash", 1L, loader());
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void queriesDifferingOnlyInLiteralsMissTheCache() {
+        SqlFingerprinter fingerprinter = new SqlFingerprinter();
+        QueryParserService parserService = new QueryParserService(new SQLParserEngine(new QueryCanonicalizer(fingerprinter),
+                new ParserGuard(new SimpleMeterRegistry(), 100_000, 64, 2000), new LiteralListFolder(32)), fingerprinter);
+
+        for (String sql : List.of(
+                "SELECT * FROM users WHERE name = 'Bob'",
+                "SELECT *\n  FROM users WHERE name = 'Bob'  ",
+                "SELECT * FROM users WHERE name = 'BOB'",
+                "SELECT * FROM users WHERE name = 'Bob  Smith'",
+                "SELECT * FROM users WHERE name = 'Bob Smith'",
+                "SELECT \"Name\" FROM users",
+                "SELECT \"name\" FROM users",
+                "SELECT * FROM users WHERE a = 'x,y'",
+                "SELECT * FROM users WHERE a = 'x, y'")) {
+            cache.get(parserService.computeQueryHash(sql), 1L, loader());
+        }
+
+        // Only the second statement, which differs in whitespace outside quotes, is a hit
+        assertThat(loads).hasValue(8);
+    }
+
+    private Supplier<QueryAnalysisCache.CachedAnalysis> loader() {
+        return () -> {
+            loads.incrementAndGet();
+            return new QueryAnalysisCache.CachedAnalysis(null, null, List.of());
+        };
+    }
+}
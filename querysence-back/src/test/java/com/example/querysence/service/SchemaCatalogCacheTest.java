@@ -0,0 +1,89 @@
+package com.example.querysence.service;
+
+import com.example.querysence.model.ColumnDefinition;
+import com.example.querysence.model.IndexDefinition;
+import com.example.querysence.model.SchemaDefinition;
+import com.example.querysence.model.TableDefinition;
+import com.example.querysence.repository.SchemaDefinitionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SchemaCatalogCacheTest {
+
+    private final SchemaDefinitionRepository schemaRepository = mock(SchemaDefinitionRepository.class);
+    private SchemaDefinition schema;
+    private SchemaCatalogCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new SchemaCatalogCache(schemaRepository, mock(ColumnStatisticsService.class),
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), 10_000);
+        TableDefinition orders = TableDefinition.builder().tableName("Orders").estimatedRows(500L)
+                .indexes(new ArrayList<>(List.of(
+                        IndexDefinition.builder().indexName("uq_orders_email").isUnique(true).columns(List.of("Email")).build())))
+                .build();
+        orders.getColumns().add(ColumnDefinition.builder().columnName("id").dataType("bigint")
+                .isPrimaryKey(true).isNullable(false).build());
+        orders.getColumns().add(ColumnDefinition.builder().columnName("Email").dataType("text").build());
+        schema = SchemaDefinition.builder().id(1L).name("shop").schemaVersion(1L)
+                .tables(new HashSet<>(List.of(orders))).build();
+        when(schemaRepository.findByIdWithFullDetails(1L)).thenReturn(Optional.of(schema));
+        when(schemaRepository.findSchemaVersionById(1L)).thenReturn(Optional.of(1L));
+    }
+
+    @Test
+    void lookupsAreCaseInsensitive() {
+        SchemaCatalog.Table orders = cache.get(1L).orElseThrow().table("ORDERS");
+
+        assertThat(orders.rowsOrDefault()).isEqualTo(500);
+        assertThat(orders.hasColumn("email")).isTrue();
+        assertThat(orders.isUnique("id")).isTrue();
+        assertThat(orders.isUnique("EMAIL")).isTrue();
+        assertThat(orders.isNotNull("id")).isTrue();
+        assertThat(orders.indexes()).singleElement()
+                .satisfies(index -> assertThat(index.columns()).containsExactly("email"));
+    }
+
+    @Test
+    void aCatalogIsBuiltOncePerVersion() {
+        SchemaCatalog first = cache.get(1L).orElseThrow();
+        assertThat(cache.get(1L)).containsSame(first);
+        verify(schemaRepository, times(1)).findByIdWithFullDetails(1L);
+
+        schema.setSchemaVersion(2L);
+        when(schemaRepository.findSchemaVersionById(1L)).thenReturn(Optional.of(2L));
+        SchemaCatalog second = cache.get(1L).orElseThrow();
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.version()).isEqualTo(2);
+        verify(schemaRepository, times(2)).findByIdWithFullDetails(1L);
+    }
+
+    @Test
+    void invalidateRebuildsTheSameVersion() {
+        SchemaCatalog first = cache.get(1L).orElseThrow();
+
+        cache.invalidate(1L);
+
+        assertThat(cache.get(1L).orElseThrow()).isNotSameAs(first);
+    }
+
+    @Test
+    void unknownSchemasHaveNoCatalog() {
+        assertThat(cache.get(2L)).isEmpty();
+        assertThat(cache.get(null)).isEmpty();
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.querysence.service;
+
+import com.example.querysence.model.ColumnStatistics;
+import com.example.querysence.parser.ParsedQuery;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SelectivityEstimatorTest {
+
+    private static final double ROWS = 1_000_000;
+
+    private final SelectivityEstimator estimator = new SelectivityEstimator();
+
+    // status: 60% 'active', 30% 'pending', 10% spread over 8 others, 0-100 uniform on amount
+    private final SelectivityEstimator.Column status = column(ColumnStatistics.builder()
+            .nullFraction(0.0)
+            .distinctCount(10.0)
+            .mostCommonValues(List.of("active", "pending"))
+            .mostCommonFrequencies(List.of(0.6, 0.3))
+            .histogramBounds(List.of())
+            .build());
+    private final SelectivityEstimator.Column amount = column(ColumnStatistics.builder()
+            .nullFraction(0.1)
+            .distinctCount(-0.5)
+            .mostCommonValues(List.of())
+            .mostCommonFrequencies(List.of())
+            .histogramBounds(List.of("0", "25", "50", "75", "100"))
+            .build());
+    private final SelectivityEstimator.Column name = column(ColumnStatistics.builder()
+            .nullFraction(0.0)
+            .distinctCount(-1.0)
+            .mostCommonValues(List.of())
+            .mostCommonFrequencies(List.of())
+            .histogramBounds(List.of("a", "f", "k", "p", "u", "z"))
+            .build());
+    private final SelectivityEstimator.Column unknown =
+            new SelectivityEstimator.Column(null, ROWS, false, false);
+
+    @Test
+    void defaultsWithoutStatistics() {
+        assertThat(selectivity("=", "'x'", unknown)).isEqualTo(SelectivityEstimator.EQ_SELECTIVITY);
+        assertThat(selectivity(">", "5", unknown)).isEqualTo(SelectivityEstimator.RANGE_SELECTIVITY);
+        assertThat(selectivity("LIKE", "'ab%'", unknown)).isEqualTo(SelectivityEstimator.MATCH_SELECTIVITY);
+        assertThat(selectivity("IS NULL", null, unknown)).isEqualTo(SelectivityEstimator.NULL_SELECTIVITY);
+    }
+
+    @Test
+    void uniqueColumnsMatchOneRow() {
+        SelectivityEstimator.Column id = new SelectivityEstimator.Column(null, ROWS, true, true);
+        assertThat(selectivity("=", "42", id)).isEqualTo(1 / ROWS);
+        assertThat(selectivity("IS NULL", null, id)).isEqualTo(1e-9);
+        assertThat(estimator.distinctValues(id)).isEqualTo(ROWS);
+    }
+
+    @Test
+    void equalityUsesMostCommonValues() {
+        assertThat(selectivity("=", "'active'", status)).isEqualTo(0.6);
+        assertThat(selectivity("<>", "'active'", status)).isCloseTo(0.4, within(1e-9));
+        // The remaining 10% over the 8 values outside the MCV list
+        assertThat(selectivity("=", "'closed'", status)).isCloseTo(0.1 / 8, within(1e-9));
+        // A parameter gets the average value
+        assertThat(selectivity("=", "?", status)).isCloseTo(0.1, within(1e-9));
+    }
+
+    @Test
+    void rangesInterpolateInsideHistogramBuckets() {
+        // 90% of rows are not null, the histogram covers all of them
+        assertThat(selectivity("<", "25", amount)).isCloseTo(0.25 * 0.9, within(1e-9));
+        assertThat(selectivity(">", "90", amount)).isCloseTo(0.10 * 0.9, within(1e-9));
+        assertThat(selectivity("<", "-5", amount)).isEqualTo(1e-9);
+        assertThat(selectivity(">=", "0", amount)).isCloseTo(0.9, within(1e-9));
+        // Not a number on a numeric column: no estimate beyond the default
+        assertThat(selectivity("<", "'abc'", amount)).isEqualTo(SelectivityEstimator.RANGE_SELECTIVITY);
+    }
+
+    @Test
+    void rangesCountMostCommonValuesOnTheirSide() {
+        assertThat(selectivity("<", "'b'", status)).isCloseTo(0.6 + 0.1 * SelectivityEstimator.RANGE_SELECTIVITY, within(1e-9));
+        assertThat(selectivity(">", "'b'", status)).isCloseTo(0.3 + 0.1 * SelectivityEstimator.RANGE_SELECTIVITY, within(1e-9));
+    }
+
+    @Test
+    void betweenIsTheDifferenceOfTwoRanges() {
+        ParsedQuery.WhereCondition condition = ParsedQuery.WhereCondition.builder()
+                .column("amount").operator("BETWEEN").values(List.of("25", "75")).build();
+        assertThat(estimator.selectivity(condition, amount, 1)).isCloseTo(0.5 * 0.9, within(1e-9));
+    }
+
+    @Test
+    void likePrefixIsARangeScan() {
+        // 'f%' is [f, g): text isn't interpolated, so half of the [f, k) bucket, one of five
+        assertThat(selectivity("LIKE", "'f%'", name)).isCloseTo(0.5 / 5, within(1e-9));
+        // Literal characters after the wildcard narrow it further
+        assertThat(selectivity("LIKE", "'f%xy'", name)).isLessThan(selectivity("LIKE", "'f%'", name));
+        // No wildcard is plain equality
+        assertThat(selectivity("LIKE", "'active'", status)).isEqualTo(0.6);
+        assertThat(selectivity("LIKE", "'act%'", status)).isCloseTo(0.6 + SelectivityEstimator.MATCH_SELECTIVITY * 0.1, within(1e-9));
+    }
+
+    @Test
+    void inListsAddUpTheirValues() {
+        ParsedQuery.WhereCondition condition = ParsedQuery.WhereCondition.builder()
+                .column("status").operator("IN").values(List.of("'active'", "'pending'")).build();
+        assertThat(estimator.selectivity(condition, status, 2)).isCloseTo(0.9, within(1e-9));
+        // Folded to its first element: only the count is known
+        ParsedQuery.WhereCondition folded = ParsedQuery.WhereCondition.builder()
+                .column("status").operator("IN").values(List.of("'active'")).build();
+        assertThat(estimator.selectivity(folded, status, 5)).isCloseTo(5 * 0.1, within(1e-9));
+    }
+
+    @Test
+    void nullTestsUseTheNullFraction() {
+        assertThat(selectivity("IS NULL", null, amount)).isCloseTo(0.1, within(1e-9));
+        assertThat(selectivity("IS NOT NULL", null, amount)).isCloseTo(0.9, within(1e-9));
+    }
+
+    @Test
+    void negativeDistinctCountsScaleWithTheTable() {
+        assertThat(estimator.distinctValues(amount)).isEqualTo(0.5 * ROWS);
+        assertThat(estimator.distinctValues(unknown)).isNull();
+    }
+
+    @Test
+    void literalsAreUnquoted() {
+        assertThat(SelectivityEstimator.literal("'it''s'")).isEqualTo("it's");
+        assertThat(SelectivityEstimator.literal(" -1.5e3 ")).isEqualTo("-1.5e3");
+        assertThat(SelectivityEstimator.literal("DATE '2024-01-01'")).isEqualTo("2024-01-01");
+        assertThat(SelectivityEstimator.literal("?")).isNull();
+        assertThat(SelectivityEstimator.literal("other.column")).isNull();
+    }
+
+    @Test
+    void estimatesStayWithinBounds() {
+        List<String> operators = new ArrayList<>(List.of("=", "<>", "<", ">", "LIKE", "NOT LIKE", "IS NULL", "IS NOT NULL"));
+        for (String operator : operators) {
+            for (SelectivityEstimator.Column column : List.of(status, amount, name, unknown)) {
+                assertThat(selectivity(operator, "'zz%'", column)).isBetween(1e-9, 1.0);
+            }
+        }
+    }
+
+    private double selectivity(String operator, String value, SelectivityEstimator.Column column) {
+        ParsedQuery.WhereCondition condition = ParsedQuery.WhereCondition.builder()
+                .column("c").operator(operator).value(value).build();
+        return estimator.selectivity(condition, column, 1);
+    }
+
+    private static SelectivityEstimator.Column column(ColumnStatistics statistics) {
+        return new SelectivityEstimator.Column(SelectivityEstimator.ColumnStats.of(statistics, ROWS), ROWS, false, false);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.querysence.service;
+
+import com.example.querysence.model.ColumnStatistics;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class StatisticsCalculatorTest {
+
+    @Test
+    void emptyAndAllNullSamples() {
+        ColumnStatistics empty = StatisticsCalculator.compute(List.of(), 1000, 10, 10);
+        assertThat(empty.getNullFraction()).isZero();
+        assertThat(empty.getDistinctCount()).isZero();
+
+        ColumnStatistics nulls = StatisticsCalculator.compute(Arrays.asList(null, null, null, null), 1000, 10, 10);
+        assertThat(nulls.getNullFraction()).isEqualTo(1.0);
+        assertThat(nulls.getDistinctCount()).isZero();
+        assertThat(nulls.getMostCommonValues()).isEmpty();
+    }
+
+    @Test
+    void nullFractionIsTheShareOfNullsInTheSample() {
+        List<String> values = new ArrayList<>(Collections.nCopies(25, (String) null));
+        for (int i = 0; i < 75; i++) values.add("v" + (i % 5));
+        assertThat(StatisticsCalculator.compute(values, 100, 10, 10).getNullFraction()).isEqualTo(0.25);
+    }
+
+    @Test
+    void uniqueSampleScalesWithTheTable() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) values.add(Integer.toString(i));
+        ColumnStatistics statistics = StatisticsCalculator.compute(values, 1_000_000, 10, 10);
+        // Stored as a negative fraction of the row count, like pg_stats.n_distinct
+        assertThat(statistics.getDistinctCount()).isEqualTo(-1.0);
+        assertThat(statistics.getMostCommonValues()).isEmpty();
+    }
+
+    @Test
+    void lowCardinalityColumnKeepsAnAbsoluteDistinctCountAndEveryValueAsMcv() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) values.add(i % 10 < 7 ? "active" : i % 10 < 9 ? "pending" : "closed");
+        ColumnStatistics statistics = StatisticsCalculator.compute(values, 1_000_000, 10, 10);
+        assertThat(statistics.getDistinctCount()).isEqualTo(3.0);
+        assertThat(statistics.getMostCommonValues()).containsExactly("active", "pending", "closed");
+        assertThat(statistics.getMostCommonFrequencies()).containsExactly(0.7, 0.2, 0.1);
+        assertThat(statistics.getHistogramBounds()).isEmpty();
+    }
+
+    @Test
+    void fullScanCountsDistinctValuesExactly() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) values.add(Integer.toString(i / 10));
+        assertThat(StatisticsCalculator.compute(values, 2000, 10, 10).getDistinctCount()).isEqualTo(200.0);
+    }
+
+    @Test
+    void haasStokesEstimateStaysBetweenSampleAndTable() {
+        Random random = new Random(42);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) values.add(Integer.toString(random.nextInt(2000)));
+        ColumnStatistics statistics = StatisticsCalculator.compute(values, 100_000, 10, 10);
+        double distinct = statistics.getDistinctCount() < 0
+                ? -statistics.getDistinctCount() * 100_000
+                : statistics.getDistinctCount();
+        assertThat(distinct).isBetween(1500.0, 3000.0);
+    }
+
+    @Test
+    void histogramIsEquiDepthInNumericOrder() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i <= 100; i++) values.add(Integer.toString(i));
+        Collections.shuffle(values, new Random(7));
+        ColumnStatistics statistics = StatisticsCalculator.compute(values, 101, 4, 10);
+        assertThat(statistics.getHistogramBounds()).containsExactly("0", "25", "50", "75", "100");
+    }
+
+    @Test
+    void histogramLeavesOutTheMostCommonValues() {
+        List<String> values = new ArrayList<>(Collections.nCopies(500, "0"));
+        for (int i = 1; i <= 500; i++) values.add(Integer.toString(i));
+        ColumnStatistics statistics = StatisticsCalculator.compute(values, 1000, 10, 10);
+        assertThat(statistics.getMostCommonValues()).containsExactly("0");
+        assertThat(statistics.getMostCommonFrequencies().get(0)).isEqualTo(0.5);
+        assertThat(statistics.getHistogramBounds()).first().isEqualTo("1");
+        assertThat(statistics.getHistogramBounds()).last().isEqualTo("500");
+    }
+
+    @Test
+    void correlationFollowsPhysicalOrder() {
+        List<String> ascending = new ArrayList<>();
+        for (int i = 0; i < 200; i++) ascending.add(Integer.toString(i));
+        assertThat(StatisticsCalculator.compute(ascending, 200, 10, 10).getCorrelation()).isCloseTo(1.0, within(1e-9));
+
+        List<String> descending = new ArrayList<>(ascending);
+        Collections.reverse(descending);
+        assertThat(StatisticsCalculator.compute(descending, 200, 10, 10).getCorrelation()).isCloseTo(-1.0, within(1e-9));
+
+        List<String> shuffled = new ArrayList<>(ascending);
+        Collections.shuffle(shuffled, new Random(1));
+        assertThat(Math.abs(StatisticsCalculator.compute(shuffled, 200, 10, 10).getCorrelation())).isLessThan(0.3);
+    }
+}
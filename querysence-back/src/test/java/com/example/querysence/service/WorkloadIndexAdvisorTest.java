@@ -0,0 +1,276 @@
+package com.example.querysence.service;
+
+import com.example.querysence.model.ColumnDefinition;
+import com.example.querysence.model.IndexDefinition;
+import com.example.querysence.model.Project;
+import com.example.querysence.model.SchemaDefinition;
+import com.example.querysence.model.TableDefinition;
+import com.example.querysence.model.User;
+import com.example.querysence.model.dto.WorkloadIndexAdviceResponse;
+import com.example.querysence.parser.LiteralListFolder;
+import com.example.querysence.parser.ParserGuard;
+import com.example.querysence.parser.QueryCanonicalizer;
+import com.example.querysence.parser.SQLParserEngine;
+import com.example.querysence.parser.SqlFingerprinter;
+import com.example.querysence.repository.ProjectRepository;
+import com.example.querysence.repository.QueryHistoryRepository;
+import com.example.querysence.repository.SchemaDefinitionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WorkloadIndexAdvisorTest {
+
+    private static final Long PROJECT = 7L;
+
+    private final QueryHistoryRepository historyRepository = mock(QueryHistoryRepository.class);
+    private final ProjectRepository projectRepository = mock(ProjectRepository.class);
+    private final SchemaDefinitionRepository schemaRepository = mock(SchemaDefinitionRepository.class);
+    private final QueryParserService parserService = parserService();
+    private final List<Object[]> history = new ArrayList<>();
+    private final TableDefinition orders = table("orders", 1_000_000,
+            Map.of("id", "bigint", "customer_id", "bigint", "status", "varchar(16)", "created_at", "timestamp"));
+    private SchemaDefinition schema;
+    private WorkloadIndexAdvisor advisor;
+
+    @BeforeEach
+    void setUp() {
+        SchemaCatalogCache catalogCache = new SchemaCatalogCache(schemaRepository, mock(ColumnStatisticsService.class),
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), 10_000);
+        advisor = new WorkloadIndexAdvisor(historyRepository, projectRepository, catalogCache, parserService,
+                new SelectivityEstimator(), new IndexCostEstimator(), 500, 360);
+        ReflectionTestUtils.setField(advisor, "defaultMaxIndexes", 10);
+        ReflectionTestUtils.setField(advisor, "defaultMaxStorageMb", 1024L);
+        ReflectionTestUtils.setField(advisor, "minBenefitShare", 0.01);
+        ReflectionTestUtils.setField(advisor, "partialMinShare", 0.8);
+        ReflectionTestUtils.setField(advisor, "maxFingerprints", 5000);
+
+        schema = SchemaDefinition.builder().id(1L).name("shop").dialect("postgresql")
+                .tables(new HashSet<>(List.of(orders))).build();
+        Project project = Project.builder().id(PROJECT).name("shop")
+                .owner(User.builder().fullName("ann").build())
+                .schemas(new ArrayList<>(List.of(schema)))
+                .build();
+        when(projectRepository.findByIdWithSchemas(PROJECT)).thenReturn(project);
+        when(schemaRepository.findByIdWithFullDetails(1L)).thenReturn(Optional.of(schema));
+        when(schemaRepository.findSchemaVersionById(1L)).thenReturn(Optional.of(1L));
+        when(historyRepository.summarizeWorkloadByProject(PROJECT)).thenReturn(history);
+    }
+
+    @Test
+    void queriesSharingAnEqualityColumnShareOneIndex() {
+        fingerprint("a", "SELECT * FROM orders WHERE customer_id = 1",
+                "SELECT * FROM orders WHERE customer_id = 2", 100, 50);
+        fingerprint("b", "SELECT * FROM orders WHERE customer_id = 1 AND status = 'NEW'",
+                "SELECT * FROM orders WHERE customer_id = 2 AND status = 'DONE'", 100, 50);
+
+        WorkloadIndexAdviceResponse advice = advise(null, null);
+
+        assertThat(advice.getSource()).isEqualTo("HISTORY");
+        assertThat(advice.getFingerprintCount()).isEqualTo(2);
+        assertThat(advice.getQueryCount()).isEqualTo(200);
+        assertThat(advice.getRecommendations()).isNotEmpty();
+        assertThat(advice.getRecommendations()).allSatisfy(r -> assertThat(r.getColumns()).first().isEqualTo("customer_id"));
+    }
+
+    @Test
+    void heavierFingerprintsArePickedFirst() {
+        fingerprint("light", "SELECT * FROM orders WHERE status = 'NEW'", 10, 5);
+        fingerprint("heavy", "SELECT * FROM orders WHERE customer_id = 1", 1000, 200);
+
+        WorkloadIndexAdviceResponse advice = advise(1, null);
+
+        assertThat(advice.getRecommendations()).singleElement()
+                .satisfies(r -> assertThat(r.getColumns()).containsExactly("customer_id"));
+    }
+
+    @Test
+    void theStorageBudgetLimitsTheSelection() {
+        fingerprint("a", "SELECT * FROM orders WHERE customer_id = 1", 100, 50);
+
+        WorkloadIndexAdviceResponse advice = advise(null, 1L);
+
+        assertThat(advice.getRecommendations()).isEmpty();
+        assertThat(advice.getUsedStorageBytes()).isZero();
+        assertThat(advice.getMaxStorageBytes()).isEqualTo(1024 * 1024);
+    }
+
+    @Test
+    void existingIndexesAreNotRecommendedAgain() {
+        orders.getIndexes().add(IndexDefinition.builder().indexName("idx_orders_customer")
+                .columns(List.of("customer_id")).build());
+        fingerprint("a", "SELECT * FROM orders WHERE customer_id = 1", 100, 50);
+
+        assertThat(advise(null, null).getRecommendations()).isEmpty();
+    }
+
+    @Test
+    void negligibleFingerprintsDoNotEarnAnIndex() {
+        fingerprint("a", "SELECT * FROM orders WHERE customer_id = 1", 100_000, 100);
+        fingerprint("b", "SELECT * FROM orders WHERE status = 'NEW'", 1, 1);
+
+        assertThat(advise(null, null).getRecommendations())
+                .noneMatch(r -> r.getColumns().get(0).equals("status"));
+    }
+
+    @Test
+    void recordedAnalysesUpdateTheLoadedWorkload() {
+        fingerprint("a", "SELECT * FROM orders WHERE customer_id = 1", 10, 10);
+        advise(null, null);
+
+        advisor.record(PROJECT, "c", parserService.parseQuery("SELECT * FROM orders WHERE created_at > now()"), 5000L);
+        WorkloadIndexAdviceResponse advice = advise(null, null);
+
+        assertThat(advice.getSource()).isEqualTo("INCREMENTAL");
+        assertThat(advice.getFingerprintCount()).isEqualTo(2);
+        assertThat(advice.getColumnUsage().get("orders")).containsKeys("customer_id", "created_at");
+        assertThat(advice.getRecommendations().get(0).getColumns()).containsExactly("created_at");
+        verify(historyRepository, times(1)).summarizeWorkloadByProject(PROJECT);
+    }
+
+    @Test
+    void forgettingAProjectReloadsItFromHistory() {
+        fingerprint("a", "SELECT * FROM orders WHERE customer_id = 1", 10, 10);
+        advise(null, null);
+        advisor.forgetProject(PROJECT);
+
+        assertThat(advise(null, null).getSource()).isEqualTo("HISTORY");
+        verify(historyRepository, times(2)).summarizeWorkloadByProject(PROJECT);
+    }
+
+    @Test
+    void aDominantLiteralEarnsAPartialIndex() {
+        fingerprint("a", "SELECT * FROM orders WHERE status = 'NEW' AND customer_id = 1",
+                "SELECT * FROM orders WHERE status = 'NEW' AND customer_id = 2", 1000, 50);
+
+        WorkloadIndexAdviceResponse.Recommendation top = advise(1, null).getRecommendations().get(0);
+
+        assertThat(top.getColumns()).containsExactly("customer_id");
+        assertThat(top.getPartialPredicate()).isEqualTo("status = 'NEW'");
+        assertThat(top.getCreateStatement()).endsWith("(customer_id) WHERE status = 'NEW';");
+        assertThat(top.getHeapFetchReduction()).isPositive();
+    }
+
+    @Test
+    void literalsThatDifferBetweenSamplesAreNotConstant() {
+        fingerprint("a", "SELECT * FROM orders WHERE status = 'DONE' AND customer_id = 1",
+                "SELECT * FROM orders WHERE status = 'NEW' AND customer_id = 2", 1000, 50);
+
+        assertThat(advise(null, null).getRecommendations()).allSatisfy(r -> assertThat(r.getPartialPredicate()).isNull());
+    }
+
+    @Test
+    void dialectsWithoutPartialIndexesGetFullOnes() {
+        schema.setDialect("mysql");
+        fingerprint("a", "SELECT * FROM orders WHERE status = 'NEW' AND customer_id = 1",
+                "SELECT * FROM orders WHERE status = 'NEW' AND customer_id = 2", 1000, 50);
+
+        assertThat(advise(null, null).getRecommendations()).isNotEmpty()
+                .allSatisfy(r -> assertThat(r.getPartialPredicate()).isNull());
+    }
+
+    @Test
+    void writesThatMaintainTheIndexAreChargedAgainstIt() {
+        fingerprint("r", "SELECT * FROM orders WHERE status = 'NEW'", "SELECT * FROM orders WHERE status = 'DONE'", 100, 50);
+        fingerprint("u", "UPDATE orders SET status = 'DONE' WHERE id = 1",
+                "UPDATE orders SET status = 'NEW' WHERE id = 2", 300, 5);
+
+        WorkloadIndexAdviceResponse.Recommendation top = advise(1, null).getRecommendations().get(0);
+
+        assertThat(top.getColumns()).containsExactly("status");
+        assertThat(top.getEstimatedBuildSeconds()).isPositive();
+        assertThat(top.getWriteShare()).isEqualTo(0.75);
+        assertThat(top.getWritePenalty()).isPositive();
+        assertThat(top.getBenefit()).isLessThan(100 * 50);
+    }
+
+    @Test
+    void updatesOfOtherColumnsCostTheIndexNothing() {
+        fingerprint("r", "SELECT * FROM orders WHERE status = 'NEW'", "SELECT * FROM orders WHERE status = 'DONE'", 100, 50);
+        fingerprint("u", "UPDATE orders SET customer_id = 3 WHERE id = 1",
+                "UPDATE orders SET customer_id = 4 WHERE id = 2", 300, 5);
+
+        WorkloadIndexAdviceResponse.Recommendation top = advise(1, null).getRecommendations().get(0);
+
+        assertThat(top.getColumns()).containsExactly("status");
+        assertThat(top.getWriteShare()).isZero();
+        assertThat(top.getWritePenalty()).isZero();
+    }
+
+    @Test
+    void theWriteProfileNeverLoadsHistory() {
+        fingerprint("u", "UPDATE orders SET status = 'DONE' WHERE id = 1", 30, 5);
+
+        assertThat(advisor.writeProfile(PROJECT)).isEmpty();
+        verify(historyRepository, times(0)).summarizeWorkloadByProject(PROJECT);
+    }
+
+    @Test
+    void writeCountersFollowRecordedStatements() {
+        fingerprint("r", "SELECT * FROM orders WHERE status = 'NEW'", 70, 5);
+        fingerprint("u", "UPDATE orders SET status = 'DONE' WHERE id = 1", 30, 5);
+        advise(null, null);
+
+        assertThat(advisor.writeProfile(PROJECT).get("orders").maintainingShare(List.of("status"))).isEqualTo(0.3);
+
+        advisor.record(PROJECT, "i", parserService.parseQuery("INSERT INTO orders (id, status) VALUES (1, 'NEW')"), 1L);
+        assertThat(advisor.writeProfile(PROJECT).get("orders").writes()).isEqualTo(31);
+    }
+
+    private WorkloadIndexAdviceResponse advise(Integer maxIndexes, Long maxStorageMb) {
+        return advisor.advise(PROJECT, "ann", maxIndexes, maxStorageMb, null);
+    }
+
+    @Test
+    void historyStoredUnderTheOldHashFormatMergesWithTheNewOne() {
+        String legacy = "3f1c0a8e5b7d2c4f6a9e1b3d5c7f9a2e4b6d8f0a1c3e5b7d9f2a4c6e8b0d1f3a";
+        String sql = "SELECT * FROM orders WHERE customer_id = 1";
+        String canonical = parserService.parseQuery(sql).getCanonicalHash();
+        fingerprint(legacy, sql, 40, 10);
+        fingerprint(canonical, "select *  from orders where customer_id = 2", 60, 10);
+
+        WorkloadIndexAdviceResponse advice = advise(null, null);
+        assertThat(advice.getFingerprintCount()).isEqualTo(1);
+        assertThat(advice.getQueryCount()).isEqualTo(100);
+
+        advisor.record(PROJECT, canonical, parserService.parseQuery(sql), 10L);
+        assertThat(advise(null, null).getFingerprintCount()).isEqualTo(1);
+    }
+
+    private void fingerprint(String hash, String sql, long executions, long averageMs) {
+        fingerprint(hash, sql, sql, executions, averageMs);
+    }
+
+    // first and last are the MIN and MAX sample texts of the fingerprint
+    private void fingerprint(String hash, String first, String last, long executions, long averageMs) {
+        history.add(new Object[]{hash, first, executions, executions * averageMs, executions, last});
+    }
+
+    private static TableDefinition table(String name, long rows, Map<String, String> columns) {
+        TableDefinition table = TableDefinition.builder().tableName(name).estimatedRows(rows).build();
+        columns.forEach((column, type) -> table.getColumns().add(
+                ColumnDefinition.builder().columnName(column).dataType(type).build()));
+        return table;
+    }
+
+    private static QueryParserService parserService() {
+        SqlFingerprinter fingerprinter = new SqlFingerprinter();
+        SQLParserEngine engine = new SQLParserEngine(new QueryCanonicalizer(fingerprinter),
+                new ParserGuard(new SimpleMeterRegistry(), 100_000, 64, 2000), new LiteralListFolder(32));
+        return new QueryParserService(engine, fingerprinter);
+    }
+}